@@ -2,6 +2,7 @@ plugins {
     id("application")
     id("java-library")
     kotlin("jvm") version libs.versions.kotlin.get()
+    id("me.champeau.jmh") version libs.versions.jmhPlugin.get()
 }
 
 val jvmVersion = 21
@@ -0,0 +1,58 @@
+package org.opencraft.server.game.impl;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the two settings Player.isSafe checks for every tag and TNT candidate. With
+ * <code>lockedMap</code>, they are looked up by name in a map under a lock, as GameSettings.get
+ * used to. With <code>snapshot</code>, they are read through their constants. Four threads read
+ * at once, like the game, physics and network threads do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class GameSettingsBenchmark {
+
+  private final HashMap<String, Object> settings = new HashMap<>();
+
+  @Setup
+  public void setUp() {
+    // so both settings are read
+    GameSettings.set("CreeperShield", "true");
+    for (GameSettings.GameSetting setting : GameSettings.getSettings().values()) {
+      settings.put(setting.name, setting.getValue());
+    }
+  }
+
+  private Object get(String k) {
+    synchronized (settings) {
+      return settings.get(k);
+    }
+  }
+
+  @Benchmark
+  public float lockedMap() {
+    return (Boolean) get("CreeperShield") ? (Float) get("CreeperTime") : 0;
+  }
+
+  @Benchmark
+  public float snapshot() {
+    return GameSettings.CREEPER_SHIELD.get() ? GameSettings.CREEPER_TIME.get() : 0;
+  }
+}
@@ -0,0 +1,156 @@
+package org.opencraft.server.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs update ticks for players walking around a 256 by 256 map, and prints how many bytes of
+ * spawn, remove and move packets each player is sent per second. With <code>everyone</code>, the
+ * distances are larger than the map, which is what every player got before the tracker.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityTrackerBenchmark {
+
+  private static final int MAP_SIZE = 256 * 32;
+  private static final long TICK_MILLIS = 150;
+  /** How far a player walks in a tick, in 32nds of a block: a little over 4 blocks a second. */
+  private static final int STEP = 20;
+
+  /* the sizes of the packets, including their ids */
+  private static final int SPAWN_BYTES = 138 + 196; // ExtAddEntity2 and ExtAddPlayerName
+  private static final int REMOVE_BYTES = 2;
+  private static final int MOVE_BYTES = 7;
+  private static final int TELEPORT_BYTES = 10;
+
+  @Param({"16", "32", "64"})
+  public int players;
+
+  @Param({"everyone", "interest"})
+  public String mode;
+
+  private final Random random = new Random(42);
+  private final List<BenchmarkEntity> entities = new ArrayList<>();
+  private final List<EntityTracker> trackers = new ArrayList<>();
+  private EntityTracker.Distances distances;
+  private long bytes;
+  private long ticks;
+
+  private static final class BenchmarkEntity extends Entity {
+    int directionX;
+    int directionZ;
+
+    @Override
+    public String getName() {
+      return "player";
+    }
+
+    @Override
+    public String getColoredName() {
+      return "player";
+    }
+  }
+
+  private final class CountingSender implements EntityTracker.Sender {
+    @Override
+    public void spawn(Entity entity) {
+      bytes += SPAWN_BYTES;
+    }
+
+    @Override
+    public void despawn(Entity entity) {
+      bytes += REMOVE_BYTES;
+    }
+
+    @Override
+    public void list(Entity entity) {
+      // the tab list is the same either way
+    }
+
+    @Override
+    public void move(Entity entity, Position from) {
+      Position to = entity.getPosition();
+      boolean near = from != null
+          && Math.abs(to.getX() - from.getX()) <= Byte.MAX_VALUE
+          && Math.abs(to.getY() - from.getY()) <= Byte.MAX_VALUE
+          && Math.abs(to.getZ() - from.getZ()) <= Byte.MAX_VALUE;
+      bytes += near ? MOVE_BYTES : TELEPORT_BYTES;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    distances = mode.equals("everyone")
+        ? new EntityTracker.Distances(MAP_SIZE, MAP_SIZE)
+        : new EntityTracker.Distances(64, 32);
+    for (int i = 0; i < players; i++) {
+      BenchmarkEntity entity = new BenchmarkEntity();
+      entity.setId(i);
+      entity.setPosition(new Position(random.nextInt(MAP_SIZE), 40 * 32, random.nextInt(MAP_SIZE)));
+      turn(entity);
+      entities.add(entity);
+    }
+    for (BenchmarkEntity viewer : entities) {
+      EntityTracker tracker = new EntityTracker(viewer, new CountingSender());
+      for (BenchmarkEntity entity : entities) {
+        if (entity != viewer) {
+          tracker.spawned(entity);
+        }
+      }
+      trackers.add(tracker);
+    }
+  }
+
+  private void turn(BenchmarkEntity entity) {
+    entity.directionX = random.nextInt(2 * STEP + 1) - STEP;
+    entity.directionZ = random.nextInt(2 * STEP + 1) - STEP;
+  }
+
+  @Benchmark
+  public long tick() {
+    ticks++;
+    for (BenchmarkEntity entity : entities) {
+      if (random.nextInt(20) == 0) {
+        turn(entity);
+      }
+      Position position = entity.getPosition();
+      int x = Math.floorMod(position.getX() + entity.directionX, MAP_SIZE);
+      int z = Math.floorMod(position.getZ() + entity.directionZ, MAP_SIZE);
+      entity.setPosition(new Position(x, position.getY(), z));
+    }
+    for (int i = 0; i < players; i++) {
+      EntityTracker tracker = trackers.get(i);
+      for (BenchmarkEntity entity : entities) {
+        if (entity != entities.get(i)) {
+          tracker.update(entity, ticks, distances);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  @TearDown
+  public void printBandwidth() {
+    double seconds = ticks * TICK_MILLIS / 1000.0;
+    System.out.printf("%n%d players, %s: %.0f bytes per player per second%n", players, mode,
+        bytes / seconds / players);
+  }
+}
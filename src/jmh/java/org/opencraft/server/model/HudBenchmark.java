@@ -0,0 +1,124 @@
+package org.opencraft.server.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the status line part of a CTFProcessTask tick for every player in a capture the flag game
+ * with a time limit and a flamethrower line. With <code>render</code>, every line is built every
+ * tick and compared with the last one, as PlayerUI used to. With <code>dirty</code>, the inputs
+ * are set in a HudState and a line is only built when one of its inputs changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HudBenchmark {
+
+  private static final long TICK_MILLIS = 100;
+  private static final int FUEL = 1000;
+  private static final int TIME_LIMIT = 15 * 60;
+
+  @Param({"40"})
+  public int players;
+
+  @Param({"render", "dirty"})
+  public String mode;
+
+  private HudState[] huds;
+  private String[][] statuses;
+  private float[] fuel;
+  private long ticks;
+  private long now;
+  private int redCaptures;
+  private int blueCaptures;
+  private boolean redFlagTaken;
+  private long sent;
+
+  @Setup
+  public void setUp() {
+    huds = new HudState[players];
+    statuses = new String[players][2];
+    fuel = new float[players];
+    for (int i = 0; i < players; i++) {
+      huds[i] = new HudState();
+      statuses[i][0] = "";
+      statuses[i][1] = "";
+      fuel[i] = FUEL;
+    }
+  }
+
+  /* a few players use their flamethrowers each tick, and someone scores now and then */
+  private void play(long tick) {
+    now += TICK_MILLIS;
+    for (int i = 0; i < players; i++) {
+      if ((tick + i) % 50 < 5) {
+        fuel[i] = Math.max(fuel[i] - 100, 0);
+      } else if (fuel[i] < FUEL) {
+        fuel[i] = Math.min(fuel[i] + 10, FUEL);
+      }
+    }
+    if (tick % 600 == 0) {
+      redFlagTaken = !redFlagTaken;
+      redCaptures += redFlagTaken ? 0 : 1;
+    }
+  }
+
+  private int secondsRemaining() {
+    return (int) Math.max((TIME_LIMIT * 1000 - now) % (TIME_LIMIT * 1000) / 1000, 0);
+  }
+
+  @Benchmark
+  public long tick() {
+    play(ticks++);
+    if (mode.equals("render")) {
+      for (int i = 0; i < players; i++) {
+        String status0 = "Map: ctf1 | &cRed: " + redCaptures + (redFlagTaken ? " &6[!]" : "")
+            + " &f| &9Blue: " + blueCaptures;
+        String status1 = "Capture the Flag | " + PlayerUI.prettyTime(secondsRemaining()) + " "
+            + PlayerUI.buildProgressBar(
+                PlayerUI.getProgressLength(fuel[i], FUEL), ProgressBarType.FIRE);
+        send(i, 0, status0);
+        send(i, 1, status1);
+      }
+    } else {
+      for (int i = 0; i < players; i++) {
+        HudState hud = huds[i];
+        hud.setMap("ctf1");
+        hud.setScore(redCaptures, blueCaptures);
+        hud.setFlags(redFlagTaken, false);
+        hud.setSecondsRemaining(secondsRemaining());
+        hud.setFire(PlayerUI.getProgressLength(fuel[i], FUEL));
+        int changed = hud.takeChanged();
+        if ((changed & (HudState.MAP | HudState.SCORE | HudState.FLAGS)) != 0) {
+          send(i, 0, "Map: " + hud.getMap() + " | &cRed: " + hud.getRedScore()
+              + (hud.isRedFlagTaken() ? " &6[!]" : "") + " &f| &9Blue: " + hud.getBlueScore());
+        }
+        if ((changed & (HudState.TIME | HudState.FIRE)) != 0) {
+          send(i, 1, "Capture the Flag | " + PlayerUI.prettyTime(hud.getSecondsRemaining()) + " "
+              + PlayerUI.getProgressBar(hud.getFire(), ProgressBarType.FIRE));
+        }
+      }
+    }
+    return sent;
+  }
+
+  private void send(int player, int line, String status) {
+    if (!statuses[player][line].equals(status)) {
+      statuses[player][line] = status;
+      sent++;
+    }
+  }
+}
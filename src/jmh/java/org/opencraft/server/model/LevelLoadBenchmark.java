@@ -0,0 +1,76 @@
+package org.opencraft.server.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loads every map in a directory, by parsing the maps and by reading their decoded images from
+ * <code>mapcache/</code>. Parsing includes writing the image again, as the first load after a
+ * map changes does. Run it from the server's directory, or give the maps with
+ * <code>-p maps=path</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LevelLoadBenchmark {
+
+  @Param({"maps"})
+  public String maps;
+
+  /** Whether maps are loaded by parsing them, or from their images. */
+  @Param({"nbt", "image"})
+  public String mode;
+
+  private final List<File> files = new ArrayList<>();
+
+  @Setup
+  public void setUp() {
+    File[] listing = new File(maps).listFiles((dir, name) -> name.endsWith(".cw"));
+    if (listing == null || listing.length == 0) {
+      throw new IllegalStateException("No maps in " + maps);
+    }
+    for (File file : listing) {
+      files.add(file);
+      // writes the image, or makes sure it is up to date
+      new Level().load(file.getPath(), name(file));
+    }
+  }
+
+  @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+  public void removeImages() {
+    if (mode.equals("nbt")) {
+      for (File file : files) {
+        LevelImage.getFile(file.getPath()).delete();
+      }
+    }
+  }
+
+  @Benchmark
+  public void loadAll(Blackhole blackhole) {
+    for (File file : files) {
+      blackhole.consume(new Level().load(file.getPath(), name(file)));
+    }
+  }
+
+  private static String name(File file) {
+    String name = file.getName();
+    return name.substring(0, name.lastIndexOf('.'));
+  }
+}
@@ -0,0 +1,174 @@
+package org.opencraft.server.model;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays the physics updates queued by a series of TNT explosions and by water flooding outwards
+ * across a floor, against the position queue Level used to have and against PhysicsQueue. Each
+ * changed block queues itself and its six neighbours, as Level.setBlock does, and the queue is
+ * drained at the end of every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsQueueBenchmark {
+
+  private static final int WIDTH = 256;
+  private static final int HEIGHT = 256;
+  private static final int DEPTH = 64;
+
+  /** The blocks changed in each tick of the replayed sequence, as x, y, z triples. */
+  private int[][] explosionTicks;
+  private int[][] floodTicks;
+
+  /** The queues, which are empty again after each replay. */
+  private final Queue<Position> positionQueue = new ArrayDeque<>();
+  private final PhysicsQueue physicsQueue = new PhysicsQueue(WIDTH * HEIGHT * DEPTH);
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    // 8 ticks of 4 simultaneous explosions, each clearing up to 5x5x5 blocks
+    explosionTicks = new int[8][];
+    for (int t = 0; t < explosionTicks.length; t++) {
+      int[] changes = new int[4 * 125 * 3];
+      int n = 0;
+      for (int e = 0; e < 4; e++) {
+        int cx = 2 + random.nextInt(WIDTH - 4);
+        int cy = 2 + random.nextInt(HEIGHT - 4);
+        int cz = 2 + random.nextInt(DEPTH - 4);
+        for (int dx = -2; dx <= 2; dx++) {
+          for (int dy = -2; dy <= 2; dy++) {
+            for (int dz = -2; dz <= 2; dz++) {
+              changes[n++] = cx + dx;
+              changes[n++] = cy + dy;
+              changes[n++] = cz + dz;
+            }
+          }
+        }
+      }
+      explosionTicks[t] = changes;
+    }
+    // water spreading one block a tick in a diamond from the middle of the map
+    floodTicks = new int[64][];
+    for (int t = 0; t < floodTicks.length; t++) {
+      int[] changes = new int[Math.max(1, 4 * t) * 3];
+      int n = 0;
+      for (int i = 0; i < Math.max(1, 4 * t); i++) {
+        int side = t == 0 ? 0 : i / t;
+        int step = t == 0 ? 0 : i % t;
+        int dx = side == 0 ? t - step : side == 1 ? -step : side == 2 ? step - t : step;
+        int dy = side == 0 ? step : side == 1 ? t - step : side == 2 ? -step : step - t;
+        changes[n++] = WIDTH / 2 + dx;
+        changes[n++] = HEIGHT / 2 + dy;
+        changes[n++] = 20;
+      }
+      floodTicks[t] = changes;
+    }
+  }
+
+  @Benchmark
+  public long explosionsPositionQueue() {
+    return replayPositions(positionQueue, explosionTicks);
+  }
+
+  @Benchmark
+  public long explosionsPhysicsQueue() {
+    return replayIndices(physicsQueue, explosionTicks);
+  }
+
+  @Benchmark
+  public long floodPositionQueue() {
+    return replayPositions(positionQueue, floodTicks);
+  }
+
+  @Benchmark
+  public long floodPhysicsQueue() {
+    return replayIndices(physicsQueue, floodTicks);
+  }
+
+  private static long replayPositions(Queue<Position> updateQueue, int[][] ticks) {
+    long processed = 0;
+    for (int[] changes : ticks) {
+      for (int i = 0; i < changes.length; i += 3) {
+        int x = changes[i];
+        int y = changes[i + 1];
+        int z = changes[i + 2];
+        queuePosition(updateQueue, x, y, z);
+        queuePosition(updateQueue, x - 1, y, z);
+        queuePosition(updateQueue, x + 1, y, z);
+        queuePosition(updateQueue, x, y - 1, z);
+        queuePosition(updateQueue, x, y + 1, z);
+        queuePosition(updateQueue, x, y, z - 1);
+        queuePosition(updateQueue, x, y, z + 1);
+      }
+      Queue<Position> currentQueue;
+      synchronized (updateQueue) {
+        currentQueue = new ArrayDeque<>(updateQueue);
+        updateQueue.clear();
+      }
+      for (Position pos : currentQueue) {
+        processed += pos.getX() + pos.getY() + pos.getZ();
+      }
+    }
+    return processed;
+  }
+
+  /** The old Level.queueTileUpdate. */
+  private static void queuePosition(Queue<Position> updateQueue, int x, int y, int z) {
+    if (x >= 0 && y >= 0 && z >= 0 && x < WIDTH && y < HEIGHT && z < DEPTH) {
+      Position pos = new Position(x, y, z);
+      synchronized (updateQueue) {
+        if (!updateQueue.contains(pos)) {
+          updateQueue.add(pos);
+        }
+      }
+    }
+  }
+
+  private static long replayIndices(PhysicsQueue updateQueue, int[][] ticks) {
+    long processed = 0;
+    for (int[] changes : ticks) {
+      for (int i = 0; i < changes.length; i += 3) {
+        int x = changes[i];
+        int y = changes[i + 1];
+        int z = changes[i + 2];
+        queueIndex(updateQueue, x, y, z);
+        queueIndex(updateQueue, x - 1, y, z);
+        queueIndex(updateQueue, x + 1, y, z);
+        queueIndex(updateQueue, x, y - 1, z);
+        queueIndex(updateQueue, x, y + 1, z);
+        queueIndex(updateQueue, x, y, z - 1);
+        queueIndex(updateQueue, x, y, z + 1);
+      }
+      IntQueue updates = updateQueue.swap();
+      for (int index; (index = updates.poll()) != IntQueue.EMPTY; ) {
+        processed += index % WIDTH + (index / WIDTH) % HEIGHT + index / (WIDTH * HEIGHT);
+      }
+    }
+    return processed;
+  }
+
+  /** The new Level.queueTileUpdate. */
+  private static void queueIndex(PhysicsQueue updateQueue, int x, int y, int z) {
+    if (x >= 0 && y >= 0 && z >= 0 && x < WIDTH && y < HEIGHT && z < DEPTH) {
+      updateQueue.add((z * HEIGHT + y) * WIDTH + x);
+    }
+  }
+}
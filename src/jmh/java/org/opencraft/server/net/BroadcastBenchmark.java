@@ -0,0 +1,100 @@
+package org.opencraft.server.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.PacketBuilder;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares broadcasting a chat message by encoding it for every recipient, as World.broadcast
+ * used to, with encoding it once and giving every recipient the same bytes. Each recipient's
+ * bytes are copied into a buffer, as OutboundBatch does. Add <code>-prof gc</code> to the JMH
+ * arguments to see the allocation per broadcast.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+  private static final PacketDefinition MESSAGE = new PacketDefinition(13, "message",
+      new PacketField[]{
+          new PacketField("id", DataType.BYTE),
+          new PacketField("message", DataType.STRING)
+      });
+
+  @Param({"40"})
+  public int recipients;
+
+  /** A message which fits on one line, and one which is split over two. */
+  @Param({
+      "&cRed&f rocketed &9Blue &f(42)",
+      "&cSomeone&f: does anyone want to push mid with me, their flag room is empty right now"
+  })
+  public String message;
+
+  private final List<ByteBuffer> batches = new ArrayList<>();
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < recipients; i++) {
+      batches.add(ByteBuffer.allocate(512));
+    }
+  }
+
+  private static List<Packet> encode(String message) {
+    List<Packet> packets = new ArrayList<>(1);
+    for (String line : ActionSender.splitChatMessage(message)) {
+      packets.add(new PacketBuilder(MESSAGE)
+          .putByte("id", 0)
+          .putString("message", line)
+          .toPacket());
+    }
+    return packets;
+  }
+
+  @Benchmark
+  public int encodeForEach() {
+    int written = 0;
+    for (ByteBuffer batch : batches) {
+      batch.clear();
+      for (Packet packet : encode(message)) {
+        batch.put(packet.toByteArray());
+      }
+      written += batch.position();
+    }
+    return written;
+  }
+
+  @Benchmark
+  public int encodeOnce() {
+    List<Packet> packets = encode(message);
+    int written = 0;
+    for (ByteBuffer batch : batches) {
+      batch.clear();
+      for (Packet packet : packets) {
+        batch.put(packet.toByteArray());
+      }
+      written += batch.position();
+    }
+    return written;
+  }
+}
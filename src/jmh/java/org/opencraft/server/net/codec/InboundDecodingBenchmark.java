@@ -0,0 +1,136 @@
+package org.opencraft.server.net.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.AbstractProtocolDecoderOutput;
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.PacketBuilder;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketField;
+import org.opencraft.server.net.packet.PacketManager;
+import org.opencraft.server.net.packet.incoming.MovementPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes one movement packet from each of 64 simulated clients, which is what the server sees
+ * every client tick at peak, and reads the fields the way MovementPacketHandler does. The field
+ * map benchmark reproduces the decoder before packets were read into views. Run with
+ * <code>-prof gc</code> to compare allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundDecodingBenchmark {
+
+  private static final int CLIENTS = 64;
+
+  private static final PacketDefinition MOVEMENT = new PacketDefinition(8, "move_and_rotate",
+      new PacketField[]{
+          new PacketField("id", DataType.SHORT),
+          new PacketField("x", DataType.SHORT),
+          new PacketField("z", DataType.SHORT),
+          new PacketField("y", DataType.SHORT),
+          new PacketField("rotation", DataType.BYTE),
+          new PacketField("look", DataType.BYTE)
+      });
+
+  private final IoSession[] sessions = new IoSession[CLIENTS];
+
+  private final MinecraftProtocolDecoder[] decoders = new MinecraftProtocolDecoder[CLIENTS];
+
+  private final IoBuffer[] buffers = new IoBuffer[CLIENTS];
+
+  private final ViewOutput output = new ViewOutput();
+
+  @Setup
+  public void setUp() {
+    PacketManager manager = new PacketManager() {
+      @Override
+      public PacketDefinition getIncomingPacket(int opcode) {
+        return opcode == 8 ? MOVEMENT : null;
+      }
+    };
+    for (int i = 0; i < CLIENTS; i++) {
+      sessions[i] = new DummySession();
+      decoders[i] = new MinecraftProtocolDecoder(manager);
+      byte[] packet = new PacketBuilder(MOVEMENT)
+          .putShort("id", 1)
+          .putShort("x", 64 * 32 + i)
+          .putShort("y", 40 * 32)
+          .putShort("z", 64 * 32 - i)
+          .putByte("rotation", i)
+          .putByte("look", -i)
+          .toPacket()
+          .toByteArray();
+      buffers[i] = IoBuffer.wrap(packet);
+    }
+  }
+
+  @Benchmark
+  public long views() throws Exception {
+    output.sum = 0;
+    for (int i = 0; i < CLIENTS; i++) {
+      IoBuffer buffer = buffers[i].rewind();
+      decoders[i].decode(sessions[i], buffer, output);
+      output.flush(null, sessions[i]);
+    }
+    return output.sum;
+  }
+
+  @Benchmark
+  public long fieldMap() {
+    long sum = 0;
+    for (int i = 0; i < CLIENTS; i++) {
+      IoBuffer buffer = buffers[i].rewind();
+      buffer.getUnsigned();
+      Map<String, Object> values = new HashMap<String, Object>();
+      for (PacketField field : MOVEMENT.getFields()) {
+        values.put(field.getName(),
+            field.getType() == DataType.SHORT ? (Object) buffer.getShort() : buffer.get());
+      }
+      Packet packet = new Packet(MOVEMENT, values);
+      sum += packet.getNumericField("x").intValue()
+          + packet.getNumericField("y").intValue()
+          + packet.getNumericField("z").intValue()
+          + packet.getNumericField("rotation").intValue()
+          + packet.getNumericField("look").intValue()
+          + packet.getNumericField("id").byteValue();
+    }
+    return sum;
+  }
+
+  /** Handles decoded views straight away and releases them, as SessionMessageTask does. */
+  private static final class ViewOutput extends AbstractProtocolDecoderOutput {
+
+    private long sum;
+
+    @Override
+    public void flush(NextFilter nextFilter, IoSession session) {
+      Object message;
+      while ((message = messageQueue.poll()) != null) {
+        MovementPacket packet = (MovementPacket) message;
+        sum += packet.x() + packet.y() + packet.z() + packet.yaw() + packet.pitch()
+            + (byte) packet.heldBlock();
+        packet.release();
+      }
+    }
+  }
+}
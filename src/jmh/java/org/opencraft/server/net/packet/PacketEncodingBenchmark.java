@@ -0,0 +1,112 @@
+package org.opencraft.server.net.packet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares encoding outgoing packets through a boxed field map, as PacketBuilder used to, with
+ * encoding them straight into bytes. Run with <code>./gradlew jmh</code> and add
+ * <code>-prof gc</code> to the JMH arguments to see the allocation per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketEncodingBenchmark {
+
+  private static final PacketDefinition MOVE = new PacketDefinition(9, "move_and_rotate",
+      new PacketField[]{
+          new PacketField("id", DataType.BYTE),
+          new PacketField("delta_x", DataType.BYTE),
+          new PacketField("delta_z", DataType.BYTE),
+          new PacketField("delta_y", DataType.BYTE),
+          new PacketField("delta_rotation", DataType.BYTE),
+          new PacketField("delta_look", DataType.BYTE)
+      });
+
+  private static final PacketDefinition MESSAGE = new PacketDefinition(13, "message",
+      new PacketField[]{
+          new PacketField("id", DataType.BYTE),
+          new PacketField("message", DataType.STRING)
+      });
+
+  private int tick;
+
+  @Benchmark
+  public byte[] fieldMapMove() {
+    Map<String, Object> values = new HashMap<>();
+    putLegacy(MOVE, values, "id", DataType.BYTE, (byte) 5);
+    putLegacy(MOVE, values, "delta_x", DataType.BYTE, (byte) tick++);
+    putLegacy(MOVE, values, "delta_y", DataType.BYTE, (byte) 0);
+    putLegacy(MOVE, values, "delta_z", DataType.BYTE, (byte) -3);
+    putLegacy(MOVE, values, "delta_rotation", DataType.BYTE, (byte) 12);
+    putLegacy(MOVE, values, "delta_look", DataType.BYTE, (byte) 0);
+    return encodeLegacy(new Packet(MOVE, values));
+  }
+
+  @Benchmark
+  public byte[] compiledMove() {
+    return new PacketBuilder(MOVE)
+        .putByte("id", 5)
+        .putByte("delta_x", tick++)
+        .putByte("delta_y", 0)
+        .putByte("delta_z", -3)
+        .putByte("delta_rotation", 12)
+        .putByte("delta_look", 0)
+        .toPacket()
+        .toByteArray();
+  }
+
+  @Benchmark
+  public byte[] fieldMapMessage() {
+    Map<String, Object> values = new HashMap<>();
+    putLegacy(MESSAGE, values, "id", DataType.BYTE, (byte) 0);
+    putLegacy(MESSAGE, values, "message", DataType.STRING, "&eRed team captured the flag!");
+    return encodeLegacy(new Packet(MESSAGE, values));
+  }
+
+  @Benchmark
+  public byte[] compiledMessage() {
+    return new PacketBuilder(MESSAGE)
+        .putByte("id", 0)
+        .putString("message", "&eRed team captured the flag!")
+        .toPacket()
+        .toByteArray();
+  }
+
+  /** The validation and boxing PacketBuilder used to do for each field. */
+  private static void putLegacy(
+      PacketDefinition definition, Map<String, Object> values, String name, DataType type,
+      Object value) {
+    for (PacketField f : definition.getFields()) {
+      if (f.getName().equals(name)) {
+        if (f.getType().equals(type)) {
+          values.put(name, value);
+          return;
+        }
+        throw new IllegalArgumentException("Incorrect data type - expecting " + f.getType());
+      }
+    }
+    throw new IllegalArgumentException("No field named " + name + ".");
+  }
+
+  /** The copy MinecraftProtocolEncoder used to make into a new buffer. */
+  private static byte[] encodeLegacy(Packet packet) {
+    byte[] encoded = packet.toByteArray();
+    byte[] buffer = new byte[packet.getLength()];
+    System.arraycopy(encoded, 0, buffer, 0, encoded.length);
+    return buffer;
+  }
+}
@@ -0,0 +1,197 @@
+package org.opencraft.server.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.UnparsedPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes a round as a version 1 replay and as a version 2 replay, prints the size of each, and
+ * measures how long it takes to get to a time in the round: reading every chunk from the start
+ * for version 1, and reading the keyframe before the time and the chunks after it for version 2.
+ *
+ * <p>The round is a recorded replay if one is given with <code>-p replay=path</code>, and its
+ * keyframes are the level packets at its start. Otherwise it is a generated ten minute round with
+ * 24 players moving every tick and a 160 KB level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayFileBenchmark {
+
+  private static final int GENERATED_LENGTH = 10 * 60 * 1000;
+  private static final int PLAYERS = 24;
+
+  @Param({""})
+  public String replay;
+
+  /** How far into the round to seek, as a fraction of its length. */
+  @Param({"0.25", "0.5", "0.95"})
+  public double position;
+
+  private File version1;
+  private File version2;
+  private int target;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    List<ReplayFile.ReplayChunk> chunks =
+        replay.isEmpty() ? generateRound() : readRound(new File(replay));
+    List<Packet> snapshot = new ArrayList<>();
+    for (ReplayFile.ReplayChunk chunk : chunks) {
+      if (chunk.deltaMillis() >= 1000) break;
+      snapshot.addAll(chunk.packets());
+    }
+    int length = chunks.get(chunks.size() - 1).deltaMillis();
+    target = (int) (length * position);
+
+    version1 = Files.createTempFile("replay", ".v1.ltr").toFile();
+    version2 = Files.createTempFile("replay", ".v2.ltr").toFile();
+    writeVersion1(version1, chunks);
+    writeVersion2(version2, chunks, snapshot);
+    System.out.printf("%n%d chunks, %d s: version 1 is %d bytes, version 2 is %d bytes%n",
+        chunks.size(), length / 1000, version1.length(), version2.length());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    version1.delete();
+    version2.delete();
+  }
+
+  @Benchmark
+  public int seekVersion1() throws IOException {
+    return seek(version1);
+  }
+
+  @Benchmark
+  public int seekVersion2() throws IOException {
+    return seek(version2);
+  }
+
+  /** Opens a replay and reads what a viewer would be sent to catch up to the target. */
+  private int seek(File file) throws IOException {
+    try (ReplayFile replayFile = new ReplayFile(file)) {
+      replayFile.setReading(true);
+      replayFile.open();
+      replayFile.readHeader();
+      int packets = replayFile.seek(target).size();
+      while (replayFile.isNextChunkAvailable()) {
+        ReplayFile.ReplayChunk chunk = replayFile.readNextChunk();
+        if (chunk.deltaMillis() >= target) break;
+        packets += chunk.packets().size();
+      }
+      return packets;
+    }
+  }
+
+  private static List<ReplayFile.ReplayChunk> readRound(File file) throws IOException {
+    List<ReplayFile.ReplayChunk> chunks = new ArrayList<>();
+    try (ReplayFile replayFile = new ReplayFile(file)) {
+      replayFile.setReading(true);
+      replayFile.open();
+      replayFile.readHeader();
+      while (replayFile.isNextChunkAvailable()) {
+        chunks.add(replayFile.readNextChunk());
+      }
+    }
+    return chunks;
+  }
+
+  private static List<ReplayFile.ReplayChunk> generateRound() {
+    Random random = new Random(42);
+    List<ReplayFile.ReplayChunk> chunks = new ArrayList<>();
+    List<Packet> level = new ArrayList<>();
+    for (int i = 0; i < 160; i++) {
+      // level_block packets hold deflated data, which doesn't compress any further
+      byte[] data = new byte[1028];
+      random.nextBytes(data);
+      data[0] = 3;
+      level.add(new UnparsedPacket(data));
+    }
+    chunks.add(new ReplayFile.ReplayChunk(0, level));
+    for (int delta = 50; delta <= GENERATED_LENGTH; delta += 50) {
+      List<Packet> packets = new ArrayList<>(PLAYERS + 1);
+      for (int id = 0; id < PLAYERS; id++) {
+        // position_orientation_update with small moves and turns
+        packets.add(new UnparsedPacket(new byte[] {
+            9, (byte) id, (byte) (random.nextInt(9) - 4), 0, (byte) (random.nextInt(9) - 4),
+            (byte) random.nextInt(8), 0}));
+      }
+      if (random.nextInt(10) == 0) {
+        packets.add(new UnparsedPacket(new byte[] {
+            6, 0, (byte) random.nextInt(128), 0, 32, 0, (byte) random.nextInt(128),
+            (byte) random.nextInt(50)}));
+      }
+      chunks.add(new ReplayFile.ReplayChunk(delta, packets));
+    }
+    return chunks;
+  }
+
+  /** Writes the format ReplayFile used to write. */
+  private static void writeVersion1(File file, List<ReplayFile.ReplayChunk> chunks)
+      throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), ReplayFile.BUFFER_SIZE))) {
+      out.writeInt(ReplayFile.MAGIC);
+      out.writeInt(1);
+      byte[] map = "benchmark".getBytes(StandardCharsets.US_ASCII);
+      out.writeByte(map.length);
+      out.write(map);
+      out.writeLong(0L);
+      out.writeLong(0L);
+      for (ReplayFile.ReplayChunk chunk : chunks) {
+        out.writeInt(chunk.deltaMillis());
+        out.writeShort(chunk.packets().size());
+        for (Packet packet : chunk.packets()) {
+          byte[] data = packet.toByteArray();
+          out.writeInt(data.length);
+          out.write(data);
+        }
+      }
+    }
+  }
+
+  private static void writeVersion2(
+      File file, List<ReplayFile.ReplayChunk> chunks, List<Packet> snapshot) throws IOException {
+    try (ReplayFile replayFile = new ReplayFile(file)) {
+      replayFile.setReading(false);
+      replayFile.open();
+      replayFile.setMap("benchmark");
+      replayFile.writeHeader();
+      long nextKeyframe = ReplayManager.KEYFRAME_INTERVAL;
+      for (ReplayFile.ReplayChunk chunk : chunks) {
+        if (chunk.deltaMillis() >= nextKeyframe) {
+          replayFile.writeKeyframe(chunk.deltaMillis(), snapshot);
+          nextKeyframe += ReplayManager.KEYFRAME_INTERVAL;
+        }
+        replayFile.writeChunk(chunk);
+      }
+    }
+  }
+}
@@ -71,6 +71,8 @@ public class Configuration {
   private String gameMode;
 
   private String statsPostURL;
+  /** The most players whose stats are posted in one request. */
+  private int statsPostBatchSize;
   private String discordURL;
   private String discordToken;
   private String welcomeMessage;
@@ -90,12 +92,13 @@ public class Configuration {
     spongeRadius = Integer.valueOf(props.getProperty("sponge_radius", "2"));
     gameMode = props.getProperty("game_mode", CTFGameMode.class.getName());
     statsPostURL = props.getProperty("statsPostURL");
+    statsPostBatchSize = Integer.valueOf(props.getProperty("statsPostBatchSize", "1"));
     discordURL = props.getProperty("discordURL");
     discordToken = props.getProperty("discordToken");
     welcomeMessage = props.getProperty("welcomeMessage");
     Constants.PORT = Integer.valueOf(props.getProperty("port"));
     Constants.WEB_PORT = Integer.valueOf(props.getProperty("webPort"));
-    GameSettings.add("MaxPlayers", GameSettings.TYPE_INT, Integer.valueOf(props.getProperty("max_players", "16")));
+    GameSettings.MAX_PLAYERS.setDefault(Integer.parseInt(props.getProperty("max_players", "16")));
   }
 
   /**
@@ -141,6 +144,10 @@ public class Configuration {
     return statsPostURL;
   }
 
+  public int getStatsPostBatchSize() {
+    return statsPostBatchSize;
+  }
+
   public String getDiscordURL() {
     return discordURL;
   }
@@ -10,6 +10,7 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
+import org.opencraft.server.task.GameLoop;
 import net.dv8tion.jda.api.JDABuilder;
 
 public class DiscordBot implements Runnable {
@@ -18,6 +19,9 @@ public class DiscordBot implements Runnable {
   private static final long SERVER_ID = 187774973543317504L;
   private static final long CHANNEL_ID = 603405367031889940L;
 
+  /** The channel topic last set, only used by the game loop. */
+  private String topic;
+
   public static String sanitizeDiscordInput(String input) {
     return input.replaceAll("[^\\p{ASCII}]", "");
   }
@@ -38,20 +42,23 @@ public class DiscordBot implements Runnable {
             String nickname = event.getMember().getEffectiveName();
             System.out.println("[Discord] " + nickname + ": " + message);
 
-            switch (message) {
-              case ".who", ".players" -> {
-                List<Player> players = World.getWorld().getPlayerList().getPlayers();
-                StringBuilder messageBuilder = new StringBuilder();
-                messageBuilder.append("Players:");
-                for (Player p : players) {
-                  messageBuilder.append(" ").append(p.getName());
+            // the world belongs to the game loop
+            GameLoop.getGameLoop().submit(() -> {
+              switch (message) {
+                case ".who", ".players" -> {
+                  List<Player> players = World.getWorld().getPlayerList().getPlayers();
+                  StringBuilder messageBuilder = new StringBuilder();
+                  messageBuilder.append("Players:");
+                  for (Player p : players) {
+                    messageBuilder.append(" ").append(p.getName());
+                  }
+                  event.getChannel().sendMessage(messageBuilder.toString()).queue();
                 }
-                event.getChannel().sendMessage(messageBuilder.toString()).queue();
+                default -> World.getWorld()
+                    .broadcast("&5[Discord] &f" + sanitizeDiscordInput(nickname) + ": "
+                        + sanitizeDiscordInput(message));
               }
-              default -> World.getWorld()
-                  .broadcast("&5[Discord] &f" + sanitizeDiscordInput(nickname) + ": "
-                      + sanitizeDiscordInput(message));
-            }
+            });
           }
         })
         .build();
@@ -61,21 +68,8 @@ public class DiscordBot implements Runnable {
       ex.printStackTrace();
     }
 
-    String topic = null;
     while (true) {
-      String previousTopic = topic;
-      int count = World.getWorld().getPlayerList().size();
-      if (count == 0) {
-        topic = "";
-      } else {
-        String players = World.getWorld().getPlayerList().getPlayers().stream()
-            .map(Player::getName).collect(
-                Collectors.joining(", "));
-        topic = "Online Players (%d): %s".formatted(count, players);
-      }
-      if (!topic.equals(previousTopic)) {
-        api.getChannelById(TextChannel.class, CHANNEL_ID).getManager().setTopic(topic).queue();
-      }
+      GameLoop.getGameLoop().submit(() -> updateTopic(api));
 
       try {
         Thread.sleep(60 * 1000);
@@ -83,4 +77,21 @@ public class DiscordBot implements Runnable {
       }
     }
   }
+
+  /* run on the game loop, which owns the player list */
+  private void updateTopic(JDA api) {
+    String previousTopic = topic;
+    int count = World.getWorld().getPlayerList().size();
+    if (count == 0) {
+      topic = "";
+    } else {
+      String players = World.getWorld().getPlayerList().getPlayers().stream()
+          .map(Player::getName).collect(
+              Collectors.joining(", "));
+      topic = "Online Players (%d): %s".formatted(count, players);
+    }
+    if (!topic.equals(previousTopic)) {
+      api.getChannelById(TextChannel.class, CHANNEL_ID).getManager().setTopic(topic).queue();
+    }
+  }
 }
@@ -38,20 +38,28 @@ package org.opencraft.server;
 
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.opencraft.server.game.impl.GameSettings;
+import org.opencraft.server.log.Logger;
+import org.opencraft.server.log.Timestamps;
 import org.opencraft.server.model.MapController;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.Store;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.SessionHandler;
+import org.opencraft.server.persistence.SavedGameManager;
+import org.opencraft.server.persistence.StatsUploader;
+import org.opencraft.server.replay.ReplayCatalog;
 import org.opencraft.server.replay.ReplayCleanupTask;
 import org.opencraft.server.replay.ReplayFile;
+import org.opencraft.server.task.GameLoop;
 import org.opencraft.server.task.TaskQueue;
 import org.opencraft.server.task.impl.CTFProcessTask;
 import org.opencraft.server.task.impl.ConsoleTask;
+import org.opencraft.server.task.impl.FlushTask;
 import org.opencraft.server.task.impl.HeartbeatTask;
 import org.opencraft.server.task.impl.ItemDropTask;
 import org.opencraft.server.task.impl.MessageTask;
 import org.opencraft.server.task.impl.PingTask;
+import org.opencraft.server.task.impl.SimulationTask;
 import org.opencraft.server.task.impl.UpdateTask;
 
 import java.io.BufferedReader;
@@ -60,19 +68,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
@@ -84,15 +86,12 @@ import java.util.Random;
 public final class Server {
 
   public static Random random = new Random();
-  public static String log = "";
   public static ArrayList<String> rulesText = new ArrayList<String>(20);
   private static Store store;
   private static ArrayList<String> ipBans = new ArrayList<String>(128);
   private static ArrayList<String> mutes = new ArrayList<String>(128);
   private static ArrayList<String> whitelist = new ArrayList<String>(128);
   private static Server instance;
-
-  private static LinkedList<ConsoleMessage> messages = new LinkedList<ConsoleMessage>();
   /** The socket acceptor. */
   private final NioSocketAcceptor acceptor = new NioSocketAcceptor();
 
@@ -111,22 +110,29 @@ public final class Server {
     fill(rulesText, "rules.txt");
     fill(whitelist, "whitelist.txt");
     ReplayFile.checkReplayDirectory();
+    ReplayCatalog.getCatalog().load();
 
     GameSettings.load();
+    SavedGameManager.getSavedGameManager();
+    // so stats left in the outbox by the last run are posted now, not after the next save
+    StatsUploader.getStatsUploader();
 
     MapController.create();
     log("Creating world...");
     World.getWorld();
     acceptor.setHandler(new SessionHandler());
     acceptor.getSessionConfig().setTcpNoDelay(true);
-    TaskQueue.getTaskQueue().schedule(new UpdateTask());
-    TaskQueue.getTaskQueue().schedule(new CTFProcessTask());
+    GameLoop.getGameLoop().schedule(new UpdateTask());
+    GameLoop.getGameLoop().schedule(new FlushTask());
+    GameLoop.getGameLoop().schedule(SimulationTask.getSimulationTask());
+    GameLoop.getGameLoop().schedule(new CTFProcessTask());
+    GameLoop.getGameLoop().schedule(new ItemDropTask());
+    GameLoop.getGameLoop().schedule(new MessageTask());
+    GameLoop.getGameLoop().start();
     TaskQueue.getTaskQueue().schedule(new HeartbeatTask());
-    TaskQueue.getTaskQueue().schedule(new MessageTask());
     TaskQueue.getTaskQueue().schedule(new PingTask());
     TaskQueue.getTaskQueue().schedule(new ReplayCleanupTask());
     new Thread(new ConsoleTask()).start();
-    new Thread(new ItemDropTask()).start();
     //if (!Configuration.getConfiguration().isTest()) {
       new Thread(new DiscordBot()).start();
     //}
@@ -193,39 +199,25 @@ public final class Server {
   }
 
   public static String date() {
-    DateFormat dfm = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    return dfm.format(new Date());
+    return Timestamps.now();
   }
 
   public static void log(String line) {
-    String text = "[" + date() + "] " + line;
-    System.out.println(text);
-    log += text + "\n";
-    messages.addFirst(new ConsoleMessage(new Date(), text));
-    if (messages.size() == 50) {
-      messages.removeLast();
-    }
+    Logger.getLogger().log(line);
   }
 
+  /**
+   * Logs a debug line. Building the line costs something even when debug is off, so call sites
+   * which build one should check {@link #isDebug()} first.
+   *
+   * @param line The line.
+   */
   public static void d(String line) {
-    if (GameSettings.getBoolean("Debug")) {
-      String text = "[" + date() + " DEBUG] " + line;
-      System.out.println(text);
-      log += text + "\n";
-    }
+    Logger.getLogger().debug(line);
   }
 
-  public static void saveLog() {
-    try {
-      PrintWriter w = new PrintWriter(new FileWriter(new File("./server.log"), true));
-      w.append(log);
-      w.flush();
-      w.close();
-      log = "";
-    } catch (IOException ex) {
-      System.err.println("Error saving logs:");
-      ex.printStackTrace();
-    }
+  public static boolean isDebug() {
+    return Logger.isDebug();
   }
 
   public static Store getStore() {
@@ -403,12 +395,7 @@ public final class Server {
   }
 
   public static String getConsoleMessages(long minTime) {
-    StringBuilder text = new StringBuilder();
-    for (ConsoleMessage message : messages) {
-      if (message.date.getTime() < minTime) break;
-      text.append(message.message).append("\n");
-    }
-    return text.toString();
+    return Logger.getLogger().getConsoleMessages(minTime);
   }
 
   /**
@@ -428,14 +415,4 @@ public final class Server {
   public void createStore() {
     store = new Store();
   }
-
-  public static class ConsoleMessage {
-    public Date date;
-    public String message;
-
-    public ConsoleMessage(Date d, String m) {
-      date = d;
-      message = m;
-    }
-  }
 }
@@ -52,6 +52,7 @@ import org.opencraft.server.model.Player;
 import org.opencraft.server.model.TexturePackHandler;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.ConsoleActionSender;
+import org.opencraft.server.task.GameLoop;
 
 import java.io.File;
 import java.io.IOException;
@@ -227,13 +228,15 @@ public class WebServer {
                   partsList.add(s);
                 }
               }
-              parts = partsList.toArray(new String[0]);
-              c.execute(consolePlayer, new CommandParameters(parts));
+              final CommandParameters commandParams =
+                  new CommandParameters(partsList.toArray(new String[0]));
+              GameLoop.getGameLoop().submit(() -> c.execute(consolePlayer, commandParams));
             } else {
               System.out.println("Invalid command.");
             }
           } else {
-            World.getWorld().broadcast("(Console) &e" + message);
+            GameLoop.getGameLoop()
+                .submit(() -> World.getWorld().broadcast("(Console) &e" + message));
             System.out.println(message);
           }
           exchange.sendResponseHeaders(200, 0);
@@ -292,18 +295,18 @@ public class WebServer {
 
           long elapsedTime = System.currentTimeMillis() - World.getWorld().getGameMode().gameStartTime;
 
-          String timerSetting = null;
+          GameSettings.IntSetting timerSetting = null;
           if (CTFGameMode.getMode() == Level.TDM) {
-            timerSetting = "TDMTimeLimit";
+            timerSetting = GameSettings.TDM_TIME_LIMIT;
           } else {
-            timerSetting = "TimeLimit";
+            timerSetting = GameSettings.TIME_LIMIT;
           }
 
-          long remaining = Math.max((GameSettings.getInt(timerSetting) * 60 * 1000 - elapsedTime) / 1000, 0);
+          long remaining = Math.max((timerSetting.get() * 60 * 1000 - elapsedTime) / 1000, 0);
           if (World.getWorld().getGameMode().voting) {
             remaining = 0;
           } else if (!World.getWorld().getGameMode().tournamentGameStarted) {
-            remaining = GameSettings.getInt(timerSetting) * 60;
+            remaining = timerSetting.get() * 60;
           }
 
           String timeRemaining = prettyTime((int) remaining);
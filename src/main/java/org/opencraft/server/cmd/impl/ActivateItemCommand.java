@@ -54,7 +54,7 @@ public class ActivateItemCommand implements Command {
 
   @Override
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("EnableStore"))
+    if (!GameSettings.ENABLE_STORE.get())
       player.getActionSender().sendChatMessage("- &eThe store is disabled");
     else if (player.team == -1)
       player.getActionSender().sendChatMessage("- &eYou must join a team to do that!");
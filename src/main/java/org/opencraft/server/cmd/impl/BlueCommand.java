@@ -55,7 +55,7 @@ public class BlueCommand implements Command {
   }
 
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       player.joinTeam("blue");
     } else {
       player.getActionSender().sendChatMessage("Tournament in progress, please come back later. If you are participating an OP will place you on a team.");
@@ -59,7 +59,7 @@ public class CoinFlipCommand implements Command {
   @Override
   public void execute(Player player, CommandParameters params) {
     // In tournament mode, don't allow regular players to execute the command
-    if (GameSettings.getBoolean("Tournament") && !player.isOp() && !player.isVIP()) {
+    if (GameSettings.TOURNAMENT.get() && !player.isOp() && !player.isVIP()) {
         player.getActionSender().sendChatMessage("You must be OP or VIP to do that!");
         return;
     }
@@ -40,7 +40,7 @@ import org.opencraft.server.cmd.Command;
 import org.opencraft.server.cmd.CommandParameters;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
-import org.opencraft.server.task.TaskQueue;
+import org.opencraft.server.task.GameLoop;
 import org.opencraft.server.task.impl.CreeperTask;
 
 public class CreeperCommand implements Command {
@@ -63,6 +63,6 @@ public class CreeperCommand implements Command {
     w.broadcast("- " + player.parseName() + " &eisn't feeling so good...");
     w.broadcast("- &esssssssSSSSSSSSS");
 
-    TaskQueue.getTaskQueue().schedule(new CreeperTask(player, w.getLevel()));
+    GameLoop.getGameLoop().schedule(new CreeperTask(player, w.getLevel()));
   }
 }
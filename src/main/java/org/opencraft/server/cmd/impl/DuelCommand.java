@@ -66,7 +66,7 @@ public class DuelCommand implements Command {
 
   @Override
   public void execute(final Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       if (params.getArgumentCount() == 0) player.getActionSender().sendChatMessage("/duel [name]");
       else {
         Player p = Player.getPlayer(params.getStringArgument(0), player.getActionSender());
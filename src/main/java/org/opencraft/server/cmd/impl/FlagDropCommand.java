@@ -57,7 +57,7 @@ public class FlagDropCommand implements Command {
   }
 
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("FlagDrops")) {
+    if (!GameSettings.FLAG_DROPS.get()) {
       player.getActionSender().sendChatMessage("Flag dropping is disabled.");
       return;
     }
@@ -57,7 +57,7 @@ public class JoinCommand implements Command {
 
   @Override
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       if (params.getArgumentCount() == 1) player.joinTeam(params.getStringArgument(0));
       else player.autoJoinTeam();
     } else {
@@ -40,6 +40,7 @@ import org.opencraft.server.cmd.Command;
 import org.opencraft.server.cmd.CommandParameters;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
+import org.opencraft.server.net.Recipients;
 
 public class MeCommand implements Command {
 
@@ -68,10 +69,8 @@ public class MeCommand implements Command {
       }
 
       if (params.getArgumentCount() > 0 && !player.muted)
-        for (Player t : World.getWorld().getPlayerList().getPlayers()) {
-          if (!t.isIgnored(player))
-            t.getActionSender().sendChatMessage("* " + player.getColoredName() + " &f" + text);
-        }
+        World.getWorld().broadcast(Recipients.PLAYERS.and(Recipients.notIgnoring(player)),
+            "* " + player.getColoredName() + " &f" + text);
     } else {
       player.getActionSender().sendChatMessage("Wrong number of arguments");
       player.getActionSender().sendChatMessage("/me <message>");
@@ -43,8 +43,11 @@ import org.opencraft.server.model.Level;
 import org.opencraft.server.model.MapController;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
+import org.opencraft.server.task.GameLoop;
 import tf.jacobsc.ctf.server.StatsKt;
 
+import java.util.concurrent.CompletableFuture;
+
 public class NewGameCommand implements Command {
   private static final NewGameCommand INSTANCE = new NewGameCommand();
 
@@ -67,25 +70,31 @@ public class NewGameCommand implements Command {
       } catch (Exception ex) {
         mapName = null;
       }
-      Level newMap;
-      if (mapName == null) {
-        newMap = MapController.randomLevel();
-      } else {
-        newMap = MapController.getLevel(mapName);
-        if (newMap == null) {
-          player.getActionSender().sendChatMessage("- &eMap not found.");
-          return;
-        }
-      }
-      for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-        if (p.team != -1) {
-          p.incIntAttribute("games");
-        }
+      if (mapName != null && !MapController.exists(mapName)) {
+        player.getActionSender().sendChatMessage("- &eMap not found.");
+        return;
       }
-      StatsKt.savePlayerStats(World.getWorld());
-      World.getWorld().getGameMode().startGame(newMap);
+      // loaded in the background, so the game loop carries on while it is read
+      CompletableFuture<Level> newMap = (mapName == null
+          ? MapController.randomLevelAsync()
+          : MapController.getLevelAsync(mapName));
+      newMap.thenAccept(level -> GameLoop.getGameLoop().submit(() -> startGame(player, level)));
     } else {
       player.getActionSender().sendChatMessage("You must be OP or VIP to do that!");
     }
   }
+
+  private void startGame(Player player, Level newMap) {
+    if (newMap == null) {
+      player.getActionSender().sendChatMessage("- &eMap not found.");
+      return;
+    }
+    for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+      if (p.team != -1) {
+        p.incIntAttribute("games");
+      }
+    }
+    StatsKt.savePlayerStats(World.getWorld());
+    World.getWorld().getGameMode().startGame(newMap);
+  }
 }
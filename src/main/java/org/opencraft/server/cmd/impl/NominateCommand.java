@@ -58,13 +58,13 @@ public class NominateCommand implements Command {
 
   @Override
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       if (params.getArgumentCount() == 1) {
         String mapName = params.getStringArgument(0);
 
         if (!player.hasNominated
             && World.getWorld().getGameMode().rtvVotes > 0
-            && MapController.getLevel(mapName) != null
+            && MapController.exists(mapName)
             && !World.getWorld().getGameMode().nominatedMaps.contains(mapName)
             && !mapName.equals(World.getWorld().getGameMode().currentMap)
             && !mapName.equals(World.getWorld().getGameMode().previousMap)) {
@@ -79,9 +79,9 @@ public class QuoteCommand implements Command {
     if (player.muted) return;
 
     if (params.getArgumentCount() == 0) {
-      if (GameSettings.getBoolean("Tournament")) return;
+      if (GameSettings.TOURNAMENT.get()) return;
       long currentTime = System.currentTimeMillis();
-      long quoteCooldown = GameSettings.getInt("QuoteCooldown") * 1000L;
+      long quoteCooldown = GameSettings.QUOTE_COOLDOWN.get() * 1000L;
       if ((currentTime - player.lastQuoteTime) < quoteCooldown) {
         player.getActionSender().sendChatMessage("- &3You must wait " + Duration.ofMillis(quoteCooldown - (currentTime - player.lastQuoteTime)).getSeconds() + " seconds before using /quote again.");
         return;
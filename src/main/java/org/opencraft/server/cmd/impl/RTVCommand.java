@@ -57,7 +57,7 @@ public class RTVCommand implements Command {
 
   @Override
   public void execute(Player player, CommandParameters params) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       int totalAFK = 0;
       for (Player pl : World.getWorld().getPlayerList().getPlayers()) {
         if (pl.AFK) totalAFK++;
@@ -9,9 +9,11 @@ import org.opencraft.server.cmd.Command;
 import org.opencraft.server.cmd.CommandParameters;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.net.MinecraftSession;
+import org.opencraft.server.replay.ReplayCatalog;
 import org.opencraft.server.replay.ReplayFile;
 import org.opencraft.server.replay.ReplayManager;
-import org.opencraft.server.replay.ReplayThread;
+import org.opencraft.server.replay.ReplayScheduler;
+import org.opencraft.server.replay.ReplayViewer;
 import org.opencraft.server.util.Pair;
 
 import static org.opencraft.server.replay.ReplayFile.adjust;
@@ -39,6 +41,9 @@ public class ReplayCommand implements Command {
       "list", MODE_VIEW_IDS
   );
 
+  /** The most replays listed for a map. */
+  private static final int MAX_LISTED = 15;
+
   private final byte mode;
   private final boolean spectatorModeRequired;
 
@@ -194,6 +199,74 @@ public class ReplayCommand implements Command {
     return result;
   }
 
+  /*
+   * Handles the commands which move through the replay being watched. Returns false if the
+   * parameter isn't one of them.
+   */
+  private static boolean handleControl(
+      Player player, ReplayViewer viewer, String control, CommandParameters params
+  ) {
+    if (!control.equals("seek") && !control.equals("ff") && !control.equals("speed")) {
+      return false;
+    }
+    if (params.getArgumentCount() != 2) {
+      player.sendMessage("- &eUsage: &f/replay seek <m:ss>&e, &f/replay ff <seconds>");
+      player.sendMessage("   &eor &f/replay speed <" + ReplayViewer.MIN_SPEED + "-" +
+          ReplayViewer.MAX_SPEED + ">");
+
+      return true;
+    }
+    String argument = params.getStringArgument(1);
+    if (control.equals("speed")) {
+      double speed;
+      try {
+        speed = Double.parseDouble(argument.endsWith("x") ?
+            argument.substring(0, argument.length() - 1) : argument);
+      } catch (NumberFormatException e) {
+        player.sendMessage("- &e\"" + argument + "\" is not a speed");
+
+        return true;
+      }
+      if (!(speed >= ReplayViewer.MIN_SPEED && speed <= ReplayViewer.MAX_SPEED)) {
+        player.sendMessage("- &eThe speed must be between " + ReplayViewer.MIN_SPEED + " and " +
+            ReplayViewer.MAX_SPEED);
+
+        return true;
+      }
+      viewer.setSpeed(speed);
+      player.sendMessage("- &ePlaying at " + speed + "x");
+
+      return true;
+    }
+    int millis = parseTime(player, argument);
+    if (millis == BAD) return true;
+
+    if (control.equals("seek")) {
+      viewer.seek(millis);
+    } else {
+      viewer.fastForward(millis);
+    }
+
+    return true;
+  }
+
+  /*
+   * Parses a time given as m:ss or as a number of seconds.
+   */
+  private static int parseTime(Player player, String parameter) {
+    String[] parts = parameter.split(":");
+    if (parts.length > 2) {
+      player.sendMessage("- &eBad time format: " + parameter);
+
+      return BAD;
+    }
+    int seconds = nonNegativeInteger(player, parts[parts.length - 1]);
+    int minutes = (parts.length == 2 ? nonNegativeInteger(player, parts[0]) : 0);
+    if (seconds == BAD || minutes == BAD) return BAD;
+
+    return (minutes * 60 + seconds) * 1000;
+  }
+
   @Override
   public void execute(Player player, CommandParameters params) {
     if (player.team != -1 && spectatorModeRequired) {
@@ -210,6 +283,11 @@ public class ReplayCommand implements Command {
 
         return;
       }
+      ReplayViewer viewer = player.replayViewer;
+      if (typedReplayAndHasParameter && viewer != null &&
+          handleControl(player, viewer, firstParameter, params)) {
+        return;
+      }
       player.usedCommandDuringReplay = true;
 
       return;
@@ -228,6 +306,17 @@ public class ReplayCommand implements Command {
         subcommand = firstParameter + " ";
       }
     }
+    if (mode == MODE_VIEW_IDS && params.getArgumentCount() > offset &&
+        params.getStringArgument(offset).equalsIgnoreCase("map")) {
+      if (params.getArgumentCount() != offset + 2) {
+        player.sendMessage("- &eUsage: &f/replays map <name>");
+
+        return;
+      }
+      listByMap(player, params.getStringArgument(offset + 1));
+
+      return;
+    }
     if (mode == MODE_VIEW_IDS && (firstParameter == null || firstParameter.contains("/"))) {
       newSyntax = true;
     }
@@ -282,39 +371,38 @@ public class ReplayCommand implements Command {
         }
       }
 
-      (new ReplayThread(player, day, month, year, id, onlyViewMetadata)).start();
+      ReplayScheduler.getScheduler().watch(player, day, month, year, id, onlyViewMetadata);
     } else if (mode == MODE_MARK_IMPORTANT) {
       if (!player.isOp()) {
         player.sendMessage("- &eYou must be OP to do that!");
 
         return;
       }
-      Pair<String, String> filenames = ReplayFile.getFilenames(day, month, year, id);
-      String generalFilename = filenames.getFirst();
-      File important = new File(filenames.getSecond());
+      ReplayCatalog.Entry entry = ReplayCatalog.getCatalog().get(day, month, year, id);
+      if (entry == null) {
+        player.sendMessage("- &eThe specified replay does not exist");
 
-      if (important.exists()) {
+        return;
+      }
+      if (entry.important()) {
         player.sendMessage("- &eThis replay is already marked as important");
 
         return;
       }
+      Pair<String, String> filenames = ReplayFile.getFilenames(day, month, year, id);
+      String generalFilename = filenames.getFirst();
       if (ReplayManager.getInstance().isBusy(generalFilename)) {
         player.sendMessage("- &eThe server still has not finished writing to this replay");
         player.sendMessage("- &ePlease try again after this game");
 
         return;
       }
-      File replayFile = new File(generalFilename);
-      if (!replayFile.exists()) {
-        player.sendMessage("- &eThe specified replay does not exist");
-
-        return;
-      }
-      if (!replayFile.renameTo(important)) {
+      if (!new File(generalFilename).renameTo(new File(filenames.getSecond()))) {
         player.sendMessage("- &eFailed to mark this replay as important");
 
         return;
       }
+      ReplayCatalog.getCatalog().setImportant(entry);
 
       player.sendMessage("- &eThis replay is now safe from automatic cleanup");
     } else { // mode == MODE_VIEW_IDS
@@ -325,4 +413,23 @@ public class ReplayCommand implements Command {
       player.sendMessage("- &eAvailable IDs: " + answer);
     }
   }
+
+  private static void listByMap(Player player, String map) {
+    List<ReplayCatalog.Entry> entries = ReplayCatalog.getCatalog().findByMap(map);
+    entries.removeIf(entry -> ReplayManager.getInstance().isBusy(entry.getFilename()));
+    if (entries.isEmpty()) {
+      player.sendMessage("- &eNo replays were recorded on " + map);
+
+      return;
+    }
+    player.sendMessage("- &eReplays on " + map + " (mm/dd/yyyy id), newest first:");
+    for (ReplayCatalog.Entry entry : entries.subList(0, Math.min(entries.size(), MAX_LISTED))) {
+      String duration = (entry.durationMillis() < 0 ? "" :
+          " &e(" + ReplayViewer.formatTime(entry.durationMillis()) + ")");
+      player.sendMessage("   &f" + entry.getDate() + " " + entry.id() + duration);
+    }
+    if (entries.size() > MAX_LISTED) {
+      player.sendMessage("- &eand " + (entries.size() - MAX_LISTED) + " older");
+    }
+  }
 }
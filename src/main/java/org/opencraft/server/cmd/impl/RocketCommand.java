@@ -36,17 +36,11 @@
  */
 package org.opencraft.server.cmd.impl;
 
-import org.opencraft.server.Constants;
-import org.opencraft.server.Server;
 import org.opencraft.server.cmd.Command;
 import org.opencraft.server.cmd.CommandParameters;
-import org.opencraft.server.game.impl.CTFGameMode;
-import org.opencraft.server.game.impl.GameSettings;
-import org.opencraft.server.model.BlockConstants;
+import org.opencraft.server.game.impl.RocketProjectile;
 import org.opencraft.server.model.Player;
-import org.opencraft.server.model.Position;
-import org.opencraft.server.model.Rotation;
-import org.opencraft.server.model.World;
+import org.opencraft.server.task.impl.SimulationTask;
 
 public class RocketCommand implements Command {
 
@@ -63,92 +57,7 @@ public class RocketCommand implements Command {
 
   public void execute(final Player player, CommandParameters params) {
     player.rocketsShot++;
-
-    Thread rocketThread;
-    rocketThread =
-        new Thread(
-            () -> {
-              player.rocketTime = System.currentTimeMillis();
-              Position pos = player.getPosition().toBlockPos();
-              player.rocketStartPosition = pos;
-              Rotation r = player.getRotation();
-
-              double heading =
-                  Math.toRadians(
-                      (int) (Server.getUnsigned(r.getRotation()) * ((float) 360 / 256) - 90));
-              double pitch =
-                  Math.toRadians(
-                      (int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
-
-              double px = pos.getX();
-              double py = pos.getY();
-              double pz = pos.getZ();
-
-              double vx = Math.cos(heading) * Math.cos(pitch);
-              double vy = Math.sin(heading) * Math.cos(pitch);
-              double vz = Math.sin(pitch);
-              double x = px;
-              double y = py;
-              double z = pz;
-              double lastX = px;
-              double lastY = py;
-              double lastZ = pz;
-
-              for (int i = 0; i < 256; i++) {
-                x += vx;
-                y += vy;
-                z += vz;
-                int bx = (int) Math.round(x);
-                int by = (int) Math.round(y);
-                int bz = (int) Math.round(z);
-
-                int block = World.getWorld().getLevel().getBlock(bx, by, bz);
-
-                if (block != BlockConstants.AIR && block != Constants.BLOCK_ROCKET && block != Constants.BLOCK_INVISIBLE) {
-                  ((CTFGameMode)World.getWorld()
-                      .getGameMode())
-                      .explodeTNT(
-                          player,
-                          World.getWorld().getLevel(),
-                          (int) Math.round(lastX),
-                          (int) Math.round(lastY),
-                          (int) Math.round(lastZ),
-                          2,
-                          true,
-                          false,
-                          false,
-                          true,
-                          "rocket");
-                  break;
-                } else {
-                  World.getWorld()
-                      .getLevel()
-                      .setBlock(
-                          (int) Math.round(lastX),
-                          (int) Math.round(lastY),
-                          (int) Math.round(lastZ),
-                          block);
-                  World.getWorld().getLevel().setBlock(bx, by, bz, Constants.BLOCK_ROCKET);
-                }
-
-                lastX = x;
-                lastY = y;
-                lastZ = z;
-                i++;
-                try {
-                  Thread.sleep(25);
-                } catch (InterruptedException ex) {
-                  World.getWorld()
-                      .getLevel()
-                      .setBlock(
-                          (int) Math.round(lastX),
-                          (int) Math.round(lastY),
-                          (int) Math.round(lastZ),
-                          0);
-                  return;
-                }
-              }
-            });
-    rocketThread.start();
+    player.rocketTime = System.currentTimeMillis();
+    SimulationTask.getSimulationTask().launch(new RocketProjectile(player));
   }
 }
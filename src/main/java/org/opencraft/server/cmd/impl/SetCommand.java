@@ -65,7 +65,7 @@ public class SetCommand implements Command {
       if (params.getArgumentCount() == 0) {
         player.getActionSender().sendChatMessage("/set [name] [value]");
         for (GameSetting setting : GameSettings.getSettings().values()) {
-          player.getActionSender().sendChatMessage(setting.name + " = " + setting.value);
+          player.getActionSender().sendChatMessage(setting.name + " = " + setting.getValue());
         }
       } else if (params.getArgumentCount() >= 2) {
         // Reload store items if one was specified
@@ -81,7 +81,7 @@ public class SetCommand implements Command {
             return;
           }
           // Changing the amount/radius should update the item description, but not the price
-          Server.getStore().updateItem("BigTNT", GameSettings.getInt("BigTNTPrice"));
+          Server.getStore().updateItem("BigTNT", GameSettings.BIG_TNT_PRICE.get());
         } else if (params.getStringArgument(0).equals("CreeperPrice")) {
           int price = Integer.parseInt(params.getStringArgument(1));
           Server.getStore().updateItem("Creeper", price);
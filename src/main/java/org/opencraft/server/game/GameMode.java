@@ -53,6 +53,7 @@ import org.opencraft.server.model.MapController;
 import org.opencraft.server.model.MoveLog;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.PlayerUI;
+import org.opencraft.server.model.SpatialIndex;
 import org.opencraft.server.model.World;
 
 import java.io.*;
@@ -64,6 +65,8 @@ import java.util.Map;
 import java.util.NavigableSet;
 import java.util.TreeSet;
 import org.opencraft.server.replay.ReplayManager;
+import org.opencraft.server.task.GameLoop;
+import org.opencraft.server.task.impl.SimulationTask;
 import tf.jacobsc.ctf.server.commands.QualityCommand;
 import tf.jacobsc.ctf.server.commands.StartCommand;
 import tf.jacobsc.ctf.server.commands.TeamsCommand;
@@ -97,7 +100,8 @@ public abstract class GameMode {
   public String currentMap = null;
   public String previousMap = null;
   public Level map;
-  private ArrayList<DropItem> items = new ArrayList<>(8);
+  /** The crates which have been dropped, by block position. */
+  private final SpatialIndex<DropItem> items = new SpatialIndex<>();
 
   public GameMode() {
     registerCommand("accept", DuelAcceptCommand.getCommand());
@@ -236,24 +240,18 @@ public abstract class GameMode {
 
   public void sendAnnouncement(final Player p, final String message) {
     if (p.getSession().isExtensionSupported("MessageTypes")) {
-      new Thread(
-          new Runnable() {
-
-            public void run() {
-              try {
-                p.announcement = message;
-                p.getActionSender().sendChatMessage(message, 100);
-                Thread.sleep(4000);
+      p.announcement = message;
+      p.getActionSender().sendChatMessage(message, 100);
+      SimulationTask.getSimulationTask()
+          .schedule(
+              () -> {
                 if (p.announcement.equals(message)) {
                   // Don't clear if it has since been updated again.
                   p.announcement = "";
                   p.getActionSender().sendChatMessage("", 100);
                 }
-              } catch (InterruptedException ex) {
-              }
-            }
-          })
-          .start();
+              },
+              4000);
     }
   }
 
@@ -262,7 +260,7 @@ public abstract class GameMode {
 
   public void playerConnected(Player player) {
     Server.log(player.getName() + " (" + player.getSession().getIP() + ") joined the game");
-    if (!Configuration.getConfiguration().isTest() && !GameSettings.getBoolean("Tournament")) {
+    if (!Configuration.getConfiguration().isTest() && !GameSettings.TOURNAMENT.get()) {
       WebServer.run(
           new Runnable() {
             @Override
@@ -318,7 +316,7 @@ public abstract class GameMode {
 
   public void playerDisconnected(final Player p) {
     Server.log(p.getName() + " left the game");
-    if (!Configuration.getConfiguration().isTest() && !GameSettings.getBoolean("Tournament")) {
+    if (!Configuration.getConfiguration().isTest() && !GameSettings.TOURNAMENT.get()) {
       WebServer.run(
           new Runnable() {
             @Override
@@ -360,7 +358,7 @@ public abstract class GameMode {
     player.hasNominated = false;
     player.isCreepering = false;
     player.currentRoundPointsEarned = 0;
-    player.setPoints(GameSettings.getInt("InitialPoints"));
+    player.setPoints(GameSettings.INITIAL_POINTS.get());
     player.kills = 0;
     player.highestKillStreak = 0;
     player.mineKills = 0;
@@ -383,90 +381,103 @@ public abstract class GameMode {
     player.captures = 0;
   }
 
+  /**
+   * Switches to a new map and starts a game on it. The switch happens on the game loop, which owns
+   * the world, and players are told they can join a few seconds later. A random map is loaded in
+   * the background first, so the loop doesn't wait for it.
+   *
+   * @param newMap The map, or null for a random one.
+   */
   public void startGame(Level newMap) {
-    final Level oldMap = map;
     if (newMap == null) {
-      map = MapController.randomLevel();
+      MapController.randomLevelAsync()
+          .thenAccept(level -> GameLoop.getGameLoop().execute(() -> switchMap(level)));
     } else {
-      map = newMap;
+      GameLoop.getGameLoop().execute(() -> switchMap(newMap));
     }
+  }
+
+  private void switchMap(Level newMap) {
+    if (newMap == null) {
+      Server.log("Couldn't load a map to switch to");
+      voting = false;
+      return;
+    }
+    final long switchStarted = System.currentTimeMillis();
+    final Level oldMap = map;
+    map = newMap;
     previousMap = currentMap;
     currentMap = map.id;
     if (World.getWorld().getPlayerList().size() > 0) {
       WebServer.sendDiscordMessage("Switching map: " + map.id, null);
     }
     MoveLog.getInstance().logMapChange(map.id);
-    new Thread(
-        new Runnable() {
-
-          public void run() {
-            try {
-              gameStartTime = System.currentTimeMillis();
-              tournamentGameStarted = !GameSettings.getBoolean("Tournament");
-              startCommandExecuted = false;
-              Killstats.killRecords.clear();
-              for (Player player : World.getWorld().getPlayerList().getPlayers()) {
-                ResetStats(player);
-
-                // Remove custom blocks
-                for (CustomBlockDefinition blockDef : oldMap.customBlockDefinitions) {
-                  player.getActionSender().sendRemoveBlockDefinition(blockDef.id);
-                }
+    try {
+      gameStartTime = System.currentTimeMillis();
+      tournamentGameStarted = !GameSettings.TOURNAMENT.get();
+      startCommandExecuted = false;
+      Killstats.killRecords.clear();
+      for (Player player : World.getWorld().getPlayerList().getPlayers()) {
+        ResetStats(player);
+
+        // Remove custom blocks
+        for (CustomBlockDefinition blockDef : oldMap.customBlockDefinitions) {
+          player.getActionSender().sendRemoveBlockDefinition(blockDef.id);
+        }
 
-                // Remove red spawn zone, if applicable
-                if (oldMap.redSpawnZoneMin != null && oldMap.redSpawnZoneMax != null) {
-                  player.getActionSender().sendRemoveSelectionCuboid(0);
-                }
+        // Remove red spawn zone, if applicable
+        if (oldMap.redSpawnZoneMin != null && oldMap.redSpawnZoneMax != null) {
+          player.getActionSender().sendRemoveSelectionCuboid(0);
+        }
 
-                // Remove blue spawn zone, if applicable
-                if (oldMap.blueSpawnZoneMin != null && oldMap.blueSpawnZoneMax != null) {
-                  player.getActionSender().sendRemoveSelectionCuboid(1); // Blue spawn zone
-                }
-              }
-              clearDropItems();
-              World.getWorld().clearMines();
-              World.getWorld().clearSmokeZones();
-              startNewMap = null;
-              blockSpawnX = (map.getSpawnPosition().getX() - 16) / 32;
-              blockSpawnY = (map.getSpawnPosition().getY() - 16) / 32;
-              blockSpawnZ = (map.getSpawnPosition().getZ() - 16) / 32;
-              redPlayers = 0;
-              bluePlayers = 0;
-              redCaptain = null;
-              blueCaptain = null;
-              World.getWorld().setLevel(map);
-              clearKillFeed();
-              voting = false;
-              rtvVotes = 0;
-              rtvYesPlayers.clear();
-              rtvNoPlayers.clear();
-              nominatedMaps.clear();
-              isFirstBlood = true;
-              for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                p.joinTeam("spec", false);
-              }
-              resetGameMode();
-              try {
-                Thread.sleep(5 * 1000);
-              } catch (InterruptedException ex) {
-              }
-              World.getWorld()
-                  .broadcast("- &6Say /join to start playing, or /spec to spectate.");
-              ready = true;
-            } catch (Exception ex) {
-              Server.log(ex);
-              voting = false;
-            }
-          }
-        })
-        .start();
-    Server.saveLog();
+        // Remove blue spawn zone, if applicable
+        if (oldMap.blueSpawnZoneMin != null && oldMap.blueSpawnZoneMax != null) {
+          player.getActionSender().sendRemoveSelectionCuboid(1); // Blue spawn zone
+        }
+      }
+      clearDropItems();
+      World.getWorld().clearMines();
+      World.getWorld().clearSmokeZones();
+      startNewMap = null;
+      blockSpawnX = (map.getSpawnPosition().getX() - 16) / 32;
+      blockSpawnY = (map.getSpawnPosition().getY() - 16) / 32;
+      blockSpawnZ = (map.getSpawnPosition().getZ() - 16) / 32;
+      redPlayers = 0;
+      bluePlayers = 0;
+      redCaptain = null;
+      blueCaptain = null;
+      World.getWorld().setLevel(map);
+      Server.log("Switched to " + map.id + " in "
+          + (System.currentTimeMillis() - switchStarted) + " ms");
+      clearKillFeed();
+      voting = false;
+      rtvVotes = 0;
+      rtvYesPlayers.clear();
+      rtvNoPlayers.clear();
+      nominatedMaps.clear();
+      isFirstBlood = true;
+      for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+        p.joinTeam("spec", false);
+      }
+      resetGameMode();
+      SimulationTask.getSimulationTask()
+          .schedule(
+              () -> {
+                World.getWorld()
+                    .broadcast("- &6Say /join to start playing, or /spec to spectate.");
+                ready = true;
+              },
+              5 * 1000);
+    } catch (Exception ex) {
+      Server.log(ex);
+      voting = false;
+    }
   }
 
   protected void checkFirstBlood(Player attacker, Player defender) {
     if (isFirstBlood && defender.team != -1) {
       World.getWorld().broadcast("- " + attacker.getColoredName() + " &4took the first blood!");
-      attacker.addPoints(GameSettings.getInt("FirstBloodReward"));
+      attacker.addPoints(GameSettings.FIRST_BLOOD_REWARD.get());
       isFirstBlood = false;
     }
   }
@@ -521,7 +532,7 @@ public abstract class GameMode {
   }
 
   public void checkForUnbalance(Player p) {
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       if (redPlayers < bluePlayers - 2 && p.team == 1) {
         World.getWorld()
             .broadcast("- " + p.parseName() + " was moved to red team for game balance.");
@@ -687,7 +698,7 @@ public abstract class GameMode {
       if (player.team != -1 && ++nonSpectators == required) break;
     }
     long elapsedTime = System.currentTimeMillis() - gameStartTime;
-    long timeLimit = GameSettings.getInt("TimeLimit") * 60000L;
+    long timeLimit = GameSettings.TIME_LIMIT.get() * 60000L;
     if (nonSpectators >= required && (timeLimit - elapsedTime >= 5000L)) {
       ReplayManager.getInstance().startRecording();
     }
@@ -698,7 +709,16 @@ public abstract class GameMode {
   }
 
   public void addDropItem(DropItem i) {
-    items.add(i);
+    items.put(i, i.posX, i.posY, i.posZ);
+  }
+
+  /**
+   * Updates the position of a crate after it has moved.
+   *
+   * @param i The crate.
+   */
+  public void moveDropItem(DropItem i) {
+    items.move(i, i.posX, i.posY, i.posZ);
   }
 
   public void removeDropItem(DropItem i) {
@@ -706,7 +726,7 @@ public abstract class GameMode {
   }
 
   public DropItem getDropItem(int x, int y, int z) {
-    for (DropItem i : items) {
+    for (DropItem i : items.query(x, y, z)) {
       if (x == i.posX && y == i.posY && z == i.posZ) {
         return i;
       }
@@ -0,0 +1,48 @@
+package org.opencraft.server.game;
+
+import org.opencraft.server.model.BlockBatch;
+
+/**
+ * Something in flight, such as a rocket or a grenade, which is moved a step at a time by
+ * <code>SimulationTask</code>. Projectiles are only ever stepped by the simulation thread.
+ */
+public abstract class Projectile {
+
+  /** The number of simulation ticks between steps. */
+  private final int period;
+
+  /** The ticks left until the next step. */
+  private int wait;
+
+  /**
+   * Creates the projectile.
+   *
+   * @param period The number of simulation ticks between steps.
+   */
+  protected Projectile(int period) {
+    this.period = period;
+  }
+
+  /**
+   * Called every simulation tick.
+   *
+   * @param blocks The block changes made this tick.
+   * @return <code>false</code> once the projectile has finished.
+   */
+  public final boolean tick(BlockBatch blocks) {
+    if (--wait > 0) {
+      return true;
+    }
+    wait = period;
+    return step(blocks);
+  }
+
+  /**
+   * Moves the projectile one step. Block changes should be made through the batch, and anything
+   * which needs to see them, such as an explosion, queued with {@link BlockBatch#after}.
+   *
+   * @param blocks The block changes made this tick.
+   * @return <code>false</code> once the projectile has finished.
+   */
+  protected abstract boolean step(BlockBatch blocks);
+}
@@ -48,11 +48,15 @@ import org.opencraft.server.cmd.impl.FlagDropCommand;
 import org.opencraft.server.game.GameMode;
 import org.opencraft.server.model.*;
 import org.opencraft.server.model.BlockLog.BlockInfo;
+import org.opencraft.server.net.ActionSender;
+import org.opencraft.server.net.Recipients;
 
 import java.util.ArrayList;
 
 import org.opencraft.server.replay.ReplayManager;
-import org.opencraft.server.task.TaskQueue;
+import org.opencraft.server.task.GameLoop;
+import org.opencraft.server.task.TimingWheel;
+import org.opencraft.server.task.impl.SimulationTask;
 import org.opencraft.server.task.impl.TNTTask;
 import tf.jacobsc.ctf.server.FlameTickRecord;
 import tf.jacobsc.ctf.server.StalemateKt;
@@ -70,8 +74,9 @@ public class CTFGameMode extends GameMode {
   public int blueFlagZ;
   public boolean redFlagDropped = false;
   public boolean blueFlagDropped = false;
-  public Thread redFlagDroppedThread;
-  public Thread blueFlagDroppedThread;
+  /** Returns a dropped flag to its base if it isn't picked up in time. */
+  public TimingWheel.Timeout redFlagDroppedTimeout;
+  public TimingWheel.Timeout blueFlagDroppedTimeout;
   public static int redCaptures;
   public static int blueCaptures;
   public boolean redFlagTaken = false;
@@ -82,7 +87,7 @@ public class CTFGameMode extends GameMode {
   private boolean stalemateTags;
   private boolean suddenDeath;
 
-  private Thread antiStalemateThread = null;
+  private TimingWheel.Timeout antiStalemateTimeout = null;
 
   public FlameTickRecord flameTickKillRecord = new FlameTickRecord();
 
@@ -161,11 +166,11 @@ public class CTFGameMode extends GameMode {
       if (p.bigTNTRemaining > 0) {
         type = "BigTNT";
       }
-      if (p.tntRadius == GameSettings.getInt("BigTNTRadius")) {
+      if (p.tntRadius == GameSettings.BIG_TNT_RADIUS.get()) {
         p.bigTNTRemaining--;
       }
 
-      if (p.bigTNTRemaining <= 0 && p.tntRadius == GameSettings.getInt("BigTNTRadius")) {
+      if (p.bigTNTRemaining <= 0 && p.tntRadius == GameSettings.BIG_TNT_RADIUS.get()) {
         p.tntRadius = 2;
         p.getActionSender().sendChatMessage("- &eYour big TNT has expired!");
       }
@@ -181,7 +186,8 @@ public class CTFGameMode extends GameMode {
         prv += PLAYER_POSITION_OFFSET;
       }
 
-      for (Player t : World.getWorld().getPlayerList().getPlayers()) {
+      for (Player t : World.getWorld().getPlayers(x - r - 1, y - r - 1, z - r - 1,
+          x + r + 1, y + r + 1, (int) Math.ceil(pz + prv))) {
         float tx = (t.getPosition().getX()) / 32f;
         float ty = (t.getPosition().getY()) / 32f;
         float tz = (t.getPosition().getZ()) / 32f;
@@ -282,17 +288,14 @@ public class CTFGameMode extends GameMode {
       }
     }
 
-    for (Player player : World.getWorld().getPlayerList().getPlayers(true)) {
-      int ex = x  * 32 + 16;
-      int ez = y  * 32 + 16;
-      int ey = z  * 32 + 16;
+    int ex = x  * 32 + 16;
+    int ez = y  * 32 + 16;
+    int ey = z  * 32 + 16;
 
-      // If the player does not want to see particles, don't show them
-      if (player.shouldShowTntParticles()) {
-        player.getActionSender().sendSpawnEffect(Constants.EFFECT_TNT, ex, ey, ez, ex, ey, ez);
-        player.getActionSender().sendSpawnEffect(Constants.EFFECT_TNT_2, ex, ey, ez, ex, ey, ez);
-      }
-    }
+    // If the player does not want to see particles, don't show them
+    World.getWorld().broadcast(Recipients.TNT_PARTICLES,
+        ActionSender.spawnEffectPacket(Constants.EFFECT_TNT, ex, ey, ez, ex, ey, ez),
+        ActionSender.spawnEffectPacket(Constants.EFFECT_TNT_2, ex, ey, ez, ex, ey, ez));
 
     p.rocketStartPosition = null;
   }
@@ -335,8 +338,8 @@ public class CTFGameMode extends GameMode {
     double pitch =
         Math.toRadians((int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
 
-    int distance = GameSettings.getInt("FlameThrowerStartDistanceFromPlayer");
-    int length = GameSettings.getInt("FlameThrowerLength");
+    int distance = GameSettings.FLAME_THROWER_START_DISTANCE_FROM_PLAYER.get();
+    int length = GameSettings.FLAME_THROWER_LENGTH.get();
     int side = Integer.signum(length);
     int dir = Integer.signum(distance);
 
@@ -374,7 +377,8 @@ public class CTFGameMode extends GameMode {
         return;
       }
 
-      for (Player t : World.getWorld().getPlayerList().getPlayers()) {
+      for (Player t : World.getWorld().getPlayers(bx - 1, by - 1, bz - 2, bx + 1, by + 1,
+          bz + 1)) {
         Position blockPos = t.getPosition().toBlockPos();
         if (blockPos.getX() == bx
             && blockPos.getY() == by
@@ -432,8 +436,8 @@ public class CTFGameMode extends GameMode {
     if (getMode() == Level.CTF) {
       Position redFlagPos = new Position(redFlagX, redFlagY, redFlagZ);
       if (redFlagPos.equals(redFlagInitialPos())) {
-        if (antiStalemateThread != null && antiStalemateThread.isAlive() && antiStalemateThread.getId() != Thread.currentThread().getId()) {
-          antiStalemateThread.interrupt();
+        if (antiStalemateTimeout != null) {
+          antiStalemateTimeout.cancel();
         }
       }
       World.getWorld().getLevel().setBlock(redFlagX, redFlagZ, redFlagY, Constants.BLOCK_RED_FLAG);
@@ -445,8 +449,8 @@ public class CTFGameMode extends GameMode {
     if (getMode() == Level.CTF) {
       Position blueFlagPos = new Position(blueFlagX, blueFlagY, blueFlagZ);
       if (blueFlagPos.equals(blueFlagInitialPos())) {
-        if (antiStalemateThread != null && antiStalemateThread.isAlive() && antiStalemateThread.getId() != Thread.currentThread().getId()) {
-          antiStalemateThread.interrupt();
+        if (antiStalemateTimeout != null) {
+          antiStalemateTimeout.cancel();
         }
       }
 
@@ -533,7 +537,7 @@ public class CTFGameMode extends GameMode {
       player.hasTNT = false;
       player.flamethrowerFuel = Constants.FLAME_THROWER_FUEL;
       player.currentRoundPointsEarned = 0;
-      player.setPoints(GameSettings.getInt("InitialPoints"));
+      player.setPoints(GameSettings.INITIAL_POINTS.get());
       unblockSpawnZones(player);
     }
 
@@ -607,171 +611,185 @@ public class CTFGameMode extends GameMode {
   }
 
   public void endGame() {
-    new Thread(
-        new Runnable() {
-          public void run() {
-            try {
-              String winner = null;
-              int winnerID = -2;
-              if (redCaptures > blueCaptures) {
-                winner = "red";
-                winnerID = 0;
-              } else if (blueCaptures > redCaptures) {
-                winner = "blue";
-                winnerID = 1;
-              }
-              if (winner == null) {
-                World.getWorld().broadcast("- &6The game ended in a tie!");
-              } else {
-                World.getWorld()
-                    .broadcast("- &6The game has ended; the " + winner + " team wins!");
-              }
-              if (getMode() == Level.CTF) {
-                World.getWorld()
-                    .broadcast(
-                        "- &6Red had "
-                            + redCaptures
-                            + " captures, blue had "
-                            + blueCaptures
-                            + ".");
-              } else {
-                World.getWorld()
-                    .broadcast(
-                        "- &6Red had "
-                            + redCaptures
-                            + " kills, blue had "
-                            + blueCaptures
-                            + ".");
-              }
-              for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                if (p.team != -1) {
-                  p.incIntAttribute("games");
-                }
-                if (p.team == winnerID) {
-                  p.incIntAttribute("wins");
-                }
-                p.hasVoted = false;
-                p.hasNominated = false;
-              }
-              List<Player> top = TopPlayersKt.topPlayers(World.getWorld(), 3);
-              World.getWorld().broadcast("- &3Top players: (&aKills&3/&cDeaths&3/&eCaps&3)");
-
-              if (top.isEmpty()) {
-                World.getWorld().broadcast("- &3Nobody");
-              }
+    // on the game loop, which owns the world, and voting waits on a timer instead of a thread
+    GameLoop.getGameLoop().submit(() -> {
+      try {
+        String winner = null;
+        int winnerID = -2;
+        if (redCaptures > blueCaptures) {
+          winner = "red";
+          winnerID = 0;
+        } else if (blueCaptures > redCaptures) {
+          winner = "blue";
+          winnerID = 1;
+        }
+        if (winner == null) {
+          World.getWorld().broadcast("- &6The game ended in a tie!");
+        } else {
+          World.getWorld()
+              .broadcast("- &6The game has ended; the " + winner + " team wins!");
+        }
+        if (getMode() == Level.CTF) {
+          World.getWorld()
+              .broadcast(
+                  "- &6Red had "
+                      + redCaptures
+                      + " captures, blue had "
+                      + blueCaptures
+                      + ".");
+        } else {
+          World.getWorld()
+              .broadcast(
+                  "- &6Red had "
+                      + redCaptures
+                      + " kills, blue had "
+                      + blueCaptures
+                      + ".");
+        }
+        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+          if (p.team != -1) {
+            p.incIntAttribute("games");
+          }
+          if (p.team == winnerID) {
+            p.incIntAttribute("wins");
+          }
+          p.hasVoted = false;
+          p.hasNominated = false;
+        }
+        List<Player> top = TopPlayersKt.topPlayers(World.getWorld(), 3);
+        World.getWorld().broadcast("- &3Top players: (&aKills&3/&cDeaths&3/&eCaps&3)");
 
-              for (int j = 0; j < top.size(); j++) {
-                Player p = top.get(j);
-                if (p == null) {
-                  break;
-                }
+        if (top.isEmpty()) {
+          World.getWorld().broadcast("- &3Nobody");
+        }
 
-                World.getWorld()
-                    .broadcast("- " + (j + 1) + ". &2" + p.getName() + " - " + p.currentRoundPointsEarned + " (&a" + p.kills + "&2/&c" + p.deaths + "&2/&e" + p.captures + "&2)");
-              }
+        for (int j = 0; j < top.size(); j++) {
+          Player p = top.get(j);
+          if (p == null) {
+            break;
+          }
 
-              for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                int placement = TopPlayersKt.playerPlacement(World.getWorld(), p);
-                if (placement <= 0) {
-                  p.getActionSender().sendChatMessage("- &eYou did not get any points this game.");
-                  continue;
-                }
+          World.getWorld()
+              .broadcast("- " + (j + 1) + ". &2" + p.getName() + " - " + p.currentRoundPointsEarned + " (&a" + p.kills + "&2/&c" + p.deaths + "&2/&e" + p.captures + "&2)");
+        }
 
-                if (placement <= 3) continue;
+        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+          int placement = TopPlayersKt.playerPlacement(World.getWorld(), p);
+          if (placement <= 0) {
+            p.getActionSender().sendChatMessage("- &eYou did not get any points this game.");
+            continue;
+          }
 
-                p.getActionSender().sendChatMessage("- " + (placement) + ". &2" + p.getName() + " - " + p.currentRoundPointsEarned + " (&a" + p.kills + "&2/&c" + p.deaths + "&2/&e" + p.captures + "&2)");
-              }
+          if (placement <= 3) continue;
 
-              if (winnerID >= 0) {
-                if (GameSettings.getBoolean("Tournament")) {
-                  // If you ever change this so that ties are rated
-                  // the rating system needs to have a draw probability > 0
-                  RatingKt.rateTeamMatch(winnerID);
-                } {
-                  RatingKt.rateCasualMatch(winnerID);
-                }
-              }
+          p.getActionSender().sendChatMessage("- " + (placement) + ". &2" + p.getName() + " - " + p.currentRoundPointsEarned + " (&a" + p.kills + "&2/&c" + p.deaths + "&2/&e" + p.captures + "&2)");
+        }
 
-              for (Player player : World.getWorld().getPlayerList().getPlayers()) {
-                player.team = -1;
-                player.hasFlag = false;
-                player.hasTNT = false;
-                player.isCreepering = false;
-                player.bigTNTRemaining = 0;
-                player.killstreak = 0;
-                player.deathstreak = 0;
-                if (player.isFlamethrowerEnabled()) {
-                  World.getWorld()
-                      .getLevel()
-                      .clearFire(player, player.linePosition, player.lineRotation);
-                  player.disableFlameThrower();
-                }
-                player.flamethrowerTime = 0;
-                player.rocketTime = 0;
-                unblockSpawnZones(player);
-                player.sendToTeamSpawn();
-              }
-              ReplayManager.getInstance().roundEnded();
-              rtvVotes = 0;
-              rtvYesPlayers.clear();
-              rtvNoPlayers.clear();
-
-              new Thread(() -> StatsKt.savePlayerStats(World.getWorld())).start();
-              if (GameSettings.getBoolean("Tournament")) {
-                return;
-              }
+        if (winnerID >= 0) {
+          if (GameSettings.TOURNAMENT.get()) {
+            // If you ever change this so that ties are rated
+            // the rating system needs to have a draw probability > 0
+            RatingKt.rateTeamMatch(winnerID);
+          } {
+            RatingKt.rateCasualMatch(winnerID);
+          }
+        }
 
-              // Start voting
-              Level active = World.getWorld().getLevel(); // We'll retrieve this information later to cancel sending players to new level if /newgame was called
-              World.getWorld().broadcast("- &aMap voting is now open for 40 seconds...");
-              World.getWorld().broadcast("- &aSay 1,2,3 or /vote [mapname] to select the next map!");
-              MapController.resetVotes();
-              voting = true;
-              int count = nominatedMaps.size();
-              if (count > 3) {
-                count = 3;
-              }
-              ArrayList<String> mapNames =
-                  MapController.getRandomMapNames(
-                      3 - count, new String[]{currentMap, previousMap});
-              mapNames.addAll(nominatedMaps);
-              String msg = "";
-              for (String map : mapNames) {
-                msg += map + ", ";
-              }
-              World.getWorld().broadcast("- &a" + msg);
-              World.getWorld()
-                  .broadcast(
-                      "- &3Did you like the map you just played ("
-                          + currentMap
-                          + ")? Say /yes or /no followed by a reason (optional) to vote!");
-              Thread.sleep(40 * 1000);
-
-              // Check if level has been changed with /newgame, if so, don't bother changing levels
-              if (active != World.getWorld().getLevel()) {
-                //World.getWorld().broadcast("- &3Voting cancelled due to /newgame");
-                voting = false;
-                return;
-              }
-              // Setup next level
-              Level newLevel = MapController.getMostVotedForMap();
-              ready = false;
-              String rating = MapRatings.getRating(currentMap);
-              World.getWorld().broadcast("- &3This map's approval rating is now " + rating);
-              World.getWorld()
-                  .broadcast("- &3See the ratings at http://jacobsc.tf/mapratings.");
-              World.getWorld()
-                  .broadcast(
-                      "- &e" + newLevel.id + " had the most votes. Starting new " + "game!");
-              Thread.sleep(7 * 1000);
-              startGame(newLevel);
-            } catch (Exception ex) {
-              voting = false;
-              Server.log(ex);
-            }
+        for (Player player : World.getWorld().getPlayerList().getPlayers()) {
+          player.team = -1;
+          player.hasFlag = false;
+          player.hasTNT = false;
+          player.isCreepering = false;
+          player.bigTNTRemaining = 0;
+          player.killstreak = 0;
+          player.deathstreak = 0;
+          if (player.isFlamethrowerEnabled()) {
+            World.getWorld()
+                .getLevel()
+                .clearFire(player, player.linePosition, player.lineRotation);
+            player.disableFlameThrower();
           }
-        })
-        .start();
+          player.flamethrowerTime = 0;
+          player.rocketTime = 0;
+          unblockSpawnZones(player);
+          player.sendToTeamSpawn();
+        }
+        ReplayManager.getInstance().roundEnded();
+        rtvVotes = 0;
+        rtvYesPlayers.clear();
+        rtvNoPlayers.clear();
+
+        StatsKt.savePlayerStats(World.getWorld());
+        if (GameSettings.TOURNAMENT.get()) {
+          return;
+        }
+
+        // Start voting
+        Level active = World.getWorld().getLevel(); // We'll retrieve this information later to cancel sending players to new level if /newgame was called
+        World.getWorld().broadcast("- &aMap voting is now open for 40 seconds...");
+        World.getWorld().broadcast("- &aSay 1,2,3 or /vote [mapname] to select the next map!");
+        MapController.resetVotes();
+        voting = true;
+        int count = nominatedMaps.size();
+        if (count > 3) {
+          count = 3;
+        }
+        ArrayList<String> mapNames =
+            MapController.getRandomMapNames(
+                3 - count, new String[]{currentMap, previousMap});
+        mapNames.addAll(nominatedMaps);
+        MapController.preload(mapNames);
+        String msg = "";
+        for (String map : mapNames) {
+          msg += map + ", ";
+        }
+        World.getWorld().broadcast("- &a" + msg);
+        World.getWorld()
+            .broadcast(
+                "- &3Did you like the map you just played ("
+                    + currentMap
+                    + ")? Say /yes or /no followed by a reason (optional) to vote!");
+        SimulationTask.getSimulationTask().schedule(() -> endVote(active), 40 * 1000);
+      } catch (Exception ex) {
+        voting = false;
+        Server.log(ex);
+      }
+    });
+  }
+
+  /** Loads the map with the most votes in the background, unless /newgame has changed maps. */
+  private void endVote(Level active) {
+    // Check if level has been changed with /newgame, if so, don't bother changing levels
+    if (active != World.getWorld().getLevel()) {
+      //World.getWorld().broadcast("- &3Voting cancelled due to /newgame");
+      voting = false;
+      return;
+    }
+    MapController.getMostVotedForMap()
+        .thenAccept(level -> GameLoop.getGameLoop().submit(() -> announceMap(active, level)));
+  }
+
+  /** Announces the next map once it has loaded, and starts a game on it a few seconds later. */
+  private void announceMap(Level active, Level newLevel) {
+    try {
+      // /newgame may have been used while the map was loading
+      if (active != World.getWorld().getLevel() || newLevel == null) {
+        voting = false;
+        return;
+      }
+      ready = false;
+      String rating = MapRatings.getRating(currentMap);
+      World.getWorld().broadcast("- &3This map's approval rating is now " + rating);
+      World.getWorld()
+          .broadcast("- &3See the ratings at http://jacobsc.tf/mapratings.");
+      World.getWorld()
+          .broadcast(
+              "- &e" + newLevel.id + " had the most votes. Starting new " + "game!");
+      SimulationTask.getSimulationTask().schedule(() -> startGame(newLevel), 7 * 1000);
+    } catch (Exception ex) {
+      voting = false;
+      Server.log(ex);
+    }
   }
 
   public void playerChangedTeam(Player player) {
@@ -795,13 +813,13 @@ public class CTFGameMode extends GameMode {
 
     if (stalemate) {
       World.getWorld().broadcast("- &eAnti-stalemate mode activated!");
-      if (GameSettings.getBoolean("AntiStalemate")) {
-        if (antiStalemateThread == null || !antiStalemateThread.isAlive()) {
-          antiStalemateThread = StalemateKt.staleMateThread(World.getWorld(), GameSettings.getInt("AntiStalemateTime"));
+      if (GameSettings.ANTI_STALEMATE.get()) {
+        if (antiStalemateTimeout == null || !antiStalemateTimeout.isActive()) {
+          antiStalemateTimeout = StalemateKt.staleMateTimer(World.getWorld(), GameSettings.ANTI_STALEMATE_TIME.get());
         }
       }
 
-      if (suddenDeath || GameSettings.getBoolean("StalemateTags")) {
+      if (suddenDeath || GameSettings.STALEMATE_TAGS.get()) {
         World.getWorld().broadcast("- &eIf your teammate gets tagged you'll drop the flag");
         stalemateTags = true;
       }
@@ -969,26 +987,18 @@ public class CTFGameMode extends GameMode {
         if (playerPos.getZ() > World.getWorld().getLevel().ceiling) setBlueFlagPos(playerPos.getX(), World.getWorld().getLevel().ceiling, playerPos.getY());
         else setBlueFlagPos(playerPos.getX(), playerPos.getZ() - 1, playerPos.getY());
 
-        if (blueFlagDroppedThread != null)  {
-          blueFlagDroppedThread.interrupt();
+        if (blueFlagDroppedTimeout != null)  {
+          blueFlagDroppedTimeout.cancel();
         }
 
         if (instant) {
           returnDroppedBlueFlag();
         } else {
-          blueFlagDroppedThread =
-              new Thread(
-                  () -> {
-                    try {
-                      if (!_antiStalemate || isVoluntary) {
-                        Thread.sleep(10 * 1000);
-                      }
-                      returnDroppedBlueFlag();
-                    } catch (InterruptedException ex) {
-                    }
-                  });
           placeBlueFlag();
-          blueFlagDroppedThread.start();
+          blueFlagDroppedTimeout =
+              SimulationTask.getSimulationTask()
+                  .schedule(this::returnDroppedBlueFlag,
+                      !_antiStalemate || isVoluntary ? 10 * 1000 : 0);
         }
       } else {
         redFlagTaken = false;
@@ -998,26 +1008,18 @@ public class CTFGameMode extends GameMode {
         if (playerPos.getZ() > World.getWorld().getLevel().ceiling) setRedFlagPos(playerPos.getX(), World.getWorld().getLevel().ceiling, playerPos.getY());
         else setRedFlagPos(playerPos.getX(), playerPos.getZ() - 1, playerPos.getY());
 
-        if (redFlagDroppedThread != null && redFlagDroppedThread.isAlive())  {
-          redFlagDroppedThread.interrupt();
+        if (redFlagDroppedTimeout != null)  {
+          redFlagDroppedTimeout.cancel();
         }
 
         if (instant) {
           returnDroppedRedFlag();
         } else {
-          redFlagDroppedThread =
-              new Thread(
-                  () -> {
-                    try {
-                      if (!_antiStalemate || isVoluntary) {
-                        Thread.sleep(10 * 1000);
-                      }
-                      returnDroppedRedFlag();
-                    } catch (InterruptedException ex) {
-                    }
-                  });
           placeRedFlag();
-          redFlagDroppedThread.start();
+          redFlagDroppedTimeout =
+              SimulationTask.getSimulationTask()
+                  .schedule(this::returnDroppedRedFlag,
+                      !_antiStalemate || isVoluntary ? 10 * 1000 : 0);
         }
       }
 
@@ -1090,8 +1092,8 @@ public class CTFGameMode extends GameMode {
               pl.getActionSender().sendRemoveEntity(p);
             }
 
-            if (redFlagDroppedThread != null) {
-              redFlagDroppedThread.interrupt();
+            if (redFlagDroppedTimeout != null) {
+              redFlagDroppedTimeout.cancel();
             }
           }
         }
@@ -1110,7 +1112,7 @@ public class CTFGameMode extends GameMode {
           placeBlueFlag();
           p.incIntAttribute("captures");
           p.addPoints(40);
-          if (redCaptures == GameSettings.getInt("MaxCaptures") || suddenDeath) {
+          if (redCaptures == GameSettings.MAX_CAPTURES.get() || suddenDeath) {
             nominatedMaps.clear();
             endGame();
           } else {
@@ -1162,8 +1164,8 @@ public class CTFGameMode extends GameMode {
               pl.getActionSender().sendRemoveEntity(p);
             }
 
-            if (blueFlagDroppedThread != null) {
-              blueFlagDroppedThread.interrupt();
+            if (blueFlagDroppedTimeout != null) {
+              blueFlagDroppedTimeout.cancel();
             }
           }
         }
@@ -1182,7 +1184,7 @@ public class CTFGameMode extends GameMode {
           placeRedFlag();
           p.incIntAttribute("captures");
           p.addPoints(40);
-          if (blueCaptures == GameSettings.getInt("MaxCaptures") || suddenDeath) {
+          if (blueCaptures == GameSettings.MAX_CAPTURES.get() || suddenDeath) {
             nominatedMaps.clear();
             endGame();
           } else {
@@ -1203,7 +1205,12 @@ public class CTFGameMode extends GameMode {
     int z = pos.getZ();
 
     if (p.team != -1) {
-      for (Mine m : World.getWorld().getAllMines()) {
+      // We add 32 because we don't include the mine itself for its radius
+      float radius = 32 + (GameSettings.MINE_RADIUS.get() * 32);
+      // Only mines in the blocks around the radius can be close enough
+      int br = (int) Math.ceil(radius / 32) + 1;
+      for (Mine m : World.getWorld().getMines((x >> 5) - br, (y >> 5) - br, (z >> 5) - br,
+          (x >> 5) + br, (y >> 5) + br, (z >> 5) + br)) {
         int mx = (m.x - 16) / 32;
         int my = (m.y - 16) / 32;
         int mz = (m.z - 16) / 32;
@@ -1215,9 +1222,6 @@ public class CTFGameMode extends GameMode {
             && m.team != -1
             && p.team != m.team
         ) {
-          // Only get the MineRadius value if all requirements above have been satisfied
-          float radius = 32 + (GameSettings.getFloat("MineRadius") * 32); // We add 32 because we don't include the mine itself for its radius
-
           if (m.x > x - radius
               && m.x < x + radius
               && m.y > y - radius
@@ -1255,13 +1259,14 @@ public class CTFGameMode extends GameMode {
             p.mineDeaths++;
             m.owner.mineKills++;
             updateKillFeed(m.owner, p, m.owner.parseName() + " mined " + p.parseName() + ".");
-            m.owner.addPoints(GameSettings.getInt("MinePoints"));
+            m.owner.addPoints(GameSettings.MINE_POINTS.get());
           }
         }
       }
     }
     if (getMode() == Level.CTF && tournamentGameStarted) {
-      for (Player t : World.getWorld().getPlayerList().getPlayers()) {
+      for (Player t : World.getWorld().getPlayers((x - 49) >> 5, (y - 49) >> 5, (z - 57) >> 5,
+          (x + 49) >> 5, (y + 49) >> 5, (z + 57) >> 5)) {
         Position op = t.getPosition();
         // Blocks are 32 "chunks" on a side... I think. Don't quote me on that.
         // 49 blocks in each direction except up because you have to account for feet
@@ -1336,12 +1341,7 @@ public class CTFGameMode extends GameMode {
   }
 
   public boolean isMine(int x, int y, int z) {
-    for(Mine m : World.getWorld().getAllMines()) {
-      if ((m.x - 16) / 32 == x && (m.y - 16) / 32 == y && (m.z - 16) / 32 == z) {
-        return true;
-      }
-    }
-    return false;
+    return World.getWorld().getMine(x, y, z) != null;
   }
 
   @Override
@@ -1542,7 +1542,7 @@ public class CTFGameMode extends GameMode {
         }
       } else if (level.isSolid(x, y, z)
           && (!player.isOp() || !player.placeSolid)
-          && !GameSettings.getBoolean("Chaos")) {
+          && !GameSettings.CHAOS.get()) {
         player.getActionSender().sendBlock(x, y, z, (short) level.getBlock(x, y, z));
       } else if (isTNT(x, y, z) && !ignore) { // Deleting tnt
         player.getActionSender().sendBlock(x, y, z, (short) Constants.BLOCK_TNT_RED); // TODO: Support for blue TNT
@@ -1603,7 +1603,7 @@ public class CTFGameMode extends GameMode {
 
               // TNTs explode after a certain amount of time in auto mode
               if (!player.isUsingManualTNT()) {
-                TaskQueue.getTaskQueue().schedule(new TNTTask(player, World.getWorld().getLevel()));
+                GameLoop.getGameLoop().schedule(new TNTTask(player, World.getWorld().getLevel()));
               }
             } else if (!isTNT(x, y, z)
                 && !(x == redFlagX && z == redFlagY && y == redFlagZ)
@@ -1625,7 +1625,7 @@ public class CTFGameMode extends GameMode {
           player.getActionSender().sendChatMessage("- &eYou must join a team to place mines!");
           player.getActionSender().sendBlock(x, y, z, (short) 0x00);
         } else {
-          if (player.mines.size() < GameSettings.getInt("MaxMines")
+          if (player.mines.size() < GameSettings.MAX_MINES.get()
               && !(x == redFlagX && z == redFlagY && y == redFlagZ)
               && !(x == blueFlagX && z == blueFlagY && y == blueFlagZ)) {
             final Mine mine = new Mine(x, y, z, player.team, player);
@@ -1634,7 +1634,8 @@ public class CTFGameMode extends GameMode {
             level.setBlock(
                 x, y, z, player.team == 0 ? Constants.BLOCK_MINE_RED : Constants.BLOCK_MINE_BLUE);
             World.getWorld().addMine(mine);
-            new Thread(new MineActivator(mine, player)).start();
+            SimulationTask.getSimulationTask()
+                .schedule(new MineActivator(mine, player), MineActivator.DELAY);
           } else if (!isMine(x, y, z)
               && !(x == redFlagX && z == redFlagY && y == redFlagZ)
               && !(x == blueFlagX && z == blueFlagY && y == blueFlagZ)) {
@@ -1715,8 +1716,9 @@ public class CTFGameMode extends GameMode {
     }
     flameTickKillRecord.clear();
 
-    String setting = getMode() == Level.TDM ? "TDMTimeLimit" : "TimeLimit";
-    int timeLimit = GameSettings.getInt(setting);
+    GameSettings.IntSetting setting =
+        getMode() == Level.TDM ? GameSettings.TDM_TIME_LIMIT : GameSettings.TIME_LIMIT;
+    int timeLimit = setting.get();
     if (timeLimit > 0) {
       long elapsedTime = System.currentTimeMillis() - gameStartTime;
 
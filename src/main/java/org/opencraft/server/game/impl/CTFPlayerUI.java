@@ -1,6 +1,8 @@
 package org.opencraft.server.game.impl;
 
 import org.opencraft.server.Constants;
+import org.opencraft.server.game.GameMode;
+import org.opencraft.server.model.HudState;
 import org.opencraft.server.model.Level;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.PlayerUI;
@@ -13,13 +15,30 @@ public class CTFPlayerUI extends PlayerUI {
 
   private final ProgressBar flamethrower = new ProgressBar();
 
+  /* the hud's layout: which timer is shown, and whether streamer mode is on */
+  private static final int NO_TIMER = 0;
+  private static final int CTF_TIMER = 1;
+  private static final int TDM_TIMER = 2;
+  private static final int STREAMER_MODE = 4;
+
   public CTFPlayerUI(CTFGameMode ctf, Player player) {
     super(player);
     this.ctf = ctf;
+    setStatusInputs(
+        HudState.MAP | HudState.SCORE | HudState.FLAGS | HudState.LAYOUT,
+        HudState.TIME | HudState.SCORE | HudState.FLAGS | HudState.LAYOUT,
+        HudState.FIRE | HudState.LAYOUT);
   }
 
   protected void update() {
     flamethrowerBar.update();
+    int timer = getTimer();
+    hud.setLayout(timer | (player.streamerMode ? STREAMER_MODE : 0));
+    hud.setMap(ctf.map == null ? null : ctf.map.id);
+    hud.setScore(ctf.redCaptures, ctf.blueCaptures);
+    hud.setFlags(ctf.redFlagTaken, ctf.blueFlagTaken);
+    hud.setSecondsRemaining(timer == NO_TIMER ? 0 : getSecondsRemaining(timer));
+    hud.setFire(getProgressLength(flamethrowerBar.get(), Constants.FLAME_THROWER_FUEL));
   }
 
   @Override
@@ -28,16 +47,14 @@ public class CTFPlayerUI extends PlayerUI {
       return "";
     }
 
-    String redFlag = ctf.redFlagTaken ? " &6[!]" : "";
-    String blueFlag = ctf.blueFlagTaken ? " &6[!]" : "";
     return "Map: "
-        + ctf.map.id
+        + hud.getMap()
         + " | &cRed: "
-        + ctf.redCaptures
-        + redFlag
+        + hud.getRedScore()
+        + getFlagMarker(hud.isRedFlagTaken())
         + " &f| &9Blue: "
-        + ctf.blueCaptures
-        + blueFlag;
+        + hud.getBlueScore()
+        + getFlagMarker(hud.isBlueFlagTaken());
   }
 
   @Override
@@ -67,44 +84,51 @@ public class CTFPlayerUI extends PlayerUI {
   }
 
   private boolean hasTimer() {
-    return ctf.getMode() == Level.TDM || GameSettings.getInt("TimeLimit") > 0;
+    return (hud.getLayout() & ~STREAMER_MODE) != NO_TIMER;
   }
 
-  private String getTimerMessage() {
-    String timerSetting = null;
-    String timerMessage = null;
-
+  private int getTimer() {
     if (ctf.getMode() == Level.TDM) {
-      timerSetting = "TDMTimeLimit";
-      timerMessage = "Team Deathmatch";
-    } else {
-      timerSetting = "TimeLimit";
-      timerMessage = "Capture the Flag";
+      return TDM_TIMER;
+    } else if (GameSettings.TIME_LIMIT.get() > 0) {
+      return CTF_TIMER;
     }
-    if (timerSetting == null) return null;
-
-    long elapsedTime = System.currentTimeMillis() - World.getWorld().getGameMode().gameStartTime;
-    long remaining =
-        Math.max((GameSettings.getInt(timerSetting) * 60 * 1000 - elapsedTime) / 1000, 0);
-    if (World.getWorld().getGameMode().voting) {
-      remaining = 0;
-    } else if (!World.getWorld().getGameMode().tournamentGameStarted) {
-      remaining = GameSettings.getInt(timerSetting) * 60;
+    return NO_TIMER;
+  }
+
+  private static String getFlagMarker(boolean taken) {
+    return taken ? " &6[!]" : "";
+  }
+
+  private int getSecondsRemaining(int timer) {
+    GameSettings.IntSetting timerSetting =
+        timer == TDM_TIMER ? GameSettings.TDM_TIME_LIMIT : GameSettings.TIME_LIMIT;
+    GameMode gameMode = World.getWorld().getGameMode();
+    if (gameMode.voting) {
+      return 0;
+    } else if (!gameMode.tournamentGameStarted) {
+      return timerSetting.get() * 60;
     }
+    long elapsedTime = System.currentTimeMillis() - gameMode.gameStartTime;
+    return (int) Math.max((timerSetting.get() * 60 * 1000 - elapsedTime) / 1000, 0);
+  }
+
+  private String getTimerMessage() {
+    int remaining = hud.getSecondsRemaining();
 
     // If streamer mode is enabled, minimize the HUD
     if (player.streamerMode) {
-      String redFlag = ctf.redFlagTaken ? " &6[!]" : "";
-      String blueFlag = ctf.blueFlagTaken ? " &6[!]" : "";
-      return "&c" + ctf.redCaptures + redFlag + " &9" + ctf.blueCaptures + blueFlag + " &f" + prettyTime((int) remaining);
+      return "&c" + hud.getRedScore() + getFlagMarker(hud.isRedFlagTaken())
+          + " &9" + hud.getBlueScore() + getFlagMarker(hud.isBlueFlagTaken())
+          + " &f" + prettyTime(remaining);
     }
 
-    return timerMessage + " | " + prettyTime((int) remaining);
+    String timerMessage =
+        (hud.getLayout() & ~STREAMER_MODE) == TDM_TIMER ? "Team Deathmatch" : "Capture the Flag";
+    return timerMessage + " | " + prettyTime(remaining);
   }
 
   private String getFlamethrowerMessage() {
-    return FIRE + " "
-        + getProgressBar(flamethrowerBar.get(), Constants.FLAME_THROWER_FUEL, ProgressBarType.FIRE);
+    return FIRE + " " + getProgressBar(hud.getFire(), ProgressBarType.FIRE);
   }
 }
-  
\ No newline at end of file
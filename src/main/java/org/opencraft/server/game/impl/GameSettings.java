@@ -4,125 +4,184 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import org.opencraft.server.Constants;
+import org.opencraft.server.log.Logger;
 
+/**
+ * The settings ops can change with /set, which are saved in <code>gamesettings.properties</code>.
+ * Read a setting through its constant, such as <code>GameSettings.TOURNAMENT.get()</code>.
+ *
+ * <p>The values are kept in an immutable snapshot behind a volatile field, so reading one is a
+ * field load and an array index, without a lock or a map lookup. Setting, resetting or loading
+ * settings builds a new snapshot and swaps it in at once, so nobody sees a reload half done, and
+ * then tells the listeners of every setting which changed.
+ */
 public class GameSettings {
   public static final int TYPE_INT = 0;
   public static final int TYPE_BOOLEAN = 1;
   public static final int TYPE_STRING = 2;
   public static final int TYPE_FLOAT = 3;
 
-  private static final HashMap<String, GameSetting> settings = new HashMap<String, GameSetting>();
+  /* declared before the settings, which add themselves while they are initialised */
+  private static final Map<String, GameSetting> settings = new LinkedHashMap<>();
+  private static final int[] slots = new int[4];
 
-  static {
-    add("MaxCaptures", TYPE_INT, 5);
-    add("Chaos", TYPE_BOOLEAN, false);
-    add("MaxMines", TYPE_INT, 2);
-    add("LTTimeLimit", TYPE_INT, 10);
-    add("TDMTimeLimit", TYPE_INT, 10);
-    add("TimeLimit", TYPE_INT, 20);
-    add("EnableStore", TYPE_BOOLEAN, true);
-    add("OnlyTDM", TYPE_BOOLEAN, false);
-    add("Debug", TYPE_BOOLEAN, false);
-    add("Tournament", TYPE_BOOLEAN, false);
-    add("FlagDrops", TYPE_BOOLEAN, true);
-    add("FlameThrowerStartDistanceFromPlayer", TYPE_INT, 3);
-    add("FlameThrowerLength", TYPE_INT, 2);
-    add("FlameThrowerRechargeTime", TYPE_INT, 30);
-    add("FlameThrowerDuration", TYPE_INT, 10);
-    add("AutoRechargeFlamethrower", TYPE_BOOLEAN, false);
-    add("Ammo", TYPE_INT, 20); // number of shots before reloading
-    add("Health", TYPE_INT, 24); // number of hits taken before having to resupply
-    add("ReloadStep", TYPE_INT, 3);
-    add("AntiStalemate", TYPE_BOOLEAN, true);
-    add("AntiStalemateTime", TYPE_INT, 90);
-    add("StalemateTags", TYPE_BOOLEAN, false);
-    add("InitialPoints", TYPE_INT, Constants.INITIAL_PLAYER_POINTS);
-    add("Whitelist", TYPE_BOOLEAN, false);
-    add("WhitelistMessage", TYPE_STRING, "There is a tournament going on, try again later!");
-    add("FirstBloodReward", TYPE_INT, 30);
-    add("MineRadius", TYPE_FLOAT, 2.0f);
-    add("MinePoints", TYPE_INT, 0);
-    add("BigTNTPrice", TYPE_INT, 70);
-    add("BigTNTAmount", TYPE_INT, 7);
-    add("BigTNTRadius", TYPE_INT, 3);
-    add("CreeperPrice", TYPE_INT, 30);
-    add("CreeperRadius", TYPE_INT, 4);
-    add("CreeperTime", TYPE_FLOAT, 2.0f);
-    add("CreeperShield", TYPE_BOOLEAN, false);
-    add("GrenadePrice", TYPE_INT, 35);
-    add("LinePrice", TYPE_INT, 15);
-    add("RocketPrice", TYPE_INT, 60);
-    add("FlameThrowerFuelPrice", TYPE_INT, 10);
-    add("SmokeGrenadePrice", TYPE_INT, 50);
-    add("SmokeGrenadeRadius", TYPE_INT, 8);
-    add("SmokeGrenadeDelay", TYPE_INT, 2000);
-    add("RocketSpeed", TYPE_INT, 25);
-    add("IceMeltTime", TYPE_INT, 60000);
-    add("VineDecayTime", TYPE_INT, 30000);
-    add("TNTTime", TYPE_FLOAT, 1.0f);
-    add("QuoteCooldown", TYPE_INT, 10);
-  }
+  public static final IntSetting MAX_CAPTURES = new IntSetting("MaxCaptures", 5);
+  public static final BooleanSetting CHAOS = new BooleanSetting("Chaos", false);
+  public static final IntSetting MAX_MINES = new IntSetting("MaxMines", 2);
+  public static final IntSetting LT_TIME_LIMIT = new IntSetting("LTTimeLimit", 10);
+  public static final IntSetting TDM_TIME_LIMIT = new IntSetting("TDMTimeLimit", 10);
+  public static final IntSetting TIME_LIMIT = new IntSetting("TimeLimit", 20);
+  public static final BooleanSetting ENABLE_STORE = new BooleanSetting("EnableStore", true);
+  public static final BooleanSetting ONLY_TDM = new BooleanSetting("OnlyTDM", false);
+  public static final BooleanSetting DEBUG = new BooleanSetting("Debug", false);
+  public static final BooleanSetting TOURNAMENT = new BooleanSetting("Tournament", false);
+  public static final BooleanSetting FLAG_DROPS = new BooleanSetting("FlagDrops", true);
+  public static final IntSetting FLAME_THROWER_START_DISTANCE_FROM_PLAYER =
+      new IntSetting("FlameThrowerStartDistanceFromPlayer", 3);
+  public static final IntSetting FLAME_THROWER_LENGTH = new IntSetting("FlameThrowerLength", 2);
+  public static final IntSetting FLAME_THROWER_RECHARGE_TIME =
+      new IntSetting("FlameThrowerRechargeTime", 30);
+  public static final IntSetting FLAME_THROWER_DURATION =
+      new IntSetting("FlameThrowerDuration", 10);
+  public static final BooleanSetting AUTO_RECHARGE_FLAMETHROWER =
+      new BooleanSetting("AutoRechargeFlamethrower", false);
+  /** Number of shots before reloading. */
+  public static final IntSetting AMMO = new IntSetting("Ammo", 20);
+  /** Number of hits taken before having to resupply. */
+  public static final IntSetting HEALTH = new IntSetting("Health", 24);
+  public static final IntSetting RELOAD_STEP = new IntSetting("ReloadStep", 3);
+  public static final BooleanSetting ANTI_STALEMATE = new BooleanSetting("AntiStalemate", true);
+  public static final IntSetting ANTI_STALEMATE_TIME = new IntSetting("AntiStalemateTime", 90);
+  public static final BooleanSetting STALEMATE_TAGS = new BooleanSetting("StalemateTags", false);
+  public static final IntSetting INITIAL_POINTS =
+      new IntSetting("InitialPoints", Constants.INITIAL_PLAYER_POINTS);
+  public static final BooleanSetting WHITELIST = new BooleanSetting("Whitelist", false);
+  public static final StringSetting WHITELIST_MESSAGE =
+      new StringSetting("WhitelistMessage", "There is a tournament going on, try again later!");
+  public static final IntSetting FIRST_BLOOD_REWARD = new IntSetting("FirstBloodReward", 30);
+  public static final FloatSetting MINE_RADIUS = new FloatSetting("MineRadius", 2.0f);
+  public static final IntSetting MINE_POINTS = new IntSetting("MinePoints", 0);
+  public static final IntSetting BIG_TNT_PRICE = new IntSetting("BigTNTPrice", 70);
+  public static final IntSetting BIG_TNT_AMOUNT = new IntSetting("BigTNTAmount", 7);
+  public static final IntSetting BIG_TNT_RADIUS = new IntSetting("BigTNTRadius", 3);
+  public static final IntSetting CREEPER_PRICE = new IntSetting("CreeperPrice", 30);
+  public static final IntSetting CREEPER_RADIUS = new IntSetting("CreeperRadius", 4);
+  public static final FloatSetting CREEPER_TIME = new FloatSetting("CreeperTime", 2.0f);
+  public static final BooleanSetting CREEPER_SHIELD = new BooleanSetting("CreeperShield", false);
+  public static final IntSetting GRENADE_PRICE = new IntSetting("GrenadePrice", 35);
+  public static final IntSetting LINE_PRICE = new IntSetting("LinePrice", 15);
+  public static final IntSetting ROCKET_PRICE = new IntSetting("RocketPrice", 60);
+  public static final IntSetting FLAME_THROWER_FUEL_PRICE =
+      new IntSetting("FlameThrowerFuelPrice", 10);
+  public static final IntSetting SMOKE_GRENADE_PRICE = new IntSetting("SmokeGrenadePrice", 50);
+  public static final IntSetting SMOKE_GRENADE_RADIUS = new IntSetting("SmokeGrenadeRadius", 8);
+  public static final IntSetting SMOKE_GRENADE_DELAY = new IntSetting("SmokeGrenadeDelay", 2000);
+  public static final IntSetting ROCKET_SPEED = new IntSetting("RocketSpeed", 25);
+  public static final IntSetting ICE_MELT_TIME = new IntSetting("IceMeltTime", 60000);
+  public static final IntSetting VINE_DECAY_TIME = new IntSetting("VineDecayTime", 30000);
+  public static final FloatSetting TNT_TIME = new FloatSetting("TNTTime", 1.0f);
+  public static final IntSetting QUOTE_COOLDOWN = new IntSetting("QuoteCooldown", 10);
+  /** Blocks away other players are shown from. */
+  public static final IntSetting VIEW_DISTANCE = new IntSetting("ViewDistance", 64);
+  /** Blocks away other players move every tick. */
+  public static final IntSetting FULL_UPDATE_DISTANCE = new IntSetting("FullUpdateDistance", 32);
+  /** Set from <code>max_players</code> in the server configuration. */
+  public static final IntSetting MAX_PLAYERS = new IntSetting("MaxPlayers", 16);
 
-  public static Object get(String k) {
-    synchronized (settings) {
-      return settings.get(k).value;
-    }
-  }
+  /** Held while replacing the snapshots, so two changes can't lose one another. */
+  private static final Object lock = new Object();
 
-  public static int getInt(String k) {
-    return (Integer) get(k);
-  }
+  /* never changed once published, only replaced */
+  private static volatile Snapshot values;
+  private static Snapshot defaults;
 
-  public static boolean getBoolean(String k) {
-    return (Boolean) get(k);
+  static {
+    Snapshot snapshot = new Snapshot(new int[slots[TYPE_INT]], new boolean[slots[TYPE_BOOLEAN]],
+        new String[slots[TYPE_STRING]], new float[slots[TYPE_FLOAT]]);
+    for (GameSetting setting : settings.values()) {
+      setting.store(snapshot, setting.initialValue);
+    }
+    defaults = snapshot;
+    values = snapshot;
+    DEBUG.addListener(() -> Logger.setDebug(DEBUG.get()));
   }
 
-  public static String getString(String k) {
-    return (String) get(k);
+  private record Snapshot(int[] ints, boolean[] booleans, String[] strings, float[] floats) {
+    Snapshot copy() {
+      return new Snapshot(ints.clone(), booleans.clone(), strings.clone(), floats.clone());
+    }
   }
 
-  public static Float getFloat(String k) {
-    return (Float) get(k);
+  /**
+   * Gets a setting by its name, such as for /set.
+   *
+   * @param k The name.
+   * @return The setting, or null if there isn't one.
+   */
+  public static GameSetting getSetting(String k) {
+    return settings.get(k);
   }
 
-  public static HashMap<String, GameSetting> getSettings() {
-    return settings;
+  public static Map<String, GameSetting> getSettings() {
+    return Collections.unmodifiableMap(settings);
   }
 
   public static boolean set(String k, String value) {
-    synchronized (settings) {
-      GameSetting s = settings.get(k);
-      try {
-        switch (s.type) {
-          case TYPE_INT:
-            s.value = Integer.parseInt(value);
-            break;
-          case TYPE_BOOLEAN:
-            s.value = Boolean.parseBoolean(value);
-            break;
-          case TYPE_STRING:
-            s.value = value;
-            break;
-          case TYPE_FLOAT:
-            s.value = Float.parseFloat(value);
-            break;
+    GameSetting setting = settings.get(k);
+    if (setting == null) {
+      return false;
+    }
+    Object parsed;
+    try {
+      parsed = setting.parse(value);
+    } catch (NumberFormatException ex) {
+      return false;
+    }
+    update(snapshot -> setting.store(snapshot, parsed));
+    return true;
+  }
+
+  /**
+   * Replaces the values with a changed copy, then tells the listeners of the settings which
+   * changed. The listeners are run outside the lock, on the thread which made the change.
+   */
+  private static void update(Consumer<Snapshot> change) {
+    List<GameSetting> changed = new ArrayList<>();
+    synchronized (lock) {
+      Snapshot old = values;
+      Snapshot snapshot = old.copy();
+      change.accept(snapshot);
+      values = snapshot;
+      for (GameSetting setting : settings.values()) {
+        if (!Objects.equals(setting.load(old), setting.load(snapshot))) {
+          changed.add(setting);
         }
-      } catch (Exception ex) {
-        return false;
       }
-      return true;
+    }
+    for (GameSetting setting : changed) {
+      for (Runnable listener : setting.listeners) {
+        listener.run();
+      }
     }
   }
 
   public static void save() {
-    synchronized (settings) {
+    synchronized (lock) {
+      Snapshot snapshot = values;
       Properties props = new Properties();
 
       for (GameSetting s : settings.values()) {
-        props.setProperty(s.name, String.valueOf(s.value));
+        props.setProperty(s.name, String.valueOf(s.load(snapshot)));
       }
 
       try (FileOutputStream out = new FileOutputStream("./gamesettings.properties")) {
@@ -149,42 +208,190 @@ public class GameSettings {
       return;
     }
 
-    synchronized (settings) {
-      for (String key : props.stringPropertyNames()) {
-        if (settings.containsKey(key)) {
-          set(key, props.getProperty(key));
+    // parse everything first, so the whole file is applied in one swap
+    Map<GameSetting, Object> loaded = new LinkedHashMap<>();
+    for (String key : props.stringPropertyNames()) {
+      GameSetting setting = settings.get(key);
+      if (setting != null) {
+        try {
+          loaded.put(setting, setting.parse(props.getProperty(key)));
+        } catch (NumberFormatException ex) {
+          // keep the current value, as /set does
         }
       }
     }
-  }
-
-
-  public static void add(String name, int type, Object value) {
-    settings.put(name, new GameSetting(name, type, value));
+    update(snapshot -> loaded.forEach((setting, value) -> setting.store(snapshot, value)));
   }
 
   public static void reset() {
-    synchronized (settings) {
+    update(snapshot -> {
       for (GameSetting s : settings.values()) {
-        s.value = s.defaultValue;
+        s.store(snapshot, s.load(defaults));
       }
-    }
+    });
+  }
+
+  public static int getMaxPlayers() {
+    return MAX_PLAYERS.get();
   }
 
-  public static class GameSetting {
-    public String name;
-    public Object value;
-    public Object defaultValue;
-    public int type;
+  public abstract static class GameSetting {
+    public final String name;
+    public final int type;
+    /** Where the value is in its type's array in a snapshot. */
+    final int slot;
+    private final Object initialValue;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
-    public GameSetting(String n, int t, Object d) {
+    GameSetting(String n, int t, Object d) {
       name = n;
-      value = defaultValue = d;
-      defaultValue = d;
       type = t;
+      slot = slots[t]++;
+      initialValue = d;
+      settings.put(n, this);
+    }
+
+    public Object getValue() {
+      return load(values);
+    }
+
+    public Object getDefaultValue() {
+      synchronized (lock) {
+        return load(defaults);
+      }
+    }
+
+    /**
+     * Adds something to run after this setting has changed, whether by /set, a reset or a
+     * reload. It runs on the thread which made the change.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Runnable listener) {
+      listeners.add(listener);
+    }
+
+    /**
+     * Changes the default value, and the value, such as for settings which come from the server
+     * configuration.
+     */
+    void setDefault(Object value) {
+      synchronized (lock) {
+        Snapshot snapshot = defaults.copy();
+        store(snapshot, value);
+        defaults = snapshot;
+      }
+      update(snapshot -> store(snapshot, value));
     }
+
+    abstract Object parse(String value);
+
+    abstract Object load(Snapshot snapshot);
+
+    abstract void store(Snapshot snapshot, Object value);
   }
 
-  public static int getMaxPlayers() {
-    return getInt("MaxPlayers");
-  }}
+  public static final class IntSetting extends GameSetting {
+    IntSetting(String name, int defaultValue) {
+      super(name, TYPE_INT, defaultValue);
+    }
+
+    public int get() {
+      return values.ints[slot];
+    }
+
+    public void setDefault(int value) {
+      setDefault((Object) value);
+    }
+
+    @Override
+    Object parse(String value) {
+      return Integer.parseInt(value);
+    }
+
+    @Override
+    Object load(Snapshot snapshot) {
+      return snapshot.ints[slot];
+    }
+
+    @Override
+    void store(Snapshot snapshot, Object value) {
+      snapshot.ints[slot] = (Integer) value;
+    }
+  }
+
+  public static final class BooleanSetting extends GameSetting {
+    BooleanSetting(String name, boolean defaultValue) {
+      super(name, TYPE_BOOLEAN, defaultValue);
+    }
+
+    public boolean get() {
+      return values.booleans[slot];
+    }
+
+    @Override
+    Object parse(String value) {
+      return Boolean.parseBoolean(value);
+    }
+
+    @Override
+    Object load(Snapshot snapshot) {
+      return snapshot.booleans[slot];
+    }
+
+    @Override
+    void store(Snapshot snapshot, Object value) {
+      snapshot.booleans[slot] = (Boolean) value;
+    }
+  }
+
+  public static final class StringSetting extends GameSetting {
+    StringSetting(String name, String defaultValue) {
+      super(name, TYPE_STRING, defaultValue);
+    }
+
+    public String get() {
+      return values.strings[slot];
+    }
+
+    @Override
+    Object parse(String value) {
+      return value;
+    }
+
+    @Override
+    Object load(Snapshot snapshot) {
+      return snapshot.strings[slot];
+    }
+
+    @Override
+    void store(Snapshot snapshot, Object value) {
+      snapshot.strings[slot] = (String) value;
+    }
+  }
+
+  public static final class FloatSetting extends GameSetting {
+    FloatSetting(String name, float defaultValue) {
+      super(name, TYPE_FLOAT, defaultValue);
+    }
+
+    public float get() {
+      return values.floats[slot];
+    }
+
+    @Override
+    Object parse(String value) {
+      return Float.parseFloat(value);
+    }
+
+    @Override
+    Object load(Snapshot snapshot) {
+      return snapshot.floats[slot];
+    }
+
+    @Override
+    void store(Snapshot snapshot, Object value) {
+      snapshot.floats[slot] = (Float) value;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package org.opencraft.server.game.impl;
+
+import org.opencraft.server.Constants;
+import org.opencraft.server.Server;
+import org.opencraft.server.game.Projectile;
+import org.opencraft.server.model.BlockBatch;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.model.Position;
+import org.opencraft.server.model.Rotation;
+import org.opencraft.server.model.World;
+
+/** A grenade, which is thrown in an arc and explodes when it lands. */
+public class GrenadeProjectile extends Projectile {
+
+  /** Grenades move every 100 ms, which is 4 simulation ticks. */
+  private static final int PERIOD = 4;
+
+  /** The most steps a grenade takes before it is dropped. */
+  private static final int RANGE = 128;
+
+  protected final Player player;
+  private double vx, vy, vz;
+  private double x, y, z;
+  private double lastX, lastY, lastZ;
+  private int lastBlock;
+  private int steps;
+
+  /**
+   * Creates a grenade thrown by a player, from where they are and in the direction they are
+   * looking.
+   *
+   * @param player The player.
+   */
+  public GrenadeProjectile(Player player) {
+    super(PERIOD);
+    this.player = player;
+    Position pos = player.getPosition().toBlockPos();
+    Rotation r = player.getRotation();
+
+    double heading =
+        Math.toRadians((int) (Server.getUnsigned(r.getRotation()) * ((float) 360 / 256) - 90));
+    double pitch =
+        Math.toRadians((int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
+
+    vx = Math.cos(heading) * Math.cos(pitch);
+    vy = Math.sin(heading) * Math.cos(pitch);
+    vz = Math.sin(pitch);
+    double length = Math.sqrt(vx * vx + vy * vy + vz * vz) / 1.25;
+    vx /= length;
+    vz /= length;
+    vy /= length;
+
+    x = lastX = pos.getX();
+    y = lastY = pos.getY();
+    z = lastZ = pos.getZ();
+  }
+
+  @Override
+  protected boolean step(BlockBatch blocks) {
+    x += vx;
+    y += vy;
+    z += vz;
+    int bx = (int) Math.round(x);
+    int by = (int) Math.round(y);
+    int bz = (int) Math.round(z);
+    int lx = (int) Math.round(lastX);
+    int ly = (int) Math.round(lastY);
+    int lz = (int) Math.round(lastZ);
+
+    int block = blocks.getBlock(bx, by, bz);
+    if (block != 0 && !isTrail(block) && block != Constants.BLOCK_INVISIBLE) {
+      land(blocks, bx, by, bz, lx, ly, lz, lastBlock);
+      return false;
+    }
+    blocks.setBlock(lx, ly, lz, 0);
+    if (block == 0) {
+      int trail = getTrail();
+      if (trail != 0) {
+        blocks.setBlock(bx, by, bz, trail);
+      }
+    }
+
+    lastX = x;
+    lastY = y;
+    lastZ = z;
+    lastBlock = block;
+    if (vz > (double) -2) vz -= 0.15;
+    vx *= 0.95;
+    vy *= 0.95;
+    return ++steps < RANGE;
+  }
+
+  /**
+   * Gets the block drawn where the grenade is.
+   *
+   * @return The type id, or 0 to draw nothing.
+   */
+  protected int getTrail() {
+    if (player.team == 0) {
+      return Constants.BLOCK_TNT_RED;
+    } else if (player.team == 1) {
+      return Constants.BLOCK_TNT_BLUE;
+    }
+    return 0;
+  }
+
+  /**
+   * Checks if a block is one the grenade draws, which it passes through.
+   *
+   * @param block The type id.
+   * @return The trail flag.
+   */
+  protected boolean isTrail(int block) {
+    return block == Constants.BLOCK_TNT_RED || block == Constants.BLOCK_TNT_BLUE;
+  }
+
+  /**
+   * Called when the grenade hits a block.
+   *
+   * @param blocks The block changes made this tick.
+   * @param x The x coordinate of the block hit.
+   * @param y The y coordinate of the block hit.
+   * @param z The z coordinate of the block hit.
+   * @param lastX The x coordinate of the grenade.
+   * @param lastY The y coordinate of the grenade.
+   * @param lastZ The z coordinate of the grenade.
+   * @param lastBlock The block which was where the grenade is.
+   */
+  protected void land(BlockBatch blocks, int x, int y, int z, int lastX, int lastY, int lastZ,
+      int lastBlock) {
+    blocks.setBlock(lastX, lastY, lastZ, lastBlock);
+    blocks.after(
+        () ->
+            ((CTFGameMode) World.getWorld().getGameMode())
+                .explodeTNT(
+                    player, blocks.getLevel(), x, y, z, 2, true, false, false, false, "Grenade"));
+  }
+}
@@ -1,5 +1,6 @@
 package org.opencraft.server.game.impl;
 
+import org.opencraft.server.model.HudState;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.PlayerUI;
 import org.opencraft.server.model.ProgressBar;
@@ -10,6 +11,7 @@ public class LTPlayerUI extends PlayerUI {
 
   public LTPlayerUI(Player player) {
     super(player);
+    setStatusInputs(0, HudState.HEALTH, HudState.AMMO);
   }
 
   public void setHealth(int value) {
@@ -24,6 +26,8 @@ public class LTPlayerUI extends PlayerUI {
   protected void update() {
     healthBar.update();
     ammoBar.update();
+    hud.setHealth(getProgressLength(healthBar.get(), GameSettings.HEALTH.get()));
+    hud.setAmmo(getProgressLength(ammoBar.get(), GameSettings.AMMO.get()));
   }
 
   @Override
@@ -54,11 +54,15 @@ import org.opencraft.server.model.Player;
 import org.opencraft.server.model.PlayerUI;
 import org.opencraft.server.model.Position;
 import org.opencraft.server.model.World;
+import org.opencraft.server.net.ActionSender;
+import org.opencraft.server.net.Recipients;
 import org.opencraft.server.persistence.SavePersistenceRequest;
+import org.opencraft.server.persistence.SavedGameManager;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import org.opencraft.server.replay.ReplayManager;
+import org.opencraft.server.task.GameLoop;
+import org.opencraft.server.task.impl.SimulationTask;
 import tf.jacobsc.utils.TopPlayersKt;
 
 public class LaserTagGameMode extends GameMode {
@@ -126,9 +130,9 @@ public class LaserTagGameMode extends GameMode {
   protected void resetGameMode() {
     for (Player player : World.getWorld().getPlayerList().getPlayers()) {
       player.currentRoundPointsEarned = 0;
-      player.setPoints(GameSettings.getInt("InitialPoints"));
-      player.setHealth(GameSettings.getInt("Health"));
-      player.setAmmo(GameSettings.getInt("Ammo"));
+      player.setPoints(GameSettings.INITIAL_POINTS.get());
+      player.setHealth(GameSettings.HEALTH.get());
+      player.setAmmo(GameSettings.AMMO.get());
     }
   }
 
@@ -162,126 +166,133 @@ public class LaserTagGameMode extends GameMode {
   }
 
   public void endGame() {
-    new Thread(
-        new Runnable() {
-          public void run() {
-            try {
-              int redPoints = 0;
-              int bluePoints = 0;
-              for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                if (p.team == 0) {
-                  redPoints += p.currentRoundPointsEarned;
-                } else if (p.team == 1) {
-                  bluePoints += p.currentRoundPointsEarned;
-                }
-              }
+    // on the game loop, which owns the world, and voting waits on a timer instead of a thread
+    GameLoop.getGameLoop().submit(() -> {
+      try {
+        int redPoints = 0;
+        int bluePoints = 0;
+        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+          if (p.team == 0) {
+            redPoints += p.currentRoundPointsEarned;
+          } else if (p.team == 1) {
+            bluePoints += p.currentRoundPointsEarned;
+          }
+        }
 
-              String winner = null;
-              int winnerID = -2;
-              if (redPoints > bluePoints) {
-                winner = "red";
-                winnerID = 0;
-              } else if (bluePoints > redPoints) {
-                winner = "blue";
-                winnerID = 1;
-              }
-              if (winner == null) {
-                World.getWorld().broadcast("- &6The game ended in a tie!");
-              } else {
-                World.getWorld()
-                    .broadcast("- &6The game has ended; the " + winner + " team wins!");
-              }
-              World.getWorld()
-                  .broadcast(
-                      "- &6Red had "
-                          + redPoints
-                          + " points, blue had "
-                          + bluePoints
-                          + ".");
-
-              for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                if (p.team != -1) {
-                  p.incIntAttribute("games");
-                }
-                if (p.team == winnerID) {
-                  p.incIntAttribute("wins");
-                }
-                p.hasVoted = false;
-                p.hasNominated = false;
-              }
-              List<Player> top = TopPlayersKt.topPlayers(World.getWorld(), 3);
-              World.getWorld().broadcast("- &3Top players for the round:");
-              if (top.isEmpty()) {
-                World.getWorld().broadcast("- &3Nobody");
-              }
-              for (Player p : top) {
-                World.getWorld()
-                    .broadcast("- &2" + p.getName() + " - " + p.currentRoundPointsEarned);
-              }
-              ReplayManager.getInstance().roundEnded();
-              for (Player player : World.getWorld().getPlayerList().getPlayers()) {
-                player.team = -1;
-                player.sendToTeamSpawn();
-              }
-              rtvVotes = 0;
-              rtvYesPlayers.clear();
-              rtvNoPlayers.clear();
-              if (GameSettings.getBoolean("Tournament")) {
-                return;
-              }
-              World.getWorld().broadcast("- &aMap voting is now open for 40 seconds...");
-              World.getWorld().broadcast("- &aSay /vote [mapname] to select the next map!");
-              MapController.resetVotes();
-              voting = true;
-              int count = nominatedMaps.size();
-              if (count > 3) {
-                count = 3;
-              }
-              ArrayList<String> mapNames =
-                  MapController.getRandomMapNames(
-                      3 - count, new String[]{currentMap, previousMap});
-              mapNames.addAll(nominatedMaps);
-              String msg = "";
-              for (String map : mapNames) {
-                msg += map + ", ";
-              }
-              World.getWorld().broadcast("- &a" + msg);
-              World.getWorld()
-                  .broadcast(
-                      "- &3Did you like the map you just played ("
-                          + currentMap
-                          + ")? Say /yes or /no followed by a reason (optional) to vote!");
-              new Thread(
-                  new Runnable() {
-                    public void run() {
-                      for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-                        try {
-                          new SavePersistenceRequest(p).perform();
-                        } catch (IOException ex) {
-                        }
-                      }
-                    }
-                  })
-                  .start();
-              Thread.sleep(40 * 1000);
-              Level newLevel = MapController.getMostVotedForMap();
-              ready = false;
-              String rating = MapRatings.getRating(currentMap);
-              World.getWorld().broadcast("- &3This map's approval rating is now " + rating);
-              World.getWorld()
-                  .broadcast("- &3See the ratings at http://jacobsc.tf/mapratings.");
-              World.getWorld()
-                  .broadcast(
-                      "- &e" + newLevel.id + " had the most votes. Starting new " + "game!");
-              Thread.sleep(7 * 1000);
-              startGame(newLevel);
-            } catch (Exception ex) {
-              voting = false;
-              Server.log(ex);
-            }
+        String winner = null;
+        int winnerID = -2;
+        if (redPoints > bluePoints) {
+          winner = "red";
+          winnerID = 0;
+        } else if (bluePoints > redPoints) {
+          winner = "blue";
+          winnerID = 1;
+        }
+        if (winner == null) {
+          World.getWorld().broadcast("- &6The game ended in a tie!");
+        } else {
+          World.getWorld()
+              .broadcast("- &6The game has ended; the " + winner + " team wins!");
+        }
+        World.getWorld()
+            .broadcast(
+                "- &6Red had "
+                    + redPoints
+                    + " points, blue had "
+                    + bluePoints
+                    + ".");
+
+        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+          if (p.team != -1) {
+            p.incIntAttribute("games");
+          }
+          if (p.team == winnerID) {
+            p.incIntAttribute("wins");
           }
-        })
-        .start();
+          p.hasVoted = false;
+          p.hasNominated = false;
+        }
+        List<Player> top = TopPlayersKt.topPlayers(World.getWorld(), 3);
+        World.getWorld().broadcast("- &3Top players for the round:");
+        if (top.isEmpty()) {
+          World.getWorld().broadcast("- &3Nobody");
+        }
+        for (Player p : top) {
+          World.getWorld()
+              .broadcast("- &2" + p.getName() + " - " + p.currentRoundPointsEarned);
+        }
+        ReplayManager.getInstance().roundEnded();
+        for (Player player : World.getWorld().getPlayerList().getPlayers()) {
+          player.team = -1;
+          player.sendToTeamSpawn();
+        }
+        rtvVotes = 0;
+        rtvYesPlayers.clear();
+        rtvNoPlayers.clear();
+        if (GameSettings.TOURNAMENT.get()) {
+          return;
+        }
+        World.getWorld().broadcast("- &aMap voting is now open for 40 seconds...");
+        World.getWorld().broadcast("- &aSay /vote [mapname] to select the next map!");
+        MapController.resetVotes();
+        voting = true;
+        int count = nominatedMaps.size();
+        if (count > 3) {
+          count = 3;
+        }
+        ArrayList<String> mapNames =
+            MapController.getRandomMapNames(
+                3 - count, new String[]{currentMap, previousMap});
+        mapNames.addAll(nominatedMaps);
+        MapController.preload(mapNames);
+        String msg = "";
+        for (String map : mapNames) {
+          msg += map + ", ";
+        }
+        World.getWorld().broadcast("- &a" + msg);
+        World.getWorld()
+            .broadcast(
+                "- &3Did you like the map you just played ("
+                    + currentMap
+                    + ")? Say /yes or /no followed by a reason (optional) to vote!");
+        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
+          SavedGameManager.getSavedGameManager()
+              .queuePersistenceRequest(new SavePersistenceRequest(p));
+        }
+        SimulationTask.getSimulationTask().schedule(this::endVote, 40 * 1000);
+      } catch (Exception ex) {
+        voting = false;
+        Server.log(ex);
+      }
+    });
+  }
+
+  /** Loads the map with the most votes in the background. */
+  private void endVote() {
+    MapController.getMostVotedForMap()
+        .thenAccept(level -> GameLoop.getGameLoop().submit(() -> announceMap(level)));
+  }
+
+  /** Announces the next map once it has loaded, and starts a game on it a few seconds later. */
+  private void announceMap(Level newLevel) {
+    try {
+      if (newLevel == null) {
+        voting = false;
+        return;
+      }
+      ready = false;
+      String rating = MapRatings.getRating(currentMap);
+      World.getWorld().broadcast("- &3This map's approval rating is now " + rating);
+      World.getWorld()
+          .broadcast("- &3See the ratings at http://jacobsc.tf/mapratings.");
+      World.getWorld()
+          .broadcast(
+              "- &e" + newLevel.id + " had the most votes. Starting new " + "game!");
+      SimulationTask.getSimulationTask().schedule(() -> startGame(newLevel), 7 * 1000);
+    } catch (Exception ex) {
+      voting = false;
+      Server.log(ex);
+    }
   }
 
   @Override
@@ -408,7 +419,7 @@ public class LaserTagGameMode extends GameMode {
         }
       } else if (level.isSolid(x, y, z)
           && (!player.isOp() || !player.placeSolid)
-          && !GameSettings.getBoolean("Chaos")) {
+          && !GameSettings.CHAOS.get()) {
         player.getActionSender().sendBlock(x, y, z, (short) level.getBlock(x, y, z));
       } else if ((type == BlockConstants.LAVA
           || type == BlockConstants.WATER
@@ -476,13 +487,12 @@ public class LaserTagGameMode extends GameMode {
     synchronized (entities) {
       entities.add(entity);
     }
-    for (Player player : World.getWorld().getPlayerList().getPlayers(true)) {
-      player.getActionSender().sendExtSpawn(
-          (byte) entity.id, "", "",
-          (int) (x * 32), (int) (y * 32), (int) (z * 32),
-          (byte) 0, (byte) 0);
-      player.getActionSender().sendChangeModel((byte) entity.id, "" + block);
-    }
+    World.getWorld().broadcast(Recipients.ALL,
+        ActionSender.extSpawnPacket(
+            (byte) entity.id, "", "",
+            (int) (x * 32), (int) (y * 32), (int) (z * 32),
+            (byte) 0, (byte) 0),
+        ActionSender.changeModelPacket((byte) entity.id, "" + block));
   }
 
   public void step() {
@@ -508,15 +518,13 @@ public class LaserTagGameMode extends GameMode {
           entities.remove(i);
           EntityID.release(e.id);
           i--;
-          for (Player p : World.getWorld().getPlayerList().getPlayers(true)) {
-            p.getActionSender().sendRemoveEntity(e.id);
-          }
+          World.getWorld().broadcast(Recipients.ALL, ActionSender.removeEntityPacket(e.id));
         }
       }
     }
 
     long elapsedTime = System.currentTimeMillis() - World.getWorld().getGameMode().gameStartTime;
-    if (elapsedTime > GameSettings.getInt("TimeLimit") * 60 * 1000) {
+    if (elapsedTime > GameSettings.TIME_LIMIT.get() * 60 * 1000) {
       gameStartTime = System.currentTimeMillis();
       endGame();
     }
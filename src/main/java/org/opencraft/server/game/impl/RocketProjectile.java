@@ -0,0 +1,85 @@
+package org.opencraft.server.game.impl;
+
+import org.opencraft.server.Constants;
+import org.opencraft.server.Server;
+import org.opencraft.server.game.Projectile;
+import org.opencraft.server.model.BlockBatch;
+import org.opencraft.server.model.BlockConstants;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.model.Position;
+import org.opencraft.server.model.Rotation;
+import org.opencraft.server.model.World;
+
+/** A rocket, which flies in a straight line until it hits something and explodes. */
+public class RocketProjectile extends Projectile {
+
+  /** Rockets move a block every simulation tick. */
+  private static final int PERIOD = 1;
+
+  /** The furthest a rocket flies, in blocks. */
+  private static final int RANGE = 128;
+
+  private final Player player;
+  private final double vx, vy, vz;
+  private double x, y, z;
+  private double lastX, lastY, lastZ;
+  private int steps;
+
+  /**
+   * Creates a rocket fired by a player, from where they are and in the direction they are looking.
+   *
+   * @param player The player.
+   */
+  public RocketProjectile(Player player) {
+    super(PERIOD);
+    this.player = player;
+    Position pos = player.getPosition().toBlockPos();
+    player.rocketStartPosition = pos;
+    Rotation r = player.getRotation();
+
+    double heading =
+        Math.toRadians((int) (Server.getUnsigned(r.getRotation()) * ((float) 360 / 256) - 90));
+    double pitch =
+        Math.toRadians((int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
+
+    vx = Math.cos(heading) * Math.cos(pitch);
+    vy = Math.sin(heading) * Math.cos(pitch);
+    vz = Math.sin(pitch);
+    x = lastX = pos.getX();
+    y = lastY = pos.getY();
+    z = lastZ = pos.getZ();
+  }
+
+  @Override
+  protected boolean step(BlockBatch blocks) {
+    x += vx;
+    y += vy;
+    z += vz;
+    int bx = (int) Math.round(x);
+    int by = (int) Math.round(y);
+    int bz = (int) Math.round(z);
+    int lx = (int) Math.round(lastX);
+    int ly = (int) Math.round(lastY);
+    int lz = (int) Math.round(lastZ);
+
+    int block = blocks.getBlock(bx, by, bz);
+    if (block != BlockConstants.AIR
+        && block != Constants.BLOCK_ROCKET
+        && block != Constants.BLOCK_INVISIBLE) {
+      blocks.after(
+          () ->
+              ((CTFGameMode) World.getWorld().getGameMode())
+                  .explodeTNT(
+                      player, blocks.getLevel(), lx, ly, lz, 2, true, false, false, true,
+                      "rocket"));
+      return false;
+    }
+    blocks.setBlock(lx, ly, lz, block);
+    blocks.setBlock(bx, by, bz, Constants.BLOCK_ROCKET);
+
+    lastX = x;
+    lastY = y;
+    lastZ = z;
+    return ++steps < RANGE;
+  }
+}
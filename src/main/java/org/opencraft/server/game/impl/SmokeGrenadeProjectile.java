@@ -0,0 +1,50 @@
+package org.opencraft.server.game.impl;
+
+import org.opencraft.server.model.BlockBatch;
+import org.opencraft.server.model.BlockConstants;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.model.SmokeZone;
+import org.opencraft.server.model.World;
+import org.opencraft.server.task.impl.SimulationTask;
+
+/** A smoke grenade, which leaves a smoke zone where it lands that thins out and then clears. */
+public class SmokeGrenadeProjectile extends GrenadeProjectile {
+
+  /** The densities the smoke goes through before it clears. */
+  private static final int[] DENSITIES = {255, 191, 127, 64};
+
+  public SmokeGrenadeProjectile(Player player) {
+    super(player);
+  }
+
+  @Override
+  protected int getTrail() {
+    return BlockConstants.CLOTH_DARKGRAY;
+  }
+
+  @Override
+  protected boolean isTrail(int block) {
+    return block == BlockConstants.CLOTH_DARKGRAY;
+  }
+
+  @Override
+  protected void land(BlockBatch blocks, int x, int y, int z, int lastX, int lastY, int lastZ,
+      int lastBlock) {
+    int zones = World.getWorld().getNumberOfSmokeZones();
+    int id = zones + 1;
+    int radius = GameSettings.SMOKE_GRENADE_RADIUS.get();
+    int delay = GameSettings.SMOKE_GRENADE_DELAY.get();
+    final SmokeZone zone =
+        new SmokeZone(x - radius, y - radius, z, x + radius, y + radius, z + radius, id);
+
+    World.getWorld().addSmokeZone(zone);
+    zone.updateDensity(DENSITIES[0]);
+    SimulationTask simulation = SimulationTask.getSimulationTask();
+    for (int i = 1; i < DENSITIES.length; i++) {
+      final int density = DENSITIES[i];
+      simulation.schedule(() -> zone.updateDensity(density), (long) delay * i);
+    }
+    simulation.schedule(
+        () -> World.getWorld().removeSmokeZone(zone), (long) delay * DENSITIES.length);
+  }
+}
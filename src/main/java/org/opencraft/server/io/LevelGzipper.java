@@ -37,19 +37,28 @@
 package org.opencraft.server.io;
 
 import org.opencraft.server.Constants;
+import org.opencraft.server.Server;
 import org.opencraft.server.model.CustomBlockDefinition;
 import org.opencraft.server.model.Level;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
-import org.opencraft.server.net.ActionSender;
 import org.opencraft.server.net.FakePlayerBase;
 import org.opencraft.server.net.MinecraftSession;
-import org.opencraft.server.replay.ReplayThread;
+import org.opencraft.server.net.PersistingPacketManager;
+import org.opencraft.server.net.packet.EncodedPacket;
+import org.opencraft.server.net.packet.PacketBuilder;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.task.GameLoop;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A utility class for gzipping levels.
@@ -59,7 +68,23 @@ import java.util.concurrent.Executors;
 public final class LevelGzipper {
 
   private static final LevelGzipper INSTANCE = new LevelGzipper();
+  /** The number of compressed arrays to keep encoded chunks for. */
+  private static final int CHUNK_CACHE_SIZE = 4;
   private ExecutorService service = Executors.newCachedThreadPool();
+  /** The encoded chunks of recently sent levels, keyed by the compressed array they hold. */
+  private final Map<byte[], List<EncodedPacket>> chunkCache =
+      new LinkedHashMap<byte[], List<EncodedPacket>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<byte[], List<EncodedPacket>> eldest) {
+          return size() > CHUNK_CACHE_SIZE;
+        }
+      };
+  /** The number of level sends. */
+  private final AtomicLong levelsSent = new AtomicLong();
+  /** The time spent compressing levels for sends, in nanoseconds. */
+  private final AtomicLong compressionTime = new AtomicLong();
+  /** The number of compressed level bytes sent. */
+  private final AtomicLong bytesSent = new AtomicLong();
 
   private static final int[] DEFAULT_RESTRICTED_BLOCKS = new int[]{
       7, 8, 9, 10, 11, 12, Constants.HIT_RED, Constants.HIT_BLUE, Constants.LASER_RED, Constants.LASER_BLUE, 60 };
@@ -83,6 +108,53 @@ public final class LevelGzipper {
               session.getPlayer().isOp());
       session.getActionSender().sendHackControl(true);
     }
+    sendLevelInit(session, level);
+    service.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            long start = System.nanoTime();
+            byte[] blocks0 = level.getCompressedBlocks0();
+            byte[] blocks1 = level.getCompressedBlocks1();
+            long time = System.nanoTime() - start;
+            recordSend(session, level, time, blocks0.length + blocks1.length);
+            session.getActionSender().sendLevelBlocks(getChunks(blocks0, false));
+            session.getActionSender().sendLevelBlocks(getChunks(blocks1, true));
+
+            sendEnvironment(session);
+            session.getActionSender().sendLevelFinish();
+            sendBlockSettings(session, level);
+
+            // the client has forgotten every entity, so the loop, which owns them, starts again
+            Player player = session.getPlayer();
+            GameLoop.getGameLoop()
+                .submit(
+                    () -> {
+                      player.getLocalEntities().clear();
+                      player.getTracker().clear();
+                    });
+          }
+        });
+  }
+
+  /**
+   * Sends a level to a session all at once, on the calling thread. Unlike {@link #gzipLevel}, the
+   * session's login isn't finished afterwards, so this is for sessions which only collect the
+   * packets, such as replay keyframes, and should be called from the game loop.
+   *
+   * @param session The session.
+   * @param level The level.
+   */
+  public void writeLevel(MinecraftSession session, Level level) {
+    sendLevelInit(session, level);
+    session.getActionSender().sendLevelBlocks(getChunks(level.getCompressedBlocks0(), false));
+    session.getActionSender().sendLevelBlocks(getChunks(level.getCompressedBlocks1(), true));
+    sendEnvironment(session);
+    session.getActionSender().sendLevelFinish(level);
+    sendBlockSettings(session, level);
+  }
+
+  private static void sendLevelInit(MinecraftSession session, Level level) {
     final int width = level.getWidth();
     final int height = level.getHeight();
     final int depth = level.getDepth();
@@ -96,94 +168,143 @@ public final class LevelGzipper {
       session.getActionSender().sendDefineBlockExt(blockDef);
       session.getActionSender().sendInventoryOrder(blockDef.id, blockDef.inventoryOrder);
     }
-    service.submit(
-        new Runnable() {
-          @Override
-          public void run() {
-            try {
-              sendBlocks(level.getCompressedBlocks0(), session.getActionSender(), false);
-              sendBlocks(level.getCompressedBlocks1(), session.getActionSender(), true);
-
-              if (session.isExtensionSupported("EnvMapAspect", 1))
-                session.getActionSender().sendMapAspect();
-              if (session.isExtensionSupported("EnvColors"))
-                session.getActionSender().sendMapColors();
-              session.getActionSender().sendLevelFinish();
-
-              for (int id : level.usedSolidTypes) {
-                session.getActionSender().sendBlockPermissions(id, false, false);
-              }
-
-              for (int id : level.usedBreakableTypes) {
-                session.getActionSender().sendBlockPermissions(id, true, true);
-              }
-
-              for (int type : DEFAULT_RESTRICTED_BLOCKS) {
-                session.getActionSender().sendBlockPermissions(type, false, false);
-              }
-              session.getActionSender().sendBlockPermissions(Constants.BLOCK_RED_FLAG, false, true);
-              session.getActionSender().sendBlockPermissions(Constants.BLOCK_BLUE_FLAG, false, true);
-              session.getActionSender().sendBlockPermissions(Constants.BLOCK_MINE_RED, false, true);
-              session.getActionSender().sendBlockPermissions(Constants.BLOCK_MINE_BLUE, false, true);
-
-              session.getActionSender().sendDefineEffect(
-                  Constants.EFFECT_TNT,
-                  0,
-                  8,
-                  0,
-                  8,
-                  255,
-                  255,
-                  255,
-                  4,
-                  100,
-                  4,
-                  1,
-                  24,
-                  10000,
-                  3 * 10000,
-                  1 * 10000,
-                  2000,
-                  0b00000000,
-                  1
-              );
-              session.getActionSender().sendDefineEffect(
-                  Constants.EFFECT_TNT_2,
-                  0,
-                  56,
-                  8,
-                  64,
-                  255,
-                  255,
-                  255,
-                  3,
-                  5,
-                  32,
-                  0,
-                  32,
-                  200,
-                  5 * 100,
-                  1 * 5000,
-                  10000,
-                  0b00000000,
-                  1
-              );
-
-              session.getPlayer().getLocalEntities().clear();
-            } catch (IOException ex) {
-              session.getActionSender().sendLoginFailure("Failed to gzip level. Please try again.");
-            }
-          }
-        });
   }
 
-  private static void sendBlocks(byte[] bytes, ActionSender sender, boolean isHighBytes) {
+  private static void sendEnvironment(MinecraftSession session) {
+    if (session.isExtensionSupported("EnvMapAspect", 1))
+      session.getActionSender().sendMapAspect();
+    if (session.isExtensionSupported("EnvColors"))
+      session.getActionSender().sendMapColors();
+  }
+
+  private static void sendBlockSettings(MinecraftSession session, Level level) {
+    for (int id : level.usedSolidTypes) {
+      session.getActionSender().sendBlockPermissions(id, false, false);
+    }
+
+    for (int id : level.usedBreakableTypes) {
+      session.getActionSender().sendBlockPermissions(id, true, true);
+    }
+
+    for (int type : DEFAULT_RESTRICTED_BLOCKS) {
+      session.getActionSender().sendBlockPermissions(type, false, false);
+    }
+    session.getActionSender().sendBlockPermissions(Constants.BLOCK_RED_FLAG, false, true);
+    session.getActionSender().sendBlockPermissions(Constants.BLOCK_BLUE_FLAG, false, true);
+    session.getActionSender().sendBlockPermissions(Constants.BLOCK_MINE_RED, false, true);
+    session.getActionSender().sendBlockPermissions(Constants.BLOCK_MINE_BLUE, false, true);
+
+    session.getActionSender().sendDefineEffect(
+        Constants.EFFECT_TNT,
+        0,
+        8,
+        0,
+        8,
+        255,
+        255,
+        255,
+        4,
+        100,
+        4,
+        1,
+        24,
+        10000,
+        3 * 10000,
+        1 * 10000,
+        2000,
+        0b00000000,
+        1
+    );
+    session.getActionSender().sendDefineEffect(
+        Constants.EFFECT_TNT_2,
+        0,
+        56,
+        8,
+        64,
+        255,
+        255,
+        255,
+        3,
+        5,
+        32,
+        0,
+        32,
+        200,
+        5 * 100,
+        1 * 5000,
+        10000,
+        0b00000000,
+        1
+    );
+  }
+
+  /**
+   * Gets the number of level sends since the server started.
+   *
+   * @return The number of sends.
+   */
+  public long getLevelsSent() {
+    return levelsSent.get();
+  }
+
+  /**
+   * Gets the total time spent compressing levels for sends.
+   *
+   * @return The time in nanoseconds.
+   */
+  public long getCompressionTime() {
+    return compressionTime.get();
+  }
+
+  /**
+   * Gets the total number of compressed level bytes sent.
+   *
+   * @return The number of bytes.
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  private void recordSend(MinecraftSession session, Level level, long time, int bytes) {
+    levelsSent.incrementAndGet();
+    compressionTime.addAndGet(time);
+    bytesSent.addAndGet(bytes);
+    if (Server.isDebug()) {
+      Server.d("Sending " + level.id + " to " + session.getPlayer().getName() + ": " + bytes
+          + " bytes, compressed in " + (time / 1000) / 1000.0 + "ms");
+    }
+  }
+
+  /**
+   * Gets the level_block packets for a compressed level. The packets are encoded once for each
+   * compressed array and then shared by every session the level is sent to.
+   *
+   * @param bytes The compressed blocks.
+   * @param isHighBytes Whether these are the high bytes of the block types.
+   * @return The encoded chunk packets.
+   */
+  private synchronized List<EncodedPacket> getChunks(byte[] bytes, boolean isHighBytes) {
+    List<EncodedPacket> chunks = chunkCache.get(bytes);
+    if (chunks == null) {
+      chunks = encodeChunks(bytes, isHighBytes);
+      chunkCache.put(bytes, chunks);
+    }
+    return chunks;
+  }
+
+  private static List<EncodedPacket> encodeChunks(byte[] bytes, boolean isHighBytes) {
+    PacketDefinition definition = PersistingPacketManager.getPacketManager().getOutgoingPacket(3);
+    List<EncodedPacket> chunks = new ArrayList<>(bytes.length / 1024 + 1);
     int i = 0;
     while (i < bytes.length) {
-      int len = Math.min(1024, bytes.length - 1);
-      byte[] chunk = Arrays.copyOfRange(bytes, i, i + len);
-      sender.sendLevelBlock(len, chunk, isHighBytes ? 1 : 0);
+      int len = Math.min(1024, bytes.length - i);
+      PacketBuilder bldr = new PacketBuilder(definition);
+      bldr.putShort("chunk_length", len);
+      bldr.putByteArray("chunk_data", Arrays.copyOfRange(bytes, i, i + len));
+      bldr.putByte("percent", isHighBytes ? 1 : 0);
+      chunks.add(new EncodedPacket(definition, bldr.toPacket().toByteArray()));
       i += len;
     }
+    return Collections.unmodifiableList(chunks);
   }
 }
@@ -0,0 +1,185 @@
+/*
+ * Jacob_'s Capture the Flag for Minecraft Classic and ClassiCube
+ * Copyright (c) 2010-2014 Jacob Morgan
+ * Based on OpenCraft v0.2
+ *
+ * OpenCraft License
+ *
+ * Copyright (c) 2009 Graham Edgecombe, S�ren Enevoldsen and Brett Russell.
+ * All rights reserved.
+ *
+ * Distribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Distributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *
+ *     * Distributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *
+ *     * Neither the name of the OpenCraft nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.opencraft.server.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps a raw deflate stream of a byte array up to date as the array changes. The array is split
+ * into fixed size regions which are each compressed on their own and ended with a sync flush, so
+ * every region's output is byte aligned and does not depend on the regions before it. The
+ * regions can then be spliced together into one stream, and only regions which changed since the
+ * last call need to be compressed again.
+ */
+public final class RegionDeflater {
+
+  /** The number of source bytes in each independently compressed region. */
+  public static final int REGION_SIZE = 64 * 1024;
+
+  /** An empty, final, fixed Huffman block which terminates the spliced stream. */
+  private static final byte[] FINAL_BLOCK = new byte[]{0x03, 0x00};
+
+  /** The array being compressed. */
+  private final byte[] source;
+  /** The compressed output of each region. */
+  private final byte[][] regions;
+  /** Set to 1 for each region which changed since it was last compressed. */
+  private final AtomicIntegerArray dirty;
+  /** The spliced stream, or null if it needs to be rebuilt. */
+  private byte[] compressed;
+  /** The number of regions compressed by the last call to {@link #getCompressed()}. */
+  private int lastRegionsCompressed;
+  /** The time taken by the last call to {@link #getCompressed()}, in nanoseconds. */
+  private long lastCompressionTime;
+
+  /**
+   * Creates the deflater. The whole array is compressed on the first call to
+   * {@link #getCompressed()}.
+   *
+   * @param source The array to compress. Changes to it must be reported to
+   *     {@link #markDirty(int)}.
+   */
+  public RegionDeflater(byte[] source) {
+    this.source = source;
+    int count = (source.length + REGION_SIZE - 1) / REGION_SIZE;
+    this.regions = new byte[count][];
+    this.dirty = new AtomicIntegerArray(count);
+    for (int i = 0; i < count; i++) {
+      dirty.set(i, 1);
+    }
+  }
+
+  /**
+   * Marks the region containing a byte as changed. This must be called after the byte is
+   * written.
+   *
+   * @param index The index of the changed byte.
+   */
+  public void markDirty(int index) {
+    dirty.lazySet(index / REGION_SIZE, 1);
+  }
+
+  /**
+   * Gets the raw deflate stream of the array, compressing any regions which changed. The
+   * returned array is shared and must not be modified.
+   *
+   * @return The compressed bytes.
+   */
+  public synchronized byte[] getCompressed() {
+    long start = System.nanoTime();
+    int count = 0;
+    Deflater deflater = null;
+    for (int i = 0; i < regions.length; i++) {
+      if (dirty.getAndSet(i, 0) == 1) {
+        if (deflater == null) {
+          deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        } else {
+          deflater.reset();
+        }
+        regions[i] = deflateRegion(deflater, i);
+        count++;
+      }
+    }
+    if (deflater != null) {
+      deflater.end();
+    }
+    if (count > 0 || compressed == null) {
+      compressed = splice();
+    }
+    lastRegionsCompressed = count;
+    lastCompressionTime = System.nanoTime() - start;
+    return compressed;
+  }
+
+  /**
+   * Gets the number of regions compressed by the last call to {@link #getCompressed()}.
+   *
+   * @return The number of regions.
+   */
+  public synchronized int getLastRegionsCompressed() {
+    return lastRegionsCompressed;
+  }
+
+  /**
+   * Gets the time taken by the last call to {@link #getCompressed()}.
+   *
+   * @return The time in nanoseconds.
+   */
+  public synchronized long getLastCompressionTime() {
+    return lastCompressionTime;
+  }
+
+  /**
+   * Gets the total number of regions.
+   *
+   * @return The number of regions.
+   */
+  public int getRegionCount() {
+    return regions.length;
+  }
+
+  private byte[] deflateRegion(Deflater deflater, int region) {
+    int offset = region * REGION_SIZE;
+    int length = Math.min(REGION_SIZE, source.length - offset);
+    deflater.setInput(source, offset, length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length / 8);
+    byte[] buffer = new byte[8192];
+    int written;
+    do {
+      written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+      out.write(buffer, 0, written);
+    } while (written == buffer.length);
+    return out.toByteArray();
+  }
+
+  private byte[] splice() {
+    int length = FINAL_BLOCK.length;
+    for (byte[] region : regions) {
+      length += region.length;
+    }
+    byte[] stream = new byte[length];
+    int offset = 0;
+    for (byte[] region : regions) {
+      System.arraycopy(region, 0, stream, offset, region.length);
+      offset += region.length;
+    }
+    System.arraycopy(FINAL_BLOCK, 0, stream, offset, FINAL_BLOCK.length);
+    return stream;
+  }
+}
@@ -0,0 +1,56 @@
+package org.opencraft.server.log;
+
+/**
+ * The last few lines logged, for the web console, which polls for lines newer than the last ones
+ * it saw.
+ */
+public final class ConsoleTail {
+
+  private final long[] times;
+  private final String[] lines;
+
+  /** The total number of lines added. */
+  private long count;
+
+  /**
+   * Creates the tail.
+   *
+   * @param capacity The number of lines kept.
+   */
+  public ConsoleTail(int capacity) {
+    this.times = new long[capacity];
+    this.lines = new String[capacity];
+  }
+
+  /**
+   * Adds a line.
+   *
+   * @param time When it was logged, in milliseconds since the epoch.
+   * @param line The line.
+   */
+  public synchronized void add(long time, String line) {
+    int index = (int) (count % lines.length);
+    times[index] = time;
+    lines[index] = line;
+    count++;
+  }
+
+  /**
+   * Gets the lines logged since a time.
+   *
+   * @param minTime The time, in milliseconds since the epoch.
+   * @return The lines, newest first, each followed by a newline.
+   */
+  public synchronized String since(long minTime) {
+    StringBuilder text = new StringBuilder();
+    long oldest = Math.max(0, count - lines.length);
+    for (long i = count - 1; i >= oldest; i--) {
+      int index = (int) (i % lines.length);
+      if (times[index] < minTime) {
+        break;
+      }
+      text.append(lines[index]).append('\n');
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,171 @@
+package org.opencraft.server.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The server log. Logging a line only adds it to a ring buffer, and a background thread formats
+ * it, prints it to the console, writes it to <code>server.log</code> and keeps it for the web
+ * console, so threads which log never wait for the console or the disk.
+ */
+public final class Logger implements Runnable {
+
+  /** The number of lines which can be waiting to be written. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** The number of lines kept for the web console. */
+  private static final int TAIL_SIZE = 200;
+
+  /** The size the log file is rolled at. */
+  private static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+  /** The number of rolled log files kept. */
+  private static final int MAX_ROLLED_FILES = 30;
+
+  /** How long the writer sleeps when there is nothing to write, in milliseconds. */
+  private static final long IDLE = 20;
+
+  private static final Logger INSTANCE = new Logger();
+
+  /** A line waiting to be written. */
+  private static final class Entry {
+    final long time;
+    final boolean debug;
+    final String message;
+
+    Entry(long time, boolean debug, String message) {
+      this.time = time;
+      this.debug = debug;
+      this.message = message;
+    }
+  }
+
+  private final RingBuffer<Entry> buffer = new RingBuffer<>(BUFFER_SIZE);
+  private final ConsoleTail tail = new ConsoleTail(TAIL_SIZE);
+  private final Thread thread = new Thread(this, "Logger");
+  private RollingLogFile file;
+
+  /** Whether debug lines are logged. */
+  private static volatile boolean debug;
+
+  /**
+   * Gets the logger instance.
+   *
+   * @return The logger instance.
+   */
+  public static Logger getLogger() {
+    return INSTANCE;
+  }
+
+  private Logger() {
+    try {
+      file = new RollingLogFile(new File("./server.log"), MAX_FILE_SIZE, MAX_ROLLED_FILES);
+    } catch (IOException ex) {
+      System.err.println("Could not open server.log, only logging to the console");
+      ex.printStackTrace();
+    }
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "LoggerShutdown"));
+  }
+
+  /**
+   * Checks if debug lines are logged. Callers building an expensive debug line should check this
+   * first.
+   *
+   * @return <code>true</code> if they are.
+   */
+  public static boolean isDebug() {
+    return debug;
+  }
+
+  public static void setDebug(boolean enabled) {
+    debug = enabled;
+  }
+
+  /**
+   * Logs a line.
+   *
+   * @param message The line.
+   */
+  public void log(String message) {
+    buffer.offer(new Entry(System.currentTimeMillis(), false, message));
+  }
+
+  /**
+   * Logs a debug line, if debug lines are logged.
+   *
+   * @param message The line.
+   */
+  public void debug(String message) {
+    if (debug) {
+      buffer.offer(new Entry(System.currentTimeMillis(), true, message));
+    }
+  }
+
+  /**
+   * Gets the lines logged since a time, for the web console. Debug lines aren't included.
+   *
+   * @param minTime The time, in milliseconds since the epoch.
+   * @return The lines, newest first.
+   */
+  public String getConsoleMessages(long minTime) {
+    return tail.since(minTime);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      if (drain() == 0) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE));
+      }
+    }
+  }
+
+  /**
+   * Writes every waiting line.
+   *
+   * @return The number of lines written.
+   */
+  private synchronized int drain() {
+    int written = 0;
+    long dropped = buffer.takeDropped();
+    if (dropped > 0) {
+      write(new Entry(System.currentTimeMillis(), false, "[W] " + dropped + " log lines dropped"));
+    }
+    Entry entry;
+    while ((entry = buffer.poll()) != null) {
+      write(entry);
+      written++;
+    }
+    if (written > 0 && file != null) {
+      try {
+        file.flush();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+    }
+    return written;
+  }
+
+  private void write(Entry entry) {
+    String text =
+        "["
+            + Timestamps.format(entry.time)
+            + (entry.debug ? " DEBUG] " : "] ")
+            + entry.message;
+    System.out.println(text);
+    if (!entry.debug) {
+      tail.add(entry.time, text);
+    }
+    if (file != null) {
+      try {
+        file.write(text);
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+}
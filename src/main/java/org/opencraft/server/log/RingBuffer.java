@@ -0,0 +1,86 @@
+package org.opencraft.server.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue which any number of threads can add to without locking, and one thread takes
+ * from. When it is full, new items are dropped rather than making the thread adding them wait.
+ *
+ * @param <T> The type of item.
+ */
+public final class RingBuffer<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+
+  /** The sequence number of the next item to be added. */
+  private final AtomicLong tail = new AtomicLong();
+
+  /** The sequence number of the next item to be taken. Only written by the taking thread. */
+  private volatile long head;
+
+  /** The number of items which have been dropped. */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Creates the ring buffer.
+   *
+   * @param capacity The most items it holds, which must be a power of two.
+   */
+  public RingBuffer(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two");
+    }
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Adds an item.
+   *
+   * @param item The item.
+   * @return <code>true</code> if it was added, <code>false</code> if the buffer was full.
+   */
+  public boolean offer(T item) {
+    while (true) {
+      long t = tail.get();
+      if (t - head > mask) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (tail.compareAndSet(t, t + 1)) {
+        // the slot was emptied before head moved past it, so it is free
+        slots.lazySet((int) t & mask, item);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Takes the oldest item. Only one thread may take items.
+   *
+   * @return The item, or <code>null</code> if there isn't one yet.
+   */
+  public T poll() {
+    long h = head;
+    int index = (int) h & mask;
+    T item = slots.get(index);
+    if (item == null) {
+      // either empty, or the next item has been claimed but not stored yet
+      return null;
+    }
+    slots.set(index, null);
+    head = h + 1;
+    return item;
+  }
+
+  /**
+   * Gets and resets the number of items dropped because the buffer was full.
+   *
+   * @return The number of items.
+   */
+  public long takeDropped() {
+    return dropped.getAndSet(0);
+  }
+}
@@ -0,0 +1,131 @@
+package org.opencraft.server.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * A log file which is moved aside when it gets too big or the day changes. The moved files are
+ * named after the day they were started, and only the newest few are kept.
+ */
+public final class RollingLogFile {
+
+  private final File file;
+  private final long maxSize;
+  private final int maxRolled;
+
+  private Writer writer;
+  private long size;
+  private LocalDate day;
+  /** The size the file is next rolled at, which is later than usual after a roll fails. */
+  private long rollAt;
+
+  /**
+   * Opens a log file, appending to it if it exists.
+   *
+   * @param file The file.
+   * @param maxSize The size it is rolled at, in bytes.
+   * @param maxRolled The number of rolled files kept.
+   * @throws IOException if an I/O error occurs.
+   */
+  public RollingLogFile(File file, long maxSize, int maxRolled) throws IOException {
+    this.file = file;
+    this.maxSize = maxSize;
+    this.maxRolled = maxRolled;
+    open();
+  }
+
+  private void open() throws IOException {
+    size = file.length();
+    day = file.exists() && size > 0 ? dayOf(file.lastModified()) : LocalDate.now();
+    rollAt = maxSize;
+    writer = append();
+  }
+
+  private Writer append() throws IOException {
+    return new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+  }
+
+  private static LocalDate dayOf(long millis) {
+    return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate();
+  }
+
+  /**
+   * Writes a line. It may not reach the file until the next flush.
+   *
+   * @param line The line.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void write(String line) throws IOException {
+    LocalDate today = LocalDate.now();
+    if (size >= rollAt || !today.equals(day)) {
+      roll();
+      day = today;
+    }
+    writer.write(line);
+    writer.write('\n');
+    // close enough for deciding when to roll, and log lines are almost always ASCII
+    size += line.length() + 1;
+  }
+
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  public void close() throws IOException {
+    writer.close();
+  }
+
+  /**
+   * Moves the file aside and starts a new one. If the file can't be moved, it is kept open and
+   * rolling is tried again once it has grown by another <code>maxSize</code>, or the next day.
+   */
+  private void roll() throws IOException {
+    writer.close();
+    if (size > 0) {
+      File directory = file.getAbsoluteFile().getParentFile();
+      String base = stem() + "-" + day;
+      File rolled = new File(directory, base + ".log");
+      for (int n = 2; rolled.exists(); n++) {
+        rolled = new File(directory, base + "-" + n + ".log");
+      }
+      if (!file.renameTo(rolled)) {
+        writer = append();
+        rollAt = size + maxSize;
+        day = LocalDate.now();
+        throw new IOException("Could not roll " + file + " to " + rolled);
+      }
+      deleteOldest();
+    }
+    open();
+  }
+
+  private void deleteOldest() {
+    String prefix = stem() + "-";
+    File directory = file.getAbsoluteFile().getParentFile();
+    File[] rolled =
+        directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".log"));
+    if (rolled == null || rolled.length <= maxRolled) {
+      return;
+    }
+    Arrays.sort(rolled, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (int i = 0; i < rolled.length - maxRolled; i++) {
+      rolled[i].delete();
+    }
+  }
+
+  /** Gets the file's name without <code>.log</code>. */
+  private String stem() {
+    String name = file.getName();
+    return name.endsWith(".log") ? name.substring(0, name.length() - 4) : name;
+  }
+}
@@ -0,0 +1,55 @@
+package org.opencraft.server.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats times as <code>yyyy-MM-dd HH:mm:ss</code>. Log lines come in bursts within the same
+ * second, so the last second formatted is kept and reused.
+ */
+public final class Timestamps {
+
+  private static final DateTimeFormatter FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+  /** A formatted second. */
+  private static final class Cached {
+    final long second;
+    final String text;
+
+    Cached(long second, String text) {
+      this.second = second;
+      this.text = text;
+    }
+  }
+
+  private static volatile Cached cached = new Cached(Long.MIN_VALUE, "");
+
+  private Timestamps() {}
+
+  /**
+   * Formats a time.
+   *
+   * @param millis The time, in milliseconds since the epoch.
+   * @return The formatted time.
+   */
+  public static String format(long millis) {
+    long second = Math.floorDiv(millis, 1000);
+    Cached c = cached;
+    if (c.second != second) {
+      c = new Cached(second, FORMAT.format(Instant.ofEpochSecond(second)));
+      cached = c;
+    }
+    return c.text;
+  }
+
+  /**
+   * Formats the current time.
+   *
+   * @return The formatted time.
+   */
+  public static String now() {
+    return format(System.currentTimeMillis());
+  }
+}
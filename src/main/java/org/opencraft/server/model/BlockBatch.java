@@ -0,0 +1,101 @@
+package org.opencraft.server.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects block changes so they can be applied with one {@link Level#setBlocks} call instead of a
+ * <code>setBlock</code> and a packet per block. When a block is changed twice only the last change
+ * is kept. Actions which depend on the changes having been made, such as explosions, can be queued
+ * to run after them.
+ */
+public final class BlockBatch {
+
+  /** The level the changes are made to. */
+  private final Level level;
+
+  /** The changes, by block index. */
+  private final Map<Integer, BlockChange> changes = new LinkedHashMap<>();
+
+  /** Actions to run after the changes have been applied. */
+  private final List<Runnable> after = new ArrayList<>();
+
+  /**
+   * Creates the batch.
+   *
+   * @param level The level.
+   */
+  public BlockBatch(Level level) {
+    this.level = level;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Queues a block change. Changes outside the level are ignored.
+   *
+   * @param x The x coordinate.
+   * @param y The y coordinate.
+   * @param z The z coordinate.
+   * @param type The type id.
+   */
+  public void setBlock(int x, int y, int z, int type) {
+    if (x < 0 || y < 0 || z < 0
+        || x >= level.getWidth() || y >= level.getHeight() || z >= level.getDepth()) {
+      return;
+    }
+    changes.put(level.index(x, y, z), new BlockChange(x, y, z, type));
+  }
+
+  /**
+   * Gets a block, taking any queued change to it into account.
+   *
+   * @return The type id.
+   */
+  public int getBlock(int x, int y, int z) {
+    if (x >= 0 && y >= 0 && z >= 0
+        && x < level.getWidth() && y < level.getHeight() && z < level.getDepth()) {
+      BlockChange change = changes.get(level.index(x, y, z));
+      if (change != null) {
+        return change.type;
+      }
+    }
+    return level.getBlock(x, y, z);
+  }
+
+  /**
+   * Queues an action to run once the changes have been applied.
+   *
+   * @param action The action.
+   */
+  public void after(Runnable action) {
+    after.add(action);
+  }
+
+  public boolean isEmpty() {
+    return changes.isEmpty() && after.isEmpty();
+  }
+
+  /** Applies the changes, runs the queued actions and empties the batch. */
+  public void flush() {
+    if (!changes.isEmpty()) {
+      ImmutableList<BlockChange> blocks = ImmutableList.copyOf(changes.values());
+      changes.clear();
+      level.setBlocks(blocks);
+    }
+    if (after.isEmpty()) {
+      return;
+    }
+    Runnable[] actions = after.toArray(new Runnable[0]);
+    after.clear();
+    for (Runnable action : actions) {
+      action.run();
+    }
+  }
+}
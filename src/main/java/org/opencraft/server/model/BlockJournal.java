@@ -0,0 +1,79 @@
+package org.opencraft.server.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The blocks changed since the changes were last sent, as flat block indices. Each block is
+ * recorded once however often it changes, along with what it was before its first change, so a
+ * block which is changed and then changed back isn't sent at all.
+ */
+public final class BlockJournal {
+
+  /** The blocks which have been recorded. */
+  private final BitSet recorded;
+
+  /** The recorded blocks, in the order they first changed. */
+  private int[] indices = new int[256];
+
+  /** What each recorded block was before it changed. */
+  private int[] before = new int[256];
+
+  private int count;
+
+  /**
+   * Creates the block journal.
+   *
+   * @param blocks The number of blocks in the level.
+   */
+  public BlockJournal(int blocks) {
+    this.recorded = new BitSet(blocks);
+  }
+
+  /**
+   * Records a block change.
+   *
+   * @param index The block index.
+   * @param formerBlock The type the block had before the change.
+   */
+  public synchronized void record(int index, int formerBlock) {
+    if (recorded.get(index)) {
+      return;
+    }
+    recorded.set(index);
+    if (count == indices.length) {
+      indices = Arrays.copyOf(indices, count * 2);
+      before = Arrays.copyOf(before, count * 2);
+    }
+    indices[count] = index;
+    before[count] = formerBlock;
+    count++;
+  }
+
+  public synchronized boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Takes the recorded changes and empties the journal. A block which ends up as it was before its
+   * first change, such as one which went from A to B and back to A, is dropped, however many times
+   * it changed in between.
+   *
+   * @param blocks Gets the current type of a block from its index.
+   * @return The indices of the blocks which are different to before they were first changed.
+   */
+  public synchronized int[] drain(IntUnaryOperator blocks) {
+    int[] changed = new int[count];
+    int n = 0;
+    for (int i = 0; i < count; i++) {
+      int index = indices[i];
+      recorded.clear(index);
+      if (blocks.applyAsInt(index) != before[i]) {
+        changed[n++] = index;
+      }
+    }
+    count = 0;
+    return n == changed.length ? changed : Arrays.copyOf(changed, n);
+  }
+}
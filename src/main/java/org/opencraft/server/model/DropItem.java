@@ -37,16 +37,28 @@
 package org.opencraft.server.model;
 
 import org.opencraft.server.Constants;
+import org.opencraft.server.game.Projectile;
+import org.opencraft.server.task.impl.SimulationTask;
+
+/** A crate of points which falls from the sky somewhere on the map. */
+public class DropItem extends Projectile {
+  /** Crates fall a block every 200 ms, which is 8 simulation ticks. */
+  private static final int PERIOD = 8;
 
-public class DropItem implements Runnable {
   public int points;
   public int posX;
   public int posY;
   public int posZ;
+  private int steps;
 
   public DropItem(int p) {
+    super(PERIOD);
     points = p;
-    new Thread(this).start();
+    posX = (int) (4 + Math.random() * (World.getWorld().getLevel().getWidth() - 8));
+    posY = (int) (4 + Math.random() * (World.getWorld().getLevel().getHeight() - 8));
+    posZ = World.getWorld().getLevel().ceiling - 8;
+    World.getWorld().getGameMode().addDropItem(this);
+    SimulationTask.getSimulationTask().launch(this);
     World.getWorld().broadcast("- &bA crate of points has been dropped somewhere on the map!");
   }
 
@@ -61,29 +73,22 @@ public class DropItem implements Runnable {
     }
   }
 
-  public void run() {
-    posX = (int) (4 + Math.random() * (World.getWorld().getLevel().getWidth() - 8));
-    posY = (int) (4 + Math.random() * (World.getWorld().getLevel().getHeight() - 8));
-    posZ = World.getWorld().getLevel().ceiling - 8;
-    World.getWorld().getGameMode().addDropItem(this);
+  @Override
+  protected boolean step(BlockBatch blocks) {
     boolean done = false;
-    for (int i = 1; i < 1000 && !done; i++) {
-      if (World.getWorld().getLevel().getBlock(posX, posY, posZ) != 7)
-        World.getWorld().getLevel().setBlock(posX, posY, posZ, 0);
-      posZ--;
-      if (World.getWorld().getLevel().getBlock(posX, posY, posZ) != 0
-              && World.getWorld().getLevel().getBlock(posX, posY, posZ) != 11
-          || posZ < 0) {
-        done = true;
-        posZ++;
-        World.getWorld().getLevel().setBlock(posX, posY, posZ, Constants.BLOCK_CRATE);
-      } else {
-        World.getWorld().getLevel().setBlock(posX, posY, posZ, Constants.BLOCK_CRATE);
-      }
-      try {
-        Thread.sleep(200);
-      } catch (InterruptedException ex) {
-      }
+    if (blocks.getBlock(posX, posY, posZ) != 7)
+      blocks.setBlock(posX, posY, posZ, 0);
+    posZ--;
+    if (blocks.getBlock(posX, posY, posZ) != 0
+            && blocks.getBlock(posX, posY, posZ) != 11
+        || posZ < 0) {
+      done = true;
+      posZ++;
+      blocks.setBlock(posX, posY, posZ, Constants.BLOCK_CRATE);
+    } else {
+      blocks.setBlock(posX, posY, posZ, Constants.BLOCK_CRATE);
     }
+    World.getWorld().getGameMode().moveDropItem(this);
+    return !done && ++steps < 999;
   }
 }
@@ -0,0 +1,256 @@
+package org.opencraft.server.model;
+
+import org.opencraft.server.game.impl.GameSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which of a player's local entities are spawned for them, and how often they are told
+ * where those entities are. Entities are spawned once they come within the view distance, and
+ * removed again once they are further than the view distance plus a margin, so players walking
+ * along the edge don't flicker in and out. Entities within the full update distance are updated
+ * every tick, and the rest every few ticks.
+ *
+ * <p>Flag carriers and the player being followed are always spawned and updated every tick. The
+ * camera man tracks everything, since a replay can be watched from anywhere.
+ *
+ * <p>The tracker also keeps what the client was last told about each entity, so moves are sent
+ * relative to that. Entities spawned or removed by anything else, such as hiding a player, are
+ * noticed through {@link org.opencraft.server.net.ActionSender} and left alone.
+ */
+public final class EntityTracker {
+
+  /** How much further than the view distance an entity has to go before it is removed. */
+  static final int MARGIN = 16;
+
+  /** How many ticks apart entities beyond the full update distance are updated. */
+  static final int FAR_INTERVAL = 3;
+
+  /** The distances the tracker works with, in blocks. */
+  public record Distances(int view, int fullUpdate) {
+
+    /**
+     * Gets the distances from the game settings.
+     *
+     * @return The distances.
+     */
+    public static Distances fromSettings() {
+      return new Distances(
+          GameSettings.VIEW_DISTANCE.get(), GameSettings.FULL_UPDATE_DISTANCE.get());
+    }
+  }
+
+  /** Where the tracker's packets go. */
+  interface Sender {
+
+    void spawn(Entity entity);
+
+    void despawn(Entity entity);
+
+    /** Adds an entity to the tab list without spawning it. */
+    void list(Entity entity);
+
+    /**
+     * Sends where an entity is.
+     *
+     * @param entity The entity.
+     * @param from Where the client last saw it, or null to send its absolute position.
+     */
+    void move(Entity entity, Position from);
+  }
+
+  private enum State {
+    /** Spawned, and told where it is. */
+    SPAWNED,
+    /** Removed by the tracker for being too far away. */
+    OUT_OF_RANGE,
+    /** Removed by something else, so it isn't spawned again until something else spawns it. */
+    HIDDEN
+  }
+
+  /** What the client knows about an entity. */
+  private static final class Track {
+    State state;
+    Position position;
+    Rotation rotation;
+  }
+
+  private final Entity viewer;
+  private final Sender sender;
+  private final Map<Entity, Track> tracks = new HashMap<>();
+  private boolean trackingAll;
+
+  EntityTracker(Player viewer) {
+    this(viewer, new Sender() {
+      @Override
+      public void spawn(Entity entity) {
+        viewer.getActionSender().sendAddPlayer((Player) entity, false);
+      }
+
+      @Override
+      public void despawn(Entity entity) {
+        viewer.getActionSender().sendRemoveEntity(entity);
+      }
+
+      @Override
+      public void list(Entity entity) {
+        viewer.getActionSender().sendListName((Player) entity);
+      }
+
+      @Override
+      public void move(Entity entity, Position from) {
+        viewer.getActionSender().sendUpdateEntity(entity, from);
+      }
+    });
+  }
+
+  EntityTracker(Entity viewer, Sender sender) {
+    this.viewer = viewer;
+    this.sender = sender;
+  }
+
+  /**
+   * Makes the tracker keep every entity spawned and send absolute positions, for the camera man.
+   * Replays are watched from keyframes, so moves relative to earlier packets could be wrong.
+   */
+  public synchronized void setTrackingAll(boolean trackingAll) {
+    this.trackingAll = trackingAll;
+  }
+
+  /**
+   * Sends what the client needs to know about a local entity this tick.
+   *
+   * @param entity The entity.
+   * @param tick The number of the tick.
+   * @param distances The distances to use.
+   */
+  public synchronized void update(Entity entity, long tick, Distances distances) {
+    Track track = tracks.get(entity);
+    if (track == null) {
+      // spawned before the tracker knew about it
+      track = new Track();
+      set(track, State.SPAWNED, entity);
+      tracks.put(entity, track);
+    }
+    if (track.state == State.HIDDEN) {
+      return;
+    }
+    boolean always = isAlwaysTracked(entity);
+    long distance = distanceSquared(entity);
+    if (track.state == State.OUT_OF_RANGE) {
+      if (always || distance <= blocksSquared(distances.view())) {
+        sender.spawn(entity);
+        set(track, State.SPAWNED, entity);
+      }
+      return;
+    }
+    if (!always && distance > blocksSquared(distances.view() + MARGIN)) {
+      sender.despawn(entity);
+      track.state = State.OUT_OF_RANGE;
+      return;
+    }
+    if (!always && distance > blocksSquared(distances.fullUpdate())
+        && (tick + entity.getId()) % FAR_INTERVAL != 0) {
+      return;
+    }
+    Position position = entity.getPosition();
+    Rotation rotation = entity.getRotation();
+    if (!position.equals(track.position)
+        || rotation.getRotation() != track.rotation.getRotation()
+        || rotation.getLook() != track.rotation.getLook()) {
+      sender.move(entity, trackingAll ? null : track.position);
+      track.position = position;
+      track.rotation = rotation;
+    }
+  }
+
+  /**
+   * Spawns an entity which has just become local, if it is within the view distance. Otherwise
+   * it is only added to the tab list, and spawned by {@link #update} once it comes close enough,
+   * so players far away aren't spawned only to be removed again on the next tick.
+   *
+   * @param entity The entity.
+   * @param distances The distances to use.
+   */
+  public synchronized void added(Entity entity, Distances distances) {
+    Track track = new Track();
+    tracks.put(entity, track);
+    if (isAlwaysTracked(entity) || distanceSquared(entity) <= blocksSquared(distances.view())) {
+      sender.spawn(entity);
+      set(track, State.SPAWNED, entity);
+    } else {
+      sender.list(entity);
+      set(track, State.OUT_OF_RANGE, entity);
+    }
+  }
+
+  private boolean isAlwaysTracked(Entity entity) {
+    if (trackingAll) {
+      return true;
+    }
+    if (!(entity instanceof Player)) {
+      return false;
+    }
+    Player player = (Player) entity;
+    return player.hasFlag || (viewer instanceof Player && ((Player) viewer).following == player);
+  }
+
+  private long distanceSquared(Entity entity) {
+    Position from = viewer.getPosition();
+    Position to = entity.getPosition();
+    long dx = to.getX() - from.getX();
+    long dy = to.getY() - from.getY();
+    long dz = to.getZ() - from.getZ();
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /* positions are in 32nds of a block */
+  private static long blocksSquared(int blocks) {
+    long units = blocks * 32L;
+    return units * units;
+  }
+
+  private static void set(Track track, State state, Entity entity) {
+    track.state = state;
+    track.position = entity.getPosition();
+    track.rotation = entity.getRotation();
+  }
+
+  /**
+   * Notes that an entity was spawned for the client where it is now.
+   *
+   * @param entity The entity.
+   */
+  public synchronized void spawned(Entity entity) {
+    set(tracks.computeIfAbsent(entity, e -> new Track()), State.SPAWNED, entity);
+  }
+
+  /**
+   * Notes that an entity was removed from the client.
+   *
+   * @param entity The entity.
+   */
+  public synchronized void hidden(Entity entity) {
+    tracks.computeIfAbsent(entity, e -> new Track()).state = State.HIDDEN;
+  }
+
+  /**
+   * Forgets an entity which is no longer local.
+   *
+   * @param entity The entity.
+   */
+  public synchronized void forget(Entity entity) {
+    tracks.remove(entity);
+  }
+
+  /** Forgets every entity, such as when a new level is sent. */
+  public synchronized void clear() {
+    tracks.clear();
+  }
+
+  synchronized boolean isSpawned(Entity entity) {
+    Track track = tracks.get(entity);
+    return track != null && track.state == State.SPAWNED;
+  }
+}
@@ -0,0 +1,140 @@
+package org.opencraft.server.model;
+
+import java.util.Objects;
+
+/**
+ * The inputs a player's status lines are rendered from. Setting an input only marks it as changed
+ * when the value is different, so {@link PlayerUI} renders just the lines whose inputs changed
+ * instead of building every line every tick to compare it with what was sent last.
+ *
+ * <p>Progress bars are kept as the length {@link PlayerUI#getProgressLength} gives, so a bar
+ * that is still animating only changes when a different glyph would be shown.
+ */
+public final class HudState {
+  public static final int MAP = 1;
+  public static final int SCORE = 1 << 1;
+  public static final int FLAGS = 1 << 2;
+  public static final int TIME = 1 << 3;
+  public static final int AMMO = 1 << 4;
+  public static final int HEALTH = 1 << 5;
+  public static final int FIRE = 1 << 6;
+  /** How the lines are laid out, such as which timer is shown and streamer mode. */
+  public static final int LAYOUT = 1 << 7;
+  public static final int ALL = (1 << 8) - 1;
+
+  private int changed = ALL;
+  private String map;
+  private int redScore;
+  private int blueScore;
+  private boolean redFlag;
+  private boolean blueFlag;
+  private int secondsRemaining;
+  private int ammo;
+  private int health;
+  private int fire;
+  private int layout;
+
+  private void set(boolean different, int input) {
+    if (different) {
+      changed |= input;
+    }
+  }
+
+  public void setMap(String map) {
+    set(!Objects.equals(this.map, map), MAP);
+    this.map = map;
+  }
+
+  public void setScore(int red, int blue) {
+    set(redScore != red || blueScore != blue, SCORE);
+    redScore = red;
+    blueScore = blue;
+  }
+
+  public void setFlags(boolean red, boolean blue) {
+    set(redFlag != red || blueFlag != blue, FLAGS);
+    redFlag = red;
+    blueFlag = blue;
+  }
+
+  public void setSecondsRemaining(int seconds) {
+    set(secondsRemaining != seconds, TIME);
+    secondsRemaining = seconds;
+  }
+
+  public void setAmmo(int length) {
+    set(ammo != length, AMMO);
+    ammo = length;
+  }
+
+  public void setHealth(int length) {
+    set(health != length, HEALTH);
+    health = length;
+  }
+
+  public void setFire(int length) {
+    set(fire != length, FIRE);
+    fire = length;
+  }
+
+  public void setLayout(int layout) {
+    set(this.layout != layout, LAYOUT);
+    this.layout = layout;
+  }
+
+  public String getMap() {
+    return map;
+  }
+
+  public int getRedScore() {
+    return redScore;
+  }
+
+  public int getBlueScore() {
+    return blueScore;
+  }
+
+  public boolean isRedFlagTaken() {
+    return redFlag;
+  }
+
+  public boolean isBlueFlagTaken() {
+    return blueFlag;
+  }
+
+  public int getSecondsRemaining() {
+    return secondsRemaining;
+  }
+
+  public int getAmmo() {
+    return ammo;
+  }
+
+  public int getHealth() {
+    return health;
+  }
+
+  public int getFire() {
+    return fire;
+  }
+
+  public int getLayout() {
+    return layout;
+  }
+
+  /**
+   * Gets which inputs have changed since this was last called.
+   *
+   * @return The changed inputs, as a mask of the constants above.
+   */
+  int takeChanged() {
+    int changed = this.changed;
+    this.changed = 0;
+    return changed;
+  }
+
+  /** Marks every input as changed, so every line is rendered again. */
+  void invalidate() {
+    changed = ALL;
+  }
+}
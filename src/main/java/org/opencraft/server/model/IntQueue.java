@@ -0,0 +1,106 @@
+package org.opencraft.server.model;
+
+import java.util.Arrays;
+
+/**
+ * A first-in first-out queue of ints backed by a ring buffer which doubles in size when full, so
+ * block indices can be queued without boxing them or allocating a node per entry. Not thread safe.
+ */
+public final class IntQueue {
+
+  /** The value returned by {@link #poll()} when the queue is empty. */
+  public static final int EMPTY = -1;
+
+  /** The ring buffer. Its length is always a power of two. */
+  private int[] elements;
+
+  /** The index of the first element. */
+  private int head;
+
+  /** The number of elements. */
+  private int size;
+
+  /** Creates an empty queue. */
+  public IntQueue() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty queue.
+   *
+   * @param capacity The number of elements to make room for up front.
+   */
+  public IntQueue(int capacity) {
+    elements = new int[Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1];
+  }
+
+  /**
+   * Adds an element to the end of the queue.
+   *
+   * @param value The element.
+   */
+  public void add(int value) {
+    if (size == elements.length) {
+      // unroll the ring into a buffer twice the size
+      int[] grown = new int[elements.length << 1];
+      int tail = elements.length - head;
+      System.arraycopy(elements, head, grown, 0, tail);
+      System.arraycopy(elements, 0, grown, tail, head);
+      elements = grown;
+      head = 0;
+    }
+    elements[(head + size) & (elements.length - 1)] = value;
+    size++;
+  }
+
+  /**
+   * Removes the element at the front of the queue.
+   *
+   * @return The element, or {@link #EMPTY} if the queue is empty.
+   */
+  public int poll() {
+    if (size == 0) {
+      return EMPTY;
+    }
+    int value = elements[head];
+    head = (head + 1) & (elements.length - 1);
+    size--;
+    return value;
+  }
+
+  /**
+   * Gets an element without removing it.
+   *
+   * @param i The position of the element, where 0 is the front of the queue.
+   * @return The element.
+   */
+  public int get(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+    }
+    return elements[(head + i) & (elements.length - 1)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Removes every element. */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  @Override
+  public String toString() {
+    int[] values = new int[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = get(i);
+    }
+    return Arrays.toString(values);
+  }
+}
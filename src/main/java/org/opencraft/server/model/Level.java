@@ -50,23 +50,24 @@ import java.awt.Color;
 import org.opencraft.server.Server;
 import org.opencraft.server.game.GameMode;
 import org.opencraft.server.game.impl.GameSettings;
+import org.opencraft.server.io.RegionDeflater;
+import org.opencraft.server.net.ActionSender;
+import org.opencraft.server.net.packet.Packet;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.TreeSet;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import org.opencraft.server.Constants;
 
 /**
@@ -80,6 +81,12 @@ public final class Level implements Cloneable {
   public static final int CTF = 0;
   public static final int TDM = 1;
 
+  /**
+   * The fewest changes sent as bulk updates. A bulk update is as big as about 160 single block
+   * packets, but the client applies it in one go.
+   */
+  private static final int BULK_UPDATE_THRESHOLD = 32;
+
   /** The level width. */
   public int width;
   /** The level height. */
@@ -112,13 +119,17 @@ public final class Level implements Cloneable {
   public short[][] colors = new short[Constants.DEFAULT_COLORS.length][3];
   public HashSet<Integer> blockTypes = new HashSet<Integer>();
 
-  /** The blocks. */
-  private short[][][] blocks;
-
+  /**
+   * The low bytes of every block type, indexed by {@link #index(int, int, int)}. Together with
+   * {@link #blocks1} this is the only copy of the map and is also the wire format sent to clients.
+   */
   private byte[] blocks0;
+  /** The high bytes of every block type, for block ids above 255. */
   private byte[] blocks1;
-  private byte[] compressedBlocks0;
-  private byte[] compressedBlocks1;
+  /** Keeps the compressed copy of {@link #blocks0} up to date. */
+  private RegionDeflater compressedBlocks0;
+  /** Keeps the compressed copy of {@link #blocks1} up to date. */
+  private RegionDeflater compressedBlocks1;
   /** Light depth array. */
   private short[][] lightDepths;
 
@@ -136,7 +147,8 @@ public final class Level implements Cloneable {
 
   private ArrayList<Position> tdmSpawns = new ArrayList<Position>();
 
-  private boolean[][][] solidBlocks;
+  /** One bit per block, set if the block cannot be broken. */
+  private BitSet solidBlocks;
   private HashSet<Integer> solidTypes = new HashSet<>();
   public HashSet<Integer> usedBreakableTypes = new HashSet<>();
   public HashSet<Integer> usedSolidTypes = new HashSet<>();
@@ -144,12 +156,14 @@ public final class Level implements Cloneable {
   private HashSet<Integer> excludedSolidTypes = new HashSet<>();
   public final ArrayList<CustomBlockDefinition> customBlockDefinitions =
       new ArrayList<>();
-  /** The active "thinking" blocks on the map. */
-  private Map<Integer, ArrayDeque<Position>> activeBlocks = new HashMap<>();
+  /** The indices of the active "thinking" blocks on the map, by type. */
+  private final IntQueue[] activeBlocks = new IntQueue[256];
   /** The timers for the active "thinking" blocks on the map. */
-  private Map<Integer, Long> activeTimers = new HashMap<>();
-  /** A queue of positions to update at the next tick. */
-  private final Queue<Position> updateQueue = new ArrayDeque<>();
+  private final long[] activeTimers = new long[256];
+  /** The indices of blocks to update at the next tick. */
+  private PhysicsQueue updateQueue;
+  /** The blocks changed since they were last sent to players. */
+  private BlockJournal blockJournal;
 
   private final Queue<UpdateBlock> iceBlocks = new LinkedList<>();
   private final Queue<UpdateBlock> vineBlocks = new LinkedList<>();
@@ -159,15 +173,20 @@ public final class Level implements Cloneable {
     this.width = 256;
     this.height = 256;
     this.depth = 64;
-    this.blocks = new short[width][height][depth];
-    this.solidBlocks = new boolean[width][height][depth];
+    this.blocks0 = new byte[width * height * depth];
+    this.blocks1 = new byte[width * height * depth];
+    this.solidBlocks = new BitSet(width * height * depth);
+    this.updateQueue = new PhysicsQueue(width * height * depth);
+    this.blockJournal = new BlockJournal(width * height * depth);
+    this.compressedBlocks0 = new RegionDeflater(blocks0);
+    this.compressedBlocks1 = new RegionDeflater(blocks1);
     this.lightDepths = new short[width][height];
     this.spawnRotation = new Rotation(0, 0);
     for (int i = 0; i < 256; i++) {
       BlockDefinition b = BlockManager.getBlockManager().getBlock(i);
       if (b != null && b.doesThink()) {
-        activeBlocks.put(i, new ArrayDeque<Position>());
-        activeTimers.put(i, System.currentTimeMillis());
+        activeBlocks[i] = new IntQueue();
+        activeTimers[i] = System.currentTimeMillis();
       }
     }
     recalculateAllLightDepths();
@@ -186,10 +205,10 @@ public final class Level implements Cloneable {
     double pitch =
         Math.toRadians((int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
 
-    int distance = GameSettings.getInt("FlameThrowerStartDistanceFromPlayer");
+    int distance = GameSettings.FLAME_THROWER_START_DISTANCE_FROM_PLAYER.get();
     if (p.pingList.averagePing() > 90) distance += 1; // If the player has over 90ms ping, move the flamethrower 1 block in front to account for ping
 
-    int length = GameSettings.getInt("FlameThrowerLength");
+    int length = GameSettings.FLAME_THROWER_LENGTH.get();
     int side = Integer.signum(length);
     int dir = Integer.signum(distance);
 
@@ -259,10 +278,10 @@ public final class Level implements Cloneable {
     double pitch =
         Math.toRadians((int) (360 - Server.getUnsigned(r.getLook()) * ((float) 360 / 256)));
 
-    int distance = GameSettings.getInt("FlameThrowerStartDistanceFromPlayer");
+    int distance = GameSettings.FLAME_THROWER_START_DISTANCE_FROM_PLAYER.get();
     if (p.pingList.averagePing() > 90) distance += 1; // If the player has over 90ms ping, move the flamethrower 1 block in front to account for ping
 
-    int length = GameSettings.getInt("FlameThrowerLength");
+    int length = GameSettings.FLAME_THROWER_LENGTH.get();
     int side = Integer.signum(length);
 
     double px = pos.getX();
@@ -632,6 +651,14 @@ public final class Level implements Cloneable {
     solidTypes.add(BlockConstants.ADMINIUM);
     this.filename = filename;
     this.id = id;
+    boolean chaos = GameSettings.CHAOS.get();
+    try {
+      if (LevelImage.read(this, chaos)) {
+        return this;
+      }
+    } catch (IOException | RuntimeException ex) {
+      Server.log("[E] Could not load the decoded copy of " + id + ", loading the map: " + ex);
+    }
     FileInputStream fileIn;
     NBTInputStream nbtIn;
     try {
@@ -643,10 +670,6 @@ public final class Level implements Cloneable {
       width = ((ShortTag) classicWorld.get("X")).getValue();
       height = ((ShortTag) classicWorld.get("Z")).getValue();
       depth = ((ShortTag) classicWorld.get("Y")).getValue();
-      blocks = new short[width][height][depth];
-      this.solidBlocks = new boolean[width][height][depth];
-      blocks0 = new byte[width * height * depth];
-      blocks1 = new byte[width * height * depth];
       byte[] tmpBlocks = ((ByteArrayTag) classicWorld.get("BlockArray")).getValue();
       byte[] tmpBlocks2 = classicWorld.containsKey("BlockArray2")
           ? ((ByteArrayTag) classicWorld.get("BlockArray2")).getValue()
@@ -671,10 +694,14 @@ public final class Level implements Cloneable {
       Server.log("Loading map: " + id);
       loadProps();
 
-      loadBlocks(tmpBlocks, tmpBlocks2);
+      loadBlocks(tmpBlocks, tmpBlocks2, chaos);
+      CompoundMap metadata = null;
       if (hasMetadata) {
-        loadMetadata(((CompoundTag) classicWorld.get("Metadata")).getValue());
+        metadata = ((CompoundTag) classicWorld.get("Metadata")).getValue();
+        loadMetadata(metadata);
       }
+      nbtIn.close();
+      LevelImage.write(this, chaos, metadata);
 
     } catch (IOException ex) {
       ex.printStackTrace();
@@ -682,55 +709,82 @@ public final class Level implements Cloneable {
     return this;
   }
 
-  private void loadBlocks(byte[] blockArray, byte[] blockArray2) {
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        for (int z = 0; z < depth; z++) {
-          int type0 = Server.getUnsigned(blockArray[(z * height + y) * width + x]);
-          int type1 = 0;
-          if (blockArray2 != null) {
-            type1 = Server.getUnsigned(blockArray2[(z * height + y) * width + x]);
-          }
-          int type = type0 | (type1 << 8);
-          blockTypes.add(type);
-
-          if (GameSettings.getBoolean("Chaos")) {
-            if (type == 7) {
-              type = 1;
-            } else if (type == 8) {
-              type = 9;
-            } else if (type == 10) {
-              type = 11;
-            }
-            if (z == 0) {
-              type = 7;
-            }
-          }
-          if ((allSolidTypes
-              && type != 0 && type != 8 && type != 9 && type != 10 && type != 11
-              && !excludedSolidTypes.contains(type))
-              || solidTypes.contains(type)) {
-            solidBlocks[x][y][z] = true;
-            usedSolidTypes.add(type);
-          } else {
-            usedBreakableTypes.add(type);
-          }
-          blocks[x][y][z] = (short) type;
-          blocks0[(z * height + y) * width + x] = (byte) type0;
-          blocks1[(z * height + y) * width + x] = (byte) type1;
+  private void loadBlocks(byte[] blockArray, byte[] blockArray2, boolean chaos) {
+    int length = width * height * depth;
+    // The file arrays are already laid out in our index order, so they become the level storage.
+    blocks0 = blockArray.length == length ? blockArray : Arrays.copyOf(blockArray, length);
+    blocks1 = blockArray2 != null ? Arrays.copyOf(blockArray2, length) : new byte[length];
+    solidBlocks = new BitSet(length);
+    int layer = width * height;
+    for (int index = 0; index < length; index++) {
+      int type = (blocks0[index] & 0xFF) | ((blocks1[index] & 0xFF) << 8);
+      blockTypes.add(type);
+
+      if (chaos) {
+        if (type == 7) {
+          type = 1;
+        } else if (type == 8) {
+          type = 9;
+        } else if (type == 10) {
+          type = 11;
+        }
+        if (index < layer) {
+          type = 7;
         }
+        blocks0[index] = (byte) type;
+        blocks1[index] = (byte) (type >> 8);
+      }
+      if ((allSolidTypes
+          && type != 0 && type != 8 && type != 9 && type != 10 && type != 11
+          && !excludedSolidTypes.contains(type))
+          || solidTypes.contains(type)) {
+        solidBlocks.set(index);
+        usedSolidTypes.add(type);
+      } else {
+        usedBreakableTypes.add(type);
       }
     }
+    setBlocks(blocks0, blocks1, solidBlocks);
+  }
+
+  /**
+   * Makes arrays the level's blocks, along with which of them are solid.
+   *
+   * @param blocks0 The low bytes of the blocks.
+   * @param blocks1 The high bytes of the blocks.
+   * @param solidBlocks The solid blocks.
+   */
+  void setBlocks(byte[] blocks0, byte[] blocks1, BitSet solidBlocks) {
+    int length = width * height * depth;
+    this.blocks0 = blocks0;
+    this.blocks1 = blocks1;
+    this.solidBlocks = solidBlocks;
+    updateQueue = new PhysicsQueue(length);
+    blockJournal = new BlockJournal(length);
+    compressedBlocks0 = new RegionDeflater(blocks0);
+    compressedBlocks1 = new RegionDeflater(blocks1);
+  }
+
+  byte[] getBlocks0() {
+    return blocks0;
+  }
+
+  byte[] getBlocks1() {
+    return blocks1;
+  }
+
+  BitSet getSolidBlocks() {
+    return solidBlocks;
   }
 
   public void clearSolidBlock(int x, int y, int z) {
     if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth) {
       return;
     }
-    solidBlocks[x][y][z] = false;
+    solidBlocks.clear(index(x, y, z));
   }
 
-  private void loadMetadata(CompoundMap metadata) {
+  void loadMetadata(CompoundMap metadata) {
     CompoundMap cpe = ((CompoundTag) metadata.get("CPE")).getValue();
 
     if (cpe.containsKey("BlockDefinitions")) {
@@ -844,7 +898,7 @@ public final class Level implements Cloneable {
 
   public boolean isSolid(int x, int y, int z) {
     if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= depth) return true;
-    return solidBlocks[x][y][z];
+    return solidBlocks.get(index(x, y, z));
   }
 
   public Object getProp(String p) {
@@ -879,7 +933,7 @@ public final class Level implements Cloneable {
    */
   public void recalculateLightDepth(int x, int y) {
     for (int z = depth - 1; z >= 0; z--) {
-      if (BlockManager.getBlockManager().getBlock(blocks[x][y][z]).doesBlockLight()) {
+      if (BlockManager.getBlockManager().getBlock(getBlockAt(index(x, y, z))).doesBlockLight()) {
         lightDepths[x][y] = (short) z;
         return;
       }
@@ -914,40 +968,41 @@ public final class Level implements Cloneable {
 
   /** Performs physics updates on queued blocks. */
   public void applyBlockBehaviour() {
-    Queue<Position> currentQueue;
-    synchronized (updateQueue) {
-      currentQueue = new ArrayDeque<>(updateQueue);
-      updateQueue.clear();
-    }
-    for (Position pos : currentQueue) {
+    int layer = width * height;
+    IntQueue updates = updateQueue.swap();
+    for (int index; (index = updates.poll()) != IntQueue.EMPTY; ) {
       BlockManager.getBlockManager()
-          .getBlock(this.getBlock(pos.getX(), pos.getY(), pos.getZ()))
-          .behavePassive(this, pos.getX(), pos.getY(), pos.getZ());
+          .getBlock(getBlockAt(index))
+          .behavePassive(this, index % width, (index / width) % height, index / layer);
     }
     // we only process up to 500 of each type of thinking block every tick,
     // or we'd probably be here all day.
     for (int type = 0; type < 256; type++) {
-      if (activeBlocks.containsKey(type)) {
-        if (System.currentTimeMillis() - activeTimers.get(type)
+      IntQueue active = activeBlocks[type];
+      if (active != null) {
+        if (System.currentTimeMillis() - activeTimers[type]
             > BlockManager.getBlockManager().getBlock(type).getTimer()) {
-          int cyclesThisTick =
-              (Math.min(activeBlocks.get(type).size(), 500));
+          int cyclesThisTick;
+          synchronized (active) {
+            cyclesThisTick = Math.min(active.size(), 500);
+          }
           for (int i = 0; i < cyclesThisTick; i++) {
-            Position pos = activeBlocks.get(type).poll();
-            if (pos == null) {
+            int index;
+            synchronized (active) {
+              index = active.poll();
+            }
+            if (index == IntQueue.EMPTY) {
               break;
             }
             // the block that occupies this space might have
             // changed.
-            if (this.getBlock(pos.getX(), pos.getY(), pos.getZ()) == type) {
-              // World.getWorld().broadcast("Processing thinker at ("+pos.getX()+","+pos.getY()
-              // +","+pos.getZ()+")");
+            if (getBlockAt(index) == type) {
               BlockManager.getBlockManager()
                   .getBlock(type)
-                  .behaveSchedule(this, pos.getX(), pos.getY(), pos.getZ());
+                  .behaveSchedule(this, index % width, (index / width) % height, index / layer);
             }
           }
-          activeTimers.put(type, System.currentTimeMillis());
+          activeTimers[type] = System.currentTimeMillis();
         }
       }
     }
@@ -955,7 +1010,7 @@ public final class Level implements Cloneable {
     synchronized (iceBlocks) {
       while (!iceBlocks.isEmpty()) {
         UpdateBlock block = iceBlocks.peek();
-        if (System.currentTimeMillis() - block.time > GameSettings.getInt("IceMeltTime")) {
+        if (System.currentTimeMillis() - block.time > GameSettings.ICE_MELT_TIME.get()) {
           iceBlocks.remove();
           if (getBlock(block.position) == 60) {
             setBlock(block.position, 0);
@@ -969,7 +1024,7 @@ public final class Level implements Cloneable {
     synchronized (vineBlocks) {
       while (!vineBlocks.isEmpty()) {
         UpdateBlock block = vineBlocks.peek();
-        if (System.currentTimeMillis() - block.time > GameSettings.getInt("VineDecayTime")) {
+        if (System.currentTimeMillis() - block.time > GameSettings.VINE_DECAY_TIME.get()) {
           vineBlocks.remove();
           if (getBlock(block.position) == Constants.BLOCK_VINE) {
             setBlock(block.position, 0);
@@ -981,27 +1036,23 @@ public final class Level implements Cloneable {
     }
   }
 
-  public byte[] getCompressedBlocks0() throws IOException {
-    if (compressedBlocks0 == null) {
-      compressedBlocks0 = compressBytes(blocks0);
-    }
-    return compressedBlocks0;
-  }
-
-  public byte[] getCompressedBlocks1() throws IOException{
-    if (compressedBlocks1 == null) {
-      compressedBlocks1 = compressBytes(blocks1);
-    }
-    return compressedBlocks1;
+  /**
+   * Gets the raw deflated low bytes of the level. Only the regions changed since the last call
+   * are compressed again.
+   *
+   * @return The compressed bytes, which must not be modified.
+   */
+  public byte[] getCompressedBlocks0() {
+    return compressedBlocks0.getCompressed();
   }
 
-  private static byte[] compressBytes(byte[] bytes) throws IOException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Deflater def = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-    DataOutputStream os = new DataOutputStream(new DeflaterOutputStream(out, def));
-    os.write(bytes);
-    os.close();
-    return out.toByteArray();
+  /**
+   * Gets the raw deflated high bytes of the level.
+   *
+   * @return The compressed bytes, which must not be modified.
+   */
+  public byte[] getCompressedBlocks1() {
+    return compressedBlocks1.getCompressed();
   }
 
   /**
@@ -1047,31 +1098,46 @@ public final class Level implements Cloneable {
     setBlock(x, y, z, type, true);
   }
 
+  /**
+   * Sets several blocks. They are sent to players along with the other changes made this tick.
+   *
+   * @param blockChanges The changes.
+   */
   public void setBlocks(ImmutableList<BlockChange> blockChanges) {
-    ImmutableList.Builder<BlockChange> validatedChangesBuilder = ImmutableList.builder();
     for (BlockChange blockChange : blockChanges) {
-      if (blockChange.x < 0 || blockChange.y < 0 || blockChange.z < 0
-          || blockChange.x >= width || blockChange.y >= height || blockChange.z >= depth) {
-        continue;
-      }
-      int formerBlock = this.getBlock(blockChange.x, blockChange.y, blockChange.z);
-      if (blockChange.type == formerBlock) {
-        continue;
-      }
-      validatedChangesBuilder.add(blockChange);
+      setBlock(blockChange.x, blockChange.y, blockChange.z, blockChange.type, true, true);
     }
-    ImmutableList<BlockChange> validatedChanges = validatedChangesBuilder.build();
+  }
 
-    if (validatedChanges.isEmpty()) {
+  /**
+   * Sends the blocks changed since the last call to every player. Blocks changed several times are
+   * only sent once. Larger batches go to clients which support it as bulk updates, which are encoded
+   * once and shared, and everything else is sent a packet per block.
+   */
+  public void flushBlockChanges() {
+    if (blockJournal.isEmpty()) {
       return;
     }
-
-    for (BlockChange blockChange : validatedChanges) {
-      setBlock(blockChange.x, blockChange.y, blockChange.z, blockChange.type, true, false);
+    int[] changed = blockJournal.drain(this::getBlockAt);
+    if (changed.length == 0) {
+      return;
     }
-
+    List<Packet> bulkUpdates = null;
     for (Player player : World.getWorld().getPlayerList().getPlayers(true)) {
-      player.getActionSender().sendBlockUpdate(this, validatedChanges);
+      ActionSender actionSender = player.getSession().getActionSender();
+      if (changed.length >= BULK_UPDATE_THRESHOLD
+          && player.getSession().isExtensionSupported("BulkBlockUpdate")) {
+        if (bulkUpdates == null) {
+          bulkUpdates = ActionSender.createBlockUpdates(this, changed);
+        }
+        actionSender.sendPackets(bulkUpdates);
+      } else {
+        int layer = width * height;
+        for (int index : changed) {
+          actionSender.sendBlock(
+              index % width, (index / width) % height, index / layer, (short) getBlockAt(index));
+        }
+      }
     }
   }
 
@@ -1091,19 +1157,16 @@ public final class Level implements Cloneable {
     if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth) {
       return;
     }
-    int index = (z * this.height + y) * this.width + x;
+    int index = index(x, y, z);
+    int formerBlock = getBlockAt(index);
     blocks0[index] = (byte) (type & 0x00FF);
-    compressedBlocks0 = null;
+    compressedBlocks0.markDirty(index);
     if (type > 255 || blocks1[index] != 0) {
       blocks1[index] = (byte) ((type & 0xFF00) >> 8);
-      compressedBlocks1 = null;
+      compressedBlocks1.markDirty(index);
     }
-    int formerBlock = this.getBlock(x, y, z);
-    blocks[x][y][z] = (short) type;
     if (sendToPlayers && type != formerBlock) {
-      for (Player player : World.getWorld().getPlayerList().getPlayers(true)) {
-        player.getSession().getActionSender().sendBlock(x, y, z, (short) type);
-      }
+      blockJournal.record(index, formerBlock);
     }
     if (updateSelf) {
       queueTileUpdate(x, y, z);
@@ -1112,23 +1175,22 @@ public final class Level implements Cloneable {
       BlockManager.getBlockManager().getBlock(formerBlock).behaveDestruct(this, x, y, z);
       updateNeighboursAt(x, y, z);
     }
-    Position position = new Position(x, y, z);
     if (BlockManager.getBlockManager().getBlock(type).doesThink()) {
-      activeBlocks.get(type).add(position);
+      queueActive(type, index);
     }
     if (BlockManager.getBlockManager().getBlock(type).doesBlockLight()) {
       this.assignLightDepth(x, y, z);
       this.scheduleZPlantThink(x, y, z);
     }
-    synchronized (iceBlocks) {
-      if (type == 60) {
-        iceBlocks.add(new UpdateBlock(position, System.currentTimeMillis()));
+    if (type == 60) {
+      synchronized (iceBlocks) {
+        iceBlocks.add(new UpdateBlock(new Position(x, y, z), System.currentTimeMillis()));
       }
     }
 
-    synchronized (vineBlocks) {
-      if (type == Constants.BLOCK_VINE) {
-        vineBlocks.add(new UpdateBlock(position, System.currentTimeMillis()));
+    if (type == Constants.BLOCK_VINE) {
+      synchronized (vineBlocks) {
+        vineBlocks.add(new UpdateBlock(new Position(x, y, z), System.currentTimeMillis()));
       }
     }
   }
@@ -1177,12 +1239,7 @@ public final class Level implements Cloneable {
    */
   private void queueTileUpdate(int x, int y, int z) {
     if (x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth) {
-      Position pos = new Position(x, y, z);
-      synchronized (updateQueue) {
-        if (!updateQueue.contains(pos)) {
-          updateQueue.add(pos);
-        }
-      }
+      updateQueue.add(index(x, y, z));
     }
   }
 
@@ -1195,13 +1252,27 @@ public final class Level implements Cloneable {
    */
   public void queueActiveBlockUpdate(int x, int y, int z) {
     if (x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth) {
-      int blockAt = this.getBlock(x, y, z);
+      int index = index(x, y, z);
+      int blockAt = getBlockAt(index);
       if (BlockManager.getBlockManager().getBlock(blockAt).doesThink()) {
-        activeBlocks.get(blockAt).add(new Position(x, y, z));
+        queueActive(blockAt, index);
       }
     }
   }
 
+  /**
+   * Queues a thinking block to be processed when its timer next runs.
+   *
+   * @param type The block type.
+   * @param index The block index.
+   */
+  private void queueActive(int type, int index) {
+    IntQueue active = activeBlocks[type];
+    synchronized (active) {
+      active.add(index);
+    }
+  }
+
   /**
    * Gets a block.
    *
@@ -1212,12 +1283,34 @@ public final class Level implements Cloneable {
    */
   public int getBlock(int x, int y, int z) {
     if (x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth) {
-      return blocks[x][y][z];
+      return getBlockAt(index(x, y, z));
     } else {
       return 0;
     }
   }
 
+  /**
+   * Gets the flat storage index of a block. The coordinates are not bounds checked.
+   *
+   * @param x The x coordinate.
+   * @param y The y coordinate.
+   * @param z The z coordinate.
+   * @return The index.
+   */
+  public int index(int x, int y, int z) {
+    return (z * height + y) * width + x;
+  }
+
+  /**
+   * Gets a block by its flat storage index.
+   *
+   * @param index The index, as returned by {@link #index(int, int, int)}.
+   * @return The type id.
+   */
+  public int getBlockAt(int index) {
+    return (blocks0[index] & 0xFF) | ((blocks1[index] & 0xFF) << 8);
+  }
+
   public int getBlock(Position pos) {
     return getBlock(pos.getX(), pos.getY(), pos.getZ());
   }
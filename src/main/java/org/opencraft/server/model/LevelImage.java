@@ -0,0 +1,232 @@
+package org.opencraft.server.model;
+
+import com.flowpowered.nbt.CompoundMap;
+import com.flowpowered.nbt.CompoundTag;
+import com.flowpowered.nbt.stream.NBTInputStream;
+import com.flowpowered.nbt.stream.NBTOutputStream;
+
+import org.opencraft.server.Server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A decoded copy of a map, kept in <code>mapcache/</code> next to <code>maps/</code>. It holds
+ * the block arrays as they are in memory, uncompressed and page-aligned, along with what loading
+ * a map otherwise works out block by block: which blocks are solid, and which types are used.
+ * Loading a map from its image maps the file and copies the arrays out, instead of inflating and
+ * parsing the NBT and scanning every block.
+ *
+ * <p>An image is only used while the map, its properties file and the Chaos setting are the same
+ * as when it was written. The map is checked by its size and modification time rather than a hash,
+ * since hashing it would mean reading the whole file the image is there to avoid.
+ */
+final class LevelImage {
+
+  /** The directory images are kept in, next to the maps directory. */
+  static final String DIRECTORY = "mapcache";
+
+  private static final int MAGIC = 0x4C564C49; // "LVLI"
+  private static final int VERSION = 1;
+  private static final int PAGE_SIZE = 4096;
+
+  private LevelImage() {
+  }
+
+  /**
+   * Gets the image file for a map.
+   *
+   * @param filename The map's filename, such as <code>maps/canyon.cw</code>.
+   * @return The image file.
+   */
+  static File getFile(String filename) {
+    File map = new File(filename).getAbsoluteFile();
+    File root = map.getParentFile().getParentFile();
+    String name = map.getName();
+    int dot = name.lastIndexOf('.');
+    return new File(new File(root, DIRECTORY), (dot < 0 ? name : name.substring(0, dot)) + ".lvl");
+  }
+
+  private static File getPropsFile(String filename) {
+    return new File(filename.substring(0, filename.indexOf(".")) + ".properties");
+  }
+
+  private static long align(long offset) {
+    return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+  }
+
+  /**
+   * Loads a level from its image, if the image is up to date.
+   *
+   * @param level The level, with its filename and id set.
+   * @param chaos Whether Chaos is on.
+   * @return <code>true</code> if the level was loaded, or <code>false</code> if it has to be
+   *     loaded from the map.
+   * @throws IOException if the image can't be read.
+   */
+  static boolean read(Level level, boolean chaos) throws IOException {
+    File file = getFile(level.filename);
+    File map = new File(level.filename);
+    File props = getPropsFile(level.filename);
+    if (!file.isFile() || !props.isFile()) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (image.remaining() < 8 || image.getInt() != MAGIC || image.getInt() != VERSION) {
+        return false;
+      }
+      if (image.getLong() != map.length()
+          || image.getLong() != map.lastModified()
+          || image.getLong() != props.lastModified()
+          || (image.get() != 0) != chaos) {
+        return false;
+      }
+      int width = image.getShort();
+      int height = image.getShort();
+      int depth = image.getShort();
+      Position spawn = new Position(image.getInt(), image.getInt(), image.getInt());
+      Rotation rotation = new Rotation(image.get(), image.get());
+      Set<Integer> blockTypes = readTypes(image);
+      Set<Integer> solidTypes = readTypes(image);
+      Set<Integer> breakableTypes = readTypes(image);
+      byte[] metadata = new byte[image.getInt()];
+      image.get(metadata);
+      long blocksOffset = image.getLong();
+      int length = width * height * depth;
+
+      byte[] blocks0 = new byte[length];
+      byte[] blocks1 = new byte[length];
+      image.position((int) blocksOffset);
+      image.get(blocks0);
+      image.position((int) align(blocksOffset + length));
+      image.get(blocks1);
+      image.position((int) align(image.position()));
+      LongBuffer solid = image.slice().asLongBuffer();
+      solid.limit((length + 63) / 64);
+
+      level.width = width;
+      level.height = height;
+      level.depth = depth;
+      level.spawnPosition = spawn;
+      level.spawnRotation = rotation;
+      Server.log("Loading map: " + level.id + " (decoded)");
+      level.loadProps();
+      level.blockTypes.addAll(blockTypes);
+      level.usedSolidTypes.addAll(solidTypes);
+      level.usedBreakableTypes.addAll(breakableTypes);
+      level.setBlocks(blocks0, blocks1, BitSet.valueOf(solid));
+      if (metadata.length > 0) {
+        try (NBTInputStream in = new NBTInputStream(new ByteArrayInputStream(metadata), false)) {
+          level.loadMetadata(((CompoundTag) in.readTag()).getValue());
+        }
+      }
+      return true;
+    }
+  }
+
+  private static Set<Integer> readTypes(ByteBuffer image) {
+    int count = image.getInt();
+    Set<Integer> types = new HashSet<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      types.add(image.getInt());
+    }
+    return types;
+  }
+
+  /**
+   * Writes the image of a level which has just been loaded from its map.
+   *
+   * @param level The level.
+   * @param chaos Whether Chaos was on when it was loaded.
+   * @param metadata The map's CPE metadata, or null if it has none.
+   */
+  static void write(Level level, boolean chaos, CompoundMap metadata) {
+    File file = getFile(level.filename);
+    File map = new File(level.filename);
+    File props = getPropsFile(level.filename);
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      byte[] metadataBytes = new byte[0];
+      if (metadata != null) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (NBTOutputStream out = new NBTOutputStream(bytes, false)) {
+          out.writeTag(new CompoundTag("Metadata", metadata));
+        }
+        metadataBytes = bytes.toByteArray();
+      }
+
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(header);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(map.length());
+      out.writeLong(map.lastModified());
+      out.writeLong(props.lastModified());
+      out.writeByte(chaos ? 1 : 0);
+      out.writeShort(level.width);
+      out.writeShort(level.height);
+      out.writeShort(level.depth);
+      out.writeInt(level.spawnPosition.getX());
+      out.writeInt(level.spawnPosition.getY());
+      out.writeInt(level.spawnPosition.getZ());
+      out.writeByte(level.spawnRotation.getRotation());
+      out.writeByte(level.spawnRotation.getLook());
+      writeTypes(out, level.blockTypes);
+      writeTypes(out, level.usedSolidTypes);
+      writeTypes(out, level.usedBreakableTypes);
+      out.writeInt(metadataBytes.length);
+      out.write(metadataBytes);
+      long blocksOffset = align(header.size() + 8);
+      out.writeLong(blocksOffset);
+
+      int length = level.width * level.height * level.depth;
+      long blocks1Offset = align(blocksOffset + length);
+      long solidOffset = align(blocks1Offset + length);
+      try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(channel, ByteBuffer.wrap(header.toByteArray()), 0);
+        writeFully(channel, ByteBuffer.wrap(level.getBlocks0(), 0, length), blocksOffset);
+        writeFully(channel, ByteBuffer.wrap(level.getBlocks1(), 0, length), blocks1Offset);
+        long[] solid = level.getSolidBlocks().toLongArray();
+        ByteBuffer solidBytes = ByteBuffer.allocate((length + 63) / 64 * 8);
+        solidBytes.asLongBuffer().put(solid);
+        writeFully(channel, solidBytes, solidOffset);
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      Server.log("Could not write the decoded copy of " + level.id + ": " + ex);
+      temp.delete();
+    }
+  }
+
+  private static void writeTypes(DataOutputStream out, Set<Integer> types)
+      throws IOException {
+    out.writeInt(types.size());
+    for (int type : types) {
+      out.writeInt(type);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+}
@@ -42,17 +42,51 @@ import org.opencraft.server.game.impl.GameSettings;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MapController {
+  /** The most maps kept decoded ahead of time: the three vote candidates and a fallback. */
+  private static final int PRELOAD_CACHE_SIZE = 4;
+
   public static ArrayList<String> levelNames = new ArrayList<String>(16);
   private static ArrayList<String> voteList;
   private static HashMap<String, Integer> levelVotes = new HashMap<String, Integer>(16);
   private static int nLevels = 0;
 
+  /**
+   * A map being decoded, or decoded, by the preloader. Chaos changes how the blocks are loaded, so
+   * a map decoded before it was toggled is loaded again.
+   */
+  private record PreloadedLevel(CompletableFuture<Level> level, boolean chaos) {
+  }
+
+  private static final ExecutorService preloader = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Map preloader");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final Map<String, PreloadedLevel> preloaded =
+      new LinkedHashMap<String, PreloadedLevel>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreloadedLevel> eldest) {
+          if (size() <= PRELOAD_CACHE_SIZE) return false;
+
+          eldest.getValue().level().cancel(false);
+          return true;
+        }
+      };
+  /** The map played if nobody votes, picked when the vote starts so it can be preloaded too. */
+  private static String fallbackMap;
+
   public static void create() {
     levelNames.clear();
     File dir = new File(Constants.ROOT_PATH + "/maps");
@@ -68,13 +102,80 @@ public class MapController {
     MapRatings.load();
   }
 
+  /**
+   * Gets a random map, waiting for it to load. This must not be used on the game loop.
+   *
+   * @return The map, or null if it couldn't be loaded.
+   */
   public static Level randomLevel() {
+    return randomLevelAsync().join();
+  }
+
+  /**
+   * Loads a random map in the background.
+   *
+   * @return The map once it has loaded, or null if it couldn't be.
+   */
+  public static CompletableFuture<Level> randomLevelAsync() {
     int r = Server.random.nextInt(nLevels);
     String name = levelNames.get(r);
-    return getLevel(name);
+    return getLevelAsync(name);
   }
 
+  /**
+   * Gets a map, waiting for it to load. This must not be used on the game loop.
+   *
+   * @param id The map's name.
+   * @return The map, or null if it doesn't exist.
+   */
   public static Level getLevel(String id) {
+    return getLevelAsync(id).join();
+  }
+
+  /**
+   * Loads a map in the background, taking it from the maps decoded ahead of time if it is one of
+   * them, so the game loop never waits for the disk.
+   *
+   * @param id The map's name.
+   * @return The map once it has loaded, or null if it doesn't exist.
+   */
+  public static CompletableFuture<Level> getLevelAsync(String id) {
+    long start = System.currentTimeMillis();
+    PreloadedLevel entry;
+    synchronized (preloaded) {
+      entry = preloaded.remove(id);
+    }
+    CompletableFuture<Level> decoded;
+    if (entry != null && entry.chaos() == GameSettings.CHAOS.get()) {
+      decoded = entry.level().exceptionally(ex -> null);
+    } else {
+      decoded = CompletableFuture.completedFuture(null);
+    }
+    return decoded.thenApplyAsync(
+        preloadedLevel -> {
+          if (preloadedLevel != null) {
+            Server.log("Took preloaded map " + id + " in " +
+                (System.currentTimeMillis() - start) + " ms");
+            return preloadedLevel;
+          }
+          Level level = loadLevel(id);
+          Server.log("Loaded map " + id + " in " + (System.currentTimeMillis() - start) + " ms");
+          return level;
+        },
+        preloader);
+  }
+
+  /**
+   * Checks if there is a map with a name.
+   *
+   * @param id The map's name.
+   * @return If the map exists.
+   */
+  public static boolean exists(String id) {
+    return levelNames.contains(id);
+  }
+
+  private static Level loadLevel(String id) {
     try {
       String path = "maps/" + id + ".cw";
       File file = new File(path);
@@ -87,6 +188,48 @@ public class MapController {
     return null;
   }
 
+  /**
+   * Starts decoding maps in the background, so that switching to one of them doesn't have to wait
+   * for it to load. A random fallback is decoded as well, for when nobody votes.
+   *
+   * @param names The maps which may be played next.
+   */
+  public static void preload(Collection<String> names) {
+    fallbackMap = (nLevels == 0 ? null : levelNames.get(Server.random.nextInt(nLevels)));
+    ArrayList<String> wanted = new ArrayList<String>(names);
+    if (fallbackMap != null && !wanted.contains(fallbackMap)) wanted.add(fallbackMap);
+    boolean chaos = GameSettings.CHAOS.get();
+    synchronized (preloaded) {
+      for (String name : wanted) {
+        PreloadedLevel entry = preloaded.get(name);
+        if (entry != null && entry.chaos() == chaos) continue;
+
+        preloaded.put(name, new PreloadedLevel(decode(name), chaos));
+      }
+    }
+  }
+
+  /* a map cancelled before the preloader gets to it isn't decoded at all */
+  private static CompletableFuture<Level> decode(String name) {
+    CompletableFuture<Level> level = new CompletableFuture<>();
+    preloader.execute(() -> {
+      if (!level.isDone()) {
+        level.complete(loadLevel(name));
+      }
+    });
+    return level;
+  }
+
+  /** Drops the maps decoded ahead of time, once the next map has been picked. */
+  public static void clearPreloaded() {
+    synchronized (preloaded) {
+      for (PreloadedLevel entry : preloaded.values()) {
+        entry.level().cancel(false);
+      }
+      preloaded.clear();
+    }
+  }
+
   public static void addVote(int index) {
     if (index >= 1 && index <= 3) {
       addVote(voteList.get(index - 1));
@@ -114,7 +257,7 @@ public class MapController {
     for (String name : ignore) {
       if (name != null && names.contains(name)) names.remove(name);
     }
-    if (GameSettings.getBoolean("OnlyTDM")) {
+    if (GameSettings.ONLY_TDM.get()) {
       Iterator<String> itr = names.iterator();
       while (itr.hasNext()) {
         if (!itr.next().startsWith("tdm_")) itr.remove();
@@ -130,7 +273,12 @@ public class MapController {
     return r;
   }
 
-  public static Level getMostVotedForMap() {
+  /**
+   * Loads the map with the most votes in the background, or the fallback if nobody voted.
+   *
+   * @return The map once it has loaded, or null if it couldn't be.
+   */
+  public static CompletableFuture<Level> getMostVotedForMap() {
     int highestVotes = 0;
     String highest = null;
     for (String l : levelVotes.keySet()) {
@@ -140,7 +288,10 @@ public class MapController {
         highestVotes = votes;
       }
     }
-    if (highest == null) return randomLevel();
-    else return getLevel(highest);
+    String next = (highest != null ? highest : fallbackMap);
+    fallbackMap = null;
+    CompletableFuture<Level> level = (next != null ? getLevelAsync(next) : randomLevelAsync());
+    clearPreloaded();
+    return level;
   }
 }
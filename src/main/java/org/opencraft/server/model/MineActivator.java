@@ -37,6 +37,9 @@
 package org.opencraft.server.model;
 
 public class MineActivator implements Runnable {
+  /** The time it takes for a mine to become active, in milliseconds. */
+  public static final long DELAY = 5000;
+
   private Mine mine;
   private Player player;
 
@@ -46,10 +49,6 @@ public class MineActivator implements Runnable {
   }
 
   public void run() {
-    try {
-      Thread.sleep(5000);
-    } catch (InterruptedException ex) {
-    }
     mine.active = true;
     player.getActionSender().sendChatMessage("- &eMine is now active!");
   }
@@ -0,0 +1,70 @@
+package org.opencraft.server.model;
+
+import java.util.BitSet;
+
+/**
+ * The blocks waiting for a physics update, as flat block indices. Each block is queued at most once
+ * per tick, which is checked against a bitset rather than by scanning the queue. Updates queued
+ * while a tick is being processed go into a second buffer and are handled next tick.
+ */
+public final class PhysicsQueue {
+
+  /** The blocks which are in the pending buffer. */
+  private final BitSet queued;
+
+  /** Blocks queued for the next tick. */
+  private IntQueue pending = new IntQueue(1024);
+
+  /** Blocks being processed this tick. */
+  private IntQueue current = new IntQueue(1024);
+
+  /**
+   * Creates the physics queue.
+   *
+   * @param blocks The number of blocks in the level.
+   */
+  public PhysicsQueue(int blocks) {
+    this.queued = new BitSet(blocks);
+  }
+
+  /**
+   * Queues a block for an update next tick.
+   *
+   * @param index The block index.
+   * @return <code>false</code> if the block was already queued.
+   */
+  public synchronized boolean add(int index) {
+    if (queued.get(index)) {
+      return false;
+    }
+    queued.set(index);
+    pending.add(index);
+    return true;
+  }
+
+  /**
+   * Takes the blocks queued so far, leaving an empty buffer for blocks queued from now on. The
+   * returned queue belongs to the caller until the next call.
+   *
+   * @return The blocks to update this tick.
+   */
+  public synchronized IntQueue swap() {
+    IntQueue updates = pending;
+    pending = current;
+    pending.clear();
+    current = updates;
+    for (int i = 0; i < updates.size(); i++) {
+      queued.clear(updates.get(i));
+    }
+    return updates;
+  }
+
+  /**
+   * Gets the number of blocks queued for the next tick.
+   *
+   * @return The number of blocks.
+   */
+  public synchronized int size() {
+    return pending.size();
+  }
+}
@@ -40,7 +40,6 @@ import de.gesundkrank.jskills.IPlayer;
 import de.gesundkrank.jskills.Rating;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opencraft.server.Configuration;
 import org.opencraft.server.Constants;
@@ -55,6 +54,9 @@ import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.PingList;
 import org.opencraft.server.persistence.LoadPersistenceRequest;
 import org.opencraft.server.persistence.SavePersistenceRequest;
+import org.opencraft.server.replay.ReplayViewer;
+import org.opencraft.server.task.TimingWheel;
+import org.opencraft.server.task.impl.SimulationTask;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -91,6 +93,8 @@ public class Player extends Entity implements IPlayer {
   public int heldBlock = 0;
   public boolean isInSmokeZone = false;
   public boolean joinedDuringTournamentMode;
+  /** Whether the player's saved game has been loaded, so it is safe to save them. */
+  public boolean statsLoaded = false;
   public boolean muted = false;
   public boolean frozen = false;
   public boolean AFK = false;
@@ -158,13 +162,18 @@ public class Player extends Entity implements IPlayer {
   public HashSet<String> ignorePlayers = new HashSet<String>();
   private ActionSender actionSender = null;
   private Player instance;
-  private Thread followThread;
-  private AtomicBoolean follow = new AtomicBoolean(false);
+  /** Teleports this player to the player they are following, or null if they aren't. */
+  private TimingWheel.Timeout follow;
   public ChatMode chatMode = ChatMode.DEFAULT;
   public Player chatPlayer;
   public boolean sendCommandLog = false;
   public final PingList pingList = new PingList();
   private final PlayerUI ui;
+  /** The list name, and what it was built from. Guarded by this. */
+  private String listName;
+  private long listNameState;
+  private volatile int listNameVersion;
+  private final EntityTracker tracker = new EntityTracker(this);
   public Position safePosition = new Position(0, 0, 0);
   private int currentRoundPoints = Constants.INITIAL_PLAYER_POINTS;
   public boolean streamerMode = false;
@@ -174,6 +183,7 @@ public class Player extends Entity implements IPlayer {
   public volatile boolean watchingReplay;
   public volatile boolean requestedToLeaveReplay;
   public volatile boolean usedCommandDuringReplay;
+  public volatile ReplayViewer replayViewer;
 
   // CTF
   public final LinkedList<Mine> mines = new LinkedList<Mine>();
@@ -210,9 +220,9 @@ public class Player extends Entity implements IPlayer {
       NAME_ID = 0;
     }
     ui = World.getWorld().getGameMode().createPlayerUI(this);
-    setAmmo(GameSettings.getInt("Ammo"));
-    setHealth(GameSettings.getInt("Health"));
-    setPoints(GameSettings.getInt("InitialPoints"));
+    setAmmo(GameSettings.AMMO.get());
+    setHealth(GameSettings.HEALTH.get());
+    setPoints(GameSettings.INITIAL_POINTS.get());
   }
 
   public Rating getRating(RatingType type) {
@@ -294,7 +304,7 @@ public class Player extends Entity implements IPlayer {
     if (otherPlayer == camera) return false;
 
     // Hide spectators in tourney mode
-    if (team == -1 && otherPlayer.team == -1 && GameSettings.getBoolean("Tournament") && World.getWorld().getGameMode().tournamentGameStarted) {
+    if (team == -1 && otherPlayer.team == -1 && GameSettings.TOURNAMENT.get() && World.getWorld().getGameMode().tournamentGameStarted) {
       return false;
     }
 
@@ -544,33 +554,15 @@ public class Player extends Entity implements IPlayer {
   }
 
   public void follow(final Player p) {
-    if (p == null && followThread != null) {
-      follow.set(false);
-    } else if (p != null) {
-      if (followThread != null) {
-        follow.set(false);
-        followThread.interrupt();
-        try {
-          followThread.join(1);
-        } catch (InterruptedException ex) {
-          return;
-        }
-      }
-      follow.set(true);
-      followThread =
-          new Thread(
-              () -> {
-                while (follow.get()) {
-                  Position pos = p.getPosition();
-                  Rotation r = p.getRotation();
-                  getActionSender().sendTeleport(pos, r);
-                  try {
-                    Thread.sleep(1000);
-                  } catch (InterruptedException ex) {
-                  }
-                }
-              });
-      followThread.start();
+    if (follow != null) {
+      follow.cancel();
+      follow = null;
+    }
+    if (p != null) {
+      follow =
+          SimulationTask.getSimulationTask()
+              .schedule(
+                  () -> getActionSender().sendTeleport(p.getPosition(), p.getRotation()), 0, 1000);
     }
   }
 
@@ -661,7 +653,7 @@ public class Player extends Entity implements IPlayer {
   }
 
   public boolean isVIP() {
-    return (!GameSettings.getBoolean("Tournament")
+    return (!GameSettings.TOURNAMENT.get()
         && getAttribute("VIP") != null
         && getAttribute("VIP").equals("true"))
         || isOp();
@@ -752,7 +744,7 @@ public class Player extends Entity implements IPlayer {
     RatingKt.checkForTeamAbandonment(this);
     int diff = gameMode.redPlayers - gameMode.bluePlayers;
     boolean unbalanced = false;
-    if (!GameSettings.getBoolean("Tournament")) {
+    if (!GameSettings.TOURNAMENT.get()) {
       if (diff >= 1 && team.equals("red")) {
         unbalanced = true;
       } else if (diff <= -1 && team.equals("blue")) {
@@ -1002,25 +994,64 @@ public class Player extends Entity implements IPlayer {
     return name;
   }
 
+  @Override
+  public void setPosition(Position position) {
+    super.setPosition(position);
+    World world = World.getWorld();
+    if (world != null) {
+      world.playerMoved(this);
+    }
+  }
+
   public String getColoredName() {
     return getNameChar() + name;
   }
 
-  public String getListName() {
+  public synchronized String getListName() {
+    refreshListName();
+    return listName;
+  }
+
+  /**
+   * Gets the version of the list name, which goes up every time the list name changes, so a tab
+   * list only has to compare versions to know which names to send again.
+   *
+   * @return The version.
+   */
+  public int getListNameVersion() {
+    return listNameVersion;
+  }
+
+  /**
+   * Rebuilds the list name if anything shown in it has changed. This is done for every player
+   * once before the tab lists are refreshed, rather than by every viewer.
+   */
+  public synchronized void refreshListName() {
+    long state = (currentRoundPoints & 0xFFFFFFFFL)
+        | (long) (team & 0xFF) << 32
+        | (hasFlag ? 1L << 40 : 0)
+        | (AFK ? 1L << 41 : 0)
+        | (muted ? 1L << 42 : 0)
+        | (watchingReplay ? 1L << 43 : 0)
+        | (isOp() ? 1L << 44 : 0);
+    if (listName != null && state == listNameState) {
+      return;
+    }
+    listNameState = state;
+
     String playerHasFlag = hasFlag ? "&6[!] " : "";
 
     List<String> characteristics = new ArrayList<>();
     if (AFK) characteristics.add("AFK");
     if (muted) characteristics.add("Muted");
-    synchronized (this) {
-      if (watchingReplay) characteristics.add("Replaying");
-    }
+    if (watchingReplay) characteristics.add("Replaying");
     String playerSuffix = (!characteristics.isEmpty() ?
         "    &7(" + String.join(", ", characteristics) + ")" : "");
 
-    String listName =
+    String name =
         playerHasFlag + getColoredName() + "    &f" + currentRoundPoints + playerSuffix;
-    return listName.substring(0, Math.min(64, listName.length()));
+    listName = name.substring(0, Math.min(64, name.length()));
+    listNameVersion++;
   }
 
   public String getTeamName() {
@@ -1095,7 +1126,7 @@ public class Player extends Entity implements IPlayer {
 
     World.getWorld().getGameMode().processPlayerMove(this);
     if (isFlamethrowerEnabled()) {
-      int duration = GameSettings.getInt("FlameThrowerDuration");
+      int duration = GameSettings.FLAME_THROWER_DURATION.get();
       // ticks a second
       float rate = (float) Constants.FLAME_THROWER_FUEL / duration;
       long time = System.currentTimeMillis();
@@ -1124,8 +1155,8 @@ public class Player extends Entity implements IPlayer {
       }
     } else {
       if (flamethrowerFuel != (float) Constants.FLAME_THROWER_FUEL) {
-        if (GameSettings.getBoolean("AutoRechargeFlamethrower")) {
-          int chargeTime = GameSettings.getInt("FlameThrowerRechargeTime");
+        if (GameSettings.AUTO_RECHARGE_FLAMETHROWER.get()) {
+          int chargeTime = GameSettings.FLAME_THROWER_RECHARGE_TIME.get();
           float rechargeRate = (float) Constants.FLAME_THROWER_FUEL / chargeTime;
           long time = System.currentTimeMillis();
           long dt = time - flamethrowerTime;
@@ -1212,8 +1243,8 @@ public class Player extends Entity implements IPlayer {
 
     return curTime - safeTime < Constants.SAFE_TIME
       || (
-        GameSettings.getBoolean("CreeperShield")
-          && (curTime - creeperTime < (long)(1000 * GameSettings.getFloat("CreeperTime")))
+        GameSettings.CREEPER_SHIELD.get()
+          && (curTime - creeperTime < (long)(1000 * GameSettings.CREEPER_TIME.get()))
       );
   }
 
@@ -1229,10 +1260,15 @@ public class Player extends Entity implements IPlayer {
     }
     requestedToLeaveReplay = true;
 
-    notifyAll();
+    ReplayViewer viewer = replayViewer;
+    if (viewer != null) viewer.wake();
   }
 
   public PlayerUI getUI() {
     return ui;
   }
+
+  public EntityTracker getTracker() {
+    return tracker;
+  }
 }
@@ -45,12 +45,39 @@ public abstract class PlayerUI {
   protected static final String FIRE = "░";
   private static final int PROGRESS_LENGTH = 64;
   private static final int PROGRESS_LENGTH_CHARACTERS = PROGRESS_LENGTH / 8;
-  private final HashMap<Player, String> playerListName = new HashMap<>();
+  /** The length of a bar whose value is 0, which is drawn greyed out. */
+  public static final int PROGRESS_INACTIVE = -1;
+  /* every bar, by style and then length, so they aren't built again every tick */
+  private static final String[][] PROGRESS_BARS = new String[ProgressBarType.values().length][];
+  private static final String[] INACTIVE_PROGRESS_BARS =
+      new String[ProgressBarType.values().length];
+
+  static {
+    for (ProgressBarType style : ProgressBarType.values()) {
+      String[] bars = new String[PROGRESS_LENGTH + 1];
+      for (int length = 0; length <= PROGRESS_LENGTH; length++) {
+        bars[length] = buildProgressBar(length, style);
+      }
+      PROGRESS_BARS[style.ordinal()] = bars;
+      INACTIVE_PROGRESS_BARS[style.ordinal()] = buildProgressBar(PROGRESS_INACTIVE, style);
+    }
+  }
+
+  /** The version of each player's list name this player was last sent. */
+  private final HashMap<Player, Integer> listNameVersions = new HashMap<>();
 
   protected final Player player;
 
   protected ProgressBar flamethrowerBar = new ProgressBar();
 
+  /** What the status lines show, which {@link #update()} sets every tick. */
+  protected final HudState hud = new HudState();
+
+  /* which of the hud's inputs each status line is rendered from */
+  private int status0Inputs = HudState.ALL;
+  private int status1Inputs = HudState.ALL;
+  private int status2Inputs = HudState.ALL;
+
   private String status0 = "";
   private String status1 = "";
   private String status2 = "";
@@ -58,18 +85,56 @@ public abstract class PlayerUI {
   public PlayerUI(Player player) {
     this.player = player;
     for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-      playerListName.put(p, p.getListName());
+      listNameVersions.put(p, p.getListNameVersion());
     }
   }
 
+  /**
+   * Sets which of the hud's inputs each status line is rendered from. A line is only rendered
+   * again when one of its inputs changes.
+   */
+  protected void setStatusInputs(int status0, int status1, int status2) {
+    status0Inputs = status0;
+    status1Inputs = status1;
+    status2Inputs = status2;
+  }
+
   public void setFlamethrower(int value) {
     flamethrowerBar.set(value);
   }
 
+  /**
+   * Gets how many of a progress bar's steps are filled.
+   *
+   * @param currentValue The value.
+   * @param maxValue The value of a full bar.
+   * @return The length, or {@link #PROGRESS_INACTIVE} if the value is 0.
+   */
+  public static int getProgressLength(float currentValue, int maxValue) {
+    if (currentValue == 0) {
+      return PROGRESS_INACTIVE;
+    }
+    return Math.round(currentValue / maxValue * PROGRESS_LENGTH);
+  }
+
   protected String getProgressBar(float currentValue, int maxValue, ProgressBarType style) {
-    int length = Math.round(currentValue / maxValue * PROGRESS_LENGTH);
+    return getProgressBar(getProgressLength(currentValue, maxValue), style);
+  }
+
+  protected static String getProgressBar(int length, ProgressBarType style) {
+    if (length == PROGRESS_INACTIVE) {
+      return INACTIVE_PROGRESS_BARS[style.ordinal()];
+    }
+    if (length < 0 || length > PROGRESS_LENGTH) {
+      // overfilled bars aren't in the table
+      return buildProgressBar(length, style);
+    }
+    return PROGRESS_BARS[style.ordinal()][length];
+  }
+
+  static String buildProgressBar(int length, ProgressBarType style) {
     StringBuilder builder = new StringBuilder();
-    if (currentValue == 0) {
+    if (length == PROGRESS_INACTIVE) {
       builder.append(PROGRESS_LEFT_INACTIVE);
       switch (style) {
         case AMMO:
@@ -96,7 +161,7 @@ public abstract class PlayerUI {
           break;
       }
       builder.append(PROGRESS_RIGHT_INACTIVE);
-          return builder.toString();
+      return builder.toString();
     }
 
     String p8, p7, p6, p5, p4, p3, p2, p1;
@@ -198,27 +263,35 @@ public abstract class PlayerUI {
 
   public synchronized void step(int ticks) {
     update();
-    String newStatus0 = getStatus0();
-    if (newStatus0 != null && !status0.equals(newStatus0)) {
-      status0 = newStatus0;
-      player.getActionSender().sendChatMessage(status0, 1);
+    int changed = hud.takeChanged();
+    if ((changed & status0Inputs) != 0) {
+      String newStatus0 = getStatus0();
+      if (newStatus0 != null && !status0.equals(newStatus0)) {
+        status0 = newStatus0;
+        player.getActionSender().sendChatMessage(status0, 1);
+      }
     }
-    String newStatus1 = getStatus1();
-    if (newStatus1 != null && !status1.equals(newStatus1)) {
-      status1 = newStatus1;
-      player.getActionSender().sendChatMessage(status1, 2);
+    if ((changed & status1Inputs) != 0) {
+      String newStatus1 = getStatus1();
+      if (newStatus1 != null && !status1.equals(newStatus1)) {
+        status1 = newStatus1;
+        player.getActionSender().sendChatMessage(status1, 2);
+      }
     }
-    String newStatus2 = getStatus2();
-    if (newStatus2 != null && !status2.equals(newStatus2)) {
-      status2 = newStatus2;
-      player.getActionSender().sendChatMessage(status2, 3);
+    if ((changed & status2Inputs) != 0) {
+      String newStatus2 = getStatus2();
+      if (newStatus2 != null && !status2.equals(newStatus2)) {
+        status2 = newStatus2;
+        player.getActionSender().sendChatMessage(status2, 3);
+      }
     }
 
     if (ticks % 5 == 0) {
       for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-        String listName = p.getListName();
-        if (!listName.equals(playerListName.get(p))){
-          playerListName.put(p, listName);
+        int version = p.getListNameVersion();
+        Integer sent = listNameVersions.get(p);
+        if (sent == null || sent != version) {
+          listNameVersions.put(p, version);
           short id = (p == this.player ? -1 : p.nameId);
           player.getActionSender().sendAddPlayerName(
               id, p.getName(), p.getListName(), p.getTeamName(), (byte) 1);
@@ -227,12 +300,23 @@ public abstract class PlayerUI {
     }
   }
 
+  /**
+   * Forgets a player who has disconnected.
+   *
+   * @param p The player.
+   */
+  public synchronized void removeListName(Player p) {
+    listNameVersions.remove(p);
+  }
+
   public synchronized void invalidateHUD() {
     status0 = "invalidated";
     status1 = "invalidated";
     status2 = "invalidated";
+    hud.invalidate();
   }
 
+  /** Moves the progress bars along and sets the hud's inputs, before the lines are rendered. */
   protected void update() {}
   protected abstract String getStatus0();
   protected abstract String getStatus1();
@@ -0,0 +1,267 @@
+package org.opencraft.server.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid of 8-block cells for finding the objects near a point without scanning all of
+ * them. Each object covers a box of block coordinates; a point is a box with no size. Cells are
+ * hashed into a fixed number of buckets, so the grid doesn't depend on the size of the level.
+ *
+ * <p>Queries are a coarse filter: they return every object whose box overlaps the query box, and
+ * callers still apply their own exact checks.
+ *
+ * @param <T> The type of object indexed.
+ */
+public final class SpatialIndex<T> {
+
+  /** The size of a cell, as a shift: cells are 8 blocks on a side. */
+  private static final int CELL_SHIFT = 3;
+
+  /** The number of buckets cells are hashed into. Must be a power of two. */
+  private static final int BUCKETS = 4096;
+
+  /** An indexed object and the box it covers. */
+  private static final class Entry<T> {
+    final T value;
+    int minX, minY, minZ, maxX, maxY, maxZ;
+    /** The buckets this entry is in. */
+    int[] buckets;
+    /** The query which last returned this entry. */
+    int stamp;
+
+    Entry(T value) {
+      this.value = value;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private final List<Entry<T>>[] buckets = new List[BUCKETS];
+
+  private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+
+  /** Incremented by each query, so entries in several buckets are only returned once. */
+  private int stamp;
+
+  /**
+   * Adds an object at a point, or moves it there if it is already indexed.
+   *
+   * @param value The object.
+   * @param x The x coordinate, in blocks.
+   * @param y The y coordinate, in blocks.
+   * @param z The z coordinate, in blocks.
+   */
+  public void put(T value, int x, int y, int z) {
+    put(value, x, y, z, x, y, z);
+  }
+
+  /**
+   * Adds an object covering a box, or moves it there if it is already indexed. The bounds are
+   * inclusive.
+   *
+   * @param value The object.
+   */
+  public synchronized void put(T value, int minX, int minY, int minZ, int maxX, int maxY,
+      int maxZ) {
+    Entry<T> entry = entries.get(value);
+    if (entry == null) {
+      entry = new Entry<>(value);
+      entries.put(value, entry);
+    } else if (sameCells(entry, minX, minY, minZ, maxX, maxY, maxZ)) {
+      // the common case, an object moving within its cell
+      setBounds(entry, minX, minY, minZ, maxX, maxY, maxZ);
+      return;
+    } else {
+      unlink(entry);
+    }
+    setBounds(entry, minX, minY, minZ, maxX, maxY, maxZ);
+    link(entry);
+  }
+
+  /**
+   * Moves an object which is already indexed. Objects which aren't indexed are ignored, so this
+   * can be called for every position change.
+   *
+   * @param value The object.
+   * @param x The x coordinate, in blocks.
+   * @param y The y coordinate, in blocks.
+   * @param z The z coordinate, in blocks.
+   */
+  public synchronized void move(T value, int x, int y, int z) {
+    if (entries.containsKey(value)) {
+      put(value, x, y, z);
+    }
+  }
+
+  /**
+   * Removes an object.
+   *
+   * @param value The object.
+   */
+  public synchronized void remove(T value) {
+    Entry<T> entry = entries.remove(value);
+    if (entry != null) {
+      unlink(entry);
+    }
+  }
+
+  /** Removes every object. */
+  public synchronized void clear() {
+    entries.clear();
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = null;
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets every indexed object.
+   *
+   * @return A copy of the objects, in no particular order.
+   */
+  public synchronized List<T> values() {
+    return new ArrayList<>(entries.keySet());
+  }
+
+  /**
+   * Finds the objects whose boxes contain a point.
+   *
+   * @return A new list of the objects.
+   */
+  public List<T> query(int x, int y, int z) {
+    return query(x, y, z, x, y, z);
+  }
+
+  /**
+   * Finds the objects within a distance of a point, measured to the nearest point of their boxes.
+   *
+   * @param radius The distance, in blocks.
+   * @return A new list of the objects.
+   */
+  public synchronized List<T> queryRadius(int x, int y, int z, int radius) {
+    List<T> result = query(x - radius, y - radius, z - radius, x + radius, y + radius,
+        z + radius);
+    long limit = (long) radius * radius;
+    result.removeIf(value -> distanceSquared(entries.get(value), x, y, z) > limit);
+    return result;
+  }
+
+  /**
+   * Finds the objects whose boxes overlap a box. The bounds are inclusive.
+   *
+   * @return A new list of the objects.
+   */
+  public synchronized List<T> query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    List<T> result = new ArrayList<>();
+    int stamp = ++this.stamp;
+    long cells = (long) ((maxX >> CELL_SHIFT) - (minX >> CELL_SHIFT) + 1)
+        * ((maxY >> CELL_SHIFT) - (minY >> CELL_SHIFT) + 1)
+        * ((maxZ >> CELL_SHIFT) - (minZ >> CELL_SHIFT) + 1);
+    if (cells > entries.size()) {
+      // cheaper to check everything than to visit each cell
+      for (Entry<T> entry : entries.values()) {
+        if (overlaps(entry, minX, minY, minZ, maxX, maxY, maxZ)) {
+          result.add(entry.value);
+        }
+      }
+      return result;
+    }
+    for (int cx = minX >> CELL_SHIFT; cx <= maxX >> CELL_SHIFT; cx++) {
+      for (int cy = minY >> CELL_SHIFT; cy <= maxY >> CELL_SHIFT; cy++) {
+        for (int cz = minZ >> CELL_SHIFT; cz <= maxZ >> CELL_SHIFT; cz++) {
+          List<Entry<T>> bucket = buckets[bucket(cx, cy, cz)];
+          if (bucket == null) {
+            continue;
+          }
+          for (int i = 0; i < bucket.size(); i++) {
+            Entry<T> entry = bucket.get(i);
+            if (entry.stamp != stamp && overlaps(entry, minX, minY, minZ, maxX, maxY, maxZ)) {
+              entry.stamp = stamp;
+              result.add(entry.value);
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static int bucket(int cx, int cy, int cz) {
+    return ((cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791)) & (BUCKETS - 1);
+  }
+
+  private static boolean overlaps(Entry<?> entry, int minX, int minY, int minZ, int maxX,
+      int maxY, int maxZ) {
+    return entry.minX <= maxX && entry.maxX >= minX
+        && entry.minY <= maxY && entry.maxY >= minY
+        && entry.minZ <= maxZ && entry.maxZ >= minZ;
+  }
+
+  private static long distanceSquared(Entry<?> entry, int x, int y, int z) {
+    long dx = Math.max(0, Math.max(entry.minX - x, x - entry.maxX));
+    long dy = Math.max(0, Math.max(entry.minY - y, y - entry.maxY));
+    long dz = Math.max(0, Math.max(entry.minZ - z, z - entry.maxZ));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private static boolean sameCells(Entry<?> entry, int minX, int minY, int minZ, int maxX,
+      int maxY, int maxZ) {
+    return entry.minX >> CELL_SHIFT == minX >> CELL_SHIFT
+        && entry.minY >> CELL_SHIFT == minY >> CELL_SHIFT
+        && entry.minZ >> CELL_SHIFT == minZ >> CELL_SHIFT
+        && entry.maxX >> CELL_SHIFT == maxX >> CELL_SHIFT
+        && entry.maxY >> CELL_SHIFT == maxY >> CELL_SHIFT
+        && entry.maxZ >> CELL_SHIFT == maxZ >> CELL_SHIFT;
+  }
+
+  private static void setBounds(Entry<?> entry, int minX, int minY, int minZ, int maxX, int maxY,
+      int maxZ) {
+    entry.minX = Math.min(minX, maxX);
+    entry.minY = Math.min(minY, maxY);
+    entry.minZ = Math.min(minZ, maxZ);
+    entry.maxX = Math.max(minX, maxX);
+    entry.maxY = Math.max(minY, maxY);
+    entry.maxZ = Math.max(minZ, maxZ);
+  }
+
+  /** Adds an entry to the bucket of every cell its box covers. */
+  private void link(Entry<T> entry) {
+    int[] linked = new int[1];
+    int count = 0;
+    for (int cx = entry.minX >> CELL_SHIFT; cx <= entry.maxX >> CELL_SHIFT; cx++) {
+      for (int cy = entry.minY >> CELL_SHIFT; cy <= entry.maxY >> CELL_SHIFT; cy++) {
+        for (int cz = entry.minZ >> CELL_SHIFT; cz <= entry.maxZ >> CELL_SHIFT; cz++) {
+          int index = bucket(cx, cy, cz);
+          boolean seen = false;
+          for (int i = 0; i < count && !seen; i++) {
+            seen = linked[i] == index;
+          }
+          if (seen) {
+            continue;
+          }
+          if (count == linked.length) {
+            linked = Arrays.copyOf(linked, count * 2);
+          }
+          linked[count++] = index;
+          if (buckets[index] == null) {
+            buckets[index] = new ArrayList<>(4);
+          }
+          buckets[index].add(entry);
+        }
+      }
+    }
+    entry.buckets = count == linked.length ? linked : Arrays.copyOf(linked, count);
+  }
+
+  private void unlink(Entry<T> entry) {
+    for (int index : entry.buckets) {
+      buckets[index].remove(entry);
+    }
+  }
+}
@@ -52,13 +52,13 @@ import java.util.HashMap;
 public class Store {
   private HashMap<String, StoreItem> items = new HashMap<String, StoreItem>(16);
 
-  public static int bigTNTPrice = GameSettings.getInt("BigTNTPrice");
-  public static int rocketPrice = GameSettings.getInt("RocketPrice");
-  public static int grenadePrice = GameSettings.getInt("GrenadePrice");
-  public static int linePrice = GameSettings.getInt("LinePrice");
-  public static int creeperPrice = GameSettings.getInt("CreeperPrice");
-  public static int smokeGrenadePrice = GameSettings.getInt("SmokeGrenadePrice");
-  public static int flamethrowerFuelPrice = GameSettings.getInt("FlameThrowerFuelPrice");
+  public static int bigTNTPrice = GameSettings.BIG_TNT_PRICE.get();
+  public static int rocketPrice = GameSettings.ROCKET_PRICE.get();
+  public static int grenadePrice = GameSettings.GRENADE_PRICE.get();
+  public static int linePrice = GameSettings.LINE_PRICE.get();
+  public static int creeperPrice = GameSettings.CREEPER_PRICE.get();
+  public static int smokeGrenadePrice = GameSettings.SMOKE_GRENADE_PRICE.get();
+  public static int flamethrowerFuelPrice = GameSettings.FLAME_THROWER_FUEL_PRICE.get();
 
   private static final int creeperRecharge = 7;
   private static final int grenadeRecharge = 7;
@@ -99,7 +99,7 @@ public class Store {
       p.getActionSender().sendChatMessage("- &eStore item does not exist.");
       return false;
     }
-    if (!GameSettings.getBoolean("Chaos") && item.price > p.getPoints()) {
+    if (!GameSettings.CHAOS.get() && item.price > p.getPoints()) {
       p.getActionSender().sendChatMessage("- &eYou don't have enough points!");
       return false;
     }
@@ -148,7 +148,7 @@ public class Store {
       }
     }
 
-    if (!GameSettings.getBoolean("Chaos")) {
+    if (!GameSettings.CHAOS.get()) {
       p.subtractPoints(item.price);
       p.getActionSender().sendChatMessage("- &eYou have " + p.getPoints() + " points left");
     }
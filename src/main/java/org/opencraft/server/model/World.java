@@ -44,17 +44,23 @@ import org.opencraft.server.game.impl.CTFGameMode;
 import org.opencraft.server.game.impl.GameSettings;
 import org.opencraft.server.heartbeat.HeartbeatManager;
 import org.opencraft.server.io.LevelGzipper;
+import org.opencraft.server.net.ActionSender;
 import org.opencraft.server.net.MinecraftSession;
+import org.opencraft.server.net.Recipients;
+import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.persistence.LoadPersistenceRequest;
+import org.opencraft.server.persistence.PlayerRecord;
 import org.opencraft.server.persistence.SavePersistenceRequest;
 import org.opencraft.server.persistence.SavedGameManager;
 import org.opencraft.server.util.PlayerList;
 
-import java.io.IOException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Manages the in-game world.
@@ -75,14 +81,20 @@ public final class World {
       throw new ExceptionInInitializerError(t);
     }
     INSTANCE = w;
-    w.gameMode.startGame(null);
+    // the loop hasn't started, so the first map can be loaded here
+    w.gameMode.startGame(MapController.randomLevel());
   }
 
   /** The player list. */
   private final PlayerList playerList = new PlayerList();
 
-  private ArrayList<Mine> mines = new ArrayList<>(64);
+  /** The players, by block position. */
+  private final SpatialIndex<Player> playerIndex = new SpatialIndex<>();
+  /** The mines, by block position. */
+  private final SpatialIndex<Mine> mines = new SpatialIndex<>();
   private ArrayList<SmokeZone> smokeZones = new ArrayList<>(64);
+  /** The smoke zones, by the blocks they cover. */
+  private final SpatialIndex<SmokeZone> smokeZoneIndex = new SpatialIndex<>();
 
   /** The level. */
   private Level level;
@@ -104,7 +116,7 @@ public final class World {
   }
 
   public void addMine(Mine m) {
-    mines.add(m);
+    mines.put(m, (m.x - 16) / 32, (m.y - 16) / 32, (m.z - 16) / 32);
   }
 
   public void removeMine(Mine m) {
@@ -116,22 +128,62 @@ public final class World {
   }
 
   public Mine getMine(int x, int y, int z) {
-    for (Mine m : mines) {
+    for (Mine m : mines.query(x, y, z)) {
       if ((m.x - 16) / 32 == x && (m.y - 16) / 32 == y && (m.z - 16) / 32 == z) return m;
     }
     return null;
   }
 
   public Iterable<Mine> getAllMines() {
-    return new ArrayList<>(mines);
+    return mines.values();
+  }
+
+  /**
+   * Gets the mines in a box of blocks. The bounds are inclusive.
+   *
+   * @return The mines.
+   */
+  public List<Mine> getMines(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    return mines.query(minX, minY, minZ, maxX, maxY, maxZ);
+  }
+
+  /**
+   * Gets the players whose block positions are in a box. The bounds are inclusive, and positions
+   * are rounded down to the block.
+   *
+   * @return The players.
+   */
+  public List<Player> getPlayers(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    return playerIndex.query(minX, minY, minZ, maxX, maxY, maxZ);
+  }
+
+  /**
+   * Updates the position of a player in the spatial index.
+   *
+   * @param player The player.
+   */
+  void playerMoved(Player player) {
+    Position position = player.getPosition();
+    playerIndex.move(player, position.getX() >> 5, position.getY() >> 5, position.getZ() >> 5);
   }
 
   public void addSmokeZone(SmokeZone z) {
     smokeZones.add(z);
+    smokeZoneIndex.put(z, z.minX, z.minY, z.minZ, z.maxX, z.maxY, z.maxZ);
+  }
+
+  /**
+   * Gets the smoke zones which might contain a block. Callers should check the zone bounds.
+   *
+   * @return The smoke zones.
+   */
+  public List<SmokeZone> getSmokeZones(int x, int y, int z) {
+    return smokeZoneIndex.query(x, y, z);
   }
 
   public void removeSmokeZone(SmokeZone z) {
     smokeZones.remove(z);
+    smokeZoneIndex.remove(z);
 
     for (Player player : World.getWorld().getPlayerList().getPlayers()) {
         player.getSession().getActionSender().sendRemoveSelectionCuboid(z.id);
@@ -171,6 +223,7 @@ public final class World {
     }
 
     smokeZones.clear();
+    smokeZoneIndex.clear();
   }
 
   public Iterable<SmokeZone> getAllSmokeZones() {
@@ -239,7 +292,9 @@ public final class World {
       session.close();
       return;
     } else if (Configuration.getConfiguration().isVerifyingNames()) {
-      Server.d(("Verifying " + username));
+      if (Server.isDebug()) {
+        Server.d("Verifying " + username);
+      }
       long salt = HeartbeatManager.getHeartbeatManager().getSalt();
       String hash = new StringBuilder().append(String.valueOf(salt)).append(username).toString();
       MessageDigest digest;
@@ -272,6 +327,30 @@ public final class World {
       }
     }
 
+    // Load their saved game, which may finish on a later tick if it isn't in memory
+    final String name = username;
+    SavedGameManager.getSavedGameManager()
+        .load(
+            name,
+            record -> completeLogin(session, name, record),
+            () -> {
+              session.getActionSender().sendLoginFailure("Could not load your stats, try again");
+              session.close();
+            });
+  }
+
+  /**
+   * Adds a player once their saved game has been loaded, and sends them the level.
+   *
+   * @param session The session.
+   * @param username The username.
+   * @param record The player's saved game, or <code>null</code> if they are new.
+   */
+  private void completeLogin(MinecraftSession session, String username, PlayerRecord record) {
+    if (!session.isConnected() || session.isAuthenticated()) {
+      return;
+    }
+
     // Disconnect any existing players with the same name
     for (Player p : playerList.getPlayers()) {
       if (p.getName().equalsIgnoreCase(username)) {
@@ -287,16 +366,14 @@ public final class World {
       session.close();
       return;
     }
+    Position position = player.getPosition();
+    playerIndex.put(player, position.getX() >> 5, position.getY() >> 5, position.getZ() >> 5);
 
     // Final setup
     session.setPlayer(player);
     final Configuration c = Configuration.getConfiguration();
     boolean op = false;
-    try {
-      new LoadPersistenceRequest(player).perform();
-    } catch (IOException ex) {
-      Server.log(ex);
-    }
+    LoadPersistenceRequest.apply(player, record);
 
     if (player.isOp()) op = true;
     else op = false;
@@ -307,9 +384,9 @@ public final class World {
     }
 
     // If whitelist is enabled, only allow whitelisted players and OPs/VIPs
-    if (GameSettings.getBoolean("Whitelist")) {
+    if (GameSettings.WHITELIST.get()) {
       if (!Server.isWhitelisted(username) && !player.isOp() && !player.isVIP()) {
-        player.getSession().getActionSender().sendLoginFailure(GameSettings.getString("WhitelistMessage"));
+        player.getSession().getActionSender().sendLoginFailure(GameSettings.WHITELIST_MESSAGE.get());
         session.close();
         return;
       }
@@ -339,6 +416,10 @@ public final class World {
   public void unregister(MinecraftSession session) {
     if (session.isAuthenticated()) {
       playerList.remove(session.getPlayer());
+      playerIndex.remove(session.getPlayer());
+      for (Player player : playerList.getPlayers(true)) {
+        player.getUI().removeListName(session.getPlayer());
+      }
       World.getWorld().getGameMode().playerDisconnected(session.getPlayer());
       SavedGameManager.getSavedGameManager()
           .queuePersistenceRequest(new SavePersistenceRequest(session.getPlayer()));
@@ -428,21 +509,35 @@ public final class World {
    * @param message The message.
    */
   public void broadcast(Player player, String message) {
-    for (Player otherPlayer : playerList.getPlayers(true)) {
-      otherPlayer.getSession().getActionSender().sendChatMessage(message);
-    }
+    broadcast(Recipients.ALL, message);
   }
 
   public void broadcastOp(String message) {
-    for (Player otherPlayer : playerList.getPlayers()) {
-      if (otherPlayer.isOp()) otherPlayer.getSession().getActionSender().sendChatMessage(message);
-    }
+    broadcast(Recipients.OPS, message);
   }
 
   public void broadcast(String message) {
-    for (Player player : playerList.getPlayers(true)) {
-      player.getSession().getActionSender().sendChatMessage(message);
-    }
+    broadcast(Recipients.ALL, message);
+  }
+
+  /**
+   * Broadcasts a chat message to the players who match a filter. The message is encoded once.
+   *
+   * @param recipients Who to send it to, from {@link Recipients}.
+   * @param message The message.
+   */
+  public void broadcast(Predicate<Player> recipients, String message) {
+    ActionSender.broadcastChatMessage(playerList.getPlayers(true), recipients, message, 0);
+  }
+
+  /**
+   * Broadcasts packets to the players who match a filter. Every player is sent the same bytes.
+   *
+   * @param recipients Who to send them to, from {@link Recipients}.
+   * @param packets The packets.
+   */
+  public void broadcast(Predicate<Player> recipients, Packet... packets) {
+    ActionSender.broadcast(playerList.getPlayers(true), recipients, Arrays.asList(packets));
   }
 
   public void sendPM(Player player, Player other, String text) {
@@ -457,21 +552,14 @@ public final class World {
 
   public void sendOpChat(Player player, String text) {
     Server.log(player.getName() + " [opchat]:  " + text);
-    for (Player t : World.getWorld().getPlayerList().getPlayers()) {
-      if (t.isOp()) {
-        t.getActionSender().sendChatMessage("[OP] " + player.getColoredName() + "&f: " + text);
-      }
-    }
+    broadcast(Recipients.OPS, "[OP] " + player.getColoredName() + "&f: " + text);
   }
 
   public void sendTeamChat(Player player, String text) {
     if (!player.muted) {
       Server.log(player.getName() + " [team]:  " + text);
-      for (Player t : World.getWorld().getPlayerList().getPlayers()) {
-        if (t.team == player.team && !t.isIgnored(player)) {
-          t.getActionSender().sendChatMessage("[Team] " + player.getColoredName() + "&f: " + text);
-        }
-      }
+      broadcast(Recipients.team(player.team).and(Recipients.notIgnoring(player)),
+          "[Team] " + player.getColoredName() + "&f: " + text);
     }
   }
 
@@ -480,10 +568,6 @@ public final class World {
     if (player.isVIP() && !player.isOp()) {
       chr += "[VIP] ";
     }
-    for (Player t : World.getWorld().getPlayerList().getPlayers(true)) {
-      if (!t.isIgnored(player)) {
-        t.getActionSender().sendChatMessage(chr + player.getName() + "&f: " + message);
-      }
-    }
+    broadcast(Recipients.notIgnoring(player), chr + player.getName() + "&f: " + message);
   }
 }
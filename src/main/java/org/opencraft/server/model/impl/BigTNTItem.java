@@ -43,8 +43,8 @@ import org.opencraft.server.model.StoreItem;
 public class BigTNTItem extends StoreItem {
   public BigTNTItem(String n, int p) {
     super(n, p);
-    int range = (GameSettings.getInt("BigTNTRadius") * 2) + 1;
-    int amount = GameSettings.getInt("BigTNTAmount");
+    int range = (GameSettings.BIG_TNT_RADIUS.get() * 2) + 1;
+    int amount = GameSettings.BIG_TNT_AMOUNT.get();
     description = "Get " + amount + " TNTs with a " + range + "x" + range + " explosion";
   }
 
@@ -54,7 +54,7 @@ public class BigTNTItem extends StoreItem {
 
   @Override
   public void activate(Player player) {
-    player.tntRadius = GameSettings.getInt("BigTNTRadius");
-    player.bigTNTRemaining = GameSettings.getInt("BigTNTAmount");
+    player.tntRadius = GameSettings.BIG_TNT_RADIUS.get();
+    player.bigTNTRemaining = GameSettings.BIG_TNT_AMOUNT.get();
   }
 }
@@ -36,13 +36,12 @@
  */
 package org.opencraft.server.net;
 
-import com.google.common.collect.ImmutableList;
 import org.opencraft.server.Configuration;
 import org.opencraft.server.Constants;
 import org.opencraft.server.Server;
-import org.opencraft.server.model.BlockChange;
 import org.opencraft.server.model.CustomBlockDefinition;
 import org.opencraft.server.model.Entity;
+import org.opencraft.server.model.EntityTracker;
 import org.opencraft.server.model.Level;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.Position;
@@ -50,12 +49,16 @@ import org.opencraft.server.model.Rotation;
 import org.opencraft.server.model.TexturePackHandler;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.FakePlayerBase.FakeMinecraftSession;
+import org.opencraft.server.net.packet.EncodedPacket;
+import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.PacketBuilder;
-import org.opencraft.server.persistence.LoadPersistenceRequest;
-import org.opencraft.server.persistence.SavedGameManager;
-import org.opencraft.server.replay.ReplayThread;
+import org.opencraft.server.replay.ReplayViewer;
+import org.opencraft.server.task.GameLoop;
 import org.opencraft.server.task.Task;
-import org.opencraft.server.task.TaskQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * A utility class for sending packets.
@@ -100,7 +103,9 @@ public class ActionSender {
    * @param message The message to send to the client.
    */
   public void sendLoginFailure(String message) {
-    Server.d("Disconencting " + session.getIP() + " (" + session.username + ") " + message);
+    if (Server.isDebug()) {
+      Server.d("Disconencting " + session.getIP() + " (" + session.username + ") " + message);
+    }
     PacketBuilder bldr =
         new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(14));
     bldr.putString("reason", message);
@@ -133,48 +138,28 @@ public class ActionSender {
     session.send(bldr.toPacket());
   }
 
+  /**
+   * Sends level blocks/chunks which have already been encoded.
+   *
+   * @param chunks The chunk packets.
+   */
+  public void sendLevelBlocks(List<EncodedPacket> chunks) {
+    for (EncodedPacket chunk : chunks) {
+      session.send(chunk);
+    }
+  }
+
   /** Sends the level finish packet. */
   public void sendLevelFinish() {
-    TaskQueue.getTaskQueue()
-        .push(
+    GameLoop.getGameLoop()
+        .submit(
             new Task() {
               public void execute() {
                 try {
                   // for thread safety
-                  final Level level = World.getWorld().getLevel();
-                  PacketBuilder bldr =
-                      new PacketBuilder(
-                          PersistingPacketManager.getPacketManager().getOutgoingPacket(4));
-                  bldr.putShort("width", level.getWidth());
-                  bldr.putShort("height", level.getHeight());
-                  bldr.putShort("depth", level.getDepth());
-                  session.send(bldr.toPacket());
-                  Position spawn = level.getSpawnPosition();
-                  Rotation r = level.getSpawnRotation();
-                  sendSpawn(
-                      (byte) -1,
-                      session.getPlayer().nameId,
-                      session.getPlayer().getColoredName(),
-                      session.getPlayer().getTeamName(),
-                      session.getPlayer().getName(),
-                      session.getPlayer().getListName(),
-                      session.getPlayer().getSkinUrl(),
-                      spawn.getX(),
-                      spawn.getY(),
-                      spawn.getZ(),
-                      (byte) r.getRotation(),
-                      (byte) r.getLook(),
-                      false,
-                      true);
-                  // now load the player's game (TODO in the future do this in parallel with loading
-                  // the
-                  // level)
+                  sendLevelFinish(World.getWorld().getLevel());
+                  // the player's saved game was loaded when they logged in
                   boolean bot = (session instanceof FakeMinecraftSession);
-                  if (!bot) {
-                    SavedGameManager.getSavedGameManager()
-                        .queuePersistenceRequest(new LoadPersistenceRequest(session.getPlayer()));
-                  }
-
                   session.setReady();
                   if (!bot) World.getWorld().completeRegistration(session);
                 } catch (Exception ex) {
@@ -184,6 +169,37 @@ public class ActionSender {
             });
   }
 
+  /**
+   * Sends the level finish packet and the player's spawn, without finishing their login.
+   *
+   * @param level The level which was sent.
+   */
+  public void sendLevelFinish(Level level) {
+    PacketBuilder bldr =
+        new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(4));
+    bldr.putShort("width", level.getWidth());
+    bldr.putShort("height", level.getHeight());
+    bldr.putShort("depth", level.getDepth());
+    session.send(bldr.toPacket());
+    Position spawn = level.getSpawnPosition();
+    Rotation r = level.getSpawnRotation();
+    sendSpawn(
+        (byte) -1,
+        session.getPlayer().nameId,
+        session.getPlayer().getColoredName(),
+        session.getPlayer().getTeamName(),
+        session.getPlayer().getName(),
+        session.getPlayer().getListName(),
+        session.getPlayer().getSkinUrl(),
+        spawn.getX(),
+        spawn.getY(),
+        spawn.getZ(),
+        (byte) r.getRotation(),
+        (byte) r.getLook(),
+        false,
+        true);
+  }
+
   /**
    * Sends a teleport.
    *
@@ -237,6 +253,16 @@ public class ActionSender {
         (byte) player.getRotation().getLook(),
         isSelf,
         session.getPlayer().canSee(player));
+    EntityTracker tracker = getTracker();
+    if (tracker != null && !isSelf) {
+      tracker.spawned(player);
+    }
+  }
+
+  /* the tracker of the player these packets go to, unless they are being collected elsewhere */
+  private EntityTracker getTracker() {
+    Player player = session.getPlayer();
+    return player != null && player.getSession() == session ? player.getTracker() : null;
   }
 
   public void sendSpawn(
@@ -275,6 +301,10 @@ public class ActionSender {
   }
 
   public void sendExtSpawn(Player player) {
+    EntityTracker tracker = getTracker();
+    if (tracker != null) {
+      tracker.spawned(player);
+    }
     sendExtSpawn(
         (byte) player.getId(),
         player.getColoredName(),
@@ -286,6 +316,18 @@ public class ActionSender {
         (byte) player.getRotation().getLook());
   }
 
+  /**
+   * Adds a player to the tab list, as spawning them would.
+   *
+   * @param player The player.
+   */
+  public void sendListName(Player player) {
+    if (session.isExtensionSupported("ExtPlayerList", 2)) {
+      short id = (player.nameId == session.getPlayer().nameId ? -1 : player.nameId);
+      sendAddPlayerName(id, player.getName(), player.getListName(), player.getTeamName(), (byte) 1);
+    }
+  }
+
   public void sendAddPlayerName(
       short id, String name, String listName, String groupName, byte groupRank) {
     PacketBuilder bldr =
@@ -307,6 +349,11 @@ public class ActionSender {
 
   public void sendExtSpawn(
       byte id, String name, String skinName, int x, int y, int z, byte rotation, byte look) {
+    session.send(extSpawnPacket(id, name, skinName, x, y, z, rotation, look));
+  }
+
+  public static Packet extSpawnPacket(
+      byte id, String name, String skinName, int x, int y, int z, byte rotation, byte look) {
     PacketBuilder bldr =
         new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(33));
     bldr.putByte("id", id);
@@ -317,61 +364,44 @@ public class ActionSender {
     bldr.putShort("z", z);
     bldr.putByte("rotation", rotation);
     bldr.putByte("look", look);
-    session.send(bldr.toPacket());
+    return bldr.toPacket();
   }
 
   /**
-   * Sends the update entity packet.
+   * Sends where an entity is: as a move from where the client last saw it if that is close enough,
+   * or as a teleport.
    *
    * @param entity The entity being updated.
+   * @param from Where the client last saw the entity, or null to always teleport.
    */
-  public void sendUpdateEntity(Entity entity) {
-    final Position oldPosition = entity.getOldPosition();
+  public void sendUpdateEntity(Entity entity, Position from) {
     Position position = entity.getPosition();
-
-    final Rotation oldRotation = entity.getOldRotation();
-    final Rotation rotation = entity.getRotation();
-
-    final int deltaX = -oldPosition.getX() - position.getX();
-    final int deltaY = -oldPosition.getY() - position.getY();
-    final int deltaZ = -oldPosition.getZ() - position.getZ();
-
-    final int deltaRotation = -oldRotation.getRotation() - rotation.getRotation();
-    final int deltaLook = -oldRotation.getLook() - rotation.getLook();
-    if (deltaX != 0 || deltaY != 0 || deltaZ != 0) {
-      if (deltaX > Byte.MAX_VALUE
-          || deltaX < Byte.MIN_VALUE
-          || deltaY > Byte.MAX_VALUE
-          || deltaY < Byte.MIN_VALUE
-          || deltaZ > Byte.MAX_VALUE
-          || deltaZ < Byte.MIN_VALUE
-          || deltaRotation > Byte.MAX_VALUE
-          || deltaRotation < Byte.MIN_VALUE
-          || deltaLook > Byte.MAX_VALUE
-          || deltaLook < Byte.MIN_VALUE) {
-        // teleport
-        PacketBuilder bldr =
-            new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(8));
-        bldr.putByte("id", entity.getId());
-        bldr.putShort("x", position.getX());
-        bldr.putShort("y", position.getY());
-        bldr.putShort("z", position.getZ());
-        bldr.putByte("rotation", rotation.getRotation());
-        bldr.putByte("look", rotation.getLook());
-        session.send(bldr.toPacket());
-      } else {
-        // send move and rotate packet
+    Rotation rotation = entity.getRotation();
+    if (from != null) {
+      final int deltaX = position.getX() - from.getX();
+      final int deltaY = position.getY() - from.getY();
+      final int deltaZ = position.getZ() - from.getZ();
+      if (deltaX <= Byte.MAX_VALUE
+          && deltaX >= Byte.MIN_VALUE
+          && deltaY <= Byte.MAX_VALUE
+          && deltaY >= Byte.MIN_VALUE
+          && deltaZ <= Byte.MAX_VALUE
+          && deltaZ >= Byte.MIN_VALUE) {
+        // send move and rotate packet, the rotation isn't relative
         PacketBuilder bldr =
             new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(9));
         bldr.putByte("id", entity.getId());
         bldr.putByte("delta_x", deltaX);
         bldr.putByte("delta_y", deltaY);
         bldr.putByte("delta_z", deltaZ);
-        bldr.putByte("delta_rotation", deltaRotation);
-        bldr.putByte("delta_look", deltaLook);
+        bldr.putByte("delta_rotation", rotation.getRotation());
+        bldr.putByte("delta_look", rotation.getLook());
         session.send(bldr.toPacket());
+        return;
       }
     }
+    sendTeleport(entity.getId(), position.getX(), position.getY(), position.getZ(),
+        rotation.getRotation(), rotation.getLook());
   }
 
   public void sendTeleport(int id, int x, int y, int z, int rotation, int look) {
@@ -392,14 +422,22 @@ public class ActionSender {
    * @param id The entity being removed.
    */
   public void sendRemoveEntity(int id) {
+    session.send(removeEntityPacket(id));
+  }
+
+  public static Packet removeEntityPacket(int id) {
     PacketBuilder bldr =
         new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(12));
     bldr.putByte("id", id);
-    session.send(bldr.toPacket());
+    return bldr.toPacket();
   }
 
   public void sendRemoveEntity(Entity entity) {
     sendRemoveEntity(entity.getOldId());
+    EntityTracker tracker = getTracker();
+    if (tracker != null) {
+      tracker.hidden(entity);
+    }
   }
 
   public void sendRemovePlayer(Player p) {
@@ -407,6 +445,10 @@ public class ActionSender {
     if (session.isExtensionSupported("ExtPlayerList", 2)) {
       this.sendRemovePlayerName(p.nameId);
     }
+    EntityTracker tracker = getTracker();
+    if (tracker != null) {
+      tracker.forget(p);
+    }
   }
 
   public void sendExtInfo() {
@@ -704,11 +746,15 @@ public class ActionSender {
   }
 
   public void sendChangeModel(int id, String model) {
+    session.send(changeModelPacket(id, model));
+  }
+
+  public static Packet changeModelPacket(int id, String model) {
     PacketBuilder bldr =
         new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(29));
     bldr.putByte("id", id);
     bldr.putString("model", model);
-    session.send(bldr.toPacket());
+    return bldr.toPacket();
   }
 
   public void sendEntityProperty(int id, int property, int value) {
@@ -809,6 +855,22 @@ public class ActionSender {
       int originX,
       int originY,
       int originZ) {
+    session.send(spawnEffectPacket(id, posX, posY, posZ, originX, originY, originZ));
+  }
+
+  /**
+   * Encodes a particle effect, to be sent to several players with {@link #broadcast}.
+   *
+   * @return The packet.
+   */
+  public static Packet spawnEffectPacket(
+      int id,
+      int posX,
+      int posY,
+      int posZ,
+      int originX,
+      int originY,
+      int originZ) {
     PacketBuilder bldr =
         new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(49));
     bldr.putByte("id", id);
@@ -818,7 +880,7 @@ public class ActionSender {
     bldr.putInt("origin_x", originX);
     bldr.putInt("origin_y", originY);
     bldr.putInt("origin_z", originZ);
-    session.send(bldr.toPacket());
+    return bldr.toPacket();
   }
 
   public void sendSelectionCuboid(
@@ -883,43 +945,56 @@ public class ActionSender {
     session.send(bldr.toPacket());
   }
 
-  public void sendBlockUpdate(Level level, ImmutableList<BlockChange> blockChanges) {
-    byte[] indices = new byte[1024];
-    byte[] blocks = new byte[320];
-
-    int i = 0;
-    int j = 0;
-    for (BlockChange blockChange : blockChanges) {
-      int index =
-          (blockChange.z * level.getHeight() + blockChange.y) * level.getWidth() + blockChange.x;
-
-      indices[i] = (byte) (index >>> 24);
-      indices[i + 1] = (byte) (index >>> 16);
-      indices[i + 2] = (byte) (index >>> 8);
-      indices[i + 3] = (byte) (index);
-      i += 4;
+  /**
+   * Encodes block changes as bulk block updates, which can be sent to any number of sessions.
+   *
+   * @param level The level.
+   * @param changed The indices of the changed blocks.
+   * @return The packets, each holding up to 256 changes.
+   */
+  public static List<Packet> createBlockUpdates(Level level, int[] changed) {
+    List<Packet> packets = new ArrayList<>((changed.length + 255) / 256);
+    for (int start = 0; start < changed.length; start += 256) {
+      int count = Math.min(256, changed.length - start);
+      byte[] indices = new byte[1024];
+      byte[] blocks = new byte[320];
+
+      for (int k = 0; k < count; k++) {
+        int index = changed[start + k];
+        int type = level.getBlockAt(index);
+
+        indices[k * 4] = (byte) (index >>> 24);
+        indices[k * 4 + 1] = (byte) (index >>> 16);
+        indices[k * 4 + 2] = (byte) (index >>> 8);
+        indices[k * 4 + 3] = (byte) (index);
+
+        blocks[k] = (byte) type;
+
+        // The high 2 bits of each block are packed into the remaining 64 bytes.
+        // See https://minecraft.wiki/w/Minecraft_Wiki:Projects/wiki.vg_merge/Classic_Protocol_Extension#Affect_on_BulkBlockUpdate
+        int highBits = (type & 0b1100000000) >>> 8;
+        blocks[256 + (k / 4)] |= (byte) (highBits << ((k % 4) * 2));
+      }
 
-      blocks[j] = (byte) blockChange.type;
-      j++;
+      PacketBuilder bldr =
+          new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(38));
+      bldr.putByte("count", count - 1);
+      bldr.putByteArray("indices", indices);
+      bldr.putByteArray320("blocks", blocks);
+      packets.add(bldr.toPacket());
     }
+    return packets;
+  }
 
-    // The high 2 bits of each block are packed into the remaining 64 bytes.
-    // See https://minecraft.wiki/w/Minecraft_Wiki:Projects/wiki.vg_merge/Classic_Protocol_Extension#Affect_on_BulkBlockUpdate
-    int k = 0;
-    for (BlockChange blockChange : blockChanges) {
-      int highBits = (blockChange.type & 0b1100000000) >>> 8;
-      int byteIndex = 256 + (k / 4);
-      int bitIndex = ((k % 4) * 2);
-      blocks[byteIndex] |= (byte) (highBits << bitIndex);
-      k++;
+  /**
+   * Sends packets which have already been built, such as shared bulk block updates.
+   *
+   * @param packets The packets.
+   */
+  public void sendPackets(List<Packet> packets) {
+    for (Packet packet : packets) {
+      session.send(packet);
     }
-
-    PacketBuilder bldr =
-        new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(38));
-    bldr.putByte("count", blockChanges.size() - 1);
-    bldr.putByteArray("indices", indices);
-    bldr.putByteArray320("blocks", blocks);
-    session.send(bldr.toPacket());
   }
 
   /**
@@ -932,42 +1007,119 @@ public class ActionSender {
       return;
     }
     Player player = session.getPlayer();
-    if (player != null && ReplayThread.isUnsafe(player)) {
+    if (player != null && ReplayViewer.isUnsafe(player)) {
       if (messageType != 0) return;
 
       message = "&a[Live]&f " + message;
     }
-    PacketBuilder bldr =
-        new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(13));
-    String message2 = "";
-    int maxLength = 64;
-    if (message.length() > maxLength) {
-      for (int i = maxLength; i > 0; i--) {
-        if (message.charAt(i) == ' ' && !((i == 1 || i == 4) && message.charAt(0) == '>')) {
-          maxLength = i;
-          break;
+    sendPackets(chatPackets(message, messageType));
+  }
+
+  /**
+   * Encodes a chat message, split into lines which fit the client's chat.
+   *
+   * @param message The message.
+   * @param messageType Where the client shows the message, or 0 for the chat.
+   * @return The packets, one for each line.
+   */
+  public static List<Packet> chatPackets(String message, int messageType) {
+    List<Packet> packets = new ArrayList<>(1);
+    for (String line : splitChatMessage(message)) {
+      PacketBuilder bldr =
+          new PacketBuilder(PersistingPacketManager.getPacketManager().getOutgoingPacket(13));
+      bldr.putByte("id", messageType);
+      bldr.putString("message", line);
+      packets.add(bldr.toPacket());
+    }
+    return packets;
+  }
+
+  /**
+   * Splits a chat message into lines of at most 64 characters, breaking at spaces and carrying
+   * the last colour over to the next line, which starts with <code>&gt;</code>.
+   *
+   * @param message The message.
+   * @return The lines.
+   */
+  static List<String> splitChatMessage(String message) {
+    List<String> lines = new ArrayList<>(1);
+    while (true) {
+      String message2 = "";
+      int maxLength = 64;
+      if (message.length() > maxLength) {
+        for (int i = maxLength; i > 0; i--) {
+          if (message.charAt(i) == ' ' && !((i == 1 || i == 4) && message.charAt(0) == '>')) {
+            maxLength = i;
+            break;
+          }
         }
-      }
-      message2 = message.substring(maxLength);
-      int idx = message.lastIndexOf("&");
-      if (idx != -1) {
-        if (message2.charAt(0) == '&') {
-          message2 = message2.substring(2);
+        message2 = message.substring(maxLength);
+        int idx = message.lastIndexOf("&");
+        if (idx != -1) {
+          if (message2.charAt(0) == '&') {
+            message2 = message2.substring(2);
+          }
+          message2 = "&" + message.charAt(idx + 1) + message2;
+        }
+        message = message.substring(0, maxLength);
+        if (message.charAt(message.length() - 2) == '&') {
+          message = message.substring(0, maxLength - 2);
+        } else if (message.charAt(message.length() - 1) == '&') {
+          message = message.substring(0, maxLength - 1);
         }
-        message2 = "&" + message.charAt(idx + 1) + message2;
       }
-      message = message.substring(0, maxLength);
-      if (message.charAt(message.length() - 2) == '&') {
-        message = message.substring(0, maxLength - 2);
-      } else if (message.charAt(message.length() - 1) == '&') {
-        message = message.substring(0, maxLength - 1);
+      lines.add(message);
+      if (message2.equals("")) {
+        return lines;
       }
+      message = "> " + message2.stripLeading();
     }
-    bldr.putByte("id", messageType);
-    bldr.putString("message", message);
-    session.send(bldr.toPacket());
-    if (!message2.equals("")) {
-      sendChatMessage("> " + message2.stripLeading(), messageType);
+  }
+
+  /**
+   * Sends the same packets to every player who matches a filter. The packets are encoded once by
+   * the caller, and every session is given the same bytes.
+   *
+   * @param players The players to choose from.
+   * @param recipients Which of them to send to, such as {@link Recipients#ALL}.
+   * @param packets The packets.
+   */
+  public static void broadcast(
+      Iterable<Player> players, Predicate<Player> recipients, List<Packet> packets) {
+    for (Player player : players) {
+      if (recipients.test(player)) {
+        player.getActionSender().sendPackets(packets);
+      }
+    }
+  }
+
+  /**
+   * Sends a chat message to every player who matches a filter, encoding it once. Players watching
+   * a replay get their own copy, since the message is marked as live for them.
+   *
+   * @param players The players to choose from.
+   * @param recipients Which of them to send to.
+   * @param message The message.
+   * @param messageType Where the client shows the message, or 0 for the chat.
+   */
+  public static void broadcastChatMessage(
+      Iterable<Player> players, Predicate<Player> recipients, String message, int messageType) {
+    List<Packet> packets = null;
+    for (Player player : players) {
+      if (!recipients.test(player)) {
+        continue;
+      }
+      if (messageType != 0 && !player.getSession().ccUser) {
+        continue;
+      }
+      if (ReplayViewer.isUnsafe(player)) {
+        player.getActionSender().sendChatMessage(message, messageType);
+        continue;
+      }
+      if (packets == null) {
+        packets = chatPackets(message, messageType);
+      }
+      player.getActionSender().sendPackets(packets);
     }
   }
 }
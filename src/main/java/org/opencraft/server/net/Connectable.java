@@ -40,7 +40,7 @@ import org.apache.mina.core.session.IoSession;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.PacketDefinition;
-import org.opencraft.server.replay.ReplayThread;
+import org.opencraft.server.replay.ReplayViewer;
 
 import java.util.ArrayDeque;
 import java.util.Queue;
@@ -51,6 +51,9 @@ public abstract class Connectable {
   /** Packet queue. */
   protected final Queue<Packet> queuedPackets = new ArrayDeque<Packet>();
 
+  /** Packets waiting to be written at the end of the tick. */
+  protected final OutboundBatch outbound = new OutboundBatch();
+
   /** State. */
   protected State state = State.CONNECTED;
 
@@ -65,7 +68,7 @@ public abstract class Connectable {
       final String name = (definition == null ? "unparsed" : definition.getName());
       final Player player = getPlayer();
       final boolean allowedPacketDuringReplay = name.equals("disconnect") || name.equals("message");
-      if (player != null && !allowedPacketDuringReplay && ReplayThread.isUnsafe(player)) return;
+      if (player != null && !allowedPacketDuringReplay && ReplayViewer.isUnsafe(player)) return;
 
       final boolean unqueuedPacket =
           name.equals("authentication_response")
@@ -75,16 +78,17 @@ public abstract class Connectable {
               || name.equals("disconnect")
               || name.equals("ext_info")
               || name.equals("ext_entry");
+      final boolean urgentPacket = name.equals("disconnect") || name.equals("ping");
       if (state == State.READY) {
         if (queuedPackets.size() > 0) {
           for (Packet queuedPacket : queuedPackets) {
-            session.write(queuedPacket);
+            outbound.add(queuedPacket, session, false);
           }
           queuedPackets.clear();
         }
-        session.write(packet);
+        outbound.add(packet, session, urgentPacket);
       } else if (unqueuedPacket) {
-        session.write(packet);
+        outbound.add(packet, session, urgentPacket);
       } else {
         queuedPackets.add(packet);
       }
@@ -24,5 +24,6 @@ public class FakePlayerBase extends Player {
     super(new FakeMinecraftSession(), name);
 
     getSession().setPlayer(this);
+    getTracker().setTrackingAll(true);
   }
 }
@@ -38,7 +38,6 @@ package org.opencraft.server.net;
 
 import org.apache.mina.core.session.IoSession;
 import org.opencraft.server.Server;
-import org.opencraft.server.game.impl.GameSettings;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.replay.ReplayManager;
 
@@ -86,7 +85,7 @@ public abstract class OCSession extends Connectable {
       return;
     }
     this.send(packet, session);
-    if (GameSettings.getBoolean("Debug")
+    if (Server.isDebug()
         && packet.definition.getOpcode() != 8
         && packet.definition.getOpcode() != 43) {
       Server.d(packet.definition.getOpcode() + " --> " + session.getRemoteAddress());
@@ -94,8 +93,23 @@ public abstract class OCSession extends Connectable {
     }
   }
 
+  /** Writes any packets which are waiting for the end of the tick. */
+  public void flush() {
+    outbound.flush();
+  }
+
+  /**
+   * Checks if this session is still connected.
+   *
+   * @return <code>true</code> if it is, and it isn't being closed.
+   */
+  public boolean isConnected() {
+    return nullMode || (session.isConnected() && !session.isClosing());
+  }
+
   /** Closes this session. */
   public void close() {
+    outbound.flush();
     session.close(false);
   }
 
@@ -0,0 +1,178 @@
+package org.opencraft.server.net;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.opencraft.server.Server;
+import org.opencraft.server.net.packet.EncodedPacket;
+import org.opencraft.server.net.packet.Packet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the encoded packets sent to one session so they go out as a single write, and for
+ * WebSocket clients a single frame, instead of one write per packet. Batches are flushed at the end
+ * of every tick, after each received packet is handled, by <code>FlushTask</code> for packets sent
+ * from other threads, and straight away once they reach {@link #FLUSH_THRESHOLD} bytes.
+ *
+ * <p>Small packets are copied into the batch. Encoded packets of at least {@link
+ * #SHARED_MIN_LENGTH} bytes, such as the level chunks every session is sent, are written as views
+ * of their shared bytes after the batch before them, so sending a level doesn't copy it once per
+ * player or grow every batch to the size of the map.
+ */
+public final class OutboundBatch {
+
+  /** The size at which a batch is written without waiting for the end of the tick. */
+  public static final int FLUSH_THRESHOLD = 16 * 1024;
+
+  /** The size from which encoded packets are written as they are instead of copied. */
+  public static final int SHARED_MIN_LENGTH = 1024;
+
+  /** The initial capacity of each batch buffer, which grows as needed. */
+  private static final int INITIAL_CAPACITY = 512;
+
+  /** Batches holding packets which have not been written yet. */
+  private static final Queue<OutboundBatch> pending = new ConcurrentLinkedQueue<>();
+
+  /** Buffers handed to MINA, each roughly one write system call. */
+  private static final AtomicLong writes = new AtomicLong();
+
+  /** WebSocket frames built by <code>WebSocketFilter</code>. */
+  private static final AtomicLong frames = new AtomicLong();
+
+  /** Packets sent. */
+  private static final AtomicLong packets = new AtomicLong();
+
+  /** Bytes written, not counting WebSocket framing. */
+  private static final AtomicLong bytes = new AtomicLong();
+
+  /** The totals at the end of the last tick, and how much they grew during it. */
+  private static long tickWrites, tickFrames, tickPackets, tickBytes;
+  private static volatile long lastTickWrites, lastTickFrames, lastTickPackets, lastTickBytes;
+
+  /** The session the batch is written to. */
+  private IoSession session;
+
+  /** Packets waiting to be written, or <code>null</code> if there are none. */
+  private IoBuffer buffer;
+
+  /** If this batch is in the pending queue. */
+  private boolean queued;
+
+  /**
+   * Adds a packet to the batch.
+   *
+   * @param packet The packet.
+   * @param session The session to write the batch to.
+   * @param urgent If the batch should be written now instead of at the end of the tick.
+   */
+  public synchronized void add(Packet packet, IoSession session, boolean urgent) {
+    this.session = session;
+    if (packet instanceof EncodedPacket && packet.getLength() >= SHARED_MIN_LENGTH) {
+      flush();
+      packets.incrementAndGet();
+      write(IoBuffer.wrap(packet.toByteArray()));
+      return;
+    }
+    if (buffer == null) {
+      buffer = IoBuffer.allocate(INITIAL_CAPACITY).setAutoExpand(true);
+      if (!queued) {
+        queued = true;
+        pending.add(this);
+      }
+    }
+    buffer.put(packet.toByteArray());
+    packets.incrementAndGet();
+    if (urgent || buffer.position() >= FLUSH_THRESHOLD) {
+      flush();
+    }
+  }
+
+  /** Writes any packets which have been added since the last flush. */
+  public synchronized void flush() {
+    if (buffer == null) {
+      return;
+    }
+    IoBuffer batch = buffer.flip();
+    buffer = null;
+    write(batch);
+  }
+
+  private void write(IoBuffer data) {
+    writes.incrementAndGet();
+    bytes.addAndGet(data.remaining());
+    session.write(data);
+  }
+
+  /** Flushes every batch holding packets. */
+  public static void flushAll() {
+    OutboundBatch batch;
+    while ((batch = pending.poll()) != null) {
+      batch.flushPending();
+    }
+  }
+
+  /** Flushes this batch once it has been taken off the pending queue. */
+  private synchronized void flushPending() {
+    queued = false;
+    flush();
+  }
+
+  /** Called by <code>WebSocketFilter</code> whenever it frames a buffer. */
+  public static void recordFrame() {
+    frames.incrementAndGet();
+  }
+
+  /** Records how much was sent during the tick which has just ended. */
+  public static synchronized void endTick() {
+    long w = writes.get();
+    long f = frames.get();
+    long p = packets.get();
+    long b = bytes.get();
+    lastTickWrites = w - tickWrites;
+    lastTickFrames = f - tickFrames;
+    lastTickPackets = p - tickPackets;
+    lastTickBytes = b - tickBytes;
+    tickWrites = w;
+    tickFrames = f;
+    tickPackets = p;
+    tickBytes = b;
+    if (lastTickPackets > 0 && Server.isDebug()) {
+      Server.d("Sent " + lastTickPackets + " packets in " + lastTickWrites + " writes and "
+          + lastTickFrames + " frames, " + lastTickBytes + " bytes");
+    }
+  }
+
+  public static long getWrites() {
+    return writes.get();
+  }
+
+  public static long getFrames() {
+    return frames.get();
+  }
+
+  public static long getPackets() {
+    return packets.get();
+  }
+
+  public static long getBytes() {
+    return bytes.get();
+  }
+
+  public static long getLastTickWrites() {
+    return lastTickWrites;
+  }
+
+  public static long getLastTickFrames() {
+    return lastTickFrames;
+  }
+
+  public static long getLastTickPackets() {
+    return lastTickPackets;
+  }
+
+  public static long getLastTickBytes() {
+    return lastTickBytes;
+  }
+}
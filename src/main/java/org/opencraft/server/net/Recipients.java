@@ -0,0 +1,47 @@
+package org.opencraft.server.net;
+
+import org.opencraft.server.model.Player;
+
+import java.util.function.Predicate;
+
+/** Filters for choosing who a broadcast goes to. They can be combined with <code>and</code>. */
+public final class Recipients {
+
+  /** Every player, and the camera man so the replay gets it too. */
+  public static final Predicate<Player> ALL = player -> true;
+
+  /** Every player, but not the camera man. */
+  public static final Predicate<Player> PLAYERS = player -> player != FakePlayerBase.CAMERA_MAN;
+
+  /** Operators. */
+  public static final Predicate<Player> OPS = Player::isOp;
+
+  /** Players whose clients support CPE. */
+  public static final Predicate<Player> CPE = player -> player.getSession().ccUser;
+
+  /** Players who haven't turned off TNT particles. */
+  public static final Predicate<Player> TNT_PARTICLES = Player::shouldShowTntParticles;
+
+  private Recipients() {
+  }
+
+  /**
+   * Gets the players on a team, without the camera man.
+   *
+   * @param team The team, or -1 for spectators.
+   * @return The filter.
+   */
+  public static Predicate<Player> team(int team) {
+    return PLAYERS.and(player -> player.team == team);
+  }
+
+  /**
+   * Gets the players who aren't ignoring someone.
+   *
+   * @param sender The player sending the message.
+   * @return The filter.
+   */
+  public static Predicate<Player> notIgnoring(Player sender) {
+    return player -> !player.isIgnored(sender);
+  }
+}
@@ -42,14 +42,15 @@ import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.opencraft.server.net.codec.MinecraftCodecFactory;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.websocket.WebSocketFilter;
-import org.opencraft.server.task.TaskQueue;
+import org.opencraft.server.task.GameLoop;
 import org.opencraft.server.task.impl.SessionClosedTask;
 import org.opencraft.server.task.impl.SessionMessageTask;
 import org.opencraft.server.task.impl.SessionOpenedTask;
 
 /**
  * An implementation of an <code>IoHandler</code> which manages incoming events from MINA and passes
- * them onto the necessary subsystem in the OpenCraft server.
+ * them onto the necessary subsystem in the OpenCraft server. Packets are decoded on the IO threads,
+ * and everything which touches the world is queued on the <code>GameLoop</code>.
  *
  * @author Graham Edgecombe
  */
@@ -62,12 +63,12 @@ public final class SessionHandler extends IoHandlerAdapter {
 
   @Override
   public void messageReceived(IoSession session, Object message) throws Exception {
-    new SessionMessageTask(session, (Packet) message).execute();
+    GameLoop.getGameLoop().submit(new SessionMessageTask(session, (Packet) message));
   }
 
   @Override
   public void sessionClosed(IoSession session) throws Exception {
-    new SessionClosedTask(session).execute();
+    GameLoop.getGameLoop().submit(new SessionClosedTask(session));
   }
 
   @Override
@@ -79,6 +80,6 @@ public final class SessionHandler extends IoHandlerAdapter {
             new ProtocolCodecFilter(
                 new MinecraftCodecFactory(PersistingPacketManager.getPacketManager())));
     session.getFilterChain().addFirst("websocket", new WebSocketFilter());
-    new SessionOpenedTask(session).execute();
+    GameLoop.getGameLoop().submit(new SessionOpenedTask(session));
   }
 }
@@ -40,18 +40,27 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolDecoderOutput;
-import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.PacketDefinition;
-import org.opencraft.server.net.packet.PacketField;
 import org.opencraft.server.net.packet.PacketManager;
+import org.opencraft.server.net.packet.PacketView;
+import org.opencraft.server.net.packet.incoming.AuthenticationPacket;
+import org.opencraft.server.net.packet.incoming.CustomBlockSupportPacket;
+import org.opencraft.server.net.packet.incoming.ExtEntryPacket;
+import org.opencraft.server.net.packet.incoming.ExtInfoPacket;
+import org.opencraft.server.net.packet.incoming.MessagePacket;
+import org.opencraft.server.net.packet.incoming.MovementPacket;
+import org.opencraft.server.net.packet.incoming.PingPacket;
+import org.opencraft.server.net.packet.incoming.PlayerClickPacket;
+import org.opencraft.server.net.packet.incoming.SetTilePacket;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
 /**
  * An implement of a <code>ProtocolDecoder</code> which decodes buffers into Minecraft packet
- * objects then dispatches them.
+ * objects then dispatches them. Packets are read into pooled <code>PacketView</code>s, which are
+ * released back to this decoder once they have been handled.
  *
  * @author Graham Edgecombe
  */
@@ -62,10 +71,56 @@ public final class MinecraftProtocolDecoder extends CumulativeProtocolDecoder {
 
   private PacketManager manager;
 
+  /** Views which have been handled and can be read into again, by opcode. */
+  @SuppressWarnings("unchecked")
+  private final Queue<PacketView>[] pools = new Queue[256];
+
   public MinecraftProtocolDecoder(PacketManager manager) {
     this.manager = manager;
   }
 
+  /**
+   * Gets a view to read a packet into, reusing one which has already been handled if possible.
+   *
+   * @param definition The packet definition.
+   * @return The view.
+   */
+  private PacketView obtain(PacketDefinition definition) {
+    int opcode = definition.getOpcode();
+    Queue<PacketView> pool = pools[opcode];
+    if (pool == null) {
+      pool = pools[opcode] = new ArrayDeque<PacketView>();
+    }
+    synchronized (pool) {
+      PacketView view = pool.poll();
+      if (view != null) {
+        return view;
+      }
+    }
+    switch (opcode) {
+      case 0:
+        return new AuthenticationPacket(definition, pool);
+      case 5:
+        return new SetTilePacket(definition, pool);
+      case 8:
+        return new MovementPacket(definition, pool);
+      case 13:
+        return new MessagePacket(definition, pool);
+      case 16:
+        return new ExtInfoPacket(definition, pool);
+      case 17:
+        return new ExtEntryPacket(definition, pool);
+      case 19:
+        return new CustomBlockSupportPacket(definition, pool);
+      case 34:
+        return new PlayerClickPacket(definition, pool);
+      case 43:
+        return new PingPacket(definition, pool);
+      default:
+        return new PacketView(definition, pool);
+    }
+  }
+
   @Override
   protected boolean doDecode(IoSession session, IoBuffer buffer, ProtocolDecoderOutput out)
       throws Exception {
@@ -81,43 +136,8 @@ public final class MinecraftProtocolDecoder extends CumulativeProtocolDecoder {
       }
     }
     if (buffer.remaining() >= currentPacket.getLength()) {
-      Map<String, Object> values = new HashMap<String, Object>();
-      for (PacketField field : currentPacket.getFields()) {
-        Object value = null;
-        switch (field.getType()) {
-          case BYTE:
-            value = buffer.get();
-            break;
-          case SHORT:
-            value = buffer.getShort();
-            break;
-          case INT:
-            value = buffer.getInt();
-            break;
-          case LONG:
-            value = buffer.getLong();
-            break;
-          case BYTE_ARRAY:
-            value = IoBuffer.allocate(1024).put(buffer);
-            break;
-          case BYTE_ARRAY_256:
-            value = IoBuffer.allocate(256).put(buffer);
-            break;
-          case BYTE_ARRAY_320:
-            value = IoBuffer.allocate(320).put(buffer);
-            break;
-          case STRING:
-            byte[] bytes = new byte[64];
-            buffer.get(bytes);
-            value = new String(bytes, 0, 64, "Cp437");
-            if (currentPacket.getOpcode() != 13) {
-              value = ((String) value).trim();
-            }
-            break;
-        }
-        values.put(field.getName(), value);
-      }
-      Packet packet = new Packet(currentPacket, values);
+      PacketView packet = obtain(currentPacket);
+      buffer.get(packet.getData(), 1, currentPacket.getLength());
       currentPacket = null;
       out.write(packet);
       return true;
@@ -59,9 +59,7 @@ public final class MinecraftProtocolEncoder extends ProtocolEncoderAdapter {
   @Override
   public void encode(IoSession session, Object message, ProtocolEncoderOutput out) {
     Packet packet = (Packet) message;
-    IoBuffer buf = IoBuffer.allocate(packet.getLength());
-    buf.put(packet.toByteArray());
-    buf.flip();
-    out.write(buf);
+    // wrapping does not copy, so encoded packets shared between sessions are written as views
+    out.write(IoBuffer.wrap(packet.toByteArray()));
   }
 }
@@ -0,0 +1,43 @@
+package org.opencraft.server.net.packet;
+
+/**
+ * A packet which has already been encoded. The same instance can be sent to any number of
+ * sessions, and every write is a view of the same bytes rather than a copy.
+ */
+public class EncodedPacket extends Packet {
+
+  private final byte[] encoded;
+
+  /**
+   * Creates the packet.
+   *
+   * @param definition The definition.
+   * @param encoded The encoded packet, starting with the opcode. It must not be modified after
+   *     the packet is created.
+   */
+  public EncodedPacket(PacketDefinition definition, byte[] encoded) {
+    super(definition);
+
+    this.encoded = encoded;
+  }
+
+  @Override
+  public int getLength() {
+    return encoded.length;
+  }
+
+  /**
+   * Gets the encoded packet. The array is shared and must not be modified.
+   *
+   * @return The encoded packet.
+   */
+  @Override
+  public byte[] toByteArray() {
+    return encoded;
+  }
+
+  @Override
+  public String toString() {
+    return definition.getName() + " [" + encoded.length + " bytes]";
+  }
+}
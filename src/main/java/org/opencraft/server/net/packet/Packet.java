@@ -68,6 +68,17 @@ public class Packet {
     this.fields = Collections.unmodifiableMap(new HashMap<String, Object>(fields));
   }
 
+  /**
+   * Creates a packet which has no field map, for subclasses which hold their fields some other
+   * way.
+   *
+   * @param definition The definition.
+   */
+  protected Packet(PacketDefinition definition) {
+    this.definition = definition;
+    this.fields = Collections.emptyMap();
+  }
+
   /**
    * Gets the definition of this packet.
    *
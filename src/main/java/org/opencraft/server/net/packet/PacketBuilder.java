@@ -36,21 +36,34 @@
  */
 package org.opencraft.server.net.packet;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
- * A utility class for creating <code>Packet</code> objects.
+ * A utility class for creating <code>Packet</code> objects. Fields are encoded straight into the
+ * packet bytes as they are put, at offsets worked out once by the <code>PacketDefinition</code>.
  *
  * @author Graham Edgecombe
  */
 public final class PacketBuilder {
 
+  /** Maps each char to its code page 437 byte, or '?' if it has none. */
+  private static final byte[] CP437 = new byte[Character.MAX_VALUE + 1];
+
+  static {
+    Arrays.fill(CP437, (byte) '?');
+    Charset charset = Charset.forName("Cp437");
+    for (int b = 255; b >= 0; b--) {
+      String decoded = new String(new byte[]{(byte) b}, charset);
+      CP437[decoded.charAt(0)] = (byte) b;
+    }
+  }
+
   /** The packet definition. */
-  private PacketDefinition definition;
+  private final PacketDefinition definition;
 
-  /** The values. */
-  private Map<String, Object> values = new HashMap<String, Object>();
+  /** The encoded packet. */
+  private final byte[] data;
 
   /**
    * Creates the packet builder.
@@ -59,35 +72,17 @@ public final class PacketBuilder {
    */
   public PacketBuilder(PacketDefinition definition) {
     this.definition = definition;
+    this.data = definition.newEncodedPacket();
   }
 
   /**
-   * Creates a packet object based on this builder.
+   * Creates a packet object based on this builder. The packet shares this builder's bytes, so
+   * the builder should not be used afterwards.
    *
    * @return The packet object.
    */
   public Packet toPacket() {
-    return new Packet(definition, values);
-  }
-
-  /**
-   * Validates that a field has been used correctly.
-   *
-   * @param name The field name.
-   * @param type The data type.
-   */
-  private void validateField(String name, DataType type) {
-    for (PacketField f : definition.getFields()) {
-      if (f.getName().equals(name)) {
-        if (f.getType().equals(type)) {
-          return;
-        } else {
-          throw new IllegalArgumentException(
-              "Incorrect data type - expecting " + f.getType() + "" + ".");
-        }
-      }
-    }
-    throw new IllegalArgumentException("No field named " + name + ".");
+    return new EncodedPacket(definition, data);
   }
 
   /**
@@ -97,8 +92,8 @@ public final class PacketBuilder {
    * @param value The value.
    */
   public PacketBuilder putByte(String name, int value) {
-    validateField(name, DataType.BYTE);
-    values.put(name, (byte) value);
+    int offset = definition.getFieldOffset(name, DataType.BYTE);
+    data[offset] = (byte) value;
     return this;
   }
 
@@ -109,8 +104,9 @@ public final class PacketBuilder {
    * @param value The value.
    */
   public PacketBuilder putShort(String name, int value) {
-    validateField(name, DataType.SHORT);
-    values.put(name, (short) value);
+    int offset = definition.getFieldOffset(name, DataType.SHORT);
+    data[offset] = (byte) (value >>> 8);
+    data[offset + 1] = (byte) value;
     return this;
   }
 
@@ -121,8 +117,11 @@ public final class PacketBuilder {
    * @param value The value.
    */
   public PacketBuilder putInt(String name, int value) {
-    validateField(name, DataType.INT);
-    values.put(name, value);
+    int offset = definition.getFieldOffset(name, DataType.INT);
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
     return this;
   }
 
@@ -133,8 +132,10 @@ public final class PacketBuilder {
    * @param value The value.
    */
   public PacketBuilder putLong(String name, long value) {
-    validateField(name, DataType.LONG);
-    values.put(name, value);
+    int offset = definition.getFieldOffset(name, DataType.LONG);
+    for (int i = 0; i < 8; i++) {
+      data[offset + i] = (byte) (value >>> (56 - i * 8));
+    }
     return this;
   }
 
@@ -145,11 +146,13 @@ public final class PacketBuilder {
    * @param value The string.
    */
   public PacketBuilder putString(String name, String value) {
-    validateField(name, DataType.STRING);
+    int offset = definition.getFieldOffset(name, DataType.STRING);
     if (value.length() > 64) {
       throw new IllegalArgumentException("String exceeds maximum length of 64 characters.");
     }
-    values.put(name, value);
+    for (int i = 0; i < value.length(); i++) {
+      data[offset + i] = CP437[value.charAt(i)];
+    }
     return this;
   }
 
@@ -160,29 +163,29 @@ public final class PacketBuilder {
    * @param value The byte array.
    */
   public PacketBuilder putByteArray(String name, byte[] value) {
-    validateField(name, DataType.BYTE_ARRAY);
+    int offset = definition.getFieldOffset(name, DataType.BYTE_ARRAY);
     if (value.length > 1024) {
       throw new IllegalArgumentException("Byte array exceeds maximum length of 1024 characters.");
     }
-    values.put(name, value);
+    System.arraycopy(value, 0, data, offset, value.length);
     return this;
   }
 
   public PacketBuilder putByteArray256(String name, byte[] value) {
-    validateField(name, DataType.BYTE_ARRAY_256);
+    int offset = definition.getFieldOffset(name, DataType.BYTE_ARRAY_256);
     if (value.length > 256) {
       throw new IllegalArgumentException("Byte array exceeds maximum length of 256 characters.");
     }
-    values.put(name, value);
+    System.arraycopy(value, 0, data, offset, value.length);
     return this;
   }
 
   public PacketBuilder putByteArray320(String name, byte[] value) {
-    validateField(name, DataType.BYTE_ARRAY_320);
+    int offset = definition.getFieldOffset(name, DataType.BYTE_ARRAY_320);
     if (value.length > 320) {
       throw new IllegalArgumentException("Byte array exceeds maximum length of 320 characters.");
     }
-    values.put(name, value);
+    System.arraycopy(value, 0, data, offset, value.length);
     return this;
   }
 }
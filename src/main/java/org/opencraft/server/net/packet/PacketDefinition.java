@@ -36,6 +36,10 @@
  */
 package org.opencraft.server.net.packet;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Represents a type of packet.
  *
@@ -55,6 +59,15 @@ public final class PacketDefinition {
   /** The length of this packet. */
   private final transient int length;
 
+  /** The offset of each field in the encoded packet, including the opcode byte. */
+  private final transient int[] offsets;
+
+  /** The index of each field, keyed by name. */
+  private final transient Map<String, Integer> indices;
+
+  /** An encoded packet with every field empty, copied to start each new packet. */
+  private final transient byte[] template;
+
   /**
    * Creates the packet definition.
    *
@@ -66,12 +79,24 @@ public final class PacketDefinition {
     this.opcode = opcode;
     this.name = name;
     this.fields = fields;
-    // compute packet length
+    // compute packet length and field offsets
+    this.offsets = new int[fields.length];
+    this.indices = new HashMap<>();
     int length = 0;
-    for (PacketField field : fields) {
-      length += field.getType().getLength();
+    for (int i = 0; i < fields.length; i++) {
+      offsets[i] = length + 1;
+      indices.put(fields[i].getName(), i);
+      length += fields[i].getType().getLength();
     }
     this.length = length;
+    // strings are padded with spaces rather than zeroes
+    this.template = new byte[length + 1];
+    template[0] = (byte) opcode;
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].getType() == DataType.STRING) {
+        Arrays.fill(template, offsets[i], offsets[i] + DataType.STRING.getLength(), (byte) 0x20);
+      }
+    }
   }
 
   /**
@@ -119,4 +144,34 @@ public final class PacketDefinition {
   public int getLength() {
     return length;
   }
+
+  /**
+   * Gets the offset of a field in the encoded packet, checking that the field has been used
+   * correctly.
+   *
+   * @param name The field name.
+   * @param type The data type.
+   * @return The offset of the field, counting the opcode byte.
+   */
+  public int getFieldOffset(String name, DataType type) {
+    Integer index = indices.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("No field named " + name + ".");
+    }
+    PacketField field = fields[index];
+    if (!field.getType().equals(type)) {
+      throw new IllegalArgumentException(
+          "Incorrect data type - expecting " + field.getType() + "" + ".");
+    }
+    return offsets[index];
+  }
+
+  /**
+   * Creates a new encoded packet with every field empty.
+   *
+   * @return The packet bytes, starting with the opcode.
+   */
+  public byte[] newEncodedPacket() {
+    return template.clone();
+  }
 }
@@ -0,0 +1,169 @@
+package org.opencraft.server.net.packet;
+
+import java.nio.charset.Charset;
+import java.util.Queue;
+
+/**
+ * A packet which reads its fields straight out of the received bytes instead of a field map. Views
+ * are pooled by the decoder and refilled for each packet received, so a view is only valid until
+ * the handler it was passed to returns. Handlers must copy anything they want to keep.
+ *
+ * <p>Subclasses give typed access to the fields of one kind of packet. The generic accessors of
+ * <code>Packet</code> still work on any view, but box their results.
+ */
+public class PacketView extends Packet {
+
+  /** Maps each code page 437 byte to its char. */
+  private static final char[] CP437 = new char[256];
+
+  static {
+    Charset charset = Charset.forName("Cp437");
+    for (int b = 0; b < 256; b++) {
+      CP437[b] = new String(new byte[]{(byte) b}, charset).charAt(0);
+    }
+  }
+
+  /** The packet bytes, starting with the opcode. */
+  protected final byte[] data;
+
+  /** The pool this view goes back to once it has been handled. */
+  private final Queue<PacketView> pool;
+
+  /**
+   * Creates the packet view.
+   *
+   * @param definition The definition.
+   * @param pool The pool to return this view to once it has been handled.
+   */
+  public PacketView(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition);
+    this.data = new byte[definition.getLength() + 1];
+    this.data[0] = (byte) definition.getOpcode();
+    this.pool = pool;
+  }
+
+  /**
+   * Gets the array the packet body should be read into. The opcode is at index 0 and the body
+   * starts at index 1.
+   *
+   * @return The packet bytes.
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /** Returns this view to its pool. It must not be used afterwards. */
+  public void release() {
+    synchronized (pool) {
+      pool.add(this);
+    }
+  }
+
+  /**
+   * Gets the offset of a field, checking it against the definition.
+   *
+   * @param name The field name.
+   * @param type The data type.
+   * @return The offset of the field, counting the opcode byte.
+   */
+  protected final int offset(String name, DataType type) {
+    return definition.getFieldOffset(name, type);
+  }
+
+  protected final byte getByte(int offset) {
+    return data[offset];
+  }
+
+  protected final short getShort(int offset) {
+    return (short) ((data[offset] << 8) | (data[offset + 1] & 0xFF));
+  }
+
+  protected final int getInt(int offset) {
+    return (data[offset] << 24)
+        | ((data[offset + 1] & 0xFF) << 16)
+        | ((data[offset + 2] & 0xFF) << 8)
+        | (data[offset + 3] & 0xFF);
+  }
+
+  protected final long getLong(int offset) {
+    return ((long) getInt(offset) << 32) | (getInt(offset + 4) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Decodes a string field. Nothing is decoded until this is called.
+   *
+   * @param offset The offset of the field.
+   * @return The string, still padded to 64 characters.
+   */
+  protected final String getString(int offset) {
+    char[] chars = new char[DataType.STRING.getLength()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = CP437[data[offset + i] & 0xFF];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Gets the value of a field by scanning the definition, boxing it as the old field map did.
+   *
+   * @param fieldName The name of the field.
+   * @return The value, or <code>null</code> if there is no such field.
+   */
+  private Object getField(String fieldName) {
+    int offset = 1;
+    for (PacketField field : definition.getFields()) {
+      if (field.getName().equals(fieldName)) {
+        switch (field.getType()) {
+          case BYTE:
+            return getByte(offset);
+          case SHORT:
+            return getShort(offset);
+          case INT:
+            return getInt(offset);
+          case LONG:
+            return getLong(offset);
+          case STRING:
+            String value = getString(offset);
+            return definition.getOpcode() == 13 ? value : value.trim();
+          default:
+            byte[] bytes = new byte[field.getType().getLength()];
+            System.arraycopy(data, offset, bytes, 0, bytes.length);
+            return bytes;
+        }
+      }
+      offset += field.getType().getLength();
+    }
+    return null;
+  }
+
+  @Override
+  public Number getNumericField(String fieldName) {
+    return (Number) getField(fieldName);
+  }
+
+  @Override
+  public String getStringField(String fieldName) {
+    return (String) getField(fieldName);
+  }
+
+  @Override
+  public byte[] getByteArrayField(String fieldName) {
+    return (byte[]) getField(fieldName);
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    return data.clone();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(definition.getName()).append(" [");
+    for (PacketField field : definition.getFields()) {
+      builder.append(field.getName()).append("=").append(getField(field.getName())).append(" ");
+    }
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -42,7 +42,6 @@ import org.opencraft.server.net.OCSession;
 import org.opencraft.server.net.packet.Packet;
 
 import java.util.Map;
-import org.opencraft.server.game.impl.GameSettings;
 
 /**
  * A class which manages <code>PacketHandler</code>s.
@@ -76,7 +75,7 @@ public class PacketHandlerManager<SessionType extends OCSession> {
    */
   public void handlePacket(SessionType session, Packet packet) {
     PacketHandler handler = handlers[packet.getDefinition().getOpcode()];
-    if (GameSettings.getBoolean("Debug")
+    if (Server.isDebug()
         && packet.definition.getOpcode() != 8
         && packet.definition.getOpcode() != 43) {
       Server.d(packet.definition.getOpcode() + " <--  " + ((MinecraftSession) session).getIP());
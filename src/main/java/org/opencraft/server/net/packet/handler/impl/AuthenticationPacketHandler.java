@@ -41,6 +41,7 @@ import org.opencraft.server.model.World;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.AuthenticationPacket;
 
 /**
  * Handles the incoming authentication packet.
@@ -55,15 +56,16 @@ public final class AuthenticationPacketHandler implements PacketHandler<Minecraf
       return;
     }
 
-    String username = packet.getStringField("username");
-    int padding = packet.getNumericField("unused").intValue();
+    AuthenticationPacket auth = (AuthenticationPacket) packet;
+    String username = auth.username();
+    int padding = auth.unused();
     if (padding == 0x42) {
       session.ccUser = true;
       session.getActionSender().sendCPEHandshake();
     }
     session.username = username;
-    String verificationKey = session.verificationKey = packet.getStringField("verification_key");
-    int protocolVersion = packet.getNumericField("protocol_version").intValue();
+    String verificationKey = session.verificationKey = auth.verificationKey();
+    int protocolVersion = auth.protocolVersion();
 
     if (protocolVersion != Constants.PROTOCOL_VERSION) {
       session.getActionSender().sendLoginFailure("Incorrect protocol version.");
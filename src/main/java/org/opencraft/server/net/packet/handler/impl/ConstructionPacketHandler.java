@@ -42,6 +42,7 @@ import org.opencraft.server.model.World;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.SetTilePacket;
 
 import java.util.Date;
 
@@ -57,11 +58,12 @@ public class ConstructionPacketHandler implements PacketHandler<MinecraftSession
       return;
     }
     Player p = session.getPlayer();
-    int type = packet.getNumericField("type").intValue();
-    int x = packet.getNumericField("x").intValue();
-    int y = packet.getNumericField("y").intValue();
-    int z = packet.getNumericField("z").intValue();
-    int mode = packet.getNumericField("mode").intValue();
+    SetTilePacket tile = (SetTilePacket) packet;
+    int type = tile.type();
+    int x = tile.x();
+    int y = tile.y();
+    int z = tile.z();
+    int mode = tile.mode();
     World.getWorld().getGameMode().setBlock(p, World.getWorld().getLevel(), x, y, z, mode, type);
   }
 }
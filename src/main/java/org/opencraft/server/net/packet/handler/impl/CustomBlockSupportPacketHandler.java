@@ -40,6 +40,7 @@ import org.opencraft.server.Constants;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.CustomBlockSupportPacket;
 
 /**
  * A class which handles message and comamnd packets.
@@ -50,6 +51,6 @@ public class CustomBlockSupportPacketHandler implements PacketHandler<MinecraftS
   @Override
   public void handlePacket(final MinecraftSession session, Packet packet) {
     session.customBlockLevel =
-        Math.min(Constants.CUSTOM_BLOCK_LEVEL, packet.getNumericField("support_level").byteValue());
+        Math.min(Constants.CUSTOM_BLOCK_LEVEL, ((CustomBlockSupportPacket) packet).supportLevel());
   }
 }
@@ -42,6 +42,7 @@ import org.opencraft.server.model.World;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.ExtEntryPacket;
 
 /**
  * A class which handles message and comamnd packets.
@@ -51,8 +52,9 @@ import org.opencraft.server.net.packet.handler.PacketHandler;
 public class ExtEntryPacketHandler implements PacketHandler<MinecraftSession> {
   @Override
   public void handlePacket(final MinecraftSession session, Packet packet) {
-    String extName = packet.getStringField("ext_name");
-    int extVersion = packet.getNumericField("ext_version").intValue();
+    ExtEntryPacket entry = (ExtEntryPacket) packet;
+    String extName = entry.extName();
+    int extVersion = entry.extVersion();
     for (int i = 0; i < Constants.NUM_CPE_EXTENSIONS; i++) {
       if (Constants.CPE_EXT_NAMES[i].equals(extName)
           && Constants.CPE_EXT_VERSIONS[i] >= extVersion) {
@@ -62,7 +64,9 @@ public class ExtEntryPacketHandler implements PacketHandler<MinecraftSession> {
     }
     synchronized (session) {
       session.receivedExtEntries++;
-      Server.d(session.receivedExtEntries + " " + session.numExtEntries);
+      if (Server.isDebug()) {
+        Server.d(session.receivedExtEntries + " " + session.numExtEntries);
+      }
       if (session.receivedExtEntries == session.numExtEntries && !session.receivedAllExtEntries) {
         session.receivedAllExtEntries = true;
         if (session.isExtensionSupported("CustomBlocks")) {
@@ -39,6 +39,7 @@ package org.opencraft.server.net.packet.handler.impl;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.ExtInfoPacket;
 
 /**
  * A class which handles message and comamnd packets.
@@ -49,7 +50,8 @@ public class ExtInfoPacketHandler implements PacketHandler<MinecraftSession> {
 
   @Override
   public void handlePacket(MinecraftSession session, Packet packet) {
-    session.numExtEntries = packet.getNumericField("extension_count").intValue();
-    session.client = packet.getStringField("app_name");
+    ExtInfoPacket info = (ExtInfoPacket) packet;
+    session.numExtEntries = info.extensionCount();
+    session.client = info.appName();
   }
 }
@@ -44,8 +44,10 @@ import org.opencraft.server.cmd.impl.ReplayCommand;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.MinecraftSession;
+import org.opencraft.server.net.Recipients;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.MessagePacket;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -64,13 +66,14 @@ public class MessagePacketHandler implements PacketHandler<MinecraftSession> {
       return;
     }
     Player player = session.getPlayer();
-    String message = packet.getStringField("message");
+    MessagePacket chat = (MessagePacket) packet;
+    String message = chat.message();
     if (message.contains("&")) {
       player.kickForHacking();
       return;
     }
 
-    int id = packet.getNumericField("id").byteValue();
+    int id = chat.id();
     if (id == 0) {
       message = message.stripTrailing();
     }
@@ -122,11 +125,9 @@ public class MessagePacketHandler implements PacketHandler<MinecraftSession> {
         } catch (Exception e) {
           session.getActionSender().sendChatMessage(e.getMessage());
         }
-        for (Player p : World.getWorld().getPlayerList().getPlayers()) {
-          if (p.sendCommandLog && !message.startsWith("/pm")) {
-            p.getActionSender()
-                .sendChatMessage("&2" + player.getName() + " issued " + message);
-          }
+        if (!message.startsWith("/pm")) {
+          World.getWorld().broadcast(Recipients.PLAYERS.and(p -> p.sendCommandLog),
+              "&2" + player.getName() + " issued " + message);
         }
       } else {
         session.getActionSender().sendChatMessage("Invalid command /" + parts[0] + ".");
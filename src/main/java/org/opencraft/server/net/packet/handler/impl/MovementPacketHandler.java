@@ -43,6 +43,7 @@ import org.opencraft.server.model.*;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.MovementPacket;
 
 /**
  * A packet handler which handles movement packets.
@@ -58,14 +59,15 @@ public class MovementPacketHandler implements PacketHandler<MinecraftSession> {
     }
 
     final Player player = session.getPlayer();
+    final MovementPacket movement = (MovementPacket) packet;
     Position oldPosition = player.getPosition();
 
     final int oldX = oldPosition.getX();
     final int oldY = oldPosition.getY();
     final int oldZ = oldPosition.getZ();
-    final int x = packet.getNumericField("x").intValue();
-    final int y = packet.getNumericField("y").intValue();
-    final int z = packet.getNumericField("z").intValue();
+    final int x = movement.x();
+    final int y = movement.y();
+    final int z = movement.z();
 
     Position position = new Position(x, y, z);
     Position blockPosition = position.toBlockPos();
@@ -85,7 +87,8 @@ public class MovementPacketHandler implements PacketHandler<MinecraftSession> {
       player.moveTime = System.currentTimeMillis();
     }
 
-    for (SmokeZone zone : World.getWorld().getAllSmokeZones()) {
+    SmokeZone smoke = null;
+    for (SmokeZone zone : World.getWorld().getSmokeZones(x / 32, y / 32, z / 32)) {
       int minX = zone.minX;
       int minZ = zone.minZ;
       int minY = zone.minY;
@@ -98,32 +101,34 @@ public class MovementPacketHandler implements PacketHandler<MinecraftSession> {
       if ((x / 32 >= minX && x / 32 <= maxX)
               && (z / 32 >= minZ && z / 32 <= maxZ)
               && (y / 32 >= minY && y / 32 <= maxY)) {
-        if (player.team != -1) {
-          short fogDensity = 0;
-          if (zone.density == 255) fogDensity = 1;
-          if (zone.density == 191) fogDensity = 7;
-          if (zone.density == 127) fogDensity = 14;
-          if (zone.density == 64) fogDensity = 28;
-
-          player.getActionSender().sendMapProperty(4, fogDensity);
-          player.getActionSender().sendMapColor(2, (short) 34, (short) 34, (short) 34);
-          player.isInSmokeZone = true;
-        }
+        smoke = smoke == null || zone.density > smoke.density ? zone : smoke;
+      }
+    }
+
+    if (smoke != null) {
+      if (player.team != -1) {
+        short fogDensity = 0;
+        if (smoke.density == 255) fogDensity = 1;
+        if (smoke.density == 191) fogDensity = 7;
+        if (smoke.density == 127) fogDensity = 14;
+        if (smoke.density == 64) fogDensity = 28;
+
+        player.getActionSender().sendMapProperty(4, fogDensity);
+        player.getActionSender().sendMapColor(2, (short) 34, (short) 34, (short) 34);
+        player.isInSmokeZone = true;
+      }
+    } else if (player.isInSmokeZone && player.team != -1) {
+      player.getActionSender().sendMapProperty(4, World.getWorld().getLevel().viewDistance);
+      player.getActionSender().sendMapColor(2, Constants.DEFAULT_COLORS[2][0], Constants.DEFAULT_COLORS[2][1], Constants.DEFAULT_COLORS[2][2]);
+
+      short[][] colors = World.getWorld().getLevel().colors;
+      if (colors[2][0] == -1) {
+        player.getActionSender().sendMapColor(2, Constants.DEFAULT_COLORS[2][0], Constants.DEFAULT_COLORS[2][1], Constants.DEFAULT_COLORS[2][2]);
       } else {
-        if (player.isInSmokeZone && player.team != -1) {
-          player.getActionSender().sendMapProperty(4, World.getWorld().getLevel().viewDistance);
-          player.getActionSender().sendMapColor(2, Constants.DEFAULT_COLORS[2][0], Constants.DEFAULT_COLORS[2][1], Constants.DEFAULT_COLORS[2][2]);
-
-          short[][] colors = World.getWorld().getLevel().colors;
-          if (colors[2][0] == -1) {
-            player.getActionSender().sendMapColor(2, Constants.DEFAULT_COLORS[2][0], Constants.DEFAULT_COLORS[2][1], Constants.DEFAULT_COLORS[2][2]);
-          } else {
-            player.getActionSender().sendMapColor(2, colors[2][0], colors[2][1], colors[2][2]);
-          }
-
-          player.isInSmokeZone = false;
-        }
+        player.getActionSender().sendMapColor(2, colors[2][0], colors[2][1], colors[2][2]);
       }
+
+      player.isInSmokeZone = false;
     }
 
     // Kill floor
@@ -204,12 +209,12 @@ public class MovementPacketHandler implements PacketHandler<MinecraftSession> {
 
     player.lastLegalPosition = position;
 
-    final int rotation = packet.getNumericField("rotation").intValue();
-    final int look = packet.getNumericField("look").intValue();
+    final int rotation = movement.yaw();
+    final int look = movement.pitch();
     player.setPosition(position);
     player.setRotation(new Rotation(rotation, look));
     MoveLog.getInstance().logPosition(player);
     if (session.isExtensionSupported("HeldBlock"))
-      player.heldBlock = packet.getNumericField("id").byteValue();
+      player.heldBlock = (byte) movement.heldBlock();
   }
 }
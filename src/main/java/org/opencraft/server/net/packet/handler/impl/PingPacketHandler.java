@@ -3,14 +3,15 @@ package org.opencraft.server.net.packet.handler.impl;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.handler.PacketHandler;
+import org.opencraft.server.net.packet.incoming.PingPacket;
 
 public class PingPacketHandler implements PacketHandler<MinecraftSession> {
 
   @Override
   public void handlePacket(MinecraftSession session, Packet packet) {
-    boolean serverToClient = packet.getNumericField("server_to_client").byteValue() == (byte) 1;
-    byte b = packet.getNumericField("server_to_client").byteValue();
-    int data = packet.getNumericField("data").intValue();
+    PingPacket ping = (PingPacket) packet;
+    boolean serverToClient = ping.serverToClient();
+    int data = ping.data();
     if (serverToClient) {
       session.getPlayer().pingList.update(data);
     } else {
@@ -0,0 +1,45 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the authentication request a client sends when it connects. */
+public final class AuthenticationPacket extends PacketView {
+
+  private final int protocolVersion;
+  private final int username;
+  private final int verificationKey;
+  private final int unused;
+
+  public AuthenticationPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    protocolVersion = offset("protocol_version", DataType.BYTE);
+    username = offset("username", DataType.STRING);
+    verificationKey = offset("verification_key", DataType.STRING);
+    unused = offset("unused", DataType.BYTE);
+  }
+
+  public int protocolVersion() {
+    return getByte(protocolVersion);
+  }
+
+  public String username() {
+    return getString(username).trim();
+  }
+
+  public String verificationKey() {
+    return getString(verificationKey).trim();
+  }
+
+  /**
+   * Gets the padding byte, which is 0x42 if the client supports CPE.
+   *
+   * @return The padding byte.
+   */
+  public int unused() {
+    return getByte(unused);
+  }
+}
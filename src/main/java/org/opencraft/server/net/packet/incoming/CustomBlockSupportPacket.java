@@ -0,0 +1,22 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the CPE CustomBlockSupportLevel packet. */
+public final class CustomBlockSupportPacket extends PacketView {
+
+  private final int supportLevel;
+
+  public CustomBlockSupportPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    supportLevel = offset("support_level", DataType.BYTE);
+  }
+
+  public int supportLevel() {
+    return getByte(supportLevel);
+  }
+}
@@ -0,0 +1,28 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the CPE ExtEntry packet. */
+public final class ExtEntryPacket extends PacketView {
+
+  private final int extName;
+  private final int extVersion;
+
+  public ExtEntryPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    extName = offset("ext_name", DataType.STRING);
+    extVersion = offset("ext_version", DataType.INT);
+  }
+
+  public String extName() {
+    return getString(extName).trim();
+  }
+
+  public int extVersion() {
+    return getInt(extVersion);
+  }
+}
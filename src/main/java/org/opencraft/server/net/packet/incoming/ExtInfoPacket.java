@@ -0,0 +1,28 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the CPE ExtInfo packet. */
+public final class ExtInfoPacket extends PacketView {
+
+  private final int appName;
+  private final int extensionCount;
+
+  public ExtInfoPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    appName = offset("app_name", DataType.STRING);
+    extensionCount = offset("extension_count", DataType.SHORT);
+  }
+
+  public String appName() {
+    return getString(appName).trim();
+  }
+
+  public int extensionCount() {
+    return getShort(extensionCount);
+  }
+}
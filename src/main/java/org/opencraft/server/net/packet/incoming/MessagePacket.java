@@ -0,0 +1,38 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of a chat message or command sent by a client. */
+public final class MessagePacket extends PacketView {
+
+  private final int id;
+  private final int message;
+
+  public MessagePacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    id = offset("id", DataType.BYTE);
+    message = offset("message", DataType.STRING);
+  }
+
+  /**
+   * Gets the id, which is 1 if more of the message follows in another packet.
+   *
+   * @return The id.
+   */
+  public int id() {
+    return getByte(id);
+  }
+
+  /**
+   * Gets the message. It is not trimmed, as trailing spaces matter to messages sent in parts.
+   *
+   * @return The message.
+   */
+  public String message() {
+    return getString(message);
+  }
+}
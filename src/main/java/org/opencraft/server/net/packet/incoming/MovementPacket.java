@@ -0,0 +1,57 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the position and orientation packet a client sends every tick. */
+public final class MovementPacket extends PacketView {
+
+  private final int heldBlock;
+  private final int x;
+  private final int y;
+  private final int z;
+  private final int yaw;
+  private final int pitch;
+
+  public MovementPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    heldBlock = offset("id", DataType.SHORT);
+    x = offset("x", DataType.SHORT);
+    y = offset("y", DataType.SHORT);
+    z = offset("z", DataType.SHORT);
+    yaw = offset("rotation", DataType.BYTE);
+    pitch = offset("look", DataType.BYTE);
+  }
+
+  /**
+   * Gets the block the player is holding. Only meaningful if the client supports HeldBlock.
+   *
+   * @return The held block.
+   */
+  public int heldBlock() {
+    return getShort(heldBlock);
+  }
+
+  public int x() {
+    return getShort(x);
+  }
+
+  public int y() {
+    return getShort(y);
+  }
+
+  public int z() {
+    return getShort(z);
+  }
+
+  public int yaw() {
+    return getByte(yaw);
+  }
+
+  public int pitch() {
+    return getByte(pitch);
+  }
+}
@@ -0,0 +1,33 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the CPE TwoWayPing packet. */
+public final class PingPacket extends PacketView {
+
+  private final int serverToClient;
+  private final int data;
+
+  public PingPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    serverToClient = offset("server_to_client", DataType.BYTE);
+    data = offset("data", DataType.SHORT);
+  }
+
+  /**
+   * Checks if this is a reply to a ping the server sent.
+   *
+   * @return <code>true</code> if the server sent the ping.
+   */
+  public boolean serverToClient() {
+    return getByte(serverToClient) == 1;
+  }
+
+  public int data() {
+    return getShort(data);
+  }
+}
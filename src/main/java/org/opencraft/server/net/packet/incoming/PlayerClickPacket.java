@@ -0,0 +1,70 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the CPE PlayerClicked packet. */
+public final class PlayerClickPacket extends PacketView {
+
+  private final int button;
+  private final int action;
+  private final int yaw;
+  private final int pitch;
+  private final int entity;
+  private final int blockX;
+  private final int blockY;
+  private final int blockZ;
+  private final int blockFace;
+
+  public PlayerClickPacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    button = offset("button", DataType.BYTE);
+    action = offset("action", DataType.BYTE);
+    yaw = offset("yaw", DataType.SHORT);
+    pitch = offset("pitch", DataType.SHORT);
+    entity = offset("entity", DataType.BYTE);
+    blockX = offset("block_x", DataType.SHORT);
+    blockY = offset("block_y", DataType.SHORT);
+    blockZ = offset("block_z", DataType.SHORT);
+    blockFace = offset("block_face", DataType.BYTE);
+  }
+
+  public int button() {
+    return getByte(button);
+  }
+
+  public int action() {
+    return getByte(action);
+  }
+
+  public int yaw() {
+    return getShort(yaw);
+  }
+
+  public int pitch() {
+    return getShort(pitch);
+  }
+
+  public int entity() {
+    return getByte(entity);
+  }
+
+  public int blockX() {
+    return getShort(blockX);
+  }
+
+  public int blockY() {
+    return getShort(blockY);
+  }
+
+  public int blockZ() {
+    return getShort(blockZ);
+  }
+
+  public int blockFace() {
+    return getByte(blockFace);
+  }
+}
@@ -0,0 +1,51 @@
+package org.opencraft.server.net.packet.incoming;
+
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketView;
+
+import java.util.Queue;
+
+/** A view of the packet a client sends when it places or destroys a block. */
+public final class SetTilePacket extends PacketView {
+
+  private final int x;
+  private final int y;
+  private final int z;
+  private final int mode;
+  private final int type;
+
+  public SetTilePacket(PacketDefinition definition, Queue<PacketView> pool) {
+    super(definition, pool);
+    x = offset("x", DataType.SHORT);
+    y = offset("y", DataType.SHORT);
+    z = offset("z", DataType.SHORT);
+    mode = offset("mode", DataType.BYTE);
+    type = offset("type", DataType.SHORT);
+  }
+
+  public int x() {
+    return getShort(x);
+  }
+
+  public int y() {
+    return getShort(y);
+  }
+
+  public int z() {
+    return getShort(z);
+  }
+
+  /**
+   * Gets the mode, 1 if a block was placed or 0 if one was destroyed.
+   *
+   * @return The mode.
+   */
+  public int mode() {
+    return getByte(mode);
+  }
+
+  public int type() {
+    return getShort(type);
+  }
+}
@@ -5,6 +5,7 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.opencraft.server.net.OutboundBatch;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
@@ -136,18 +137,22 @@ public class WebSocketFilter extends CumulativeIncomeFilter {
 
   // Encode the in buffer according to the Section 5.2. RFC 6455
   private static IoBuffer buildWSDataFrameBuffer(IoBuffer buf) {
-    IoBuffer buffer = IoBuffer.allocate(buf.limit() + 2, false);
-    buffer.setAutoExpand(true);
+    // batched packets can be larger than a 16-bit length allows
+    int length = buf.remaining();
+    IoBuffer buffer = IoBuffer.allocate(length + 10, false);
     buffer.put((byte) 0x82);
-    if (buffer.capacity() <= 125) {
-      byte capacity = (byte) (buf.limit());
-      buffer.put(capacity);
-    } else {
+    if (length <= 125) {
+      buffer.put((byte) length);
+    } else if (length <= 0xFFFF) {
       buffer.put((byte) 126);
-      buffer.putShort((short) buf.limit());
+      buffer.putShort((short) length);
+    } else {
+      buffer.put((byte) 127);
+      buffer.putLong(length);
     }
     buffer.put(buf);
     buffer.flip();
+    OutboundBatch.recordFrame();
     return buffer;
   }
 
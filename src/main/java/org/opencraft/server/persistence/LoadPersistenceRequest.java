@@ -36,13 +36,9 @@
  */
 package org.opencraft.server.persistence;
 
-import com.thoughtworks.xstream.XStream;
-
 import org.opencraft.server.game.impl.GameSettings;
 import org.opencraft.server.model.Player;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Map;
 
@@ -62,53 +58,42 @@ public class LoadPersistenceRequest extends PersistenceRequest {
     super(player);
   }
 
-  private void setDefaultStats(Player player) {
-    if (player.getAttribute("points") == null) player.setAttribute("points", 0);
-    if (player.getAttribute("ragequits") == null) player.setAttribute("ragequits", 0);
-    if (player.getAttribute("duelWins") == null) player.setAttribute("duelWins", 0);
-    if (player.getAttribute("duelLosses") == null) player.setAttribute("duelLosses", 0);
-    if (player.getAttribute("deaths") == null) player.setAttribute("deaths", 0);
-    if (player.getAttribute("maxKillstreak") == null) player.setAttribute("maxKillstreak", 0);
-    if (player.getAttribute("maxKillstreakEnded") == null)
-      player.setAttribute("maxKillstreakEnded", 0);
-    if (player.getAttribute("domination") == null) player.setAttribute("domination", 0);
-    if (player.getAttribute("revenge") == null) player.setAttribute("revenge", 0);
-    if (player.getAttribute("stalemateTags") == null) player.setAttribute("stalemateTags", 0);
+  /**
+   * Gives a player the attributes from their saved game.
+   *
+   * @param player The player.
+   * @param record The saved game, or <code>null</code> if they don't have one yet.
+   */
+  public static void apply(Player player, PlayerRecord record) {
+    boolean tournament = GameSettings.TOURNAMENT.get();
+    Map<String, Object> attributes = (record == null ? new PlayerRecord() : record).toAttributes();
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      if (entry.getKey().equals("points") && tournament) {
+        player.setAttribute(entry.getKey(), 0);
+      } else {
+        player.setAttribute(entry.getKey(), entry.getValue());
+      }
+    }
+    if (record != null) {
+      player.joinedDuringTournamentMode = tournament;
+    }
+    player.statsLoaded = true;
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Loads the player, reading their saved game from disk if it isn't in memory.
+   *
+   * @param createFile Whether to give the player new stats if they don't have a saved game.
+   * @throws IOException if an I/O error occurs, or the player doesn't have a saved game and
+   *     <code>createFile</code> is <code>false</code>.
+   */
   public void perform(boolean createFile) throws IOException {
-    final SavedGameManager mgr = SavedGameManager.getSavedGameManager();
     final Player player = getPlayer();
-    final XStream xs = mgr.getXStream();
-    final File file = new File(mgr.getPath(player));
-    if (file.exists()) {
-      try {
-        Map<String, Object> attributes =
-            (Map<String, Object>) xs.fromXML(new FileInputStream(file));
-        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
-          if (entry.getKey().equals("points") && GameSettings.getBoolean("Tournament")) {
-            player.setAttribute(entry.getKey(), 0);
-          } else {
-            player.setAttribute(entry.getKey(), entry.getValue());
-          }
-        }
-        player.joinedDuringTournamentMode = GameSettings.getBoolean("Tournament");
-      } catch (RuntimeException ex) {
-        throw new IOException(ex);
-      }
-      setDefaultStats(player);
-    } else if (createFile) {
-      if (player.getAttribute("wins") == null) {
-        player.setAttribute("tags", 0);
-        player.setAttribute("captures", 0);
-        player.setAttribute("explodes", 0);
-        player.setAttribute("mines", 0);
-        player.setAttribute("wins", 0);
-        player.setAttribute("games", 0);
-      }
-      setDefaultStats(player);
-    } else throw new IOException();
+    PlayerRecord record = SavedGameManager.getSavedGameManager().getStore().get(player.getName());
+    if (record == null && !createFile) {
+      throw new IOException("No saved game for " + player.getName());
+    }
+    apply(player, record);
   }
 
   public void perform() throws IOException {
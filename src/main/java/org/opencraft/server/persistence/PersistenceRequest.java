@@ -78,7 +78,7 @@ public abstract class PersistenceRequest implements Runnable {
     try {
       perform();
     } catch (IOException ex) {
-      Server.log("Load persistense for " + player.getName() + " failed");
+      Server.log("Load persistence for " + player.getName() + " failed");
       Server.log(ex);
     }
   }
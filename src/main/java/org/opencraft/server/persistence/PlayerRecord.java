@@ -0,0 +1,241 @@
+package org.opencraft.server.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A player's saved game. The stats every player has are kept as ints, and the rest of their
+ * attributes, such as ranks, flags and ratings, are kept by name. Only numbers, booleans and
+ * strings are saved; attributes holding objects, such as a player's brush, only last as long as
+ * the session.
+ */
+public final class PlayerRecord {
+
+  /**
+   * The stats which are stored as fields. The order is part of the file format, so new stats must
+   * only be added at the end.
+   */
+  public enum Stat {
+    GAMES("games"),
+    WINS("wins"),
+    EXPLODES("explodes"),
+    CAPTURES("captures"),
+    TAGS("tags"),
+    MINES("mines"),
+    RAGEQUITS("ragequits"),
+    DEATHS("deaths"),
+    POINTS("points"),
+    STALEMATE_TAGS("stalemateTags"),
+    REVENGE("revenge"),
+    MAX_KILLSTREAK("maxKillstreak"),
+    MAX_KILLSTREAK_ENDED("maxKillstreakEnded"),
+    DUEL_WINS("duelWins"),
+    DUEL_LOSSES("duelLosses"),
+    DOMINATION("domination");
+
+    private static final Stat[] VALUES = values();
+    private static final Map<String, Stat> BY_KEY = new HashMap<>();
+
+    static {
+      for (Stat stat : VALUES) {
+        BY_KEY.put(stat.key, stat);
+      }
+    }
+
+    private final String key;
+
+    Stat(String key) {
+      this.key = key;
+    }
+
+    /**
+     * Gets the name of the player attribute the stat is kept in.
+     *
+     * @return The attribute name.
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Gets the stat kept in a player attribute.
+     *
+     * @param key The attribute name.
+     * @return The stat, or <code>null</code> if the attribute isn't one.
+     */
+    public static Stat forKey(String key) {
+      return BY_KEY.get(key);
+    }
+  }
+
+  private static final byte TYPE_INT = 'I';
+  private static final byte TYPE_LONG = 'J';
+  private static final byte TYPE_DOUBLE = 'D';
+  private static final byte TYPE_BOOLEAN = 'Z';
+  private static final byte TYPE_STRING = 'S';
+
+  private final int[] stats = new int[Stat.VALUES.length];
+
+  /** The attributes which aren't stats. */
+  private final Map<String, Object> attributes = new HashMap<>();
+
+  /**
+   * Creates a record from a player's attributes. Attributes which can't be saved are skipped.
+   *
+   * @param attributes The attributes.
+   * @return The record.
+   */
+  public static PlayerRecord of(Map<String, Object> attributes) {
+    PlayerRecord record = new PlayerRecord();
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      if (isSaved(entry.getValue())) {
+        record.set(entry.getKey(), entry.getValue());
+      }
+    }
+    return record;
+  }
+
+  /**
+   * Checks if an attribute value can be saved.
+   *
+   * @param value The value.
+   * @return <code>true</code> if it is an int, long, double, boolean or string.
+   */
+  public static boolean isSaved(Object value) {
+    return value instanceof Integer
+        || value instanceof Long
+        || value instanceof Double
+        || value instanceof Boolean
+        || value instanceof String;
+  }
+
+  public int get(Stat stat) {
+    return stats[stat.ordinal()];
+  }
+
+  public void set(Stat stat, int value) {
+    stats[stat.ordinal()] = value;
+  }
+
+  /**
+   * Sets an attribute. Stats given as something other than a number are stored by name instead, as
+   * they were given.
+   *
+   * @param key The attribute name.
+   * @param value The value, or <code>null</code> to remove it.
+   * @throws IllegalArgumentException if the value isn't a type which can be saved.
+   */
+  public void set(String key, Object value) {
+    if (value != null && !isSaved(value)) {
+      throw new IllegalArgumentException(
+          "Can't save " + key + " as a " + value.getClass().getName());
+    }
+    Stat stat = Stat.forKey(key);
+    if (stat != null && value instanceof Number) {
+      stats[stat.ordinal()] = ((Number) value).intValue();
+      attributes.remove(key);
+    } else if (value == null) {
+      attributes.remove(key);
+    } else {
+      attributes.put(key, value);
+    }
+  }
+
+  /**
+   * Gets the attributes to give the player. Every stat is included.
+   *
+   * @return The attributes.
+   */
+  public Map<String, Object> toAttributes() {
+    Map<String, Object> map = new HashMap<>(attributes);
+    for (Stat stat : Stat.VALUES) {
+      map.putIfAbsent(stat.key, stats[stat.ordinal()]);
+    }
+    return map;
+  }
+
+  /**
+   * Writes the record.
+   *
+   * @param out The output.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeShort(stats.length);
+    for (int value : stats) {
+      out.writeInt(value);
+    }
+    out.writeShort(attributes.size());
+    for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+      out.writeUTF(entry.getKey());
+      Object value = entry.getValue();
+      if (value instanceof Integer) {
+        out.writeByte(TYPE_INT);
+        out.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        out.writeByte(TYPE_LONG);
+        out.writeLong((Long) value);
+      } else if (value instanceof Double) {
+        out.writeByte(TYPE_DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Boolean) {
+        out.writeByte(TYPE_BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (value instanceof String) {
+        out.writeByte(TYPE_STRING);
+        out.writeUTF((String) value);
+      } else {
+        throw new IOException("Can't save " + entry.getKey() + " as a " + value.getClass());
+      }
+    }
+  }
+
+  /**
+   * Reads a record.
+   *
+   * @param in The input.
+   * @return The record.
+   * @throws IOException if an I/O error occurs, or the record is malformed.
+   */
+  public static PlayerRecord read(DataInput in) throws IOException {
+    PlayerRecord record = new PlayerRecord();
+    int count = in.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      int value = in.readInt();
+      // stats from a newer version than this one are dropped
+      if (i < record.stats.length) {
+        record.stats[i] = value;
+      }
+    }
+    count = in.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      String key = in.readUTF();
+      byte type = in.readByte();
+      Object value;
+      switch (type) {
+        case TYPE_INT:
+          value = in.readInt();
+          break;
+        case TYPE_LONG:
+          value = in.readLong();
+          break;
+        case TYPE_DOUBLE:
+          value = in.readDouble();
+          break;
+        case TYPE_BOOLEAN:
+          value = in.readBoolean();
+          break;
+        case TYPE_STRING:
+          value = in.readUTF();
+          break;
+        default:
+          throw new IOException("Unknown attribute type " + type + " for " + key);
+      }
+      record.attributes.put(key, value);
+    }
+    return record;
+  }
+}
@@ -0,0 +1,376 @@
+package org.opencraft.server.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Every player's saved game in one file. The file is a log which records are only ever appended
+ * to, and the offset of each player's latest record is kept in memory, so loading a player is one
+ * read and saving a batch of players is one write.
+ *
+ * <p>Saved records are kept in memory until the next {@link #commit()}, which writes them all at
+ * once. Recently used records are cached as well, so players who rejoin are loaded without reading
+ * the file. Old records are left in the file until it is opened again and they take up more space
+ * than the live ones, when it is rewritten without them.
+ *
+ * <p>The store may be used by several threads, but only one should commit.
+ */
+public final class PlayerStore implements Closeable {
+
+  /** The magic number at the start of the file, "CTFP". */
+  private static final int MAGIC = 0x43544650;
+
+  private static final int VERSION = 1;
+
+  /** The size of the file header. */
+  private static final int HEADER = 8;
+
+  /** The size of the length and checksum before each record. */
+  private static final int ENTRY_HEADER = 8;
+
+  /** The most records which are kept in memory while they aren't being used. */
+  private static final int CACHE_SIZE = 1024;
+
+  /** The least wasted space the file must have to be compacted. */
+  private static final long COMPACT_THRESHOLD = 64 * 1024;
+
+  /** Where a record is in the file. */
+  private static final class Location {
+    final long offset;
+    final int length;
+
+    Location(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private final File file;
+  private final FileChannel channel;
+
+  /** The latest record of each player, by lowercase name. */
+  private final Map<String, Location> index = new HashMap<>();
+
+  /** Records which have been saved but not written yet. */
+  private final Map<String, PlayerRecord> dirty = new LinkedHashMap<>();
+
+  /** Recently used records, which are never evicted while they are dirty. */
+  private final Map<String, PlayerRecord> cache =
+      new LinkedHashMap<String, PlayerRecord>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlayerRecord> eldest) {
+          return size() > CACHE_SIZE && !dirty.containsKey(eldest.getKey());
+        }
+      };
+
+  /** The end of the file, where the next record is written. */
+  private long end;
+
+  /** The space taken by the latest records. */
+  private long live;
+
+  private PlayerStore(File file, FileChannel channel) {
+    this.file = file;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens a store, creating it if the file doesn't exist. A record left half written by a crash is
+   * discarded, and the file is compacted if it is mostly old records.
+   *
+   * @param file The file.
+   * @return The store.
+   * @throws IOException if an I/O error occurs, or the file isn't a store.
+   */
+  public static PlayerStore open(File file) throws IOException {
+    PlayerStore store = openFile(file);
+    long wasted = store.end - HEADER - store.live;
+    if (wasted > COMPACT_THRESHOLD && wasted > store.live) {
+      store.compact();
+      store = openFile(file);
+    }
+    return store;
+  }
+
+  private static PlayerStore openFile(File file) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    PlayerStore store = new PlayerStore(file, channel);
+    try {
+      store.scan();
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+    return store;
+  }
+
+  /** Reads the index from the file. */
+  private void scan() throws IOException {
+    long size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER);
+    if (size < HEADER) {
+      header.putInt(MAGIC).putInt(VERSION).flip();
+      channel.truncate(0);
+      writeFully(header, 0);
+      channel.force(true);
+      end = HEADER;
+      return;
+    }
+    readFully(header, 0);
+    header.flip();
+    if (header.getInt() != MAGIC) {
+      throw new IOException(file + " is not a player store");
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException(file + " has unsupported version " + version);
+    }
+
+    CRC32 crc = new CRC32();
+    ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER);
+    long offset = HEADER;
+    while (offset + ENTRY_HEADER <= size) {
+      entryHeader.clear();
+      readFully(entryHeader, offset);
+      entryHeader.flip();
+      int length = entryHeader.getInt();
+      int checksum = entryHeader.getInt();
+      if (length <= 0 || offset + ENTRY_HEADER + length > size) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(payload, offset + ENTRY_HEADER);
+      crc.reset();
+      crc.update(payload.array());
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      String name = new DataInputStream(new ByteArrayInputStream(payload.array())).readUTF();
+      Location location = new Location(offset, ENTRY_HEADER + length);
+      Location old = index.put(name, location);
+      if (old != null) {
+        live -= old.length;
+      }
+      live += location.length;
+      offset += location.length;
+    }
+    if (offset != size) {
+      // the end of the file is a record which was not finished
+      channel.truncate(offset);
+    }
+    end = offset;
+  }
+
+  /** Rewrites the file with only the latest records. */
+  private void compact() throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            temp.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(VERSION).flip();
+      while (header.hasRemaining()) {
+        out.write(header);
+      }
+      for (Location location : index.values()) {
+        ByteBuffer entry = ByteBuffer.allocate(location.length);
+        readFully(entry, location.offset);
+        entry.flip();
+        while (entry.hasRemaining()) {
+          out.write(entry);
+        }
+      }
+      out.force(true);
+    }
+    channel.close();
+    Files.move(
+        temp.toPath(),
+        file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Checks if a player has a record.
+   *
+   * @param name The player's name.
+   * @return <code>true</code> if they do.
+   */
+  public synchronized boolean contains(String name) {
+    String key = name.toLowerCase();
+    return cache.containsKey(key) || index.containsKey(key);
+  }
+
+  /**
+   * Gets a player's record if it is in memory.
+   *
+   * @param name The player's name.
+   * @return The record, or <code>null</code> if it would have to be read from the file.
+   */
+  public synchronized PlayerRecord getIfCached(String name) {
+    return cache.get(name.toLowerCase());
+  }
+
+  /**
+   * Gets a player's record, reading it from the file if it isn't in memory.
+   *
+   * @param name The player's name.
+   * @return The record, or <code>null</code> if the player doesn't have one.
+   * @throws IOException if an I/O error occurs.
+   */
+  public PlayerRecord get(String name) throws IOException {
+    String key = name.toLowerCase();
+    Location location;
+    synchronized (this) {
+      PlayerRecord record = cache.get(key);
+      if (record != null) {
+        return record;
+      }
+      location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+    }
+    // records are never overwritten, so this can be read without holding the lock
+    ByteBuffer entry = ByteBuffer.allocate(location.length - ENTRY_HEADER);
+    readFully(entry, location.offset + ENTRY_HEADER);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.array()));
+    in.readUTF();
+    PlayerRecord record = PlayerRecord.read(in);
+    synchronized (this) {
+      // it may have been saved while it was being read
+      PlayerRecord saved = cache.putIfAbsent(key, record);
+      return saved != null ? saved : record;
+    }
+  }
+
+  /**
+   * Saves a player's record. It is written by the next commit. The record must not be changed
+   * afterwards.
+   *
+   * @param name The player's name.
+   * @param record The record.
+   */
+  public synchronized void put(String name, PlayerRecord record) {
+    String key = name.toLowerCase();
+    dirty.put(key, record);
+    cache.put(key, record);
+  }
+
+  /**
+   * Writes every record saved since the last commit, with one write and one sync.
+   *
+   * @return The number of records written.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int commit() throws IOException {
+    List<Map.Entry<String, PlayerRecord>> batch;
+    long offset;
+    synchronized (this) {
+      if (dirty.isEmpty()) {
+        return 0;
+      }
+      batch = new ArrayList<>(dirty.size());
+      for (Map.Entry<String, PlayerRecord> entry : dirty.entrySet()) {
+        batch.add(Map.entry(entry.getKey(), entry.getValue()));
+      }
+      offset = end;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    DataOutputStream payloadOut = new DataOutputStream(payload);
+    CRC32 crc = new CRC32();
+    int[] lengths = new int[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      payload.reset();
+      payloadOut.writeUTF(batch.get(i).getKey());
+      batch.get(i).getValue().write(payloadOut);
+      crc.reset();
+      crc.update(payload.toByteArray());
+      out.writeInt(payload.size());
+      out.writeInt((int) crc.getValue());
+      payload.writeTo(out);
+      lengths[i] = ENTRY_HEADER + payload.size();
+    }
+    writeFully(ByteBuffer.wrap(bytes.toByteArray()), offset);
+    channel.force(false);
+
+    synchronized (this) {
+      for (int i = 0; i < batch.size(); i++) {
+        String key = batch.get(i).getKey();
+        Location location = new Location(offset, lengths[i]);
+        Location old = index.put(key, location);
+        if (old != null) {
+          live -= old.length;
+        }
+        live += location.length;
+        offset += location.length;
+        // a record saved again during the write stays dirty for the next commit
+        dirty.remove(key, batch.get(i).getValue());
+      }
+      end = offset;
+    }
+    return batch.size();
+  }
+
+  /**
+   * Gets the number of players with a record in the file.
+   *
+   * @return The number of players.
+   */
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /** Commits and closes the store. */
+  @Override
+  public void close() throws IOException {
+    try {
+      commit();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of " + file);
+      }
+      position += read;
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+}
@@ -36,20 +36,9 @@
  */
 package org.opencraft.server.persistence;
 
-import com.thoughtworks.xstream.XStream;
-
-import org.opencraft.server.Configuration;
-import org.opencraft.server.game.impl.GameSettings;
 import org.opencraft.server.model.Player;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
 
 /**
  * A persistence request which saves the specified player.
@@ -58,58 +47,31 @@ import java.net.URLEncoder;
  */
 public class SavePersistenceRequest extends PersistenceRequest {
 
+  /** The player's attributes when the request was created, or <code>null</code> if not loaded. */
+  private final PlayerRecord record;
+
   /**
-   * Creates the save request.
+   * Creates the save request. The player's attributes are copied now, so it should be created on
+   * the game loop.
    *
    * @param player The player to save.
    */
   public SavePersistenceRequest(Player player) {
     super(player);
+    this.record = player.statsLoaded ? PlayerRecord.of(player.getAttributes()) : null;
   }
 
   @Override
   public void perform() throws IOException {
-    final SavedGameManager mgr = SavedGameManager.getSavedGameManager();
+    if (record == null) {
+      // saving a player whose saved game was never loaded would overwrite it
+      return;
+    }
     final Player player = getPlayer();
-    final XStream xs = mgr.getXStream();
-    final File file = new File(mgr.getPath(player));
-    String data = null;
-    data = URLEncoder.encode("username", "UTF-8") + "=" + player.getName() + "&";
-    data += URLEncoder.encode("tags", "UTF-8") + "=" + player.getIntAttribute("tags") + "&";
-    data += URLEncoder.encode("wins", "UTF-8") + "=" + player.getIntAttribute("wins") + "&";
-    data += URLEncoder.encode("mines", "UTF-8") + "=" + player.getIntAttribute("mines") + "&";
-    data += URLEncoder.encode("explodes", "UTF-8") + "=" + player.getIntAttribute("explodes") + "&";
-    data += URLEncoder.encode("captures", "UTF-8") + "=" + player.getIntAttribute("captures") + "&";
-    data += URLEncoder.encode("games", "UTF-8") + "=" + player.getIntAttribute("games");
-    URL url = null;
-    String statsURL = Configuration.getConfiguration().getStatsPostURL();
-    try {
-      if (!Configuration.getConfiguration().isTest() && !statsURL.equals("null")) {
-        url = new URL(Configuration.getConfiguration().getStatsPostURL());
-        HttpURLConnection c = (HttpURLConnection) url.openConnection();
-        c.setRequestMethod("POST");
-        c.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        c.setRequestProperty("Content-Length", "" + Integer.toString(data.length()));
-        c.setRequestProperty("Content-Language", "en-US");
-        c.setUseCaches(false);
-        c.setDoInput(true);
-        c.setDoOutput(true);
-        c.connect();
-        c.getOutputStream().write(data.getBytes());
-        BufferedReader rd = new BufferedReader(new InputStreamReader(c.getInputStream()));
-        int r = 0;
-        try {
-          r = Integer.parseInt(rd.readLine());
-          player.setAttribute("rank", "" + r);
-        } catch (Exception ex) {
-          ex.printStackTrace();
-        }
-
-        c.disconnect();
-      }
-      xs.toXML(player.getAttributes(), new FileOutputStream(file));
-    } catch (Exception ex) {
-      ex.printStackTrace();
+    SavedGameManager.getSavedGameManager().getStore().put(player.getName(), record);
+    StatsUploader uploader = StatsUploader.getStatsUploader();
+    if (uploader != null) {
+      uploader.submit(player.getName(), record);
     }
   }
 }
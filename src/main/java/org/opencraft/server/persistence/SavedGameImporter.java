@@ -0,0 +1,64 @@
+package org.opencraft.server.persistence;
+
+import com.thoughtworks.xstream.XStream;
+
+import org.opencraft.server.Server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Imports the saved games from before the player store, which were an XML file per player, into a
+ * new store. The XML files are left where they are.
+ */
+public final class SavedGameImporter {
+
+  private final XStream xstream;
+
+  /**
+   * Creates the importer.
+   *
+   * @param xstream The XStream instance the saved games were written with.
+   */
+  public SavedGameImporter(XStream xstream) {
+    this.xstream = xstream;
+  }
+
+  /**
+   * Creates a store from the XML saved games in a directory. The store is only created once every
+   * file has been imported, so an import which is interrupted is started again next time.
+   *
+   * @param directory The directory with the saved games.
+   * @param file The store to create.
+   * @return The number of saved games imported.
+   * @throws IOException if an I/O error occurs.
+   */
+  @SuppressWarnings("unchecked")
+  public int importAll(File directory, File file) throws IOException {
+    File temp = new File(file.getPath() + ".import");
+    Files.deleteIfExists(temp.toPath());
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".xml"));
+    int imported = 0;
+    try (PlayerStore store = PlayerStore.open(temp)) {
+      if (files != null) {
+        for (File xml : files) {
+          String name = xml.getName().substring(0, xml.getName().length() - 4);
+          try (InputStream in = new FileInputStream(xml)) {
+            Map<String, Object> attributes = (Map<String, Object>) xstream.fromXML(in);
+            store.put(name, PlayerRecord.of(attributes));
+            imported++;
+          } catch (RuntimeException | IOException ex) {
+            Server.log("Could not import saved game " + xml.getName() + ": " + ex);
+          }
+        }
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    return imported;
+  }
+}
@@ -39,12 +39,19 @@ package org.opencraft.server.persistence;
 import com.thoughtworks.xstream.XStream;
 
 import org.opencraft.server.Constants;
+import org.opencraft.server.Server;
 import org.opencraft.server.io.PersistenceManager;
-import org.opencraft.server.model.Player;
+import org.opencraft.server.task.GameLoop;
 
-import java.util.concurrent.ExecutorService;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * The core class of the saved game system.
@@ -53,10 +60,25 @@ import java.util.concurrent.Future;
  */
 public class SavedGameManager {
 
+  /** How often saved games are written to disk, in milliseconds. */
+  private static final long COMMIT_INTERVAL = 5000;
+
   /** The singleton instance of the persistence manager. */
   private static final SavedGameManager INSTANCE = new SavedGameManager();
-  /** The executor service in which persistence requests are executed. */
-  private ExecutorService service = Executors.newSingleThreadExecutor();
+  /**
+   * The executor service in which persistence requests are executed. It is the only thread which
+   * opens or commits the store.
+   */
+  private final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+  /** The player store, which is <code>null</code> until it has been opened. */
+  private volatile PlayerStore store;
+
+  private SavedGameManager() {
+    service.execute(this::open);
+    service.scheduleWithFixedDelay(
+        this::commit, COMMIT_INTERVAL, COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "SavedGameShutdown"));
+  }
 
   /**
    * Gets the saved game manager instance.
@@ -77,13 +99,57 @@ public class SavedGameManager {
   }
 
   /**
-   * Gets the path to a saved game.
+   * Gets the directory saved games are kept in.
+   *
+   * @return The directory.
+   */
+  public File getDirectory() {
+    return new File(Constants.ROOT_PATH + "/savedGames");
+  }
+
+  /**
+   * Gets the player store.
    *
-   * @param player The player.
-   * @return The path to their saved game.
+   * @return The player store.
+   * @throws IOException if the store hasn't been opened yet, or couldn't be.
    */
-  public String getPath(Player player) {
-    return Constants.ROOT_PATH + "/savedGames/" + player.getName().toLowerCase() + ".xml";
+  public PlayerStore getStore() throws IOException {
+    PlayerStore s = store;
+    if (s == null) {
+      throw new IOException("The saved games have not been loaded");
+    }
+    return s;
+  }
+
+  /**
+   * Loads a player's saved game without blocking. If it is in memory the callback is called
+   * straight away, otherwise it is read on the persistence thread and the callback is called on the
+   * game loop.
+   *
+   * @param name The player's name.
+   * @param loaded Called with the record, or <code>null</code> if the player doesn't have one.
+   * @param failed Called on the game loop instead if the record couldn't be read.
+   */
+  public void load(String name, Consumer<PlayerRecord> loaded, Runnable failed) {
+    PlayerStore s = store;
+    if (s != null) {
+      PlayerRecord record = s.getIfCached(name);
+      if (record != null || !s.contains(name)) {
+        loaded.accept(record);
+        return;
+      }
+    }
+    service.execute(
+        () -> {
+          try {
+            PlayerRecord record = getStore().get(name);
+            GameLoop.getGameLoop().submit(() -> loaded.accept(record));
+          } catch (IOException ex) {
+            Server.log("Load persistence for " + name + " failed");
+            Server.log(ex);
+            GameLoop.getGameLoop().submit(failed::run);
+          }
+        });
   }
 
   /**
@@ -95,4 +161,61 @@ public class SavedGameManager {
   public Future<?> queuePersistenceRequest(PersistenceRequest req) {
     return service.submit(req);
   }
+
+  /** Opens the store, importing the XML saved games the first time. */
+  private void open() {
+    File directory = getDirectory();
+    File file = new File(directory, "players.dat");
+    try {
+      if (!file.exists()) {
+        directory.mkdirs();
+        int imported = new SavedGameImporter(getXStream()).importAll(directory, file);
+        Server.log("Imported " + imported + " saved games");
+      }
+      store = PlayerStore.open(file);
+      Server.log("Loaded " + store.size() + " saved games");
+    } catch (IOException ex) {
+      Server.log("[E] Could not open the saved games");
+      Server.log(ex);
+    }
+  }
+
+  /** Writes the saved games which have changed. */
+  private void commit() {
+    PlayerStore s = store;
+    if (s == null) {
+      return;
+    }
+    try {
+      s.commit();
+    } catch (IOException ex) {
+      Server.log(ex);
+    }
+  }
+
+  /**
+   * Runs the queued requests and closes the store when the server stops, then stops the stats
+   * uploader, so the stats those requests queued are in its outbox.
+   */
+  private void shutdown() {
+    Future<?> done =
+        service.submit(
+            () -> {
+              PlayerStore s = store;
+              if (s != null) {
+                store = null;
+                try {
+                  s.close();
+                } catch (IOException ex) {
+                  Server.log(ex);
+                }
+              }
+            });
+    try {
+      done.get(10, TimeUnit.SECONDS);
+    } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+      Server.log(ex);
+    }
+    StatsUploader.shutdown();
+  }
 }
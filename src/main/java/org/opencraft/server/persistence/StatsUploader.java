@@ -0,0 +1,437 @@
+package org.opencraft.server.persistence;
+
+import org.opencraft.server.Configuration;
+import org.opencraft.server.Constants;
+import org.opencraft.server.Server;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.model.World;
+import org.opencraft.server.task.GameLoop;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Posts players' stats to the stats script on its own thread, so saving a player never waits on
+ * the network.
+ *
+ * <p>Stats are posted in batches of up to {@link #getBatchSize()} players, one form encoded line
+ * per player, and the script replies with each player's rank, one per line. The batch size is 1
+ * unless <code>statsPostBatchSize</code> is raised, so by default each request has the single
+ * player body older stats scripts expect. A player's stats are only posted once however often
+ * they are saved before the next batch. Until they have been posted they are kept in an outbox
+ * file, so they are posted after a restart if the server stops first. A batch which fails is
+ * retried with an increasing delay, and after {@link #MAX_ATTEMPTS} failures it is moved to a
+ * <code>.failed</code> file next to the outbox instead.
+ */
+public final class StatsUploader {
+
+  /** How long to wait for more players to be saved before posting, in milliseconds. */
+  private static final long LINGER = 1000;
+
+  /** The delay before the first retry, in milliseconds. It doubles with each failure. */
+  private static final long RETRY_DELAY = 1000;
+
+  /** The longest delay between retries, in milliseconds. */
+  private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+  /** The number of times a batch is tried before it is given up on. */
+  public static final int MAX_ATTEMPTS = 12;
+
+  private static final int TIMEOUT = 10000;
+
+  /** The singleton instance, or <code>null</code> if it hasn't been created yet. */
+  private static StatsUploader instance;
+
+  private final URL url;
+  private final File outbox;
+  private final int batchSize;
+  private final BiConsumer<String, Integer> rankListener;
+  private final ScheduledExecutorService service =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "StatsUploader");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** The stats waiting to be posted, as form lines by lowercase name. */
+  private final Map<String, String> pending = new LinkedHashMap<>();
+
+  /** Held while posting, so only one upload runs at once. */
+  private final Object uploading = new Object();
+
+  /** The outbox, which every queued line is appended to. */
+  private Writer writer;
+
+  /** The upload which is scheduled or running, if there is one. */
+  private ScheduledFuture<?> next;
+
+  /** The number of times in a row posting has failed. */
+  private int failures;
+
+  /**
+   * Gets the stats uploader, creating it the first time. The server creates it when it starts, so
+   * anything left in the outbox is posted straight away.
+   *
+   * @return The stats uploader, or <code>null</code> if there is no stats script.
+   */
+  public static synchronized StatsUploader getStatsUploader() {
+    Configuration c = Configuration.getConfiguration();
+    String statsURL = c.getStatsPostURL();
+    if (c.isTest() || statsURL == null || statsURL.equals("null")) {
+      return null;
+    }
+    if (instance == null) {
+      try {
+        instance =
+            new StatsUploader(
+                new URL(statsURL),
+                new File(Constants.ROOT_PATH + "/savedGames/stats-outbox.txt"),
+                c.getStatsPostBatchSize(),
+                StatsUploader::setRank);
+        instance.start();
+      } catch (IOException ex) {
+        Server.log("[E] Could not start posting stats");
+        Server.log(ex);
+        return null;
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a stats uploader. Any stats left in the outbox are queued again.
+   *
+   * @param url The URL of the stats script.
+   * @param outbox The outbox file.
+   * @param batchSize The most players posted in one request.
+   * @param rankListener Called on the uploader's thread with each player's name and rank.
+   * @throws IOException if the outbox couldn't be read.
+   */
+  public StatsUploader(
+      URL url, File outbox, int batchSize, BiConsumer<String, Integer> rankListener)
+      throws IOException {
+    this.url = url;
+    this.outbox = outbox;
+    this.batchSize = Math.max(1, batchSize);
+    this.rankListener = rankListener;
+    if (outbox.exists()) {
+      try (BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(new FileInputStream(outbox), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String name = getName(line);
+          if (name != null) {
+            pending.remove(name);
+            pending.put(name, line);
+          }
+        }
+      }
+    }
+    rewriteOutbox();
+  }
+
+  /** Starts posting any stats left in the outbox. */
+  public synchronized void start() {
+    if (!pending.isEmpty()) {
+      schedule(0);
+    }
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Gets the number of players whose stats haven't been posted yet.
+   *
+   * @return The number of players.
+   */
+  public synchronized int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * Queues a player's stats to be posted. This writes to the outbox, but never waits on the
+   * network.
+   *
+   * @param name The player's name.
+   * @param record The player's saved game.
+   * @throws IOException if the outbox couldn't be written.
+   */
+  public synchronized void submit(String name, PlayerRecord record) throws IOException {
+    String line =
+        "username="
+            + URLEncoder.encode(name, "UTF-8")
+            + "&tags="
+            + record.get(PlayerRecord.Stat.TAGS)
+            + "&wins="
+            + record.get(PlayerRecord.Stat.WINS)
+            + "&mines="
+            + record.get(PlayerRecord.Stat.MINES)
+            + "&explodes="
+            + record.get(PlayerRecord.Stat.EXPLODES)
+            + "&captures="
+            + record.get(PlayerRecord.Stat.CAPTURES)
+            + "&games="
+            + record.get(PlayerRecord.Stat.GAMES);
+    String key = name.toLowerCase();
+    pending.remove(key);
+    pending.put(key, line);
+    writer.write(line);
+    writer.write('\n');
+    writer.flush();
+    schedule(LINGER);
+  }
+
+  /**
+   * Posts the queued stats, a batch at a time, until they have all been posted or a batch fails.
+   *
+   * @return <code>true</code> if everything was posted.
+   */
+  public boolean upload() {
+    synchronized (uploading) {
+      return uploadBatches();
+    }
+  }
+
+  private boolean uploadBatches() {
+    while (true) {
+      List<String> names = new ArrayList<>();
+      List<String> lines = new ArrayList<>();
+      synchronized (this) {
+        Iterator<Map.Entry<String, String>> it = pending.entrySet().iterator();
+        while (it.hasNext() && lines.size() < batchSize) {
+          Map.Entry<String, String> entry = it.next();
+          names.add(entry.getKey());
+          lines.add(entry.getValue());
+        }
+        if (lines.isEmpty()) {
+          next = null;
+          return true;
+        }
+      }
+
+      List<String> ranks;
+      try {
+        ranks = post(lines);
+      } catch (IOException ex) {
+        synchronized (this) {
+          failures++;
+          Server.log("Posting stats failed (attempt " + failures + "): " + ex);
+          next = null;
+          if (failures >= MAX_ATTEMPTS) {
+            giveUp(names, lines);
+            failures = 0;
+            schedule(0);
+          } else {
+            schedule(Math.min(RETRY_DELAY << (failures - 1), MAX_RETRY_DELAY));
+          }
+        }
+        return false;
+      }
+
+      synchronized (this) {
+        failures = 0;
+        for (int i = 0; i < names.size(); i++) {
+          // stats saved again while they were being posted are posted in the next batch
+          pending.remove(names.get(i), lines.get(i));
+        }
+        try {
+          rewriteOutbox();
+        } catch (IOException ex) {
+          Server.log(ex);
+        }
+      }
+      for (int i = 0; i < names.size() && i < ranks.size(); i++) {
+        try {
+          rankListener.accept(getName(lines.get(i)), Integer.parseInt(ranks.get(i).trim()));
+        } catch (NumberFormatException ex) {
+          // the script doesn't know this player's rank
+        }
+      }
+    }
+  }
+
+  /**
+   * Posts a batch.
+   *
+   * @param lines The form line of each player.
+   * @return The lines of the reply.
+   * @throws IOException if the batch couldn't be posted.
+   */
+  private List<String> post(List<String> lines) throws IOException {
+    byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    HttpURLConnection c = (HttpURLConnection) url.openConnection();
+    try {
+      c.setRequestMethod("POST");
+      c.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+      c.setRequestProperty("Content-Language", "en-US");
+      c.setFixedLengthStreamingMode(body.length);
+      c.setConnectTimeout(TIMEOUT);
+      c.setReadTimeout(TIMEOUT);
+      c.setUseCaches(false);
+      c.setDoInput(true);
+      c.setDoOutput(true);
+      try (OutputStream out = c.getOutputStream()) {
+        out.write(body);
+      }
+      int status = c.getResponseCode();
+      if (status / 100 != 2) {
+        throw new IOException("Stats script returned " + status);
+      }
+      List<String> ranks = new ArrayList<>(lines.size());
+      try (BufferedReader rd =
+          new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = rd.readLine()) != null) {
+          ranks.add(line);
+        }
+      }
+      return ranks;
+    } finally {
+      c.disconnect();
+    }
+  }
+
+  /** Moves a batch which keeps failing to the failed file. */
+  private void giveUp(List<String> names, List<String> lines) {
+    Server.log("[E] Giving up posting stats for " + names.size() + " players");
+    File failed = new File(outbox.getPath() + ".failed");
+    try (Writer out =
+        new OutputStreamWriter(new FileOutputStream(failed, true), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < names.size(); i++) {
+        if (pending.remove(names.get(i), lines.get(i))) {
+          out.write(lines.get(i));
+          out.write('\n');
+        }
+      }
+    } catch (IOException ex) {
+      Server.log(ex);
+      return;
+    }
+    try {
+      rewriteOutbox();
+    } catch (IOException ex) {
+      Server.log(ex);
+    }
+  }
+
+  /** Replaces the outbox with just the pending stats, and opens it for appending. */
+  private synchronized void rewriteOutbox() throws IOException {
+    if (writer != null) {
+      writer.close();
+    }
+    File temp = new File(outbox.getPath() + ".tmp");
+    try (Writer out =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+      for (String line : pending.values()) {
+        out.write(line);
+        out.write('\n');
+      }
+    }
+    Files.move(
+        temp.toPath(),
+        outbox.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(outbox, true), StandardCharsets.UTF_8));
+  }
+
+  /** Schedules an upload, unless one is already scheduled or running, or posting has stopped. */
+  private void schedule(long delay) {
+    if (next == null && !service.isShutdown()) {
+      next = service.schedule(this::upload, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops posting, waiting for a post which is running to finish, and closes the outbox. Stats
+   * which haven't been posted stay in the outbox.
+   */
+  public void stop() {
+    service.shutdownNow();
+    try {
+      // a post can't be interrupted, but it times out
+      service.awaitTermination(2 * TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      try {
+        writer.close();
+      } catch (IOException ex) {
+        Server.log(ex);
+      }
+    }
+  }
+
+  /** Stops the stats uploader when the server stops, if it was ever started. */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  /**
+   * Gets the lowercase name of the player a form line is for.
+   *
+   * @param line The line.
+   * @return The name, or <code>null</code> if the line doesn't have one.
+   */
+  private static String getName(String line) {
+    if (!line.startsWith("username=")) {
+      return null;
+    }
+    int end = line.indexOf('&');
+    String name = line.substring("username=".length(), end < 0 ? line.length() : end);
+    try {
+      return URLDecoder.decode(name, "UTF-8").toLowerCase();
+    } catch (IOException | IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /** Gives an online player the rank the stats script replied with. */
+  private static void setRank(String name, int rank) {
+    GameLoop.getGameLoop()
+        .submit(
+            () -> {
+              for (Player player : World.getWorld().getPlayerList().getPlayers()) {
+                if (player.getName().equalsIgnoreCase(name)) {
+                  player.setAttribute("rank", "" + rank);
+                }
+              }
+            });
+  }
+}
@@ -0,0 +1,28 @@
+package org.opencraft.server.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.opencraft.server.net.FakePlayerBase;
+import org.opencraft.server.net.packet.Packet;
+
+/*
+ * Collects the packets sent to the camera man instead of recording them, so a keyframe can be
+ * captured with the same ActionSender code that sends levels and players to real sessions.
+ */
+class KeyframeSession extends FakePlayerBase.FakeMinecraftSession {
+
+  private final List<Packet> packets = new ArrayList<>();
+
+  KeyframeSession() {
+    setPlayer(FakePlayerBase.CAMERA_MAN);
+  }
+
+  @Override
+  public void send(Packet packet) {
+    packets.add(packet);
+  }
+
+  List<Packet> getPackets() {
+    return packets;
+  }
+}
@@ -0,0 +1,340 @@
+package org.opencraft.server.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opencraft.server.Server;
+
+/*
+ * Every replay in the replays directory, so finding a free id, listing a day's replays and cleaning
+ * up old ones don't have to look at the files. The catalog is kept in a file next to the replays,
+ * which is rewritten in the background whenever it changes. When the server starts, the directory
+ * is listed once, and replays which aren't in the catalog, or have changed since, are read again.
+ */
+public final class ReplayCatalog {
+
+  public record Entry(
+      int day,
+      int month,
+      int year,
+      int id,
+      String map,
+      long roundStartTimestamp,
+      int durationMillis,
+      long size,
+      long lastModified,
+      boolean important
+  ) {
+
+    public String getFilename() {
+      return ReplayFile.REPLAY_DIRECTORY + getName();
+    }
+
+    public String getName() {
+      return name(day, month, year, id, important);
+    }
+
+    public String getDate() {
+      return ReplayFile.adjust(month, 2) + "/" + ReplayFile.adjust(day, 2) + "/" + year;
+    }
+
+    Entry withImportant(boolean important) {
+      return new Entry(day, month, year, id, map, roundStartTimestamp, durationMillis, size,
+          lastModified, important);
+    }
+  }
+
+  public static final String CATALOG_FILENAME = "catalog.idx";
+
+  private static final int MAGIC = 0x4C545243; // "LTRC"
+  private static final int VERSION = 1;
+  private static final Pattern NAME =
+      Pattern.compile("(\\d{2})\\.(\\d{2})\\.(\\d{4})_(\\d+)(_important)?\\.ltr");
+  private static final ReplayCatalog INSTANCE =
+      new ReplayCatalog(new File(ReplayFile.REPLAY_DIRECTORY));
+
+  private final File directory;
+  /* replays by date and then id, oldest first */
+  private final NavigableMap<Long, Entry> entries = new TreeMap<>();
+  private final ExecutorService saver = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Replay catalog writer");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Object saveLock = new Object();
+  private boolean savePending;
+
+  ReplayCatalog(File directory) {
+    this.directory = directory;
+  }
+
+  public static ReplayCatalog getCatalog() {
+    return INSTANCE;
+  }
+
+  private static long key(int day, int month, int year, int id) {
+    return (((long) year * 13 + month) * 32 + day) * 1024 + id;
+  }
+
+  private static String name(int day, int month, int year, int id, boolean important) {
+    return ReplayFile.adjust(day, 2) + "." + ReplayFile.adjust(month, 2) + "." +
+        ReplayFile.adjust(year, 4) + "_" + id + (important ? "_important" : "") + ".ltr";
+  }
+
+  private File catalogFile() {
+    return new File(directory, CATALOG_FILENAME);
+  }
+
+  /**
+   * Checks if a file in the replays directory belongs to the catalog rather than being a replay.
+   *
+   * @param name The file's name.
+   * @return <code>true</code> if it does.
+   */
+  public static boolean isCatalogFile(String name) {
+    return name.startsWith(CATALOG_FILENAME);
+  }
+
+  /** Loads the catalog and brings it up to date with the replays directory. */
+  public synchronized void load() {
+    Map<String, Entry> saved = new HashMap<>();
+    File file = catalogFile();
+    if (file.exists()) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException("Unknown catalog format");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          Entry entry = new Entry(in.readUnsignedByte(), in.readUnsignedByte(),
+              in.readUnsignedShort(), in.readUnsignedShort(), in.readUTF(), in.readLong(),
+              in.readInt(), in.readLong(), in.readLong(), in.readBoolean());
+          saved.put(entry.getName(), entry);
+        }
+      } catch (IOException e) {
+        Server.log("Could not read the replay catalog, it will be rebuilt: " + e);
+        saved.clear();
+      }
+    }
+
+    entries.clear();
+    File[] files = directory.listFiles();
+    int read = 0;
+    if (files != null) {
+      for (File replay : files) {
+        String name = replay.getName();
+        if (isCatalogFile(name)) continue;
+
+        Matcher matcher = NAME.matcher(name);
+        if (!matcher.matches()) {
+          Server.log("Non-LTR file in \"replays\" directory: " + name);
+          if (!replay.delete()) Server.log("Failed to delete " + name + " replay file");
+
+          continue;
+        }
+        Entry entry = saved.get(name);
+        if (entry == null || entry.size() != replay.length() ||
+            entry.lastModified() != replay.lastModified()) {
+          entry = readEntry(replay, Integer.parseInt(matcher.group(1)),
+              Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)),
+              Integer.parseInt(matcher.group(4)), matcher.group(5) != null);
+          read++;
+        }
+        entries.put(key(entry.day(), entry.month(), entry.year(), entry.id()), entry);
+      }
+    }
+    Server.log("Replay catalog: " + entries.size() + " replays, " + read + " read from disk");
+    scheduleSave();
+  }
+
+  private static Entry readEntry(File file, int day, int month, int year, int id,
+      boolean important) {
+    String map = "";
+    long roundStartTimestamp = 0L;
+    int durationMillis = -1;
+    try (ReplayFile replay = new ReplayFile(file)) {
+      replay.setReading(true);
+      replay.open();
+      replay.readHeader();
+      if (replay.canRead() && replay.getMap() != null) {
+        map = replay.getMap();
+        roundStartTimestamp = replay.getRoundStartTimestamp();
+        durationMillis = replay.getDurationMillis();
+      }
+    } catch (IOException | RuntimeException e) {
+      Server.log("Could not read replay " + file.getName() + ": " + e);
+    }
+
+    return new Entry(day, month, year, id, map, roundStartTimestamp, durationMillis,
+        file.length(), file.lastModified(), important);
+  }
+
+  /**
+   * Finds the lowest id which isn't used on a day, and reserves it for a new recording.
+   *
+   * @return The id, or {@link ReplayFile#FAILED_TO_LOCATE_FREE_ID} if every id is used.
+   */
+  public synchronized int allocateId(int day, int month, int year) {
+    for (int id = ReplayFile.MIN_ID; id <= ReplayFile.MAX_ID; id++) {
+      long key = key(day, month, year, id);
+      if (!entries.containsKey(key)) {
+        entries.put(key, new Entry(day, month, year, id, "", 0L, -1, 0L,
+            System.currentTimeMillis(), false));
+
+        return id;
+      }
+    }
+
+    return ReplayFile.FAILED_TO_LOCATE_FREE_ID;
+  }
+
+  /**
+   * Records a replay which has started being written, in place of its reserved id.
+   *
+   * @param file The replay.
+   * @param map The map it is recorded on.
+   * @param roundStartTimestamp When the round started.
+   */
+  public void started(ReplayFile file, String map, long roundStartTimestamp) {
+    File replay = new File(file.getFilename());
+    Matcher matcher = NAME.matcher(replay.getName());
+    if (!matcher.matches()) return;
+
+    put(new Entry(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+        Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)), map,
+        roundStartTimestamp, -1, replay.length(), replay.lastModified(),
+        matcher.group(5) != null));
+  }
+
+  /**
+   * Records the length and size of a replay which has been written.
+   *
+   * @param file The replay, which has been closed.
+   */
+  public void finished(ReplayFile file) {
+    File replay = new File(file.getFilename());
+    Matcher matcher = NAME.matcher(replay.getName());
+    if (!matcher.matches()) return;
+
+    Entry entry = get(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+        Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)));
+    if (entry == null) return;
+
+    put(new Entry(entry.day(), entry.month(), entry.year(), entry.id(), entry.map(),
+        entry.roundStartTimestamp(), file.getDurationMillis(), replay.length(),
+        replay.lastModified(), entry.important()));
+  }
+
+  private void put(Entry entry) {
+    synchronized (this) {
+      entries.put(key(entry.day(), entry.month(), entry.year(), entry.id()), entry);
+    }
+    scheduleSave();
+  }
+
+  public synchronized Entry get(int day, int month, int year, int id) {
+    return entries.get(key(day, month, year, id));
+  }
+
+  public void remove(Entry entry) {
+    synchronized (this) {
+      entries.remove(key(entry.day(), entry.month(), entry.year(), entry.id()));
+    }
+    scheduleSave();
+  }
+
+  public void setImportant(Entry entry) {
+    put(entry.withImportant(true));
+  }
+
+  /**
+   * Gets the replays recorded on a day.
+   *
+   * @return The replays, in order of id.
+   */
+  public synchronized List<Entry> list(int day, int month, int year) {
+    return new ArrayList<>(entries.subMap(
+        key(day, month, year, 0), true, key(day, month, year, 1023), true).values());
+  }
+
+  /**
+   * Gets the replays recorded on a map.
+   *
+   * @param map The map's name, in any case.
+   * @return The replays, newest first.
+   */
+  public synchronized List<Entry> findByMap(String map) {
+    List<Entry> result = new ArrayList<>();
+    for (Entry entry : entries.descendingMap().values()) {
+      if (entry.map().equalsIgnoreCase(map)) result.add(entry);
+    }
+
+    return result;
+  }
+
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  private synchronized void scheduleSave() {
+    if (savePending) return;
+
+    savePending = true;
+    saver.execute(this::save);
+  }
+
+  void save() {
+    synchronized (saveLock) {
+      List<Entry> snapshot;
+      synchronized (this) {
+        savePending = false;
+        snapshot = new ArrayList<>(entries.values());
+      }
+      File file = catalogFile();
+      File temp = new File(file.getPath() + ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(snapshot.size());
+          for (Entry entry : snapshot) {
+            out.writeByte(entry.day());
+            out.writeByte(entry.month());
+            out.writeShort(entry.year());
+            out.writeShort(entry.id());
+            out.writeUTF(entry.map());
+            out.writeLong(entry.roundStartTimestamp());
+            out.writeInt(entry.durationMillis());
+            out.writeLong(entry.size());
+            out.writeLong(entry.lastModified());
+            out.writeBoolean(entry.important());
+          }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Server.log("Failed to save the replay catalog");
+        Server.log(e);
+      }
+    }
+  }
+}
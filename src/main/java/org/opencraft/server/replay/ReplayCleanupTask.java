@@ -14,34 +14,24 @@ public class ReplayCleanupTask extends ScheduledTask {
     super(0);
   }
 
-  private void tryToDelete(File file) {
-    if (!file.delete()) {
-      Server.log("Failed to delete " + file.getName() + " replay file");
-    }
-  }
-
   @Override
   public void execute() {
     if (getDelay() == 0) {
       setDelay(DELAY);
     }
-    File[] replayFiles = new File(ReplayFile.REPLAY_DIRECTORY).listFiles();
-    if (replayFiles == null) {
-      Server.log("replayFiles == null (?)");
-
-      return;
-    }
-    for (File file : replayFiles) {
-      String name;
-      if (!(name = file.getName()).endsWith(".ltr")) {
-        Server.log("Non-LTR file in \"replays\" directory: " + name);
-        tryToDelete(file);
-
-        continue;
+    // non-LTR files are deleted when the catalog is loaded, so only replays are left to look at
+    ReplayCatalog catalog = ReplayCatalog.getCatalog();
+    for (ReplayCatalog.Entry entry : catalog.getEntries()) {
+      if (entry.important() || ReplayManager.getInstance().isBusy(entry.getFilename())) continue;
+
+      if (System.currentTimeMillis() - entry.lastModified() < TIMEOUT) continue;
+
+      File file = new File(entry.getFilename());
+      if (file.delete() || !file.exists()) {
+        catalog.remove(entry);
+      } else {
+        Server.log("Failed to delete " + file.getName() + " replay file");
       }
-      if (name.contains("important")) continue;
-
-      if (System.currentTimeMillis() - file.lastModified() >= TIMEOUT) tryToDelete(file);
     }
   }
 }
@@ -1,63 +1,76 @@
 package org.opencraft.server.replay;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import org.opencraft.server.Server;
-import org.opencraft.server.model.Player;
 import org.opencraft.server.net.packet.Packet;
 import org.opencraft.server.net.packet.UnparsedPacket;
 import org.opencraft.server.util.Pair;
 
+/*
+ * Version 1 files are the header followed by the chunks.
+ *
+ * Since version 2, the chunks are written in deflated blocks of about BLOCK_SIZE bytes, and every
+ * so often the recording writes a keyframe block with the packets a viewer needs to start watching
+ * from that point: the level and the players in it. Keyframe blocks are skipped when the replay
+ * is watched from the start. The file ends with an index of the keyframes, so a viewer can jump
+ * to any time by reading the keyframe before it and fast-forwarding through the chunks after it.
+ *
+ * Each block is: byte type, int deltaMillis, int rawLength, int compressedLength, data. The index
+ * is a block too, with the length of the replay as its deltaMillis, and is followed by the footer:
+ * long indexOffset, int FOOTER_MAGIC. A file without a footer, because the server stopped during
+ * the round, is still readable, and its keyframes are found from the block headers instead.
+ */
 public class ReplayFile implements Closeable {
 
   public record ReplayChunk(int deltaMillis, List<Packet> packets) {
+  }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-    public void sleepUntilSendingThisChunk(
-        Player watcher, long timestampWhenReplayStarted
-    ) throws InterruptedException {
-      long delta = System.currentTimeMillis() - timestampWhenReplayStarted;
-      long timeToSleep = Math.max(deltaMillis - delta, 0);
-      long count100 = timeToSleep / 100L; // actually should never be >0
-      long finalTimeToSleep = timeToSleep - (count100 * 100L);
-
-      long syncLatency = 0L;
-      while (count100-- > 0) {
-        Thread.sleep(100L - syncLatency);
-
-        long timestamp = System.currentTimeMillis();
-        synchronized (watcher) {
-          if (watcher.requestedToLeaveReplay) {
-            return;
-          }
-        }
-        syncLatency = System.currentTimeMillis() - timestamp;
-      }
+  /** A time the replay can be watched from, and where its block is in the file. */
+  public record Keyframe(int deltaMillis, long offset) {
+  }
 
-      Thread.sleep(finalTimeToSleep);
-    }
+  private record BlockHeader(byte type, int deltaMillis, int rawLength, int compressedLength) {
   }
 
   public static final int MAGIC = 0x8A82F239;
-  public static final int CURRENT_FILE_VERSION = 1;
+  public static final int CURRENT_FILE_VERSION = 2;
   public static final int FAILED_TO_LOCATE_FREE_ID = 0;
   public static final int MIN_ID = 1;
   public static final int MAX_ID = 200;
   public static final int BUFFER_SIZE = 65536;
+  /** The size chunks are collected to before they are compressed and written as a block. */
+  public static final int BLOCK_SIZE = 65536;
+  /** The size of the buffer blocks are written through. */
+  public static final int WRITE_BUFFER_SIZE = 1 << 20;
 
   public static final String REPLAY_DIRECTORY = "./replays/";
 
+  private static final byte BLOCK_CHUNKS = 0;
+  private static final byte BLOCK_KEYFRAME = 1;
+  private static final byte BLOCK_INDEX = 2;
+  private static final int BLOCK_HEADER = 13;
+  private static final int FOOTER_MAGIC = 0x4C545249; // "LTRI"
+  private static final int FOOTER = 12;
+
   private final String path;
   private final File file;
   private boolean reading;
@@ -68,15 +81,43 @@ public class ReplayFile implements Closeable {
   private long roundStartTimestamp;
   private long recordingStartTimestamp;
 
+  /* reading */
+  private FileInputStream input;
+  private long dataStart;
+  private long nextBlock;
+  private DataInputStream block;
+  private long blockOffset;
+  private Inflater inflater;
+  private int durationMillis = -1;
+
+  /* writing */
+  private boolean headerWritten;
+  private FileChannel output;
+  private ByteBuffer outputBuffer;
+  private long written;
+  private ByteArrayOutputStream chunks;
+  private DataOutputStream chunksStream;
+  private int chunksDeltaMillis;
+  private int lastDeltaMillis;
+  private Deflater deflater;
+
+  private List<Keyframe> keyframes = new ArrayList<>();
+
   public ReplayFile(int day, int month, int year, int id) {
     Pair<String, String> possibleFilenames = getFilenames(day, month, year, id);
     String importantFilename = possibleFilenames.getSecond();
-    boolean important = (new File(importantFilename)).exists();
+    ReplayCatalog.Entry entry = ReplayCatalog.getCatalog().get(day, month, year, id);
+    boolean important = entry != null ? entry.important() : (new File(importantFilename)).exists();
 
     this.path = (important ? importantFilename : possibleFilenames.getFirst());
     this.file = new File(path);
   }
 
+  public ReplayFile(File file) {
+    this.path = file.getPath();
+    this.file = file;
+  }
+
   public static Pair<String, String> getFilenames(int day, int month, int year, int id) {
     String filename = REPLAY_DIRECTORY +
         adjust(day, 2) + "." +
@@ -98,28 +139,14 @@ public class ReplayFile implements Closeable {
 
   // only used by ReplayManager
   public static int locateFreeId(int day, int month, int year) {
-    for (int id = MIN_ID; id <= MAX_ID; id++) {
-      Pair<String, String> possibleFilenames = getFilenames(day, month, year, id);
-
-      if (!(new File(possibleFilenames.getFirst())).exists() &&
-          !(new File(possibleFilenames.getSecond())).exists()) return id;
-    }
-
-    return FAILED_TO_LOCATE_FREE_ID;
+    return ReplayCatalog.getCatalog().allocateId(day, month, year);
   }
 
   public static List<Integer> availableIds(int day, int month, int year) {
     List<Integer> result = new ArrayList<>();
-    for (int id = MIN_ID; id <= MAX_ID; id++) {
-      Pair<String, String> possibleFilenames = getFilenames(day, month, year, id);
-
-      String generalName = possibleFilenames.getFirst();
-      boolean anyFile = (
-          (new File(generalName)).exists() ||
-          (new File(possibleFilenames.getSecond())).exists()
-      );
-      if (anyFile && !ReplayManager.getInstance().isBusy(generalName)) {
-        result.add(id);
+    for (ReplayCatalog.Entry entry : ReplayCatalog.getCatalog().list(day, month, year)) {
+      if (!ReplayManager.getInstance().isBusy(entry.getFilename()) && entry.size() > 0) {
+        result.add(entry.id());
       }
     }
 
@@ -140,12 +167,16 @@ public class ReplayFile implements Closeable {
     if (reading && !canRead()) {
       throw new IllegalStateException("Cannot read from this ReplayFile instance");
     }
-    if (!reading) {
+    if (reading) {
+      input = new FileInputStream(file);
+      stream = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+    } else {
       file.createNewFile();
+      output = FileChannel.open(
+          file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      outputBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+      stream = output;
     }
-    stream = (reading ?
-        new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) :
-        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)));
   }
 
   @SuppressWarnings("unchecked")
@@ -192,61 +223,274 @@ public class ReplayFile implements Closeable {
     map = new String(mapName, StandardCharsets.US_ASCII);
     roundStartTimestamp = stream.readLong();
     recordingStartTimestamp = stream.readLong();
+    dataStart = headerLength(mapNameLength);
+
+    if (fileVersion >= 2) {
+      inflater = new Inflater();
+      readIndex();
+      nextBlock = dataStart;
+    }
 
     headerRead = true;
   }
 
+  private static long headerLength(int mapNameLength) {
+    return 4 + 4 + 1 + mapNameLength + 8 + 8;
+  }
+
+  private void readIndex() throws IOException {
+    long size = input.getChannel().size();
+    if (size >= dataStart + FOOTER) {
+      ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+      readFully(footer, size - FOOTER);
+      footer.flip();
+      long indexOffset = footer.getLong();
+      if (footer.getInt() == FOOTER_MAGIC && indexOffset >= dataStart) {
+        BlockHeader header = readBlockHeader(indexOffset);
+        if (header != null && header.type == BLOCK_INDEX) {
+          DataInputStream index = readBlock(header, indexOffset);
+          int count = index.readInt();
+          for (int i = 0; i < count; i++) {
+            keyframes.add(new Keyframe(index.readInt(), index.readLong()));
+          }
+          durationMillis = header.deltaMillis;
+
+          return;
+        }
+      }
+    }
+
+    // the recording wasn't finished, so find the keyframes from the block headers
+    long offset = dataStart;
+    BlockHeader header;
+    while ((header = readBlockHeader(offset)) != null && header.type != BLOCK_INDEX) {
+      if (header.type == BLOCK_KEYFRAME) {
+        keyframes.add(new Keyframe(header.deltaMillis, offset));
+      }
+      durationMillis = Math.max(durationMillis, header.deltaMillis);
+      offset += BLOCK_HEADER + header.compressedLength;
+    }
+  }
+
+  /*
+   * Returns null if there is no whole block at the offset, which is the end of a recording that
+   * was cut off.
+   */
+  private BlockHeader readBlockHeader(long offset) throws IOException {
+    long size = input.getChannel().size();
+    if (offset + BLOCK_HEADER > size) return null;
+
+    ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER);
+    readFully(buffer, offset);
+    buffer.flip();
+    BlockHeader header =
+        new BlockHeader(buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+    if (header.rawLength < 0 || header.compressedLength < 0 ||
+        offset + BLOCK_HEADER + header.compressedLength > size) {
+      return null;
+    }
+
+    return header;
+  }
+
+  private DataInputStream readBlock(BlockHeader header, long offset) throws IOException {
+    ByteBuffer compressed = ByteBuffer.allocate(header.compressedLength);
+    readFully(compressed, offset + BLOCK_HEADER);
+    byte[] raw = new byte[header.rawLength];
+    inflater.reset();
+    inflater.setInput(compressed.array());
+    try {
+      int length = 0;
+      while (length < raw.length && !inflater.finished() && !inflater.needsInput()) {
+        length += inflater.inflate(raw, length, raw.length - length);
+      }
+      if (length != raw.length) {
+        throw new IOException("Truncated block at " + offset + " in " + path);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupted block at " + offset + " in " + path, e);
+    }
+
+    return new DataInputStream(new ByteArrayInputStream(raw));
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    FileChannel channel = input.getChannel();
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) throw new EOFException("Unexpected end of " + path);
+      position += read;
+    }
+  }
+
   @SuppressWarnings("resource")
   public boolean isNextChunkAvailable() throws IOException {
     checkReading();
 
-    DataInputStream stream = castStream();
+    if (fileVersion < 2) {
+      DataInputStream stream = castStream();
 
-    return stream.available() >= 4;
+      return stream.available() >= 4;
+    }
+    while (block == null || block.available() == 0) {
+      BlockHeader header = readBlockHeader(nextBlock);
+      if (header == null || header.type == BLOCK_INDEX) return false;
+
+      long offset = nextBlock;
+      nextBlock += BLOCK_HEADER + header.compressedLength;
+      // keyframes are only needed to watch from the middle, see seek
+      block = (header.type == BLOCK_CHUNKS ? readBlock(header, offset) : null);
+      blockOffset = offset;
+    }
+
+    return true;
   }
 
   @SuppressWarnings("resource")
   public ReplayChunk readNextChunk() throws IOException {
     checkReading();
 
-    DataInputStream stream = castStream();
+    DataInputStream stream;
+    if (fileVersion < 2) {
+      stream = castStream();
+    } else {
+      if (!isNextChunkAvailable()) throw new EOFException("No more chunks in " + path);
+      stream = block;
+    }
     int deltaMillis = stream.readInt();
     int packetCount = stream.readShort();
-    List<Packet> packets = new ArrayList<>(packetCount);
-    for (int i = 0; i < packetCount; i++) {
+
+    return new ReplayChunk(deltaMillis, readPackets(stream, packetCount));
+  }
+
+  private static List<Packet> readPackets(DataInputStream stream, int count) throws IOException {
+    List<Packet> packets = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
       int length = stream.readInt();
       byte[] data = new byte[length];
       stream.readFully(data, 0, length);
       packets.add(new UnparsedPacket(data));
     }
 
-    return new ReplayChunk(deltaMillis, Collections.unmodifiableList(packets));
+    return Collections.unmodifiableList(packets);
+  }
+
+  /**
+   * Moves back or forward to the last keyframe at or before a time. The chunks read after this
+   * are the ones following the keyframe, so reading them until the time catches up to it. Files
+   * without keyframes, such as version 1 files, are read again from the start.
+   *
+   * @param deltaMillis The time, since the recording started.
+   * @return The packets which set up the replay as it was at the keyframe, which are empty if it
+   *     is the start of the recording.
+   * @throws IOException if an I/O error occurs.
+   */
+  public List<Packet> seek(int deltaMillis) throws IOException {
+    checkReading();
+
+    block = null;
+    Keyframe keyframe = null;
+    for (Keyframe k : keyframes) {
+      if (k.deltaMillis() > deltaMillis) break;
+      keyframe = k;
+    }
+    if (keyframe == null) {
+      if (fileVersion < 2) {
+        input.getChannel().position(dataStart);
+        stream = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+      }
+      nextBlock = dataStart;
+
+      return Collections.emptyList();
+    }
+    BlockHeader header = readKeyframeHeader(keyframe);
+    nextBlock = keyframe.offset() + BLOCK_HEADER + header.compressedLength;
+
+    return readKeyframe(keyframe, header);
+  }
+
+  /**
+   * Reads the packets of a keyframe, without moving to it, so the chunks are read on from where
+   * they were.
+   *
+   * @param keyframe The keyframe, from {@link #getKeyframes()}.
+   * @return The packets which set up the replay as it was at the keyframe.
+   * @throws IOException if an I/O error occurs.
+   */
+  public List<Packet> readKeyframe(Keyframe keyframe) throws IOException {
+    checkReading();
+
+    return readKeyframe(keyframe, readKeyframeHeader(keyframe));
+  }
+
+  private BlockHeader readKeyframeHeader(Keyframe keyframe) throws IOException {
+    BlockHeader header = readBlockHeader(keyframe.offset());
+    if (header == null || header.type != BLOCK_KEYFRAME) {
+      throw new IOException("Bad keyframe index in " + path);
+    }
+
+    return header;
+  }
+
+  private List<Packet> readKeyframe(Keyframe keyframe, BlockHeader header) throws IOException {
+    DataInputStream snapshot = readBlock(header, keyframe.offset());
+
+    return readPackets(snapshot, snapshot.readInt());
   }
 
-  @SuppressWarnings("resource")
   public void writeHeader() throws IOException {
     checkWriting();
 
-    DataOutputStream stream = castStream();
-    stream.writeInt(MAGIC);
-    stream.writeInt(CURRENT_FILE_VERSION);
-
     byte[] mapName = map.getBytes(StandardCharsets.US_ASCII);
-    stream.writeByte(mapName.length);
-    stream.write(mapName, 0, mapName.length);
-
-    stream.writeLong(roundStartTimestamp);
-    stream.writeLong(recordingStartTimestamp);
+    outputBuffer.putInt(MAGIC);
+    outputBuffer.putInt(CURRENT_FILE_VERSION);
+    outputBuffer.put((byte) mapName.length);
+    outputBuffer.put(mapName);
+    outputBuffer.putLong(roundStartTimestamp);
+    outputBuffer.putLong(recordingStartTimestamp);
+
+    written = headerLength(mapName.length);
+    chunks = new ByteArrayOutputStream(BLOCK_SIZE + BUFFER_SIZE / 4);
+    chunksStream = new DataOutputStream(chunks);
+    deflater = new Deflater();
+    headerWritten = true;
   }
 
-  @SuppressWarnings("resource")
   public void writeChunk(ReplayChunk chunk) throws IOException {
     checkWriting();
 
-    DataOutputStream stream = castStream();
-    stream.writeInt(chunk.deltaMillis);
-    stream.writeShort(chunk.packets.size());
-    for (Packet packet : chunk.packets) {
+    if (chunks.size() == 0) chunksDeltaMillis = chunk.deltaMillis;
+    chunksStream.writeInt(chunk.deltaMillis);
+    chunksStream.writeShort(chunk.packets.size());
+    writePackets(chunksStream, chunk.packets);
+    lastDeltaMillis = Math.max(lastDeltaMillis, chunk.deltaMillis);
+
+    if (chunks.size() >= BLOCK_SIZE) flushChunks();
+  }
+
+  /**
+   * Writes a keyframe, which a viewer can start watching from.
+   *
+   * @param deltaMillis The time, since the recording started.
+   * @param packets The packets which set up the replay as it is at this time.
+   * @throws IOException if an I/O error occurs.
+   */
+  public void writeKeyframe(int deltaMillis, List<Packet> packets) throws IOException {
+    checkWriting();
+
+    flushChunks();
+    ByteArrayOutputStream snapshot = new ByteArrayOutputStream(BUFFER_SIZE);
+    DataOutputStream snapshotStream = new DataOutputStream(snapshot);
+    snapshotStream.writeInt(packets.size());
+    writePackets(snapshotStream, packets);
+    keyframes.add(new Keyframe(deltaMillis, written));
+    writeBlock(BLOCK_KEYFRAME, deltaMillis, snapshot);
+    lastDeltaMillis = Math.max(lastDeltaMillis, deltaMillis);
+  }
+
+  private static void writePackets(DataOutputStream stream, List<Packet> packets)
+      throws IOException {
+    for (Packet packet : packets) {
       byte[] encodedData = packet.toByteArray();
 
       stream.writeInt(encodedData.length);
@@ -254,6 +498,96 @@ public class ReplayFile implements Closeable {
     }
   }
 
+  private void flushChunks() throws IOException {
+    if (chunks.size() == 0) return;
+
+    writeBlock(BLOCK_CHUNKS, chunksDeltaMillis, chunks);
+    chunks.reset();
+  }
+
+  private void writeBlock(byte type, int deltaMillis, ByteArrayOutputStream raw)
+      throws IOException {
+    byte[] data = raw.toByteArray();
+    deflater.reset();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+    byte[] buffer = new byte[BUFFER_SIZE / 4];
+    while (!deflater.finished()) {
+      int length = deflater.deflate(buffer);
+      compressed.write(buffer, 0, length);
+    }
+
+    if (outputBuffer.remaining() < BLOCK_HEADER + compressed.size()) drainOutput();
+    outputBuffer.put(type);
+    outputBuffer.putInt(deltaMillis);
+    outputBuffer.putInt(data.length);
+    outputBuffer.putInt(compressed.size());
+    if (compressed.size() <= outputBuffer.remaining()) {
+      outputBuffer.put(compressed.toByteArray());
+    } else {
+      // too big for the buffer, such as a keyframe with a large level
+      drainOutput();
+      writeFully(ByteBuffer.wrap(compressed.toByteArray()));
+    }
+    written += BLOCK_HEADER + compressed.size();
+  }
+
+  private void writeIndex() throws IOException {
+    flushChunks();
+
+    long indexOffset = written;
+    ByteArrayOutputStream index = new ByteArrayOutputStream(4 + keyframes.size() * 12);
+    DataOutputStream indexStream = new DataOutputStream(index);
+    indexStream.writeInt(keyframes.size());
+    for (Keyframe keyframe : keyframes) {
+      indexStream.writeInt(keyframe.deltaMillis());
+      indexStream.writeLong(keyframe.offset());
+    }
+    writeBlock(BLOCK_INDEX, lastDeltaMillis, index);
+    durationMillis = lastDeltaMillis;
+
+    if (outputBuffer.remaining() < FOOTER) drainOutput();
+    outputBuffer.putLong(indexOffset);
+    outputBuffer.putInt(FOOTER_MAGIC);
+    written += FOOTER;
+  }
+
+  /**
+   * Writes everything recorded so far to the disk, including the chunks which haven't made up a
+   * whole block yet, so a crash loses no more than what was recorded since.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  public void sync() throws IOException {
+    checkWriting();
+
+    flushChunks();
+    drainOutput();
+    output.force(false);
+  }
+
+  private void drainOutput() throws IOException {
+    outputBuffer.flip();
+    writeFully(outputBuffer);
+    outputBuffer.clear();
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+  }
+
+  /**
+   * Gets the number of bytes written, including those still in the buffer.
+   *
+   * @return The number of bytes.
+   */
+  public long getWritten() {
+    return written;
+  }
+
   public String getFilename() {
     return path;
   }
@@ -280,6 +614,31 @@ public class ReplayFile implements Closeable {
     return recordingStartTimestamp;
   }
 
+  /**
+   * Gets the length of the replay. It is only known for version 2 files, and for a recording which
+   * wasn't finished it is where the last block starts. A replay being written knows its length
+   * once it has been closed.
+   *
+   * @return The length in milliseconds, or -1 if it isn't known.
+   */
+  public int getDurationMillis() {
+    return durationMillis;
+  }
+
+  /**
+   * Gets where the block the last chunk was read from starts. Chunks in blocks after a keyframe's
+   * {@link Keyframe#offset()} were recorded after it, even in the same millisecond.
+   *
+   * @return The offset, which is 0 for version 1 files.
+   */
+  public long getChunkBlockOffset() {
+    return blockOffset;
+  }
+
+  public List<Keyframe> getKeyframes() {
+    return Collections.unmodifiableList(keyframes);
+  }
+
   public void setMap(String map) {
     checkWriting();
 
@@ -300,7 +659,20 @@ public class ReplayFile implements Closeable {
 
   @Override
   public void close() throws IOException {
-    if (stream != null) stream.close();
+    if (stream == null) return;
+
+    try {
+      if (!reading && headerWritten) {
+        writeIndex();
+        drainOutput();
+        output.force(false);
+      }
+    } finally {
+      stream.close();
+      stream = null;
+      if (inflater != null) inflater.end();
+      if (deflater != null) deflater.end();
+    }
   }
 
   /* ======== Util methods ======== */
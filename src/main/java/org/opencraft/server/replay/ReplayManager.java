@@ -4,81 +4,248 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import org.opencraft.server.Server;
 import org.opencraft.server.io.LevelGzipper;
+import org.opencraft.server.log.RingBuffer;
+import org.opencraft.server.model.Entity;
 import org.opencraft.server.model.Level;
+import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.FakePlayerBase;
 import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.UnparsedPacket;
+import org.opencraft.server.task.GameLoop;
+import org.opencraft.server.task.ScheduledTask;
 
 public class ReplayManager {
 
+  /*
+   * What the disk I/O thread does, in the order it was queued: record a packet or a keyframe, or
+   * start or end a recording. Packets are queued as the bytes sent to the camera man, and stamped
+   * with the time they were sent rather than the time they were written.
+   */
+  private interface Entry {
+  }
+
+  private record PacketEntry(long time, byte[] data) implements Entry {
+  }
+
+  private record KeyframeEntry(long time, List<Packet> packets) implements Entry {
+  }
+
+  private record StartEntry(ReplayFile file, long recordingStartTimestamp) implements Entry {
+  }
+
+  private record EndEntry() implements Entry {
+  }
+
+  /*
+   * The only thread which writes to the replay file. Any thread can queue to it without locking.
+   * When it falls behind, for example while a map is sent, entries which don't fit in the ring
+   * spill into a list, which the thread then writes as one batch. Only if the disk stalls for long
+   * enough to fill that list too are packets dropped, and counted, rather than using up the heap.
+   */
   public static class IOThread extends Thread {
-    public static final int MAX_ELEMENTS = 1024;
+    /** The most entries queued before they spill. */
+    public static final int CAPACITY = 16384;
+    /** The most entries which spill before packets are dropped. */
+    public static final int MAX_OVERFLOW = CAPACITY * 16;
+    /** How long the thread waits when there is nothing to write. */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5L);
+    /** How often what has been recorded is forced to the disk. */
+    private static final long SYNC_INTERVAL = TimeUnit.SECONDS.toMillis(10L);
     private static final IOThread INSTANCE = new IOThread();
 
-    private final List<Packet> packetQueue = new ArrayList<>(MAX_ELEMENTS);
-    private boolean notifiedSkipping;
+    private final RingBuffer<Entry> ring = new RingBuffer<>(CAPACITY);
+    private final List<Entry> overflow = new ArrayList<>();
+    private volatile boolean overflowing;
+
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long recordedPackets;
+    private volatile long recordedBytes;
+    private volatile long writtenBytes;
+    private volatile long lagMillis;
+    private volatile long maxLagMillis;
+
+    /* only used by this thread */
+    private ReplayFile file;
+    private long recordingStartTimestamp;
+    private long timestamp;
+    private List<Packet> packetsCollected = new ArrayList<>();
+    private long lastSync;
+    private boolean notifiedOverflow;
+    private long reportedDropped;
 
     private IOThread() {
       setName("ReplayManager's disk I/O thread");
       setDaemon(true);
     }
 
-    public synchronized void enqueuePacket(Packet packet) {
-      int size;
-      if ((size = packetQueue.size()) >= MAX_ELEMENTS) {
-        if (!notifiedSkipping) {
-          Server.log("ReplayManager cannot keep up, " + size +
-              " packets are in queue to be recorded. A packet was ignored for the first time");
+    void enqueue(Entry entry) {
+      // once entries spill, the rest follow them until they are written, to keep them in order
+      if (!overflowing && ring.offer(entry)) return;
 
-          notifiedSkipping = true;
-        }
+      synchronized (overflow) {
+        // decided under the lock, so nothing is queued in the ring behind an entry which spilled
+        if (!overflowing && ring.offer(entry)) return;
 
-        return;
+        if (overflow.size() >= MAX_OVERFLOW && entry instanceof PacketEntry) {
+          dropped.incrementAndGet();
+          return;
+        }
+        overflowing = true;
+        overflow.add(entry);
       }
-      packetQueue.add(packet);
-
-      notifyAll();
+      overflowed.incrementAndGet();
     }
 
     @Override
     public void run() {
       while (true) {
-        List<Packet> queueCopy;
-        synchronized (this) {
-          queueCopy = new ArrayList<>(packetQueue);
-          packetQueue.clear();
+        boolean idle = true;
+        Entry entry;
+        while ((entry = ring.poll()) != null) {
+          handle(entry);
+          idle = false;
         }
+        if (overflowing) {
+          List<Entry> batch;
+          synchronized (overflow) {
+            batch = new ArrayList<>(overflow);
+            overflow.clear();
+            overflowing = false;
+          }
+          if (!notifiedOverflow && file != null) {
+            Server.log("ReplayManager cannot keep up, " + batch.size() +
+                " packets were waiting to be recorded. Recording continues");
 
-        for (Packet packet : queueCopy) {
-          ReplayManager.INSTANCE.registerPacket(packet, true);
+            notifiedOverflow = true;
+          }
+          for (Entry spilled : batch) {
+            handle(spilled);
+          }
+          long lost = dropped.get() - reportedDropped;
+          if (lost > 0) {
+            Server.log("ReplayManager dropped " + lost + " packets while the disk was stalled");
+            reportedDropped += lost;
+          }
+          idle = false;
+        }
+        if (file != null && System.currentTimeMillis() - lastSync >= SYNC_INTERVAL) {
+          sync();
         }
+        if (idle) {
+          LockSupport.parkNanos(this, IDLE_NANOS);
+        }
+      }
+    }
 
-        synchronized (this) {
-          try {
-            while (packetQueue.isEmpty()) wait();
-          } catch (InterruptedException e) {
-            interrupt();
+    private void handle(Entry entry) {
+      try {
+        if (entry instanceof PacketEntry packet) {
+          if (file == null) return;
+
+          // chunks must not go back in time, even if two threads raced to queue packets
+          long time = Math.max(packet.time(), timestamp);
+          if (time != timestamp) {
+            flushPackets();
+            timestamp = time;
+          }
+          packetsCollected.add(new UnparsedPacket(packet.data()));
+          recordedPackets++;
+          recordedBytes += packet.data().length;
+          lagMillis = System.currentTimeMillis() - packet.time();
+          maxLagMillis = Math.max(maxLagMillis, lagMillis);
+        } else if (entry instanceof KeyframeEntry keyframe) {
+          if (file == null) return;
+
+          // the packets before the keyframe go in the block before it
+          flushPackets();
+          long time = Math.max(keyframe.time(), timestamp);
+          file.writeKeyframe((int) (time - recordingStartTimestamp), keyframe.packets());
+        } else if (entry instanceof StartEntry start) {
+          if (file != null) end();
+          file = start.file();
+          recordingStartTimestamp = start.recordingStartTimestamp();
+          timestamp = 0L;
+          lastSync = System.currentTimeMillis();
+          notifiedOverflow = false;
+        } else if (entry instanceof EndEntry) {
+          if (file != null) end();
+        }
+      } catch (IOException e) {
+        Server.log("Failed to write to " + (file == null ? "a replay" : file.getFilename()));
+        Server.log(e);
+      }
+    }
 
-            Server.log(getName() + " was interrupted. This may "
-                + "lead to corrupted replay files and degraded performance");
+    private void flushPackets() throws IOException {
+      if (packetsCollected.isEmpty()) return;
 
-            break;
-          }
+      int deltaMillis = (int) (timestamp - recordingStartTimestamp);
+      file.writeChunk(new ReplayFile.ReplayChunk(deltaMillis, packetsCollected));
+      packetsCollected = new ArrayList<>();
+    }
+
+    private void sync() {
+      lastSync = System.currentTimeMillis();
+      try {
+        flushPackets();
+        file.sync();
+      } catch (IOException e) {
+        Server.log("Failed to sync " + file.getFilename());
+        Server.log(e);
+      }
+    }
+
+    private void end() throws IOException {
+      ReplayFile ended = file;
+      try {
+        flushPackets();
+      } finally {
+        file = null;
+        packetsCollected = new ArrayList<>();
+        try {
+          ended.close();
+        } finally {
+          writtenBytes += ended.getWritten();
+          ReplayCatalog.getCatalog().finished(ended);
+          ReplayManager.INSTANCE.finishedWriting(ended);
         }
       }
     }
   }
 
+  /*
+   * Captures a keyframe every KEYFRAME_INTERVAL. It runs on the game loop, so the level and the
+   * players don't change while they are being captured.
+   */
+  private static class KeyframeTask extends ScheduledTask {
+
+    KeyframeTask() {
+      super(KEYFRAME_INTERVAL);
+    }
+
+    @Override
+    public void execute() {
+      INSTANCE.captureKeyframe();
+    }
+  }
+
+  /** How often a keyframe is recorded, which is the most a viewer fast-forwards to seek. */
+  public static final long KEYFRAME_INTERVAL = 60 * 1000L;
+
   private static final ReplayManager INSTANCE = new ReplayManager();
 
-  private long recordingStartTimestamp;
-  private boolean recording;
-  private ReplayFile replayFile;
+  private volatile boolean recording;
+  private KeyframeTask keyframeTask;
 
-  private long timestamp;
-  private List<Packet> packetsCollected;
+  // the file being recorded, until the disk I/O thread has finished writing it
+  private volatile String busyFilename;
 
   static {
     IOThread.INSTANCE.start();
@@ -95,18 +262,13 @@ public class ReplayManager {
     if (recording) {
       recording = false;
 
-      flushPackets();
+      IOThread.INSTANCE.enqueue(new EndEntry());
       FakePlayerBase.CAMERA_MAN.getSession().setConnected();
     }
-    if (replayFile != null) {
-      try {
-        replayFile.close();
-      } catch (IOException ignored) {
-      }
-      replayFile = null;
+    if (keyframeTask != null) {
+      keyframeTask.stop();
+      keyframeTask = null;
     }
-    recordingStartTimestamp = 0L;
-    timestamp = 0L;
   }
 
   public synchronized void startRecording() {
@@ -123,9 +285,10 @@ public class ReplayManager {
 
       return;
     }
-    replayFile = new ReplayFile(day, month, year, id);
+    ReplayFile replayFile = new ReplayFile(day, month, year, id);
     replayFile.setReading(false);
     Level level = World.getWorld().getLevel();
+    long recordingStartTimestamp;
     try {
       replayFile.open();
       replayFile.setMap(level.id);
@@ -137,19 +300,31 @@ public class ReplayManager {
     } catch (IOException e) {
       Server.log("Failed to start recording");
       Server.log(e);
+      try {
+        replayFile.close();
+      } catch (IOException ignored) {
+      }
+      ReplayCatalog.Entry reserved = ReplayCatalog.getCatalog().get(day, month, year, id);
+      if (reserved != null) ReplayCatalog.getCatalog().remove(reserved);
 
       return;
     }
     //}
     World.getWorld().broadcast("- &e[&c!&e] The game is now being recorded under identifier " + id);
+    busyFilename = replayFile.getFilename();
+    ReplayCatalog.getCatalog().started(replayFile, level.id,
+        World.getWorld().getGameMode().gameStartTime);
+    IOThread.INSTANCE.enqueue(new StartEntry(replayFile, recordingStartTimestamp));
     recording = true;
 
     LevelGzipper.getLevelGzipper().gzipLevel(FakePlayerBase.CAMERA_MAN.getSession(), level);
+    keyframeTask = new KeyframeTask();
+    GameLoop.getGameLoop().schedule(keyframeTask);
 
     FakePlayerBase.CAMERA_MAN.getUI().invalidateHUD();
   }
 
-  public synchronized boolean isRecording() {
+  public boolean isRecording() {
     return recording;
   }
 
@@ -160,53 +335,97 @@ public class ReplayManager {
   public boolean isBusy(String filename) {
     if (filename.contains("important")) return false;
 
-    synchronized (this) {
-      return recording && replayFile.getFilename().equals(filename);
-    }
+    return filename.equals(busyFilename);
   }
 
-  public void registerPacket(Packet packet) {
-    registerPacket(packet, false);
+  private void finishedWriting(ReplayFile file) {
+    if (file.getFilename().equals(busyFilename)) busyFilename = null;
   }
 
   /*
-   * Expected to be an outgoing (clientbound) packet.
+   * Expected to be an outgoing (clientbound) packet. It may be called from any thread.
    */
-  void registerPacket(Packet packet, boolean managed) {
-    if (!managed) {
-      IOThread.INSTANCE.enqueuePacket(packet);
-
-      return;
-    }
+  public void registerPacket(Packet packet) {
+    if (!recording) return;
 
-    synchronized (this) {
-      if (!recording) return;
+    IOThread.INSTANCE.enqueue(new PacketEntry(System.currentTimeMillis(), packet.toByteArray()));
+  }
 
-      long currentTime = System.currentTimeMillis();
-      if (currentTime == timestamp) {
-        packetsCollected.add(packet);
+  void captureKeyframe() {
+    if (!isRecording()) return;
 
-        return;
+    KeyframeSession session = new KeyframeSession();
+    LevelGzipper.getLevelGzipper().writeLevel(session, World.getWorld().getLevel());
+    for (Entity entity : FakePlayerBase.CAMERA_MAN.getLocalEntities()) {
+      if (entity instanceof Player) {
+        session.getActionSender().sendAddPlayer((Player) entity, false);
       }
-      flushPackets();
-      packetsCollected = new ArrayList<>();
-      packetsCollected.add(packet);
-      timestamp = currentTime;
     }
+    IOThread.INSTANCE.enqueue(new KeyframeEntry(System.currentTimeMillis(), session.getPackets()));
   }
 
-  private void flushPackets() {
-    if (timestamp == 0L) return;
+  /**
+   * Gets the number of packets recorded since the server started.
+   *
+   * @return The number of packets.
+   */
+  public long getRecordedPackets() {
+    return IOThread.INSTANCE.recordedPackets;
+  }
 
-    int deltaMillis = (int) (timestamp - recordingStartTimestamp);
+  /**
+   * Gets the size of the packets recorded since the server started, before compression.
+   *
+   * @return The number of bytes.
+   */
+  public long getRecordedBytes() {
+    return IOThread.INSTANCE.recordedBytes;
+  }
 
-    ReplayFile.ReplayChunk chunk = new ReplayFile.ReplayChunk(deltaMillis, packetsCollected);
-    try {
-      replayFile.writeChunk(chunk);
-    } catch (IOException e) {
-      Server.log("Failed to write chunk");
-      Server.log(e);
-    }
-    packetsCollected = null;
+  /**
+   * Gets the size of the replay files finished since the server started.
+   *
+   * @return The number of bytes.
+   */
+  public long getWrittenBytes() {
+    return IOThread.INSTANCE.writtenBytes;
+  }
+
+  /**
+   * Gets how long the last packet recorded waited to be written.
+   *
+   * @return The time in milliseconds.
+   */
+  public long getLagMillis() {
+    return IOThread.INSTANCE.lagMillis;
+  }
+
+  /**
+   * Gets the longest a packet has waited to be written since the server started.
+   *
+   * @return The time in milliseconds.
+   */
+  public long getMaxLagMillis() {
+    return IOThread.INSTANCE.maxLagMillis;
+  }
+
+  /**
+   * Gets the number of packets and keyframes which didn't fit in the queue and had to spill,
+   * because the disk I/O thread was behind. None of them are lost.
+   *
+   * @return The number of entries.
+   */
+  public long getOverflowed() {
+    return IOThread.INSTANCE.overflowed.get();
+  }
+
+  /**
+   * Gets the number of packets dropped since the server started, because the disk I/O thread was
+   * so far behind that the spilled entries reached {@link IOThread#MAX_OVERFLOW}.
+   *
+   * @return The number of packets.
+   */
+  public long getDropped() {
+    return IOThread.INSTANCE.dropped.get();
   }
 }
@@ -0,0 +1,180 @@
+package org.opencraft.server.replay;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.opencraft.server.Server;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.task.TimingWheel;
+
+/*
+ * Plays every replay being watched on two threads, however many viewers there are. The playback
+ * thread turns a timing wheel and runs each viewer when its next chunk is due; it never touches
+ * the disk. The loader thread opens replays and decodes their chunks ahead of the viewers. Viewers
+ * of the same file share one ReplaySource, so it is read and decoded once.
+ */
+public final class ReplayScheduler {
+
+  /** The length of a tick of the playback thread, in milliseconds. */
+  public static final long TICK_MILLIS = 10L;
+  /** The number of slots in the timing wheel, enough for about 5 seconds per turn. */
+  private static final int WHEEL_SLOTS = 512;
+  private static final ReplayScheduler INSTANCE = new ReplayScheduler();
+
+  /* the only thread which sends replay packets to viewers, see ReplayViewer.isUnsafe */
+  static final class PlaybackThread extends Thread {
+
+    private PlaybackThread() {
+      setName("Replay playback thread");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+      long next = System.nanoTime();
+      while (true) {
+        next += tickNanos;
+        long wait = next - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(this, wait);
+        } else if (-wait > tickNanos * WHEEL_SLOTS) {
+          // far behind, such as after the machine slept, so don't try to catch up
+          next = System.nanoTime();
+        }
+        INSTANCE.wheel.advance();
+      }
+    }
+  }
+
+  private final TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SLOTS);
+  private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Replay loader thread");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /* the replays being watched, by filename; only the loader thread adds to it */
+  private final Map<String, ReplaySource> sources = new HashMap<>();
+
+  static {
+    new PlaybackThread().start();
+  }
+
+  private ReplayScheduler() {
+  }
+
+  public static ReplayScheduler getScheduler() {
+    return INSTANCE;
+  }
+
+  TimingWheel.Timeout schedule(Runnable action, long delay) {
+    return wheel.schedule(action, delay);
+  }
+
+  /**
+   * Starts playing a replay to a player, or shows its details.
+   *
+   * @param player The player.
+   * @param onlyViewMetadata If only the details are shown.
+   */
+  public void watch(Player player, int day, int month, int year, int id,
+      boolean onlyViewMetadata) {
+    ReplayViewer viewer = new ReplayViewer(player, onlyViewMetadata);
+    if (!onlyViewMetadata) {
+      synchronized (player) {
+        if (player.watchingReplay) {
+          player.sendMessage("- &eYou are already watching a replay");
+
+          return;
+        }
+
+        player.watchingReplay = true;
+        player.usedCommandDuringReplay = false;
+        player.replayViewer = viewer;
+      }
+    }
+    loader.execute(() -> open(viewer, new ReplayFile(day, month, year, id)));
+  }
+
+  /* on the loader thread */
+  private void open(ReplayViewer viewer, ReplayFile file) {
+    Player player = viewer.getPlayer();
+    ReplaySource source = acquire(player, file);
+    if (source != null) {
+      viewer.setSource(source);
+      viewer.sendMetadata();
+    }
+    if (viewer.isOnlyViewingMetadata()) {
+      if (source != null) release(source);
+
+      return;
+    }
+    // if the replay couldn't be opened, the viewer only puts the player back in the game
+    viewer.schedule(0L);
+  }
+
+  private ReplaySource acquire(Player player, ReplayFile file) {
+    synchronized (sources) {
+      ReplaySource source = sources.get(file.getFilename());
+      if (source != null) {
+        source.viewers++;
+
+        return source;
+      }
+    }
+
+    file.setReading(true);
+    if (!file.canRead()) {
+      player.sendMessage("- &eCould not find such a replay");
+
+      return null;
+    }
+    if (ReplayManager.getInstance().isBusy(file)) {
+      player.sendMessage("- &eThis replay file is not ready yet");
+
+      return null;
+    }
+    try {
+      file.open();
+      file.readHeader();
+      if (!file.canRead()) {
+        // replay was captured using a newer version of the server software
+        player.sendMessage("- &eCannot read this replay, this might be a temporary issue");
+        file.close();
+
+        return null;
+      }
+    } catch (IOException e) {
+      Server.log("I/O error during reading a replay");
+      Server.log(e);
+      player.sendMessage("- &eAn error occurred while reading the replay");
+      try {
+        file.close();
+      } catch (IOException ignored) {
+      }
+
+      return null;
+    }
+
+    ReplaySource source = new ReplaySource(file, loader);
+    source.viewers = 1;
+    synchronized (sources) {
+      sources.put(file.getFilename(), source);
+    }
+
+    return source;
+  }
+
+  void release(ReplaySource source) {
+    synchronized (sources) {
+      if (--source.viewers > 0) return;
+
+      sources.remove(source.getFile().getFilename());
+    }
+    source.close();
+  }
+}
@@ -0,0 +1,238 @@
+package org.opencraft.server.replay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.opencraft.server.Server;
+import org.opencraft.server.net.packet.Packet;
+
+/*
+ * A replay file shared by everyone watching it. Its chunks are decoded once, in order, on the
+ * loader thread, and kept so that every viewer sends the same packets. The loader keeps
+ * PREFETCH_MILLIS ahead of the viewer who is furthest in, and keyframes are read when a viewer
+ * seeks to them. Only the loader touches the file; viewers only look at what has been decoded.
+ */
+final class ReplaySource {
+
+  /** How far ahead of a viewer the chunks are decoded. */
+  static final int PREFETCH_MILLIS = 30 * 1000;
+  /** The most chunks decoded before the loader looks for keyframes to read. */
+  private static final int BATCH = 256;
+  /** The number of keyframes kept after they are read. */
+  private static final int KEYFRAME_CACHE_SIZE = 4;
+
+  private final ReplayFile file;
+  private final Executor loader;
+
+  /* guarded by this */
+  private final List<ReplayFile.ReplayChunk> chunks = new ArrayList<>();
+  private final Map<ReplayFile.Keyframe, List<Packet>> keyframes =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ReplayFile.Keyframe, List<Packet>> eldest) {
+          return size() > KEYFRAME_CACHE_SIZE;
+        }
+      };
+  private final List<ReplayFile.Keyframe> keyframesWanted = new ArrayList<>();
+  /** The index of the first chunk recorded after each keyframe which has been decoded. */
+  private final Map<ReplayFile.Keyframe, Integer> chunksAfter = new HashMap<>();
+  private int requestedMillis;
+  private boolean complete;
+  private boolean loading;
+  private boolean closed;
+  /* guarded by the scheduler */
+  int viewers;
+  /* only used by the loader */
+  private int nextKeyframe;
+
+  /**
+   * @param file The replay, opened for reading with its header read.
+   * @param loader Where the file is read.
+   */
+  ReplaySource(ReplayFile file, Executor loader) {
+    this.file = file;
+    this.loader = loader;
+  }
+
+  ReplayFile getFile() {
+    return file;
+  }
+
+  synchronized int size() {
+    return chunks.size();
+  }
+
+  synchronized ReplayFile.ReplayChunk get(int index) {
+    return chunks.get(index);
+  }
+
+  synchronized boolean isComplete() {
+    return complete;
+  }
+
+  /** Checks if every chunk up to a time has been decoded. */
+  synchronized boolean isLoaded(int deltaMillis) {
+    if (complete) return true;
+
+    return !chunks.isEmpty() && chunks.get(chunks.size() - 1).deltaMillis() >= deltaMillis;
+  }
+
+  /** Finds the first decoded chunk at or after a time, or the number of chunks if there is none. */
+  synchronized int indexOf(int deltaMillis) {
+    int low = 0;
+    int high = chunks.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (chunks.get(middle).deltaMillis() < deltaMillis) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  /**
+   * Finds the first chunk recorded after a keyframe. Chunks recorded in the same millisecond can
+   * be on either side of it, so this goes by where they are in the file rather than their time.
+   *
+   * @return The index, or the number of chunks if none after it have been decoded yet.
+   */
+  synchronized int indexAfter(ReplayFile.Keyframe keyframe) {
+    Integer index = chunksAfter.get(keyframe);
+
+    return index != null ? index : chunks.size();
+  }
+
+  /** Makes sure the chunks up to a time are decoded, or are being decoded. */
+  void prefetch(int deltaMillis) {
+    synchronized (this) {
+      if (complete || deltaMillis <= requestedMillis) return;
+
+      requestedMillis = deltaMillis;
+    }
+    startLoading();
+  }
+
+  ReplayFile.Keyframe keyframeBefore(int deltaMillis) {
+    ReplayFile.Keyframe keyframe = null;
+    for (ReplayFile.Keyframe k : file.getKeyframes()) {
+      if (k.deltaMillis() > deltaMillis) break;
+      keyframe = k;
+    }
+
+    return keyframe;
+  }
+
+  /**
+   * Gets the packets of a keyframe.
+   *
+   * @return The packets, or null if they are still being read.
+   */
+  List<Packet> getKeyframe(ReplayFile.Keyframe keyframe) {
+    synchronized (this) {
+      List<Packet> packets = keyframes.get(keyframe);
+      if (packets != null) return packets;
+
+      if (!keyframesWanted.contains(keyframe)) keyframesWanted.add(keyframe);
+    }
+    startLoading();
+
+    return null;
+  }
+
+  private void startLoading() {
+    synchronized (this) {
+      if (loading || closed) return;
+
+      loading = true;
+    }
+    loader.execute(this::load);
+  }
+
+  private void load() {
+    while (true) {
+      ReplayFile.Keyframe keyframe = null;
+      synchronized (this) {
+        if (closed) {
+          loading = false;
+
+          return;
+        }
+        if (!keyframesWanted.isEmpty()) {
+          keyframe = keyframesWanted.remove(0);
+        } else if (complete || isLoaded(requestedMillis)) {
+          loading = false;
+
+          return;
+        }
+      }
+      try {
+        if (keyframe != null) {
+          List<Packet> packets = file.readKeyframe(keyframe);
+          synchronized (this) {
+            keyframes.put(keyframe, packets);
+          }
+        } else {
+          loadChunks();
+        }
+      } catch (IOException e) {
+        Server.log("Failed to read " + file.getFilename());
+        Server.log(e);
+        // a viewer seeking to a bad keyframe gets the chunks after it, and what was decoded before
+        // a bad block can still be watched
+        synchronized (this) {
+          if (keyframe != null) {
+            keyframes.put(keyframe, List.of());
+          } else {
+            complete = true;
+          }
+        }
+      }
+    }
+  }
+
+  private void loadChunks() throws IOException {
+    List<ReplayFile.ReplayChunk> batch = new ArrayList<>(BATCH);
+    Map<ReplayFile.Keyframe, Integer> after = new HashMap<>();
+    List<ReplayFile.Keyframe> keyframes = file.getKeyframes();
+    int first = size();
+    boolean end = false;
+    while (batch.size() < BATCH) {
+      if (!file.isNextChunkAvailable()) {
+        end = true;
+
+        break;
+      }
+      batch.add(file.readNextChunk());
+      long offset = file.getChunkBlockOffset();
+      while (nextKeyframe < keyframes.size() && keyframes.get(nextKeyframe).offset() < offset) {
+        after.put(keyframes.get(nextKeyframe++), first + batch.size() - 1);
+      }
+    }
+    synchronized (this) {
+      chunks.addAll(batch);
+      chunksAfter.putAll(after);
+      complete = end;
+    }
+  }
+
+  /** Closes the file once the loader has finished with it. */
+  void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    loader.execute(() -> {
+      try {
+        file.close();
+      } catch (IOException e) {
+        Server.log(e);
+      }
+    });
+  }
+}
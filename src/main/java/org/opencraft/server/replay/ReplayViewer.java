@@ -0,0 +1,347 @@
+package org.opencraft.server.replay;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.opencraft.server.Server;
+import org.opencraft.server.game.GameMode;
+import org.opencraft.server.io.LevelGzipper;
+import org.opencraft.server.model.Entity;
+import org.opencraft.server.model.EntityTracker;
+import org.opencraft.server.model.Player;
+import org.opencraft.server.model.World;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.task.GameLoop;
+import org.opencraft.server.task.TimingWheel;
+
+/*
+ * A player watching a replay. It has no thread of its own: the playback thread runs it whenever
+ * its next chunk is due, and it sends the chunks it shares with everyone watching the same file.
+ */
+public class ReplayViewer {
+
+  public static final double MIN_SPEED = 0.25;
+  public static final double MAX_SPEED = 8.0;
+  private static final int NO_SEEK = -1;
+  /** How long to wait before looking again when the chunks are still being decoded. */
+  private static final long BUFFERING_MILLIS = ReplayScheduler.TICK_MILLIS;
+  /** The longest the viewer waits between runs, to notice the player has disconnected. */
+  private static final long MAX_WAIT_MILLIS = 1000L;
+  private static final long DONE = -1L;
+
+  private final Player player;
+  private final boolean onlyViewMetadata;
+
+  /*
+   * The controls are changed by the command thread while holding the player's lock. The replay's
+   * time is clockPosition at clockStarted, moving on at speed.
+   */
+  private int seekTarget = NO_SEEK;
+  private double speed = 1.0;
+  private int clockPosition;
+  private long clockStarted;
+
+  /* set by the loader thread before the viewer is first run */
+  private volatile ReplaySource source;
+  /* only used by the playback thread */
+  private boolean started;
+  private boolean finished;
+  private int next;
+
+  /* guarded by this */
+  private TimingWheel.Timeout timeout;
+  private boolean running;
+  private boolean woken;
+
+  ReplayViewer(Player player, boolean onlyViewMetadata) {
+    Objects.requireNonNull(player);
+
+    this.player = player;
+    this.onlyViewMetadata = onlyViewMetadata;
+  }
+
+  /*
+   * Returns true if (and only if) the given player is watching a replay and
+   * the current operation over this player is executed by any thread other than the playback
+   * thread.
+   */
+  public static boolean isUnsafe(Player player) {
+    return player.watchingReplay &&
+        !(Thread.currentThread() instanceof ReplayScheduler.PlaybackThread);
+  }
+
+  Player getPlayer() {
+    return player;
+  }
+
+  boolean isOnlyViewingMetadata() {
+    return onlyViewMetadata;
+  }
+
+  void setSource(ReplaySource source) {
+    this.source = source;
+  }
+
+  /*
+   * On the game loop, which owns the local entities, the tracker and the game mode. The client is
+   * told the entities are gone by clearReplayEntities, since only the playback thread can send
+   * the player anything but chat while they watch.
+   */
+  private void clearLocalEntities() {
+    Set<Entity> le = player.getLocalEntities();
+    EntityTracker tracker = player.getTracker();
+    for (Entity localEntity : le) {
+      tracker.forget(localEntity);
+    }
+    le.clear();
+  }
+
+  /* on the game loop */
+  private void clearAnnouncementAndKillFeed() {
+    GameMode gameMode = World.getWorld().getGameMode();
+    gameMode.clearKillFeedFor(player);
+    gameMode.sendAnnouncement(player, "");
+  }
+
+  private void clearReplayEntities() {
+    for (short id = 0; id < 255; id++) { // do not remove -1 (255)
+      player.getActionSender().sendRemovePlayerName(id);
+      player.getActionSender().sendRemoveEntity(id);
+    }
+  }
+
+  /**
+   * Jumps to a time in the replay.
+   *
+   * @param deltaMillis The time, since the recording started.
+   */
+  public void seek(int deltaMillis) {
+    synchronized (player) {
+      seekTarget = Math.max(deltaMillis, 0);
+    }
+    wake();
+  }
+
+  /**
+   * Skips forward through the replay.
+   *
+   * @param millis How far to skip.
+   */
+  public void fastForward(int millis) {
+    synchronized (player) {
+      seek(getPosition() + millis);
+    }
+  }
+
+  /**
+   * Changes how fast the replay plays.
+   *
+   * @param speed The speed, between {@link #MIN_SPEED} and {@link #MAX_SPEED}.
+   */
+  public void setSpeed(double speed) {
+    synchronized (player) {
+      startClock(getPosition());
+      this.speed = Math.max(MIN_SPEED, Math.min(speed, MAX_SPEED));
+    }
+    wake();
+  }
+
+  /**
+   * Gets the time the replay has reached.
+   *
+   * @return The time, since the recording started.
+   */
+  public int getPosition() {
+    synchronized (player) {
+      return clockPosition + (int) ((System.currentTimeMillis() - clockStarted) * speed);
+    }
+  }
+
+  private void startClock(int position) {
+    synchronized (player) {
+      clockPosition = position;
+      clockStarted = System.currentTimeMillis();
+    }
+  }
+
+  public static String formatTime(int millis) {
+    int seconds = millis / 1000;
+
+    return (seconds / 60) + ":" + ReplayFile.adjust(seconds % 60, 2);
+  }
+
+  /** Runs the viewer on the playback thread as soon as possible, for example after a seek. */
+  public synchronized void wake() {
+    if (running) {
+      // it will look at the controls again before it waits
+      woken = true;
+    } else if (timeout != null && timeout.isActive()) {
+      timeout.cancel();
+      timeout = ReplayScheduler.getScheduler().schedule(this::run, 0L);
+    }
+  }
+
+  synchronized void schedule(long delay) {
+    if (timeout != null) timeout.cancel();
+    timeout = ReplayScheduler.getScheduler().schedule(this::run, delay);
+  }
+
+  void sendMetadata() {
+    ReplayFile file = source.getFile();
+    player.sendMessage("- &eMap: " + file.getMap());
+    player.sendMessage("- &eDate: " + (new Date(file.getRoundStartTimestamp())));
+    player.sendMessage("- &eRecording started: " + (new Date(file.getRecordingStartTimestamp())));
+    if (onlyViewMetadata) return;
+
+    if (file.getDurationMillis() >= 0) {
+      player.sendMessage("- &eLength: " + formatTime(file.getDurationMillis()));
+    }
+    player.sendMessage("- &eUse '/leave' or '/replay stop' commands to quit viewer mode");
+    player.sendMessage("- &eUse '/replay seek <m:ss>', '/replay ff <seconds>' and");
+    player.sendMessage("   &e'/replay speed <x>' to move through the replay");
+  }
+
+  /* on the playback thread */
+  private void run() {
+    synchronized (this) {
+      running = true;
+      woken = false;
+    }
+    long delay;
+    try {
+      delay = play();
+    } catch (RuntimeException e) {
+      Server.log(e);
+      delay = DONE;
+    }
+    synchronized (this) {
+      running = false;
+      if (delay != DONE) {
+        timeout = ReplayScheduler.getScheduler().schedule(this::run, woken ? 0L : delay);
+
+        return;
+      }
+      timeout = null;
+    }
+    finish();
+  }
+
+  /*
+   * Sends the chunks which are due and returns how long to wait for the next one, or DONE once the
+   * player has left.
+   */
+  private long play() {
+    if (source == null || player.requestedToLeaveReplay ||
+        !World.getWorld().getPlayerList().contains(player)) {
+      return DONE;
+    }
+    if (!started) {
+      started = true;
+      GameLoop.getGameLoop().submit(() -> {
+        clearLocalEntities();
+        clearAnnouncementAndKillFeed();
+      });
+      clearReplayEntities();
+      startClock(0);
+    }
+    checkUsedCommand();
+
+    int target;
+    synchronized (player) {
+      target = seekTarget;
+    }
+    if (target != NO_SEEK && !jumpTo(target)) return BUFFERING_MILLIS;
+
+    int position = getPosition();
+    source.prefetch(position + (int) (ReplaySource.PREFETCH_MILLIS * Math.max(speed, 1.0)));
+    int size = source.size();
+    for (; next < size; next++) {
+      ReplayFile.ReplayChunk chunk = source.get(next);
+      if (chunk.deltaMillis() > position) {
+        long wait = (long) ((chunk.deltaMillis() - getPosition()) / speed);
+
+        return Math.max(0L, Math.min(wait, MAX_WAIT_MILLIS));
+      }
+      send(chunk.packets());
+    }
+    if (!source.isComplete()) return BUFFERING_MILLIS;
+
+    if (!finished) {
+      player.sendMessage("- &eFinished reading the replay, type /leave to quit the viewer");
+      finished = true;
+    }
+
+    return MAX_WAIT_MILLIS;
+  }
+
+  /*
+   * Sets up the replay as it was at the keyframe before the target, and sends the chunks from
+   * there to the target all at once. Returns false if the keyframe or the chunks are still being
+   * decoded.
+   */
+  private boolean jumpTo(int target) {
+    int duration = source.getFile().getDurationMillis();
+    int to = (duration >= 0 ? Math.min(target, duration) : target);
+    ReplayFile.Keyframe keyframe = source.keyframeBefore(to);
+    List<Packet> snapshot = (keyframe == null ? List.of() : source.getKeyframe(keyframe));
+    source.prefetch(to + ReplaySource.PREFETCH_MILLIS);
+    if (snapshot == null || !source.isLoaded(to)) return false;
+
+    synchronized (player) {
+      // another seek came in while this one waited, so go there instead
+      if (seekTarget != target) return false;
+
+      seekTarget = NO_SEEK;
+    }
+    clearReplayEntities();
+    send(snapshot);
+    // resume after the keyframe in the file rather than from its millisecond, since chunks from
+    // that millisecond before it are already in the snapshot and moving twice would be wrong
+    int start = (keyframe == null ? 0 : source.indexAfter(keyframe));
+    int end = source.indexOf(to);
+    for (int i = start; i < end; i++) {
+      send(source.get(i).packets());
+    }
+    next = Math.max(start, end);
+    finished = false;
+    startClock(to);
+    player.sendMessage("- &eJumped to " + formatTime(to) +
+        (duration >= 0 ? " of " + formatTime(duration) : ""));
+
+    return true;
+  }
+
+  private void send(List<Packet> packets) {
+    for (Packet packet : packets) {
+      player.getSession().send(packet);
+    }
+  }
+
+  /* on the playback thread, once the player has left or the replay couldn't be opened */
+  private void finish() {
+    GameLoop.getGameLoop().submit(this::clearAnnouncementAndKillFeed);
+
+    clearReplayEntities();
+    LevelGzipper.getLevelGzipper().gzipLevel(player.getSession());
+
+    synchronized (player) {
+      player.watchingReplay = false;
+      player.requestedToLeaveReplay = false;
+      player.usedCommandDuringReplay = false;
+      player.replayViewer = null;
+    }
+
+    player.getUI().invalidateHUD();
+    if (source != null) ReplayScheduler.getScheduler().release(source);
+  }
+
+  private void checkUsedCommand() {
+    if (player.usedCommandDuringReplay) {
+      player.sendMessage("- &eUnfortunately, you cannot use any commands except /leave");
+      player.sendMessage("- &eand /replay while watching a replay");
+
+      player.usedCommandDuringReplay = false;
+    }
+  }
+}
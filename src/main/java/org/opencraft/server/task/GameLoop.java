@@ -0,0 +1,237 @@
+package org.opencraft.server.task;
+
+import org.opencraft.server.Server;
+import org.opencraft.server.model.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The thread which owns the game world. Packets received by the network threads are decoded there
+ * and queued here as tasks, and the game's scheduled tasks, such as <code>UpdateTask</code>, run
+ * here too, so players, the level and the game mode are only ever changed by one thread.
+ *
+ * <p>Queued tasks are run as soon as the loop is free rather than waiting for the next tick, so
+ * they add no latency. Scheduled tasks which do slow work, such as the heartbeat, should stay on
+ * the {@link TaskQueue} instead.
+ */
+public final class GameLoop implements Runnable {
+
+  /** The length of a tick, in milliseconds. Scheduled tasks run on tick boundaries. */
+  public static final long TICK = 25;
+
+  /** How often tick statistics are logged, in ticks. */
+  private static final int REPORT_TICKS = 40 * 60;
+
+  /** The game loop singleton. */
+  private static final GameLoop INSTANCE = new GameLoop();
+
+  /** A scheduled task and when it next runs. */
+  private static final class Entry {
+    final ScheduledTask task;
+    long due;
+
+    Entry(ScheduledTask task, long due) {
+      this.task = task;
+      this.due = due;
+    }
+  }
+
+  /** Tasks queued by other threads, such as packets to handle. */
+  private final Queue<Task> inbound = new ConcurrentLinkedQueue<>();
+
+  /** Scheduled tasks added since the last tick. */
+  private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+
+  /** Scheduled tasks. Only used by the loop thread. */
+  private final List<Entry> scheduled = new ArrayList<>();
+
+  private volatile Thread thread;
+
+  /** The statistics, only written by the loop thread. */
+  private volatile long ticks, handled, lastTickNanos, maxTickNanos;
+  private long reportHandled, reportMaxNanos;
+
+  /**
+   * Gets the game loop instance.
+   *
+   * @return The game loop instance.
+   */
+  public static GameLoop getGameLoop() {
+    return INSTANCE;
+  }
+
+  /** Starts the loop thread. */
+  public synchronized void start() {
+    if (thread == null) {
+      thread = new Thread(this, "GameLoop");
+      thread.start();
+    }
+  }
+
+  /**
+   * Checks if the current thread is the loop thread.
+   *
+   * @return <code>true</code> if it is.
+   */
+  public boolean isLoopThread() {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Queues a task to run on the loop thread. Tasks run in the order they were queued.
+   *
+   * @param task The task.
+   */
+  public void submit(Task task) {
+    inbound.add(task);
+    Thread t = thread;
+    if (t != null && t != Thread.currentThread()) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  /**
+   * Runs a task on the loop thread. It runs straight away if this is the loop thread, or if the
+   * loop hasn't started yet, when nothing else can be using the world. Otherwise it is queued.
+   *
+   * @param task The task.
+   */
+  public void execute(Task task) {
+    if (thread == null || isLoopThread()) {
+      task.execute();
+    } else {
+      submit(task);
+    }
+  }
+
+  /**
+   * Schedules a task to run repeatedly on the loop thread until it is stopped.
+   *
+   * @param task The task.
+   */
+  public void schedule(ScheduledTask task) {
+    added.add(new Entry(task, System.currentTimeMillis() + task.getDelay()));
+  }
+
+  @Override
+  public void run() {
+    long nextTick = System.nanoTime();
+    while (true) {
+      long start = System.nanoTime();
+      if (start - nextTick >= 0) {
+        runScheduled();
+        try {
+          // block changes made by the tasks, and by other threads since the last tick
+          World.getWorld().getLevel().flushBlockChanges();
+        } catch (Throwable t) {
+          Server.log(t);
+        }
+        long elapsed = System.nanoTime() - start;
+        endTick(elapsed);
+        nextTick += TimeUnit.MILLISECONDS.toNanos(TICK);
+        if (System.nanoTime() - nextTick > TimeUnit.MILLISECONDS.toNanos(TICK * 4)) {
+          // too far behind to catch up, so skip the missed ticks instead
+          nextTick = System.nanoTime();
+        }
+      }
+      runInbound();
+      if (inbound.isEmpty()) {
+        LockSupport.parkNanos(this, nextTick - System.nanoTime());
+      }
+    }
+  }
+
+  /** Runs every queued task. */
+  private void runInbound() {
+    Task task;
+    while ((task = inbound.poll()) != null) {
+      try {
+        task.execute();
+      } catch (Throwable t) {
+        Server.log("[E] Error during task execution." + t);
+        Server.log(t);
+      }
+      handled++;
+    }
+  }
+
+  /** Runs the scheduled tasks which are due. */
+  private void runScheduled() {
+    Entry entry;
+    while ((entry = added.poll()) != null) {
+      scheduled.add(entry);
+    }
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < scheduled.size(); i++) {
+      entry = scheduled.get(i);
+      if (entry.due > now) {
+        continue;
+      }
+      try {
+        entry.task.execute();
+      } catch (Throwable t) {
+        Server.log("[E] Error during task execution." + t);
+        Server.log(t);
+      }
+      if (!entry.task.isRunning()) {
+        scheduled.remove(i--);
+        continue;
+      }
+      entry.due += entry.task.getDelay();
+      if (entry.due <= now) {
+        entry.due = now + entry.task.getDelay();
+      }
+    }
+  }
+
+  private void endTick(long nanos) {
+    ticks++;
+    lastTickNanos = nanos;
+    reportMaxNanos = Math.max(reportMaxNanos, nanos);
+    if (ticks % REPORT_TICKS == 0) {
+      maxTickNanos = reportMaxNanos;
+      if (Server.isDebug()) {
+        Server.d("Game loop: longest tick " + TimeUnit.NANOSECONDS.toMicros(reportMaxNanos)
+            + " us, " + (handled - reportHandled) + " tasks handled");
+      }
+      reportMaxNanos = 0;
+      reportHandled = handled;
+    }
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Gets the number of queued tasks which have been run.
+   *
+   * @return The count.
+   */
+  public long getHandled() {
+    return handled;
+  }
+
+  /**
+   * Gets how long the scheduled tasks took in the last tick.
+   *
+   * @return The time, in nanoseconds.
+   */
+  public long getLastTickNanos() {
+    return lastTickNanos;
+  }
+
+  /**
+   * Gets the longest time the scheduled tasks took in a tick, over the last minute.
+   *
+   * @return The time, in nanoseconds.
+   */
+  public long getMaxTickNanos() {
+    return maxTickNanos;
+  }
+}
@@ -0,0 +1,165 @@
+package org.opencraft.server.task;
+
+import org.opencraft.server.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel for delayed actions. The wheel is a ring of slots, one per tick, and each
+ * action is put in the slot for the tick it is due along with the number of turns of the wheel
+ * still to wait. Scheduling and cancelling are constant time, and each tick only looks at one
+ * slot, however many actions are waiting.
+ *
+ * <p>Actions can be scheduled from any thread, but {@link #advance()} must only be called by the
+ * one thread which owns the wheel. Actions run on that thread.
+ */
+public final class TimingWheel {
+
+  /** An action waiting in the wheel. */
+  public static final class Timeout {
+    private final Runnable action;
+    /** The delay in ticks between runs, or 0 if the action only runs once. */
+    private final int period;
+    private int delay;
+    /** The turns of the wheel left before the action is due. */
+    private int rounds;
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+
+    private Timeout(Runnable action, int delay, int period) {
+      this.action = action;
+      this.delay = delay;
+      this.period = period;
+    }
+
+    /** Stops the action from running. Does nothing if it has already run. */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Checks if the action is still waiting to run, or for a repeating action, if it hasn't been
+     * cancelled.
+     *
+     * @return The active flag.
+     */
+    public boolean isActive() {
+      return !cancelled && !expired;
+    }
+  }
+
+  /** The length of a tick, in milliseconds. */
+  private final long tickMillis;
+
+  private final List<Timeout>[] slots;
+
+  /** Actions scheduled since the last tick, not yet in a slot. */
+  private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+  /** The slot for the current tick. */
+  private int cursor;
+
+  /**
+   * Creates the timing wheel.
+   *
+   * @param tickMillis The length of a tick, in milliseconds.
+   * @param slots The number of slots. Delays longer than this many ticks take several turns.
+   */
+  @SuppressWarnings("unchecked")
+  public TimingWheel(long tickMillis, int slots) {
+    this.tickMillis = tickMillis;
+    this.slots = new List[slots];
+    for (int i = 0; i < slots; i++) {
+      this.slots[i] = new ArrayList<>();
+    }
+  }
+
+  /**
+   * Schedules an action to run once.
+   *
+   * @param action The action.
+   * @param delay The delay, in milliseconds, rounded up to whole ticks.
+   * @return The timeout, which can be used to cancel the action.
+   */
+  public Timeout schedule(Runnable action, long delay) {
+    return schedule(action, delay, 0);
+  }
+
+  /**
+   * Schedules an action to run repeatedly until it is cancelled.
+   *
+   * @param action The action.
+   * @param delay The delay before the first run, in milliseconds.
+   * @param period The delay between runs, in milliseconds, or 0 to only run once.
+   * @return The timeout, which can be used to cancel the action.
+   */
+  public Timeout schedule(Runnable action, long delay, long period) {
+    int periodTicks = period > 0 ? Math.max(1, toTicks(period)) : 0;
+    Timeout timeout = new Timeout(action, toTicks(delay), periodTicks);
+    incoming.add(timeout);
+    return timeout;
+  }
+
+  /** Moves the wheel on one tick and runs every action which is due. */
+  public void advance() {
+    Timeout timeout;
+    while ((timeout = incoming.poll()) != null) {
+      insert(timeout);
+    }
+    cursor = (cursor + 1) % slots.length;
+    List<Timeout> slot = slots[cursor];
+    List<Timeout> due = null;
+    for (int i = slot.size() - 1; i >= 0; i--) {
+      timeout = slot.get(i);
+      if (timeout.cancelled) {
+        removeAt(slot, i);
+      } else if (timeout.rounds > 0) {
+        timeout.rounds--;
+      } else {
+        removeAt(slot, i);
+        if (due == null) {
+          due = new ArrayList<>();
+        }
+        due.add(timeout);
+      }
+    }
+    if (due == null) {
+      return;
+    }
+    for (int i = due.size() - 1; i >= 0; i--) {
+      timeout = due.get(i);
+      try {
+        timeout.action.run();
+      } catch (Throwable t) {
+        Server.log(t);
+      }
+      if (timeout.period > 0 && !timeout.cancelled) {
+        timeout.delay = timeout.period;
+        insert(timeout);
+      } else {
+        timeout.expired = true;
+      }
+    }
+  }
+
+  private int toTicks(long millis) {
+    return (int) Math.max(0, (millis + tickMillis - 1) / tickMillis);
+  }
+
+  /** Puts a timeout in the slot it is due in. Actions with no delay run on the next tick. */
+  private void insert(Timeout timeout) {
+    int ticks = Math.max(1, timeout.delay);
+    timeout.rounds = (ticks - 1) / slots.length;
+    slots[(cursor + ticks) % slots.length].add(timeout);
+  }
+
+  /** Removes an element without shifting the rest, as the order of a slot doesn't matter. */
+  private static void removeAt(List<Timeout> slot, int index) {
+    int last = slot.size() - 1;
+    slot.set(index, slot.get(last));
+    slot.remove(last);
+  }
+}
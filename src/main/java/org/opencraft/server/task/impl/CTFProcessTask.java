@@ -41,6 +41,8 @@ import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
 import org.opencraft.server.task.ScheduledTask;
 
+import java.util.List;
+
 public class CTFProcessTask extends ScheduledTask {
 
   private static final long DELAY = 100;
@@ -53,7 +55,14 @@ public class CTFProcessTask extends ScheduledTask {
   }
 
   public void execute() {
-    for (Player player : world.getPlayerList().getPlayers(true)) {
+    List<Player> players = world.getPlayerList().getPlayers(true);
+    if (ticks % 5 == 0) {
+      // once for each player, before every tab list compares versions
+      for (Player player : players) {
+        player.refreshListName();
+      }
+    }
+    for (Player player : players) {
       player.step(ticks);
 
       if (player.following != null) {
@@ -42,6 +42,7 @@ import org.opencraft.server.cmd.CommandParameters;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.ConsoleActionSender;
+import org.opencraft.server.task.GameLoop;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -77,13 +78,15 @@ public class ConsoleTask implements Runnable {
                   partsList.add(s);
                 }
               }
-              parts = partsList.toArray(new String[0]);
-              c.execute(consolePlayer, new CommandParameters(parts));
+              final CommandParameters params =
+                  new CommandParameters(partsList.toArray(new String[0]));
+              GameLoop.getGameLoop().submit(() -> c.execute(consolePlayer, params));
             } else {
               System.out.println("Invalid command.");
             }
           } else {
-            World.getWorld().broadcast("(Console) &e" + message);
+            GameLoop.getGameLoop()
+                .submit(() -> World.getWorld().broadcast("(Console) &e" + message));
             System.out.println(message);
           }
         }
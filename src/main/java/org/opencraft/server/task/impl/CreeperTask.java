@@ -61,7 +61,7 @@ public class CreeperTask extends ScheduledTask {
     this.invoker = invoker;
     this.level = level;
 
-    float creeperTime = GameSettings.getFloat("CreeperTime");
+    float creeperTime = GameSettings.CREEPER_TIME.get();
     if (creeperTime > 0.0f) {
       this.setDelay((long)(1000 * creeperTime));
     }
@@ -86,7 +86,7 @@ public class CreeperTask extends ScheduledTask {
   }
 
   private void doCreeper() {
-    int radius = GameSettings.getInt("CreeperRadius");
+    int radius = GameSettings.CREEPER_RADIUS.get();
     if (radius < 0) {
       radius = 0;
     }
@@ -0,0 +1,22 @@
+package org.opencraft.server.task.impl;
+
+import org.opencraft.server.net.OutboundBatch;
+import org.opencraft.server.task.ScheduledTask;
+
+/**
+ * Writes packets sent from outside the tick, such as by commands or <code>SimulationTask</code>,
+ * without making them wait for the next <code>UpdateTask</code>.
+ */
+public class FlushTask extends ScheduledTask {
+
+  private static final long DELAY = 50;
+
+  public FlushTask() {
+    super(DELAY);
+  }
+
+  @Override
+  public void execute() {
+    OutboundBatch.flushAll();
+  }
+}
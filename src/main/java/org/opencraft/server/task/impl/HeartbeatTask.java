@@ -93,7 +93,7 @@ public class HeartbeatTask extends ScheduledTask {
     new Thread(
             new Runnable() {
               public void run() {
-                if (!GameSettings.getBoolean("Tournament"))
+                if (!GameSettings.TOURNAMENT.get())
                   Server.httpGet(
                       Constants.URL_SERVER_STATUS
                           + "?status[players]="
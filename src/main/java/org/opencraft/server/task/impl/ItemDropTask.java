@@ -40,8 +40,16 @@ import org.opencraft.server.game.impl.CTFGameMode;
 import org.opencraft.server.game.impl.GameSettings;
 import org.opencraft.server.model.DropItem;
 import org.opencraft.server.model.World;
+import org.opencraft.server.task.ScheduledTask;
+
+public class ItemDropTask extends ScheduledTask {
+
+  private static final long DELAY = 5 * 60 * 1000;
+
+  public ItemDropTask() {
+    super(DELAY);
+  }
 
-public class ItemDropTask implements Runnable {
   private void dropItem() {
     int points;
     double r = Math.random();
@@ -50,16 +58,10 @@ public class ItemDropTask implements Runnable {
     else points = 50;
     if (World.getWorld().getGameMode().ready
         && World.getWorld().getPlayerList().size() >= 2
-        && !GameSettings.getBoolean("Tournament")) new DropItem(points);
+        && !GameSettings.TOURNAMENT.get()) new DropItem(points);
   }
 
-  public void run() {
-    while (true) {
-      try {
-        Thread.sleep(5 * 60 * 1000);
-        dropItem();
-      } catch (InterruptedException ex) {
-      }
-    }
+  public void execute() {
+    dropItem();
   }
 }
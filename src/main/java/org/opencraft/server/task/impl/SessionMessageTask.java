@@ -37,8 +37,10 @@
 package org.opencraft.server.task.impl;
 
 import org.apache.mina.core.session.IoSession;
+import org.opencraft.server.model.World;
 import org.opencraft.server.net.MinecraftSession;
 import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.PacketView;
 import org.opencraft.server.task.Task;
 
 /**
@@ -67,8 +69,19 @@ public final class SessionMessageTask implements Task {
 
   @Override
   public void execute() {
-    if (session.getAttribute("attachment") != null) {
-      ((MinecraftSession) session.getAttribute("attachment")).handle(packet);
+    try {
+      MinecraftSession attachment = (MinecraftSession) session.getAttribute("attachment");
+      if (attachment != null) {
+        attachment.handle(packet);
+        // replies shouldn't wait for the end of the tick
+        World.getWorld().getLevel().flushBlockChanges();
+        attachment.flush();
+      }
+    } finally {
+      // the view is refilled with the next packet of its type, so handlers can't keep it
+      if (packet instanceof PacketView) {
+        ((PacketView) packet).release();
+      }
     }
   }
 }
@@ -0,0 +1,121 @@
+package org.opencraft.server.task.impl;
+
+import org.opencraft.server.Server;
+import org.opencraft.server.game.Projectile;
+import org.opencraft.server.model.BlockBatch;
+import org.opencraft.server.model.Level;
+import org.opencraft.server.model.World;
+import org.opencraft.server.task.ScheduledTask;
+import org.opencraft.server.task.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Steps every projectile in flight and runs delayed game actions, on one fixed-rate tick. This
+ * replaces starting a thread per rocket, grenade or timer, so the number of threads doesn't grow
+ * with player activity. The block changes made by all projectiles in a tick are sent together.
+ */
+public final class SimulationTask extends ScheduledTask {
+
+  /** The length of a tick, in milliseconds. */
+  public static final long DELAY = 25;
+
+  /** The number of slots in the timing wheel, enough for about 25 seconds per turn. */
+  private static final int WHEEL_SLOTS = 1024;
+
+  /** The singleton instance. */
+  private static final SimulationTask INSTANCE = new SimulationTask();
+
+  /** Projectiles launched since the last tick. */
+  private final Queue<Projectile> launched = new ConcurrentLinkedQueue<>();
+
+  /** Projectiles in flight. */
+  private final List<Projectile> projectiles = new ArrayList<>();
+
+  private final TimingWheel timers = new TimingWheel(DELAY, WHEEL_SLOTS);
+
+  private BlockBatch blocks;
+
+  private SimulationTask() {
+    super(DELAY);
+  }
+
+  /**
+   * Gets the simulation task instance.
+   *
+   * @return The simulation task instance.
+   */
+  public static SimulationTask getSimulationTask() {
+    return INSTANCE;
+  }
+
+  /**
+   * Launches a projectile. It takes its first step on the next tick.
+   *
+   * @param projectile The projectile.
+   */
+  public void launch(Projectile projectile) {
+    launched.add(projectile);
+  }
+
+  /**
+   * Runs an action on the simulation thread after a delay.
+   *
+   * @param action The action.
+   * @param delay The delay, in milliseconds.
+   * @return The timeout, which can be used to cancel the action.
+   */
+  public TimingWheel.Timeout schedule(Runnable action, long delay) {
+    return timers.schedule(action, delay);
+  }
+
+  /**
+   * Runs an action on the simulation thread repeatedly until it is cancelled.
+   *
+   * @param action The action.
+   * @param delay The delay before the first run, in milliseconds.
+   * @param period The delay between runs, in milliseconds.
+   * @return The timeout, which can be used to cancel the action.
+   */
+  public TimingWheel.Timeout schedule(Runnable action, long delay, long period) {
+    return timers.schedule(action, delay, period);
+  }
+
+  public int getProjectileCount() {
+    return projectiles.size();
+  }
+
+  @Override
+  public void execute() {
+    Level level = World.getWorld().getLevel();
+    if (blocks == null || blocks.getLevel() != level) {
+      blocks = new BlockBatch(level);
+    }
+    Projectile projectile;
+    while ((projectile = launched.poll()) != null) {
+      projectiles.add(projectile);
+    }
+    for (int i = projectiles.size() - 1; i >= 0; i--) {
+      boolean alive;
+      try {
+        alive = projectiles.get(i).tick(blocks);
+      } catch (Throwable t) {
+        Server.log(t);
+        alive = false;
+      }
+      if (!alive) {
+        projectiles.set(i, projectiles.get(projectiles.size() - 1));
+        projectiles.remove(projectiles.size() - 1);
+      }
+    }
+    try {
+      blocks.flush();
+    } catch (Throwable t) {
+      Server.log(t);
+    }
+    timers.advance();
+  }
+}
@@ -55,7 +55,7 @@ public class TNTTask extends ScheduledTask {
     this.invoker = invoker;
     this.level = level;
 
-    this.setDelay((long)(1000 * GameSettings.getFloat("TNTTime")));
+    this.setDelay((long)(1000 * GameSettings.TNT_TIME.get()));
   }
 
   public void execute() {
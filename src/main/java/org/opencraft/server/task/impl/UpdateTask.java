@@ -38,13 +38,14 @@ package org.opencraft.server.task.impl;
 
 import org.opencraft.server.Server;
 import org.opencraft.server.model.Entity;
+import org.opencraft.server.model.EntityTracker;
 import org.opencraft.server.model.Player;
 import org.opencraft.server.model.World;
 import org.opencraft.server.net.FakePlayerBase;
+import org.opencraft.server.net.OutboundBatch;
 import org.opencraft.server.replay.ReplayManager;
 import org.opencraft.server.task.ScheduledTask;
 
-import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Set;
 
@@ -58,6 +59,9 @@ public class UpdateTask extends ScheduledTask {
   /** The delay. */
   private static final long DELAY = 150;
 
+  /** The number of updates so far, for spreading out the updates of far entities. */
+  private long ticks;
+
   /** Creates the update task with a delay of 100ms. */
   public UpdateTask() {
     super(DELAY);
@@ -68,7 +72,10 @@ public class UpdateTask extends ScheduledTask {
     final World world = World.getWorld();
     world.getGameMode().tick();
     List<Player> players = world.getPlayerList().getPlayers(true);
+    EntityTracker.Distances distances = EntityTracker.Distances.fromSettings();
+    ticks++;
     for (Player player : players) {
+      EntityTracker tracker = player.getTracker();
       Set<Entity> le = player.getLocalEntities();
       Object[] localEntities = le.toArray();
       for (Object object : localEntities) {
@@ -78,9 +85,12 @@ public class UpdateTask extends ScheduledTask {
           if (localEntity instanceof Player)
             player.getSession().getActionSender().sendRemovePlayer((Player) localEntity);
           else player.getSession().getActionSender().sendRemoveEntity(localEntity);
-          Server.d("Removing " + localEntity.getName() + " from " + player.getName());
+          tracker.forget(localEntity);
+          if (Server.isDebug()) {
+            Server.d("Removing " + localEntity.getName() + " from " + player.getName());
+          }
         } else {
-          player.getSession().getActionSender().sendUpdateEntity(localEntity);
+          tracker.update(localEntity, ticks, distances);
         }
       }
       Player camera = FakePlayerBase.CAMERA_MAN;
@@ -88,8 +98,10 @@ public class UpdateTask extends ScheduledTask {
         for (Player otherEntity : players) {
           if (otherEntity != camera && !le.contains(otherEntity) && otherEntity != player) {
             le.add(otherEntity);
-            player.getSession().getActionSender().sendAddPlayer(otherEntity, false);
-            Server.d("Adding " + otherEntity.getName() + " to " + player.getName());
+            tracker.added(otherEntity, distances);
+            if (Server.isDebug()) {
+              Server.d("Adding " + otherEntity.getName() + " to " + player.getName());
+            }
           }
         }
       }
@@ -102,10 +114,8 @@ public class UpdateTask extends ScheduledTask {
     for (Player player : world.getPlayerList().getPlayers()) {
       player.resetOldPositionAndRotation();
     }
-    try {
-      world.getLevel().applyBlockBehaviour();
-    } catch (ConcurrentModificationException ex) {
-      Server.log(ex);
-    }
+    world.getLevel().applyBlockBehaviour();
+    OutboundBatch.flushAll();
+    OutboundBatch.endTick();
   }
 }
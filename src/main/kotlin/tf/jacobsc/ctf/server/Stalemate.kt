@@ -2,9 +2,10 @@ package tf.jacobsc.ctf.server
 
 import org.opencraft.server.game.impl.CTFGameMode
 import org.opencraft.server.model.World
-import kotlin.concurrent.thread
+import org.opencraft.server.task.TimingWheel
+import org.opencraft.server.task.impl.SimulationTask
 
-fun staleMateThread(world: World, seconds: Int) =
+fun staleMateTimer(world: World, seconds: Int) =
     world.timedAnnouncer({ "- &e$it seconds remaining until the stalemate ends!" }, seconds) {
         val gameMode = world.gameMode as CTFGameMode
         world.playerList.players.forEach { player ->
@@ -16,28 +17,42 @@ fun staleMateThread(world: World, seconds: Int) =
         gameMode.returnDroppedBlueFlag()
     }
 
-fun World.timedAnnouncer(announcement: (Long) -> String?, seconds: Int, action: () -> Unit) = thread {
-    try {
-        var remainingTime = seconds.toLong()
-
-        while (remainingTime >= 40) {
-            broadcast(announcement(remainingTime) ?: return@thread)
-            remainingTime -= 30
-            Thread.sleep(30 * 1000)
-        }
-
-        broadcast(announcement(remainingTime) ?: return@thread)
-        val toSleep = (remainingTime - 10).coerceAtLeast(0)
-        remainingTime -= toSleep
-        if (toSleep > 0) {
-            Thread.sleep(toSleep * 1000)
-            broadcast(announcement(remainingTime) ?: return@thread)
+/**
+ * Counts down from [seconds], announcing every 30 seconds and at 10 seconds, then runs [action].
+ * The countdown stops early if [announcement] returns null or the returned timeout is cancelled.
+ */
+fun World.timedAnnouncer(announcement: (Long) -> String?, seconds: Int, action: () -> Unit): TimingWheel.Timeout {
+    val announceAt = announcementTimes(seconds.toLong())
+    var remainingTime = seconds.toLong()
+    lateinit var timeout: TimingWheel.Timeout
+    timeout = SimulationTask.getSimulationTask().schedule(Runnable {
+        if (remainingTime in announceAt) {
+            val message = announcement(remainingTime)
+            if (message == null) {
+                timeout.cancel()
+                return@Runnable
+            }
+            broadcast(message)
         }
-        Thread.sleep(remainingTime.coerceAtLeast(0) * 1000)
-
-        if (!Thread.currentThread().isInterrupted) {
+        if (remainingTime <= 0) {
+            timeout.cancel()
             action()
         }
-    } catch (_: InterruptedException) {
+        remainingTime--
+    }, 0, 1000)
+    return timeout
+}
+
+private fun announcementTimes(seconds: Long): Set<Long> {
+    val times = HashSet<Long>()
+    var remainingTime = seconds
+    while (remainingTime >= 40) {
+        times.add(remainingTime)
+        remainingTime -= 30
+    }
+    times.add(remainingTime)
+    if (remainingTime > 10) {
+        times.add(10)
     }
+    return times
 }
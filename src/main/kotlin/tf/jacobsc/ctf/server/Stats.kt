@@ -2,13 +2,15 @@ package tf.jacobsc.ctf.server
 
 import org.opencraft.server.model.World
 import org.opencraft.server.persistence.SavePersistenceRequest
-import java.io.IOException
+import org.opencraft.server.persistence.SavedGameManager
 
+/**
+ * Saves every player's stats. Each player's attributes are copied straight away and the saves are
+ * written later by the persistence thread, so this never blocks.
+ */
 fun savePlayerStats(world: World) {
+    val manager = SavedGameManager.getSavedGameManager()
     for (p in world.playerList.players) {
-        try {
-            SavePersistenceRequest(p).perform()
-        } catch (ex: IOException) {
-        }
+        manager.queuePersistenceRequest(SavePersistenceRequest(p))
     }
 }
@@ -6,6 +6,7 @@ import org.opencraft.server.cmd.CommandParameters
 import org.opencraft.server.game.impl.GameSettings
 import org.opencraft.server.model.Player
 import org.opencraft.server.model.World
+import org.opencraft.server.task.impl.SimulationTask
 import tf.jacobsc.ctf.server.timedAnnouncer
 import tf.jacobsc.utils.matchQuality
 
@@ -16,7 +17,7 @@ object StartCommand : Command {
             return
         }
 
-        if (!GameSettings.getBoolean("Tournament")) {
+        if (!GameSettings.TOURNAMENT.get()) {
             player.actionSender.sendChatMessage("Tournament mode must be activated.")
             return
         }
@@ -70,10 +71,11 @@ object StartCommand : Command {
                 }
             }
 
-            Thread.sleep(250)
-            world.gameMode.tournamentGameStarted = true
-            world.gameMode.gameStartTime = System.currentTimeMillis()
-            world.broadcast("- &aThe game has started!")
+            SimulationTask.getSimulationTask().schedule({
+                world.gameMode.tournamentGameStarted = true
+                world.gameMode.gameStartTime = System.currentTimeMillis()
+                world.broadcast("- &aThe game has started!")
+            }, 250)
         }
         World.getWorld().broadcast("- &aGame is rated. Game quality is $quality%")
     }
@@ -39,7 +39,7 @@ object TeamsCommand : Command {
             return false
         }
 
-        if (!GameSettings.getBoolean("Tournament")) {
+        if (!GameSettings.TOURNAMENT.get()) {
             player.actionSender.sendChatMessage("Must be in tournament mode for that.")
             return false
         }
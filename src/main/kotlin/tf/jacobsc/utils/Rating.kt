@@ -35,7 +35,7 @@ fun Rating.displayFullRating(): String {
 }
 
 fun Player.checkForTeamAbandonment() {
-    val isTournament = GameSettings.getBoolean("Tournament")
+    val isTournament = GameSettings.TOURNAMENT.get()
     val gameIsRunning =
         World.getWorld().gameMode.tournamentGameStarted && !World.getWorld().gameMode.voting
     val playerWasOnATeam = team >= 0
@@ -0,0 +1,46 @@
+package org.opencraft.server.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+class RegionDeflaterTest {
+  private static byte[] inflate(byte[] compressed, int length) throws DataFormatException {
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(compressed);
+    byte[] result = new byte[length];
+    int read = 0;
+    while (!inflater.finished()) {
+      read += inflater.inflate(result, read, result.length - read);
+    }
+    inflater.end();
+    assertEquals(length, read);
+    return result;
+  }
+
+  @Test
+  void splicedStreamInflatesToSource() throws DataFormatException {
+    byte[] source = new byte[RegionDeflater.REGION_SIZE * 3 + 123];
+    new Random(1).nextBytes(source);
+    RegionDeflater deflater = new RegionDeflater(source);
+    assertArrayEquals(source, inflate(deflater.getCompressed(), source.length));
+    assertEquals(4, deflater.getLastRegionsCompressed());
+  }
+
+  @Test
+  void onlyDirtyRegionsAreRecompressed() throws DataFormatException {
+    byte[] source = new byte[RegionDeflater.REGION_SIZE * 4];
+    RegionDeflater deflater = new RegionDeflater(source);
+    byte[] first = deflater.getCompressed();
+    assertSame(first, deflater.getCompressed());
+    assertEquals(0, deflater.getLastRegionsCompressed());
+
+    source[RegionDeflater.REGION_SIZE * 2 + 5] = 42;
+    deflater.markDirty(RegionDeflater.REGION_SIZE * 2 + 5);
+    byte[] second = deflater.getCompressed();
+    assertEquals(1, deflater.getLastRegionsCompressed());
+    assertArrayEquals(source, inflate(second, source.length));
+  }
+}
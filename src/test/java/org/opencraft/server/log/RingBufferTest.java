@@ -0,0 +1,67 @@
+package org.opencraft.server.log;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class RingBufferTest {
+  @Test
+  void dropsWhenFull() {
+    RingBuffer<String> buffer = new RingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer("line " + i));
+    }
+    assertFalse(buffer.offer("line 4"));
+    assertEquals(1, buffer.takeDropped());
+    assertEquals(0, buffer.takeDropped());
+
+    assertEquals("line 0", buffer.poll());
+    assertTrue(buffer.offer("line 5"));
+    assertEquals("line 1", buffer.poll());
+    assertEquals("line 2", buffer.poll());
+    assertEquals("line 3", buffer.poll());
+    assertEquals("line 5", buffer.poll());
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  void keepsEachThreadsOrder() throws InterruptedException {
+    int threads = 4;
+    int lines = 20000;
+    RingBuffer<int[]> buffer = new RingBuffer<>(256);
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      Thread producer =
+          new Thread(
+              () -> {
+                for (int i = 0; i < lines; i++) {
+                  while (!buffer.offer(new int[] {thread, i})) {
+                    Thread.yield();
+                  }
+                }
+              });
+      producers.add(producer);
+      producer.start();
+    }
+
+    int[] next = new int[threads];
+    int taken = 0;
+    while (taken < threads * lines) {
+      int[] line = buffer.poll();
+      if (line == null) {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(next[line[0]], line[1]);
+      next[line[0]]++;
+      taken++;
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertNull(buffer.poll());
+  }
+}
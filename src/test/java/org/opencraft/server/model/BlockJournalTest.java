@@ -0,0 +1,70 @@
+package org.opencraft.server.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class BlockJournalTest {
+  @Test
+  void sendsEachChangedBlockOnce() {
+    int[] blocks = new int[64 * 64 * 64];
+    BlockJournal journal = new BlockJournal(blocks.length);
+
+    // a radius 2 crater, with the middle block changed twice
+    int changes = 0;
+    for (int x = 8; x <= 12; x++) {
+      for (int y = 8; y <= 12; y++) {
+        for (int z = 8; z <= 12; z++) {
+          int index = (z * 64 + y) * 64 + x;
+          journal.record(index, 1);
+          blocks[index] = 0;
+          changes++;
+        }
+      }
+    }
+    int middle = (10 * 64 + 10) * 64 + 10;
+    journal.record(middle, 0);
+    blocks[middle] = 46;
+
+    int[] changed = journal.drain(index -> blocks[index]);
+    assertEquals(125, changes);
+    assertEquals(125, changed.length);
+    assertTrue(journal.isEmpty());
+  }
+
+  @Test
+  void skipsBlocksChangedBack() {
+    int[] blocks = new int[16];
+    BlockJournal journal = new BlockJournal(blocks.length);
+    journal.record(3, 0);
+    journal.record(3, 20);
+    journal.record(5, 0);
+    blocks[5] = 20;
+
+    assertArrayEquals(new int[] {5}, journal.drain(index -> blocks[index]));
+    assertEquals(0, journal.drain(index -> blocks[index]).length);
+  }
+
+  @Test
+  void dropsBlocksWhichEndUpAsTheyWere() {
+    int[] blocks = new int[64 * 64 * 64];
+    BlockJournal journal = new BlockJournal(blocks.length);
+
+    // enough blocks for a bulk update, each going A to B and back to A a few times
+    for (int index = 0; index < 64; index++) {
+      for (int i = 0; i < 3; i++) {
+        journal.record(index, blocks[index]);
+        blocks[index] = 20;
+        journal.record(index, blocks[index]);
+        blocks[index] = 0;
+      }
+    }
+    // and one which goes A to B to A to C
+    journal.record(100, 0);
+    journal.record(100, 20);
+    journal.record(100, 0);
+    blocks[100] = 46;
+
+    assertArrayEquals(new int[] {100}, journal.drain(index -> blocks[index]));
+    assertTrue(journal.isEmpty());
+  }
+}
@@ -0,0 +1,171 @@
+package org.opencraft.server.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EntityTrackerTest {
+  private static final EntityTracker.Distances DISTANCES = new EntityTracker.Distances(64, 32);
+
+  private static final class TestEntity extends Entity {
+    TestEntity(int id) {
+      setId(id);
+    }
+
+    void moveTo(int blocksX) {
+      setPosition(new Position(blocksX * 32, 64 * 32, 0));
+    }
+
+    @Override
+    public String getName() {
+      return "test";
+    }
+
+    @Override
+    public String getColoredName() {
+      return "test";
+    }
+  }
+
+  private static final class RecordingSender implements EntityTracker.Sender {
+    final List<String> sent = new ArrayList<>();
+
+    @Override
+    public void spawn(Entity entity) {
+      sent.add("spawn");
+    }
+
+    @Override
+    public void despawn(Entity entity) {
+      sent.add("despawn");
+    }
+
+    @Override
+    public void list(Entity entity) {
+      sent.add("list");
+    }
+
+    @Override
+    public void move(Entity entity, Position from) {
+      sent.add(from == null ? "teleport" : "move");
+    }
+  }
+
+  @Test
+  void removesAndSpawnsAtDifferentDistances() {
+    TestEntity viewer = new TestEntity(1);
+    viewer.moveTo(0);
+    TestEntity other = new TestEntity(2);
+    other.moveTo(10);
+    RecordingSender sender = new RecordingSender();
+    EntityTracker tracker = new EntityTracker(viewer, sender);
+    tracker.spawned(other);
+
+    // between the view distance and the margin it stays spawned
+    other.moveTo(70);
+    tracker.update(other, 1, DISTANCES);
+    assertTrue(tracker.isSpawned(other));
+    other.moveTo(90);
+    tracker.update(other, 2, DISTANCES);
+    assertFalse(tracker.isSpawned(other));
+    assertEquals("despawn", sender.sent.get(sender.sent.size() - 1));
+
+    // and it has to come back within the view distance to be spawned again
+    other.moveTo(70);
+    tracker.update(other, 3, DISTANCES);
+    assertFalse(tracker.isSpawned(other));
+    other.moveTo(60);
+    tracker.update(other, 4, DISTANCES);
+    assertTrue(tracker.isSpawned(other));
+    assertEquals("spawn", sender.sent.get(sender.sent.size() - 1));
+  }
+
+  @Test
+  void onlySpawnsNewEntitiesWithinTheViewDistance() {
+    TestEntity viewer = new TestEntity(1);
+    viewer.moveTo(0);
+    TestEntity near = new TestEntity(2);
+    near.moveTo(10);
+    TestEntity far = new TestEntity(3);
+    far.moveTo(100);
+    RecordingSender sender = new RecordingSender();
+    EntityTracker tracker = new EntityTracker(viewer, sender);
+
+    tracker.added(near, DISTANCES);
+    tracker.added(far, DISTANCES);
+    assertEquals(List.of("spawn", "list"), sender.sent);
+    assertTrue(tracker.isSpawned(near));
+    assertFalse(tracker.isSpawned(far));
+
+    // the far one is spawned once it comes close, without being removed first
+    far.moveTo(60);
+    tracker.update(far, 1, DISTANCES);
+    assertEquals(List.of("spawn", "list", "spawn"), sender.sent);
+    assertTrue(tracker.isSpawned(far));
+  }
+
+  @Test
+  void listsNewEntitiesBeyondTheViewDistance() {
+    TestEntity viewer = new TestEntity(1);
+    viewer.moveTo(0);
+    TestEntity far = new TestEntity(2);
+    far.moveTo(500);
+    RecordingSender sender = new RecordingSender();
+    EntityTracker tracker = new EntityTracker(viewer, sender);
+
+    // a player far away when someone joins is still in their tab list
+    tracker.added(far, DISTANCES);
+    assertEquals(List.of("list"), sender.sent);
+    for (int tick = 0; tick < 3; tick++) {
+      tracker.update(far, tick, DISTANCES);
+    }
+    assertEquals(List.of("list"), sender.sent);
+    assertFalse(tracker.isSpawned(far));
+  }
+
+  @Test
+  void updatesFarEntitiesLessOften() {
+    TestEntity viewer = new TestEntity(1);
+    viewer.moveTo(0);
+    TestEntity near = new TestEntity(2);
+    near.moveTo(10);
+    TestEntity far = new TestEntity(3);
+    far.moveTo(50);
+    RecordingSender nearSender = new RecordingSender();
+    RecordingSender farSender = new RecordingSender();
+    EntityTracker nearTracker = new EntityTracker(viewer, nearSender);
+    EntityTracker farTracker = new EntityTracker(viewer, farSender);
+    nearTracker.spawned(near);
+    farTracker.spawned(far);
+
+    for (int tick = 0; tick < 6; tick++) {
+      near.moveTo(10 + (tick + 1) % 2);
+      far.moveTo(50 + (tick + 1) % 2);
+      nearTracker.update(near, tick, DISTANCES);
+      farTracker.update(far, tick, DISTANCES);
+    }
+    assertEquals(6, nearSender.sent.size());
+    assertEquals(6 / EntityTracker.FAR_INTERVAL, farSender.sent.size());
+    assertEquals("move", nearSender.sent.get(0));
+  }
+
+  @Test
+  void leavesHiddenEntitiesAlone() {
+    TestEntity viewer = new TestEntity(1);
+    TestEntity other = new TestEntity(2);
+    RecordingSender sender = new RecordingSender();
+    EntityTracker tracker = new EntityTracker(viewer, sender);
+    tracker.hidden(other);
+    other.moveTo(1);
+    tracker.update(other, 1, DISTANCES);
+    assertTrue(sender.sent.isEmpty());
+
+    // the camera man sees everything, with absolute positions
+    tracker.spawned(other);
+    tracker.setTrackingAll(true);
+    other.moveTo(500);
+    tracker.update(other, 2, DISTANCES);
+    assertEquals(List.of("teleport"), sender.sent);
+  }
+}
@@ -0,0 +1,43 @@
+package org.opencraft.server.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class PhysicsQueueTest {
+  @Test
+  void queuesEachBlockOncePerTick() {
+    PhysicsQueue queue = new PhysicsQueue(1000);
+    assertTrue(queue.add(5));
+    assertTrue(queue.add(7));
+    assertFalse(queue.add(5));
+
+    IntQueue updates = queue.swap();
+    // queued again while this tick's updates are processed, so it runs next tick
+    assertTrue(queue.add(5));
+    assertEquals(5, updates.poll());
+    assertEquals(7, updates.poll());
+    assertEquals(IntQueue.EMPTY, updates.poll());
+
+    updates = queue.swap();
+    assertEquals(5, updates.poll());
+    assertEquals(IntQueue.EMPTY, updates.poll());
+  }
+
+  @Test
+  void ringBufferGrowsInOrder() {
+    IntQueue queue = new IntQueue(4);
+    for (int i = 0; i < 3; i++) {
+      queue.add(i);
+    }
+    queue.poll();
+    // wraps around the end of the buffer, then grows
+    for (int i = 3; i < 40; i++) {
+      queue.add(i);
+    }
+    assertEquals(39, queue.size());
+    for (int i = 1; i < 40; i++) {
+      assertEquals(i, queue.poll());
+    }
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -0,0 +1,54 @@
+package org.opencraft.server.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SpatialIndexTest {
+  @Test
+  void findsPointsInBox() {
+    SpatialIndex<String> index = new SpatialIndex<>();
+    index.put("a", 10, 10, 10);
+    index.put("b", 100, 10, 10);
+    index.put("c", 12, 9, 11);
+
+    List<String> found = index.query(9, 9, 9, 12, 12, 12);
+    assertEquals(2, found.size());
+    assertTrue(found.contains("a"));
+    assertTrue(found.contains("c"));
+    assertEquals(List.of("b"), index.query(100, 10, 10));
+  }
+
+  @Test
+  void movesBetweenCells() {
+    SpatialIndex<String> index = new SpatialIndex<>();
+    index.put("a", 1, 1, 1);
+    index.move("a", 40, 1, 1);
+    assertTrue(index.query(1, 1, 1).isEmpty());
+    assertEquals(List.of("a"), index.query(40, 1, 1));
+
+    // objects which were never added aren't indexed by a move
+    index.move("b", 40, 1, 1);
+    assertEquals(1, index.size());
+
+    index.remove("a");
+    assertTrue(index.query(40, 1, 1).isEmpty());
+  }
+
+  @Test
+  void boxesSpanningCellsAreReturnedOnce() {
+    SpatialIndex<String> index = new SpatialIndex<>();
+    index.put("zone", 0, 0, 0, 30, 30, 30);
+    assertEquals(List.of("zone"), index.query(0, 0, 0, 30, 30, 30));
+    assertEquals(List.of("zone"), index.query(25, 3, 17));
+    assertTrue(index.query(31, 3, 17).isEmpty());
+  }
+
+  @Test
+  void radiusIsMeasuredToNearestPoint() {
+    SpatialIndex<String> index = new SpatialIndex<>();
+    index.put("near", 3, 4, 0);
+    index.put("far", 4, 4, 0);
+    assertEquals(List.of("near"), index.queryRadius(0, 0, 0, 5));
+  }
+}
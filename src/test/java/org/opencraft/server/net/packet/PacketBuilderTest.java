@@ -0,0 +1,49 @@
+package org.opencraft.server.net.packet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PacketBuilderTest {
+  private static final PacketDefinition DEFINITION = new PacketDefinition(42, "test",
+      new PacketField[]{
+          new PacketField("byte", DataType.BYTE),
+          new PacketField("short", DataType.SHORT),
+          new PacketField("int", DataType.INT),
+          new PacketField("long", DataType.LONG),
+          new PacketField("string", DataType.STRING),
+          new PacketField("array", DataType.BYTE_ARRAY_256)
+      });
+
+  @Test
+  void encodesLikeFieldMap() {
+    String string = "&eHello é░ world";
+    byte[] array = new byte[]{1, 2, 3};
+    Packet packet = new PacketBuilder(DEFINITION)
+        .putByte("byte", -3)
+        .putShort("short", 1000)
+        .putInt("int", -123456)
+        .putLong("long", 1L << 40)
+        .putString("string", string)
+        .putByteArray256("array", array)
+        .toPacket();
+
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("byte", (byte) -3);
+    fields.put("short", (short) 1000);
+    fields.put("int", -123456);
+    fields.put("long", 1L << 40);
+    fields.put("string", string);
+    fields.put("array", array);
+    assertArrayEquals(new Packet(DEFINITION, fields).toByteArray(), packet.toByteArray());
+    assertEquals(DEFINITION.getLength() + 1, packet.getLength());
+  }
+
+  @Test
+  void rejectsWrongFields() {
+    PacketBuilder builder = new PacketBuilder(DEFINITION);
+    assertThrows(IllegalArgumentException.class, () -> builder.putByte("missing", 0));
+    assertThrows(IllegalArgumentException.class, () -> builder.putShort("byte", 0));
+  }
+}
@@ -0,0 +1,64 @@
+package org.opencraft.server.net.packet.incoming;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import org.junit.jupiter.api.Test;
+import org.opencraft.server.net.packet.DataType;
+import org.opencraft.server.net.packet.PacketBuilder;
+import org.opencraft.server.net.packet.PacketDefinition;
+import org.opencraft.server.net.packet.PacketField;
+import org.opencraft.server.net.packet.PacketView;
+
+class MovementPacketTest {
+  private static final PacketDefinition DEFINITION = new PacketDefinition(8, "move_and_rotate",
+      new PacketField[]{
+          new PacketField("id", DataType.SHORT),
+          new PacketField("x", DataType.SHORT),
+          new PacketField("z", DataType.SHORT),
+          new PacketField("y", DataType.SHORT),
+          new PacketField("rotation", DataType.BYTE),
+          new PacketField("look", DataType.BYTE)
+      });
+
+  private static MovementPacket read(MovementPacket view, int x, int y, int z, int yaw, int pitch) {
+    byte[] bytes = new PacketBuilder(DEFINITION)
+        .putShort("id", 7)
+        .putShort("x", x)
+        .putShort("y", y)
+        .putShort("z", z)
+        .putByte("rotation", yaw)
+        .putByte("look", pitch)
+        .toPacket()
+        .toByteArray();
+    System.arraycopy(bytes, 1, view.getData(), 1, DEFINITION.getLength());
+    return view;
+  }
+
+  @Test
+  void readsFields() {
+    MovementPacket packet =
+        read(new MovementPacket(DEFINITION, new ArrayDeque<>()), 2048, -40, 1000, 200, -5);
+    assertEquals(7, packet.heldBlock());
+    assertEquals(2048, packet.x());
+    assertEquals(-40, packet.y());
+    assertEquals(1000, packet.z());
+    assertEquals((byte) 200, packet.yaw());
+    assertEquals(-5, packet.pitch());
+    // the boxed accessors still work for code that hasn't moved to the view
+    assertEquals((short) -40, packet.getNumericField("y"));
+    assertEquals((byte) -5, packet.getNumericField("look"));
+    assertNull(packet.getNumericField("missing"));
+  }
+
+  @Test
+  void reusedAfterRelease() {
+    Queue<PacketView> pool = new ArrayDeque<>();
+    MovementPacket packet = read(new MovementPacket(DEFINITION, pool), 1, 2, 3, 4, 5);
+    packet.release();
+    assertSame(packet, pool.poll());
+    read(packet, 10, 20, 30, 40, 50);
+    assertEquals(10, packet.x());
+    assertEquals(50, packet.pitch());
+  }
+}
@@ -0,0 +1,122 @@
+package org.opencraft.server.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+class PlayerStoreTest {
+  private static File tempFile() throws IOException {
+    File file = Files.createTempFile("players", ".dat").toFile();
+    file.delete();
+    file.deleteOnExit();
+    return file;
+  }
+
+  @Test
+  void keepsAttributesAcrossReopens() throws IOException {
+    File file = tempFile();
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("wins", 12);
+    attributes.put("kills", 40);
+    attributes.put("rank", "3");
+    attributes.put("IsOperator", "true");
+    attributes.put("tntParticles", false);
+    attributes.put("teamRatingMu", 27.5);
+
+    try (PlayerStore store = PlayerStore.open(file)) {
+      store.put("Jacob_", PlayerRecord.of(attributes));
+      assertEquals(1, store.commit());
+      assertEquals(0, store.commit());
+    }
+
+    try (PlayerStore store = PlayerStore.open(file)) {
+      assertTrue(store.contains("jacob_"));
+      assertNull(store.getIfCached("jacob_"));
+      PlayerRecord record = store.get("JACOB_");
+      assertEquals(12, record.get(PlayerRecord.Stat.WINS));
+      Map<String, Object> loaded = record.toAttributes();
+      assertEquals(40, loaded.get("kills"));
+      assertEquals("3", loaded.get("rank"));
+      assertEquals("true", loaded.get("IsOperator"));
+      assertEquals(false, loaded.get("tntParticles"));
+      assertEquals(27.5, loaded.get("teamRatingMu"));
+      assertEquals(0, loaded.get("captures"));
+      assertNull(store.get("someone"));
+    }
+  }
+
+  @Test
+  void skipsAttributesWhichAreObjects() throws IOException {
+    File file = tempFile();
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("wins", 3);
+    attributes.put("rank", "7");
+    // like a player's brush, which only lasts for the session
+    attributes.put("brush", new StringBuilder("brush"));
+
+    try (PlayerStore store = PlayerStore.open(file)) {
+      store.put("a", PlayerRecord.of(attributes));
+      store.commit();
+    }
+    try (PlayerStore store = PlayerStore.open(file)) {
+      Map<String, Object> loaded = store.get("a").toAttributes();
+      assertEquals(3, loaded.get("wins"));
+      assertEquals("7", loaded.get("rank"));
+      assertFalse(loaded.containsKey("brush"));
+    }
+    assertThrows(IllegalArgumentException.class, () -> new PlayerRecord().set("brush", this));
+  }
+
+  @Test
+  void dropsRecordLeftHalfWritten() throws IOException {
+    File file = tempFile();
+    try (PlayerStore store = PlayerStore.open(file)) {
+      PlayerRecord record = new PlayerRecord();
+      record.set(PlayerRecord.Stat.TAGS, 5);
+      store.put("a", record);
+      store.commit();
+      record = new PlayerRecord();
+      record.set(PlayerRecord.Stat.TAGS, 6);
+      store.put("a", record);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    try (PlayerStore store = PlayerStore.open(file)) {
+      assertEquals(5, store.get("a").get(PlayerRecord.Stat.TAGS));
+      PlayerRecord record = new PlayerRecord();
+      record.set(PlayerRecord.Stat.TAGS, 7);
+      store.put("a", record);
+    }
+    try (PlayerStore store = PlayerStore.open(file)) {
+      assertEquals(7, store.get("a").get(PlayerRecord.Stat.TAGS));
+    }
+  }
+
+  @Test
+  void compactsOldRecords() throws IOException {
+    File file = tempFile();
+    try (PlayerStore store = PlayerStore.open(file)) {
+      for (int i = 0; i < 2000; i++) {
+        PlayerRecord record = new PlayerRecord();
+        record.set(PlayerRecord.Stat.GAMES, i);
+        store.put("p" + (i % 10), record);
+        store.commit();
+      }
+    }
+    long before = file.length();
+
+    try (PlayerStore store = PlayerStore.open(file)) {
+      assertTrue(file.length() < before / 10);
+      assertEquals(10, store.size());
+      assertEquals(1999, store.get("p9").get(PlayerRecord.Stat.GAMES));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.opencraft.server.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class StatsUploaderTest {
+  private HttpServer server;
+  private URL url;
+  private File outbox;
+  private final List<String> requests = new ArrayList<>();
+  private volatile int status = 200;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/stats",
+        exchange -> {
+          String body =
+              new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+          synchronized (requests) {
+            requests.add(body);
+          }
+          // rank each player by their position in the batch
+          StringBuilder reply = new StringBuilder();
+          String[] lines = body.split("\n");
+          for (int i = 0; i < lines.length; i++) {
+            reply.append(i + 1).append('\n');
+          }
+          byte[] bytes = reply.toString().getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(status, bytes.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+          }
+        });
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/stats");
+    outbox = Files.createTempFile("stats-outbox", ".txt").toFile();
+    outbox.deleteOnExit();
+    new File(outbox.getPath() + ".failed").deleteOnExit();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  private static PlayerRecord stats(int wins) {
+    PlayerRecord record = new PlayerRecord();
+    record.set(PlayerRecord.Stat.WINS, wins);
+    return record;
+  }
+
+  @Test
+  void batchesAndCoalescesPlayers() throws IOException {
+    Map<String, Integer> ranks = new HashMap<>();
+    StatsUploader uploader = new StatsUploader(url, outbox, 3, ranks::put);
+    uploader.submit("a", stats(1));
+    uploader.submit("b", stats(1));
+    uploader.submit("A", stats(2));
+    uploader.submit("c", stats(1));
+    uploader.submit("d", stats(1));
+    assertEquals(4, uploader.getPending());
+
+    assertTrue(uploader.upload());
+    uploader.stop();
+    assertEquals(0, uploader.getPending());
+    synchronized (requests) {
+      assertEquals(2, requests.size());
+      assertEquals(3, requests.get(0).split("\n").length);
+      assertEquals(1, requests.get(1).split("\n").length);
+      // "a" was saved twice, but only their latest stats are posted
+      String[] lines = String.join("\n", requests).split("\n");
+      assertEquals(4, lines.length);
+      assertEquals("username=A&tags=0&wins=2&mines=0&explodes=0&captures=0&games=0", lines[1]);
+    }
+    assertEquals(4, ranks.size());
+    assertEquals(1, (int) ranks.get("d"));
+  }
+
+  @Test
+  void keepsFailedStatsAcrossRestarts() throws IOException {
+    status = 500;
+    StatsUploader uploader = new StatsUploader(url, outbox, 10, (name, rank) -> {});
+    uploader.submit("a", stats(1));
+    uploader.submit("b", stats(2));
+    assertFalse(uploader.upload());
+    uploader.stop();
+    assertEquals(2, uploader.getPending());
+
+    status = 200;
+    synchronized (requests) {
+      requests.clear();
+    }
+    StatsUploader restarted = new StatsUploader(url, outbox, 10, (name, rank) -> {});
+    assertEquals(2, restarted.getPending());
+    assertTrue(restarted.upload());
+    restarted.stop();
+    assertEquals(0, restarted.getPending());
+    synchronized (requests) {
+      assertEquals(1, requests.size());
+      assertTrue(requests.get(0).contains("username=b&tags=0&wins=2"));
+    }
+    assertEquals(0, Files.size(outbox.toPath()));
+  }
+}
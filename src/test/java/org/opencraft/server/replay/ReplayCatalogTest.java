@@ -0,0 +1,90 @@
+package org.opencraft.server.replay;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.opencraft.server.net.packet.UnparsedPacket;
+
+class ReplayCatalogTest {
+  private static File tempDirectory() throws IOException {
+    File directory = Files.createTempDirectory("replays").toFile();
+    directory.deleteOnExit();
+    return directory;
+  }
+
+  private static void writeReplay(File file, String map, int length) throws IOException {
+    try (ReplayFile replay = new ReplayFile(file)) {
+      replay.setReading(false);
+      replay.open();
+      replay.setMap(map);
+      replay.setRoundStartTimestamp(1000L);
+      replay.writeHeader();
+      for (int delta = 0; delta <= length; delta += 50) {
+        byte[] data = {8, 0, (byte) delta};
+        replay.writeChunk(new ReplayFile.ReplayChunk(delta, List.of(new UnparsedPacket(data))));
+      }
+    }
+    file.deleteOnExit();
+  }
+
+  @Test
+  void allocatesTheLowestFreeId() throws IOException {
+    ReplayCatalog catalog = new ReplayCatalog(tempDirectory());
+    assertEquals(1, catalog.allocateId(5, 3, 2026));
+    assertEquals(2, catalog.allocateId(5, 3, 2026));
+    assertEquals(1, catalog.allocateId(6, 3, 2026));
+
+    catalog.remove(catalog.get(5, 3, 2026, 1));
+    assertEquals(1, catalog.allocateId(5, 3, 2026));
+    assertEquals(3, catalog.allocateId(5, 3, 2026));
+  }
+
+  @Test
+  void rebuildsFromTheReplaysDirectory() throws IOException {
+    File directory = tempDirectory();
+    writeReplay(new File(directory, "05.03.2026_1.ltr"), "Canyon", 2000);
+    writeReplay(new File(directory, "05.03.2026_2_important.ltr"), "Castle", 500);
+    writeReplay(new File(directory, "06.03.2026_1.ltr"), "Canyon", 1000);
+    File stray = new File(directory, "notes.txt");
+    assertTrue(stray.createNewFile());
+
+    ReplayCatalog catalog = new ReplayCatalog(directory);
+    catalog.load();
+    assertFalse(stray.exists());
+
+    List<ReplayCatalog.Entry> day = catalog.list(5, 3, 2026);
+    assertEquals(2, day.size());
+    assertEquals("Canyon", day.get(0).map());
+    assertEquals(2000, day.get(0).durationMillis());
+    assertFalse(day.get(0).important());
+    assertTrue(day.get(1).important());
+    assertEquals("05.03.2026_2_important.ltr", day.get(1).getName());
+
+    List<ReplayCatalog.Entry> canyon = catalog.findByMap("canyon");
+    assertEquals(2, canyon.size());
+    assertEquals(6, canyon.get(0).day());
+    assertEquals(3, catalog.allocateId(5, 3, 2026));
+  }
+
+  @Test
+  void savedCatalogIsReadBackWithoutTheReplays() throws IOException {
+    File directory = tempDirectory();
+    File replay = new File(directory, "05.03.2026_1.ltr");
+    writeReplay(replay, "Canyon", 2000);
+    ReplayCatalog catalog = new ReplayCatalog(directory);
+    catalog.load();
+    catalog.setImportant(catalog.get(5, 3, 2026, 1));
+    assertTrue(replay.renameTo(new File(directory, "05.03.2026_1_important.ltr")));
+    catalog.save();
+    new File(directory, ReplayCatalog.CATALOG_FILENAME).deleteOnExit();
+
+    ReplayCatalog loaded = new ReplayCatalog(directory);
+    loaded.load();
+    assertEquals(catalog.getEntries(), loaded.getEntries());
+    assertTrue(loaded.get(5, 3, 2026, 1).important());
+  }
+}
@@ -0,0 +1,184 @@
+package org.opencraft.server.replay;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.UnparsedPacket;
+
+class ReplayFileTest {
+  private static File tempFile() throws IOException {
+    File file = Files.createTempFile("replay", ".ltr").toFile();
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static List<Packet> packets(int deltaMillis) {
+    List<Packet> packets = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      packets.add(new UnparsedPacket(new byte[] {8, (byte) i, (byte) (deltaMillis >> 8), 0, 32}));
+    }
+    return packets;
+  }
+
+  /** Writes a chunk every 50 ms for two minutes, with a keyframe every 30 seconds. */
+  private static void writeRound(File file) throws IOException {
+    ReplayFile replay = new ReplayFile(file);
+    replay.setReading(false);
+    replay.open();
+    replay.setMap("Canyon");
+    replay.setRoundStartTimestamp(1000L);
+    replay.setRecordingStartTimestamp(2000L);
+    replay.writeHeader();
+    for (int delta = 0; delta < 120_000; delta += 50) {
+      if (delta > 0 && delta % 30_000 == 0) {
+        byte[] snapshot = {2, (byte) (delta / 30_000)};
+        replay.writeKeyframe(delta, List.of(new UnparsedPacket(snapshot)));
+      }
+      replay.writeChunk(new ReplayFile.ReplayChunk(delta, packets(delta)));
+    }
+    replay.close();
+  }
+
+  private static ReplayFile read(File file) throws IOException {
+    ReplayFile replay = new ReplayFile(file);
+    replay.setReading(true);
+    replay.open();
+    replay.readHeader();
+    return replay;
+  }
+
+  @Test
+  void readsEveryChunkInOrderAndSkipsKeyframes() throws IOException {
+    File file = tempFile();
+    writeRound(file);
+
+    try (ReplayFile replay = read(file)) {
+      assertEquals(2, replay.getFileVersion());
+      assertEquals("Canyon", replay.getMap());
+      assertEquals(1000L, replay.getRoundStartTimestamp());
+      assertEquals(119_950, replay.getDurationMillis());
+      assertEquals(3, replay.getKeyframes().size());
+      int expected = 0;
+      while (replay.isNextChunkAvailable()) {
+        ReplayFile.ReplayChunk chunk = replay.readNextChunk();
+        assertEquals(expected, chunk.deltaMillis());
+        assertEquals(3, chunk.packets().size());
+        expected += 50;
+      }
+      assertEquals(120_000, expected);
+    }
+  }
+
+  @Test
+  void seeksToTheKeyframeBeforeATime() throws IOException {
+    File file = tempFile();
+    writeRound(file);
+
+    try (ReplayFile replay = read(file)) {
+      List<Packet> snapshot = replay.seek(75_000);
+      assertEquals(1, snapshot.size());
+      assertEquals(2, snapshot.get(0).toByteArray()[1]);
+      assertTrue(replay.isNextChunkAvailable());
+      assertEquals(60_000, replay.readNextChunk().deltaMillis());
+
+      assertTrue(replay.seek(10_000).isEmpty());
+      assertEquals(0, replay.readNextChunk().deltaMillis());
+    }
+  }
+
+  @Test
+  void findsKeyframesInARecordingWhichWasNotFinished() throws IOException {
+    File file = tempFile();
+    writeRound(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      // cut the file in the middle of the block after the second keyframe
+      ReplayFile replay = read(file);
+      long cut = replay.getKeyframes().get(1).offset() + 40;
+      replay.close();
+      raf.setLength(cut);
+    }
+
+    try (ReplayFile replay = read(file)) {
+      assertEquals(2, replay.getKeyframes().size());
+      int chunks = 0;
+      while (replay.isNextChunkAvailable()) {
+        assertEquals(chunks * 50, replay.readNextChunk().deltaMillis());
+        chunks++;
+      }
+      assertEquals(60_000 / 50, chunks);
+    }
+  }
+
+  @Test
+  void syncedChunksCanBeReadBeforeTheRecordingEnds() throws IOException {
+    File file = tempFile();
+    ReplayFile writer = new ReplayFile(file);
+    writer.setReading(false);
+    writer.open();
+    writer.setMap("Canyon");
+    writer.writeHeader();
+    for (int delta = 0; delta < 500; delta += 50) {
+      writer.writeChunk(new ReplayFile.ReplayChunk(delta, packets(delta)));
+    }
+    writer.sync();
+    writer.writeChunk(new ReplayFile.ReplayChunk(500, packets(500)));
+
+    try (ReplayFile replay = read(file)) {
+      int chunks = 0;
+      while (replay.isNextChunkAvailable()) {
+        replay.readNextChunk();
+        chunks++;
+      }
+      assertEquals(10, chunks);
+    }
+    writer.close();
+    try (ReplayFile replay = read(file)) {
+      assertEquals(500, replay.getDurationMillis());
+    }
+  }
+
+  @Test
+  void readsVersionOneFiles() throws IOException {
+    File file = tempFile();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      out.writeInt(ReplayFile.MAGIC);
+      out.writeInt(1);
+      byte[] map = "Canyon".getBytes(StandardCharsets.US_ASCII);
+      out.writeByte(map.length);
+      out.write(map);
+      out.writeLong(1000L);
+      out.writeLong(2000L);
+      for (int delta = 0; delta < 1000; delta += 100) {
+        out.writeInt(delta);
+        out.writeShort(1);
+        out.writeInt(2);
+        out.write(new byte[] {1, (byte) delta});
+      }
+    }
+
+    try (ReplayFile replay = read(file)) {
+      assertEquals(1, replay.getFileVersion());
+      assertEquals(-1, replay.getDurationMillis());
+      assertEquals(0, replay.readNextChunk().deltaMillis());
+      assertEquals(100, replay.readNextChunk().deltaMillis());
+
+      assertTrue(replay.seek(500).isEmpty());
+      int chunks = 0;
+      while (replay.isNextChunkAvailable()) {
+        assertEquals(chunks * 100, replay.readNextChunk().deltaMillis());
+        chunks++;
+      }
+      assertEquals(10, chunks);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.opencraft.server.replay;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.opencraft.server.net.packet.Packet;
+import org.opencraft.server.net.packet.UnparsedPacket;
+
+class ReplaySourceTest {
+  /** Writes a chunk every 50 ms for two minutes, with a keyframe every 30 seconds. */
+  private static ReplayFile writeRound() throws IOException {
+    File file = Files.createTempFile("replay", ".ltr").toFile();
+    file.deleteOnExit();
+    try (ReplayFile replay = new ReplayFile(file)) {
+      replay.setReading(false);
+      replay.open();
+      replay.setMap("Canyon");
+      replay.writeHeader();
+      for (int delta = 0; delta < 120_000; delta += 50) {
+        if (delta > 0 && delta % 30_000 == 0) {
+          byte[] snapshot = {2, (byte) (delta / 30_000)};
+          replay.writeKeyframe(delta, List.of(new UnparsedPacket(snapshot)));
+        }
+        byte[] data = {8, 0, (byte) (delta >> 8)};
+        replay.writeChunk(new ReplayFile.ReplayChunk(delta, List.of(new UnparsedPacket(data))));
+      }
+    }
+
+    ReplayFile replay = new ReplayFile(file);
+    replay.setReading(true);
+    replay.open();
+    replay.readHeader();
+    return replay;
+  }
+
+  @Test
+  void decodesOnlyAsFarAsRequested() throws IOException {
+    ReplaySource source = new ReplaySource(writeRound(), Runnable::run);
+    assertEquals(0, source.size());
+
+    source.prefetch(5_000);
+    assertTrue(source.isLoaded(5_000));
+    assertFalse(source.isLoaded(60_000));
+    assertFalse(source.isComplete());
+    assertEquals(100, source.indexOf(5_000));
+    assertEquals(5_000, source.get(100).deltaMillis());
+
+    source.prefetch(200_000);
+    assertTrue(source.isComplete());
+    assertEquals(2400, source.size());
+    assertEquals(2400, source.indexOf(200_000));
+    source.close();
+  }
+
+  @Test
+  void readsKeyframesOnceForEveryViewer() throws IOException {
+    ReplaySource source = new ReplaySource(writeRound(), Runnable::run);
+    ReplayFile.Keyframe keyframe = source.keyframeBefore(75_000);
+    assertEquals(60_000, keyframe.deltaMillis());
+    assertNull(source.keyframeBefore(10_000));
+
+    // the first viewer asks for it to be read, and the others get the same packets
+    assertNull(source.getKeyframe(keyframe));
+    List<Packet> packets = source.getKeyframe(keyframe);
+    assertEquals(2, packets.get(0).toByteArray()[1]);
+    assertSame(packets, source.getKeyframe(keyframe));
+
+    // reading a keyframe doesn't move the chunks on
+    source.prefetch(1_000);
+    assertEquals(0, source.get(0).deltaMillis());
+    source.close();
+  }
+
+  private static ReplayFile.ReplayChunk chunk(int delta, int opcode) {
+    byte[] data = {(byte) opcode};
+    return new ReplayFile.ReplayChunk(delta, List.of(new UnparsedPacket(data)));
+  }
+
+  @Test
+  void findsTheChunksAfterAKeyframeInTheSameMillisecond() throws IOException {
+    File file = Files.createTempFile("replay", ".ltr").toFile();
+    file.deleteOnExit();
+    try (ReplayFile replay = new ReplayFile(file)) {
+      replay.setReading(false);
+      replay.open();
+      replay.setMap("Canyon");
+      replay.writeHeader();
+      replay.writeChunk(chunk(0, 8));
+      // one move before the keyframe and one after it, recorded in the same millisecond
+      replay.writeChunk(chunk(500, 9));
+      replay.writeKeyframe(500, List.of(new UnparsedPacket(new byte[] {2})));
+      replay.writeChunk(chunk(500, 10));
+      replay.writeChunk(chunk(800, 11));
+    }
+    ReplayFile replay = new ReplayFile(file);
+    replay.setReading(true);
+    replay.open();
+    replay.readHeader();
+
+    ReplaySource source = new ReplaySource(replay, Runnable::run);
+    ReplayFile.Keyframe keyframe = source.keyframeBefore(600);
+    assertEquals(0, source.indexAfter(keyframe));
+    source.prefetch(1_000);
+    assertEquals(1, source.indexOf(500));
+    assertEquals(2, source.indexAfter(keyframe));
+    assertEquals(10, source.get(source.indexAfter(keyframe)).packets().get(0).toByteArray()[0]);
+    source.close();
+  }
+}
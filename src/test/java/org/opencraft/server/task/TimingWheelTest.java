@@ -0,0 +1,63 @@
+package org.opencraft.server.task;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+  @Test
+  void runsActionsWhenDue() {
+    TimingWheel wheel = new TimingWheel(25, 8);
+    List<String> ran = new ArrayList<>();
+    wheel.schedule(() -> ran.add("soon"), 0);
+    wheel.schedule(() -> ran.add("later"), 100);
+    // more than one turn of the wheel
+    wheel.schedule(() -> ran.add("much later"), 25 * 20);
+
+    wheel.advance();
+    assertEquals(List.of("soon"), ran);
+    for (int i = 0; i < 3; i++) {
+      wheel.advance();
+    }
+    assertEquals(List.of("soon", "later"), ran);
+    for (int i = 0; i < 15; i++) {
+      wheel.advance();
+    }
+    assertEquals(2, ran.size());
+    wheel.advance();
+    assertEquals(List.of("soon", "later", "much later"), ran);
+  }
+
+  @Test
+  void cancelledActionsDontRun() {
+    TimingWheel wheel = new TimingWheel(25, 8);
+    List<String> ran = new ArrayList<>();
+    TimingWheel.Timeout timeout = wheel.schedule(() -> ran.add("cancelled"), 50);
+    assertTrue(timeout.isActive());
+    timeout.cancel();
+    assertFalse(timeout.isActive());
+    for (int i = 0; i < 10; i++) {
+      wheel.advance();
+    }
+    assertTrue(ran.isEmpty());
+  }
+
+  @Test
+  void repeatsUntilCancelled() {
+    TimingWheel wheel = new TimingWheel(25, 8);
+    int[] runs = new int[1];
+    TimingWheel.Timeout timeout = wheel.schedule(() -> runs[0]++, 25, 50);
+    for (int i = 0; i < 5; i++) {
+      wheel.advance();
+    }
+    // ticks 1, 3 and 5
+    assertEquals(3, runs[0]);
+    assertTrue(timeout.isActive());
+    timeout.cancel();
+    for (int i = 0; i < 5; i++) {
+      wheel.advance();
+    }
+    assertEquals(3, runs[0]);
+  }
+}